@@ -0,0 +1,29 @@
+package ch.epfl.isochrone;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import ch.epfl.isochrone.timetable.SnapshotWriter;
+import ch.epfl.isochrone.timetable.TimeTableReader;
+
+/**
+ * Convertit les donnees CSV d'un horaire en instantane binaire, chargeable par SnapshotReader.
+ * Les arguments doivent etre rentre dans la console selon cet ordre : dossier-des-donnees fichier-instantane
+ * (par exemple /time-table/ time-table.snapshot).
+ */
+public final class TimeTableConverter {
+
+    public static void main(String[] args) {
+
+        try {
+
+            SnapshotWriter.write(new TimeTableReader(args[0]), Paths.get(args[1]));
+            System.out.println("Instantane ecrit : "+args[1]);
+
+        } catch (IOException e) {
+            System.out.println("Erreur IO : "+e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Erreur : "+e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ch.epfl.isochrone;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.isochrone.timetable.Date;
+import ch.epfl.isochrone.timetable.Graph;
+import ch.epfl.isochrone.timetable.SecondsPastMidnight;
+import ch.epfl.isochrone.timetable.SnapshotReader;
+import ch.epfl.isochrone.timetable.Stop;
+import ch.epfl.isochrone.timetable.TimeTable;
+import ch.epfl.isochrone.timetable.TimeTableReader;
+import ch.epfl.isochrone.timetable.TimeTableSource;
+import ch.epfl.isochrone.timetable.TravelTimeMatrix;
+
+/**
+ * Calcule la matrice des durees de trajet entre tous les arrets pour une date et une plage de temps de depart, et l'ecrit dans un fichier
+ * (voir TravelTimeMatrix pour le format). Les noms des arrets, dans l'ordre des lignes et des colonnes, sont ecrits a cote dans le fichier .stops.
+ * Les arguments doivent etre rentre dans la console selon cet ordre : yyyy-mm-dd hh:mm:ss hh:mm:ss pas-en-secondes fichier.
+ * La propriete systeme isochrone.snapshot permet de charger un instantane binaire (voir TimeTableConverter) a la place des CSV.
+ */
+public final class TimeTableMatrix {
+
+    public static void main(String[] args) {
+
+        final int walkingTime = 300;
+        final double walkingSpeed = 1.25;
+        final String snapshot = System.getProperty("isochrone.snapshot");
+        final String[] dateStr = args[0].split("-");
+        final Date date = new Date(Integer.parseInt(dateStr[2]),
+                Integer.parseInt(dateStr[1]),
+                Integer.parseInt(dateStr[0]));
+        final int debut = parseTime(args[1]), fin = parseTime(args[2]);
+        final int pas = Integer.parseInt(args[3]);
+        final Path fichier = Paths.get(args[4]);
+
+        try {
+
+            if (pas <= 0 || fin < debut)
+                throw new IllegalArgumentException("la plage de temps de depart est invalide");
+
+            final TimeTableSource reader = (snapshot != null) ? new SnapshotReader(Paths.get(snapshot)): new TimeTableReader("/time-table/");
+            final TimeTable timetable = reader.readTimeTable();
+            final Graph graph = reader.readGraphForServices(timetable.stops(), timetable.servicesForDate(date), walkingTime, walkingSpeed);
+
+            final List<Stop> arrets = new ArrayList<>();
+            final List<String> noms = new ArrayList<>();
+            for (int id = 0; id < graph.stopCount(); ++id) {
+                arrets.add(graph.stop(id));
+                noms.add(graph.stop(id).name());
+            }
+            final int[] temps = new int[(fin - debut) / pas + 1];
+            for (int i = 0; i < temps.length; ++i) {
+                temps[i] = debut + i*pas;
+            }
+
+            final long start = System.nanoTime();
+            final TravelTimeMatrix matrix = new TravelTimeMatrix(graph, arrets, temps, null);
+            matrix.writeTo(fichier);
+            Files.write(Paths.get(fichier+".stops"), noms, StandardCharsets.UTF_8);
+
+            System.out.println(matrix.rowCount()+" x "+matrix.columnCount()+" durees ecrites dans "+fichier
+                    +" en "+(System.nanoTime() - start) / 1000000+" ms");
+
+        } catch (IOException e) {
+            System.out.println("Erreur IO : "+e.getMessage());
+        } catch (Exception e) {
+            System.out.println("Erreur : "+e.getMessage());
+        }
+    }
+
+    private static int parseTime(String time) {
+        final String[] tempsStr = time.split(":");
+        return SecondsPastMidnight.fromHMS(Integer.parseInt(tempsStr[0]),
+                Integer.parseInt(tempsStr[1]),
+                Integer.parseInt(tempsStr[2]));
+    }
+}
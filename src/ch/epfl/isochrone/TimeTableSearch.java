@@ -1,6 +1,7 @@
 package ch.epfl.isochrone;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -9,14 +10,20 @@ import java.util.List;
 import ch.epfl.isochrone.timetable.Date;
 import ch.epfl.isochrone.timetable.FastestPathTree;
 import ch.epfl.isochrone.timetable.Graph;
+import ch.epfl.isochrone.timetable.RoutingEngine;
 import ch.epfl.isochrone.timetable.SecondsPastMidnight;
+import ch.epfl.isochrone.timetable.SnapshotReader;
 import ch.epfl.isochrone.timetable.Stop;
 import ch.epfl.isochrone.timetable.TimeTable;
 import ch.epfl.isochrone.timetable.TimeTableReader;
+import ch.epfl.isochrone.timetable.TimeTableSource;
 
 /**
  * Recherche les relations a partir d'un arret, d'une date et d'une heure de depart.
- * Les arguments doivent etre rentre dans la console selon cet ordre : arret yyyy-mm-dd hh:mm:ss.
+ * Les arguments doivent etre rentre dans la console selon cet ordre : arret yyyy-mm-dd hh:mm:ss [arret d'arrivee].
+ * Si un arret d'arrivee est donne, seule la relation vers cet arret est affichee et la recherche s'arrete des qu'il est atteint.
+ * L'algorithme de recherche peut etre choisi avec la propriete systeme isochrone.routing (DIJKSTRA, CONNECTION_SCAN ou RAPTOR).
+ * La propriete systeme isochrone.snapshot permet de charger un instantane binaire (voir TimeTableConverter) a la place des CSV.
  */
 public final class TimeTableSearch {
 
@@ -24,7 +31,10 @@ public final class TimeTableSearch {
 
         final int walkingTime = 300;
         final double walkingSpeed = 1.25;
+        final RoutingEngine.Algorithm algorithm = RoutingEngine.Algorithm.valueOf(System.getProperty("isochrone.routing", "DIJKSTRA"));
+        final String snapshot = System.getProperty("isochrone.snapshot");
         final String arret = args[0];
+        final String arrivee = (args.length > 3) ? args[3]: null;
         final String[] dateStr = args[1].split("-"), tempsStr = args[2].split(":");
         final Date date = new Date(Integer.parseInt(dateStr[2]),
                 Integer.parseInt(dateStr[1]),
@@ -35,9 +45,9 @@ public final class TimeTableSearch {
 
         try {
 
-            final TimeTableReader reader = new TimeTableReader("/time-table/");
+            final TimeTableSource reader = (snapshot != null) ? new SnapshotReader(Paths.get(snapshot)): new TimeTableReader("/time-table/");
             final TimeTable timetable = reader.readTimeTable();
-            Stop depart = null;
+            Stop depart = null, cible = null;
 
             for (Stop s : timetable.stops()) { // recuperation d'un arret en fonction de son nom
                 if (s.name().equals(arret)) {
@@ -45,11 +55,25 @@ public final class TimeTableSearch {
                     break;
                 }
             }
+            if (arrivee != null) {
+                for (Stop s : timetable.stops()) { // recuperation de l'arret d'arrivee, le premier du nom
+                    if (s.name().equals(arrivee)) {
+                        cible = s;
+                        break;
+                    }
+                }
+                if (cible == null)
+                    throw new IllegalArgumentException("arret d'arrivee inconnu : "+arrivee);
+            }
 
             final Graph graph = reader.readGraphForServices(timetable.stops(), timetable.servicesForDate(date), walkingTime, walkingSpeed);
-            final FastestPathTree tree = graph.fastestPaths(depart, temps);
+            final FastestPathTree tree = (cible != null && algorithm == RoutingEngine.Algorithm.DIJKSTRA)
+                    ? graph.fastestPaths(depart, temps, SecondsPastMidnight.INFINITE, Collections.singleton(cible), null)
+                    : algorithm.engineFor(graph).fastestPaths(depart, temps);
 
             final List<Stop> allStops = new ArrayList<>(tree.stops());
+            if (cible != null)
+                allStops.retainAll(Collections.singleton(cible));
             Collections.sort(allStops, new Comparator<Stop>(){ // tri alphabetique des arrets
                 @Override
                 public int compare(Stop s1, Stop s2) {
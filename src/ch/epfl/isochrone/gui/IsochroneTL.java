@@ -25,7 +25,10 @@ import java.awt.event.MouseWheelListener;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
@@ -37,6 +40,7 @@ import javax.swing.BorderFactory;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
@@ -58,17 +62,25 @@ import ch.epfl.isochrone.geo.PointWGS84;
 import ch.epfl.isochrone.tiledmap.AsynchroneCachedTileProvider;
 import ch.epfl.isochrone.tiledmap.CachedTileProvider;
 import ch.epfl.isochrone.tiledmap.ColorTable;
+import ch.epfl.isochrone.tiledmap.CompositingTileProvider;
 import ch.epfl.isochrone.tiledmap.IsochroneTileProvider;
 import ch.epfl.isochrone.tiledmap.OSMTileProvider;
+import ch.epfl.isochrone.tiledmap.StopProjection;
 import ch.epfl.isochrone.tiledmap.TileProvider;
 import ch.epfl.isochrone.tiledmap.TransparentTileProvider;
 import ch.epfl.isochrone.timetable.Date;
+import ch.epfl.isochrone.timetable.FastestPathProfile;
 import ch.epfl.isochrone.timetable.FastestPathTree;
 import ch.epfl.isochrone.timetable.Graph;
+import ch.epfl.isochrone.timetable.GraphCache;
+import ch.epfl.isochrone.timetable.LatestDepartureTree;
+import ch.epfl.isochrone.timetable.RoutingEngine;
 import ch.epfl.isochrone.timetable.Service;
+import ch.epfl.isochrone.timetable.SnapshotReader;
 import ch.epfl.isochrone.timetable.Stop;
 import ch.epfl.isochrone.timetable.TimeTable;
 import ch.epfl.isochrone.timetable.TimeTableReader;
+import ch.epfl.isochrone.timetable.TimeTableSource;
 import ch.epfl.isochrone.timetable.Date.Month;
 import ch.epfl.isochrone.timetable.SecondsPastMidnight;
 
@@ -88,18 +100,34 @@ public final class IsochroneTL {
     private static final int DEFAULT_ANIMATION_DELAY = 500;
     private static final int SLOWEST_ANIMATION_DELAY = 1000;
     private static final int FASTEST_ANIMATION_DELAY = 100;
+    private static final int PROFILE_WINDOW = 60 * 60;
+    private static final RoutingEngine.Algorithm ROUTING_ALGORITHM = RoutingEngine.Algorithm.valueOf(System.getProperty("isochrone.routing", "DIJKSTRA"));
+    private static final String SNAPSHOT_FILE = System.getProperty("isochrone.snapshot"); // instantane binaire a charger a la place des CSV
+    private static final long GRAPH_CACHE_WEIGHT = Long.getLong("isochrone.graphCache", 256L << 20); // memoire des graphes en cache (octets)
+    private static final IsochroneTileProvider.Rendering ISOCHRONE_RENDERING = IsochroneTileProvider.Rendering.valueOf(System.getProperty("isochrone.rendering", "RASTER"));
 
     private final TiledMapComponent tiledMapComponent;
     private Date currentDate;
     private Stop currentStop;
+    private PointWGS84 currentOrigin; // point de depart choisi sur la carte, null si le depart est l'arret courant
     private int currentSpm;
     private Set<Service> currentServices;
-    private TimeTableReader reader;
+    private TimeTableSource reader;
+    private GraphCache graphCache;
     private FastestPathTree pathTree;
+    private LatestDepartureTree departureTree; // arbre des departs les plus tardifs, utilise a la place de pathTree en mode arrivee
+    private boolean arriveBy; // l'heure choisie est l'heure d'arrivee a l'arret courant
     private Graph graph;
+    private Graph masterGraph; // graphe de tous les services, utilise avec l'algorithme de Dijkstra
+    private BitSet activeServices; // masque des services actifs dans le graphe maitre, null sinon
+    private RoutingEngine engine;
+    private FastestPathProfile profile;
+    private Timer animation;
     private TimeTable timetable;
+    private StopProjection projection; // positions OSM des arrets, calculees une fois pour toutes
     private ColorTable colorTable;
     private TileProvider mainProvider;
+    private CompositingTileProvider mapProvider; // carte et isochrone superposees une fois par tuile
     private Robot robot;
     private JComboBox<Stop> selectStop;
 
@@ -177,6 +205,15 @@ public final class IsochroneTL {
         });
         JSpinner selectDateTime = new JSpinner(dateModel);
 
+        // selection du mode arrivee
+        final JCheckBox selectArriveBy = new JCheckBox("Arrivée");
+        selectArriveBy.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setArriveBy(selectArriveBy.isSelected());
+            }
+        });
+
         // gestion des animations / selecteur d'iteration
         Icon playIcon = new ImageIcon(getClass().getResource("/images/play.png"));
         Icon plusIcon = new ImageIcon(getClass().getResource("/images/plus.png"));
@@ -184,7 +221,7 @@ public final class IsochroneTL {
         Vector<String> timeSpanToIterate = new Vector<>(Arrays.asList("Années", "Mois", "Jours", "Heures", "Minutes", "Seconds"));
         final JComboBox<String> timeToIterate = new JComboBox<>(timeSpanToIterate);
         timeToIterate.setSelectedItem("Minutes");
-        final Timer timer = new Timer(DEFAULT_ANIMATION_DELAY, new ActionListener() {
+        final Timer timer = animation = new Timer(DEFAULT_ANIMATION_DELAY, new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
                 Calendar cal = Calendar.getInstance();
@@ -256,6 +293,7 @@ public final class IsochroneTL {
         topPanel.add(new JSeparator());
         topPanel.add(new JLabel("Date et heure"));
         topPanel.add(selectDateTime);
+        topPanel.add(selectArriveBy);
         topPanel.add(new JSeparator());
         topPanel.add(new JLabel("Animation"));
         topPanel.add(startAnimation);
@@ -327,6 +365,9 @@ public final class IsochroneTL {
                         e.consume();
                     } else if (isNotTooFar) {
                         selectStop.setSelectedItem(closestStopFromMouse);
+                    } else if (!arriveBy) { // depart depuis un point quelconque de la carte
+                        Point view = SwingUtilities.convertPoint(layeredPane, e.getPoint(), tiledMapComponent);
+                        setStartingPoint(new PointOSM(tiledMapComponent.zoom(), view.getX(), view.getY()).toWGS84());
                     }
                     return;
                 }
@@ -342,9 +383,17 @@ public final class IsochroneTL {
                 PointOSM lastCursorPosOSM = new PointOSM(zoom, view.getX(), view.getY());
                 PointWGS84 lastCursorPosWGS84 = lastCursorPosOSM.toWGS84();
                 Stop closestStop = null;
-                int minArrivalTime = Integer.MAX_VALUE;
-                for(Stop s : pathTree.stops()) {
+                int minArrivalTime = Integer.MAX_VALUE, maxDepartureTime = Integer.MIN_VALUE;
+                for(Stop s : reachedStops()) {
                     double distance = lastCursorPosWGS84.distanceTo(s.position());
+                    if (arriveBy) { // arret depuis lequel on peut partir le plus tard apres l'avoir rejoint a pied
+                        int departureTime = (int) (departureTree.departureTime(s) - distance / WALKING_SPEED);
+                        if (departureTime > maxDepartureTime) {
+                            maxDepartureTime = departureTime;
+                            closestStop = s;
+                        }
+                        continue;
+                    }
                     int arrivalTime = (int) (pathTree.arrivalTime(s) + distance * WALKING_SPEED);
                     if (arrivalTime < minArrivalTime){
                         minArrivalTime = arrivalTime;
@@ -358,12 +407,25 @@ public final class IsochroneTL {
                 context.setColor(Color.RED);
                 context.setStroke(new BasicStroke(1));
                 
-                List<Stop> path = pathTree.pathTo(closestStop);
+                List<Stop> path;
+                if (arriveBy) { // dessine depuis l'arrivee, pour finir par le depart le plus proche du curseur
+                    path = new ArrayList<>(departureTree.pathFrom(closestStop));
+                    Collections.reverse(path);
+                } else {
+                    path = pathTree.pathTo(closestStop);
+                }
                 Stop previousStop = null;
+                if (currentOrigin != null && !arriveBy) { // marche depuis le point de depart jusqu'au premier arret
+                    PointOSM originOSM = currentOrigin.toOSM(zoom);
+                    PointOSM firstStopOSM = projection.toOSM(path.get(0), zoom);
+                    Point originConverted = SwingUtilities.convertPoint(tiledMapComponent, new Point(originOSM.roundedX(), originOSM.roundedY()), layeredPane);
+                    Point firstStopConverted = SwingUtilities.convertPoint(tiledMapComponent, new Point(firstStopOSM.roundedX(), firstStopOSM.roundedY()), layeredPane);
+                    context.drawLine(originConverted.x, originConverted.y, firstStopConverted.x, firstStopConverted.y);
+                }
                 for (Stop curStop : path) {
                     if (previousStop != null) {
-                        PointOSM curStopOSM = curStop.position().toOSM(zoom);
-                        PointOSM previousStopOSM = previousStop.position().toOSM(zoom);
+                        PointOSM curStopOSM = projection.toOSM(curStop, zoom);
+                        PointOSM previousStopOSM = projection.toOSM(previousStop, zoom);
 
                         Point curStopPoint = new Point(curStopOSM.roundedX(), curStopOSM.roundedY());
                         Point previousStopPoint = new Point(previousStopOSM.roundedX(), previousStopOSM.roundedY());
@@ -375,7 +437,7 @@ public final class IsochroneTL {
                     }
                     previousStop = curStop;
                 }
-                PointOSM previousStopOSM = previousStop.position().toOSM(zoom);
+                PointOSM previousStopOSM = projection.toOSM(previousStop, zoom);
                 Point previousStopPoint = new Point(previousStopOSM.roundedX(), previousStopOSM.roundedY());
                 Point previousStopConverted = SwingUtilities.convertPoint(tiledMapComponent, previousStopPoint, layeredPane);
                 context.drawLine(previousStopConverted.x, previousStopConverted.y, lastCursorPos.x, lastCursorPos.y);
@@ -399,17 +461,17 @@ public final class IsochroneTL {
                 double minDistance = Double.MAX_VALUE;
                 int zoom = tiledMapComponent.zoom();
                 Point view = SwingUtilities.convertPoint(layeredPane, e.getPoint(), tiledMapComponent);
-                PointOSM lastCursorPosOSM = new PointOSM(zoom, view.getX(), view.getY());
-                PointWGS84 lastCursorPosWGS84 = lastCursorPosOSM.toWGS84();
-                for (Stop s : pathTree.stops()) {
-                    double distance = s.position().distanceTo(lastCursorPosWGS84);
+                for (Stop s : reachedStops()) { // distance en pixels, sans trigonometrie
+                    int id = projection.stopId(s);
+                    double dx = projection.x(id, zoom) - view.getX(), dy = projection.y(id, zoom) - view.getY();
+                    double distance = dx*dx + dy*dy;
                     if (distance < minDistance){
                         minDistance = distance;
                         closestStopFromMouse = s;
                     }
                 }
                 
-                PointOSM stopPosOSM = closestStopFromMouse.position().toOSM(zoom);
+                PointOSM stopPosOSM = projection.toOSM(closestStopFromMouse, zoom);
                 Point stopPos = new Point(stopPosOSM.roundedX(), stopPosOSM.roundedY());
 
                 // si un stop est disponible
@@ -484,8 +546,13 @@ public final class IsochroneTL {
      */
     public IsochroneTL() throws IOException, HeadlessException, AWTException {
 
-        reader = new TimeTableReader("/time-table-test/");
+        reader = (SNAPSHOT_FILE != null) ? new SnapshotReader(Paths.get(SNAPSHOT_FILE)): new TimeTableReader("/time-table-test/");
         timetable = reader.readTimeTable();
+        projection = StopProjection.of(timetable);
+        if (ROUTING_ALGORITHM == RoutingEngine.Algorithm.DIJKSTRA)
+            masterGraph = reader.readMasterGraph(timetable.stops(), timetable.services(), WALKING_TIME, WALKING_SPEED);
+        else
+            graphCache = new GraphCache(reader, timetable, WALKING_TIME, WALKING_SPEED, GRAPH_CACHE_WEIGHT);
         mainProvider = new AsynchroneCachedTileProvider(new OSMTileProvider(new URL(OSM_TILE_URL)));
         tiledMapComponent = new TiledMapComponent(INITIAL_ZOOM);
 
@@ -523,15 +590,24 @@ public final class IsochroneTL {
         }
     }
 
-    // met a jour la table des horaires et le graphe
+    // met a jour les services actifs : seul le masque du graphe maitre change, ou le graphe est pris dans le cache
+    // (qui prepare aussi ceux de la veille et du lendemain)
     private void updateServices() {
         Set<Service> temp = timetable.servicesForDate(currentDate);
         if (!temp.equals(currentServices)) {
             currentServices = temp;
-            try {
-                graph = reader.readGraphForServices(timetable.stops(), currentServices, WALKING_TIME, WALKING_SPEED);    
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (masterGraph != null) {
+                graph = masterGraph;
+                activeServices = masterGraph.serviceMask(currentServices);
+                profile = null;
+            } else {
+                try {
+                    graph = graphCache.graphForDate(currentDate);
+                    engine = ROUTING_ALGORITHM.engineFor(graph);
+                    profile = null;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
             updateFastestPathTree();
         }
@@ -544,9 +620,27 @@ public final class IsochroneTL {
      *          Le nouvelle arret
      */
     public void setStartingStop(Stop s) {
-        if (!currentStop.equals(s)) {
+        if (!currentStop.equals(s) || currentOrigin != null) {
             currentStop = s;
+            currentOrigin = null;
+            updateFastestPathTree();
+        }
+    }
+
+    /**
+     * Accesseur en ecriture du point de depart : les arrets a distance de marche du point deviennent les arrets de depart.
+     * Le point est ignore s'il n'y a aucun arret a distance de marche.
+     * 
+     * @param   p
+     *          Le nouveau point de depart.
+     */
+    public void setStartingPoint(PointWGS84 p) {
+        PointWGS84 previous = currentOrigin;
+        currentOrigin = p;
+        try {
             updateFastestPathTree();
+        } catch (IllegalArgumentException e) { // aucun arret a distance de marche
+            currentOrigin = previous;
         }
     }
 
@@ -563,12 +657,57 @@ public final class IsochroneTL {
         }
     }
 
-    // met a jour l'arbre du chemin le plus rapide
+    /**
+     * Accesseur en ecriture du mode arrivee : l'heure choisie devient l'heure d'arrivee au plus tard a l'arret courant,
+     * et l'isochrone montre d'ou l'on peut partir pour y arriver a temps.
+     * 
+     * @param   b
+     *          Vrai pour le mode arrivee, faux pour le mode depart.
+     */
+    public void setArriveBy(boolean b) {
+        if (arriveBy != b) {
+            arriveBy = b;
+            updateFastestPathTree();
+        }
+    }
+
+    // retourne les arrets de l'arbre courant
+    private Set<Stop> reachedStops() {
+        return arriveBy ? departureTree.stops(): pathTree.stops();
+    }
+
+    // met a jour l'arbre du chemin le plus rapide (ou des departs les plus tardifs en mode arrivee)
     private void updateFastestPathTree() {
-        pathTree = graph.fastestPaths(currentStop, currentSpm);
-        TileProvider isochroneProvider = new CachedTileProvider(new TransparentTileProvider(new IsochroneTileProvider(pathTree, colorTable, WALKING_SPEED), ISOCHRONE_OPACITY));
-        List<TileProvider> providers = Arrays.asList(mainProvider, isochroneProvider);
-        tiledMapComponent.setTileProviders(providers);
+        final int horizon = colorTable.getSliceCount() * colorTable.getTimeFrame(); // au-dela, rien n'est dessine
+        if (arriveBy) {
+            departureTree = graph.latestDepartures(currentStop, currentSpm, horizon, activeServices);
+            setIsochroneProvider(IsochroneTileProvider.arrivingBy(departureTree, colorTable, WALKING_SPEED));
+            return;
+        }
+
+        if (currentOrigin != null) { // une seule recherche depuis tous les arrets a distance de marche du point
+            pathTree = graph.fastestPaths(currentOrigin, currentSpm, WALKING_TIME, WALKING_SPEED, horizon, activeServices);
+        } else if (animation != null && animation.isRunning()) { // pendant l'animation, les arbres sont extraits d'un profil calcule pour toute une fenetre de depart
+            if (profile == null || !profile.startingStop().equals(currentStop) || currentSpm < profile.fromTime() || currentSpm > profile.toTime())
+                profile = graph.fastestPathProfiles(currentStop, currentSpm, currentSpm + PROFILE_WINDOW, activeServices);
+            pathTree = profile.treeAt(currentSpm);
+        } else if (activeServices != null) {
+            pathTree = graph.fastestPaths(currentStop, currentSpm, horizon, null, activeServices);
+        } else {
+            pathTree = engine.fastestPaths(currentStop, currentSpm);
+        }
+        setIsochroneProvider(new IsochroneTileProvider(pathTree, colorTable, WALKING_SPEED));
+    }
+
+    // affiche l'isochrone du fournisseur donne par-dessus la carte
+    private void setIsochroneProvider(IsochroneTileProvider provider) {
+        TileProvider isochroneProvider = new CachedTileProvider(new TransparentTileProvider(provider.withRendering(ISOCHRONE_RENDERING).withProjection(projection), ISOCHRONE_OPACITY));
+        if (mapProvider == null) {
+            mapProvider = new CompositingTileProvider(Arrays.asList(mainProvider, isochroneProvider), tiledMapComponent.getBackground());
+            tiledMapComponent.setTileProviders(Collections.<TileProvider>singletonList(mapProvider));
+        } else {
+            mapProvider.setLayer(1, isochroneProvider); // seule l'isochrone est recomposee, la carte est reutilisee
+        }
         tiledMapComponent.repaint();
     }
 
@@ -83,7 +83,7 @@ public final class TiledMapComponent extends JComponent {
             for (int y = minY; y <= maxY; ++y) {
                 for (TileProvider p : providers) {
                     Tile t = p.tileAt(zoom, x, y);
-                    shouldRepaint |= t.equals(Tile.LOADING);
+                    shouldRepaint |= t.isLoading();
                     context.drawImage(t.image(), null, x << TileProvider.TILE_BIT_SIZE, y << TileProvider.TILE_BIT_SIZE);
                 }
             }
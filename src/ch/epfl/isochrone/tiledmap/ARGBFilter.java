@@ -0,0 +1,33 @@
+package ch.epfl.isochrone.tiledmap;
+
+/**
+ * Interface pour les transformations de couleurs ARGB appliquees pixel par pixel, independamment de tout fournisseur de tuiles.
+ * Les filtres de fournisseur de tuile (voir FilteringTileProvider) en sont, et plusieurs transformations peuvent etre
+ * enchainees en une seule passe sur les pixels (voir ChainedTileProvider).
+ */
+public interface ARGBFilter {
+
+    /**
+     * Applique une transformation au niveau de la couleur.
+     * 
+     * @param   argb
+     *          La couleur d'origine.
+     * @return  La couleur transformee.
+     */
+    public int transformARGB(int argb);
+
+    /**
+     * Applique la transformation aux couleurs d'indices [from, to) du tableau src et les ecrit aux memes indices dans dst.
+     * Les deux tableaux peuvent etre le meme (transformation en place).
+     *
+     * @param   src
+     *          Les couleurs d'origine.
+     * @param   dst
+     *          Les couleurs transformees.
+     * @param   from
+     *          L'indice de la premiere couleur.
+     * @param   to
+     *          L'indice suivant la derniere couleur.
+     */
+    public void transformARGB(int[] src, int[] dst, int from, int to);
+}
@@ -0,0 +1,76 @@
+package ch.epfl.isochrone.tiledmap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Un filtre de fournisseur de tuile appliquant plusieurs transformations de couleurs a la suite en une seule passe sur les pixels :
+ * chaque ligne de l'image passe par toutes les transformations, dans l'ordre, pendant qu'elle est en cache.
+ */
+public final class ChainedTileProvider extends FilteringTileProvider {
+
+    private final List<ARGBFilter> filters;
+
+    /**
+     * Constructeur du filtre enchainant les transformations donnees.
+     *
+     * @param   originalProvider
+     *          Le fournisseur de tuile original.
+     * @param   filters
+     *          Les transformations, dans l'ordre d'application.
+     * @throws  IllegalArgumentException
+     *          En cas de liste de transformations vide.
+     */
+    public ChainedTileProvider(TileProvider originalProvider, List<ARGBFilter> filters) {
+        super(originalProvider);
+
+        if (filters.isEmpty())
+            throw new IllegalArgumentException("la liste des filtres ne doit pas etre vide");
+
+        this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+    }
+
+    /**
+     * Applique toutes les transformations, dans l'ordre.
+     *
+     * @param   argb
+     *          La couleur d'origine.
+     * @return  La couleur transformee par toutes les transformations.
+     */
+    @Override
+    public int transformARGB(int argb) {
+        for (ARGBFilter f : filters) {
+            argb = f.transformARGB(argb);
+        }
+        return argb;
+    }
+
+    /**
+     * Applique toutes les transformations par paquet, la premiere de src vers dst, les suivantes en place.
+     *
+     * @param   src
+     *          Les couleurs d'origine.
+     * @param   dst
+     *          Les couleurs transformees.
+     * @param   from
+     *          L'indice de la premiere couleur.
+     * @param   to
+     *          L'indice suivant la derniere couleur.
+     */
+    @Override
+    public void transformARGB(int[] src, int[] dst, int from, int to) {
+        filters.get(0).transformARGB(src, dst, from, to);
+        for (int i = 1; i < filters.size(); ++i) {
+            filters.get(i).transformARGB(dst, dst, from, to);
+        }
+    }
+
+    // chaque ligne passe par toutes les transformations avant la suivante
+    @Override
+    protected void transformRows(int[] src, int[] dst, int width, int height) {
+        for (int row = 0, from = 0; row < height; ++row, from += width) {
+            transformARGB(src, dst, from, from + width);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ch.epfl.isochrone.tiledmap;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Un fournisseur de tuiles superposant plusieurs couches (la premiere en dessous) sur une couleur de fond en une seule
+ * tuile opaque, mise en cache : une tuile deja composee est redessinee d'une seule image.
+ * Chaque couche a un numero de version, incremente quand elle est remplacee (voir setLayer) ; seules les couches a partir
+ * de la plus basse qui a change sont recomposees, par-dessus la composition gardee des couches inferieures.
+ * Tant qu'une couche est en chargement (Tile.LOADING), la tuile est provisoire : les autres couches sont composees sans elle,
+ * la tuile est en chargement (voir Tile.isLoading) et n'est pas mise en cache.
+ * Classe thread-safe : le verrou ne protege que les versions et le cache, les tuiles des couches sont demandees et composees sans lui.
+ */
+public final class CompositingTileProvider implements TileProvider {
+
+    private static final int MAX_SIZE = 100; // nombre de tuiles composees en cache
+
+    // couches et leurs versions, et tuiles composees du moins au plus recemment utilisee ; proteges par le verrou de l'instance
+    private final TileProvider[] layers;
+    private final int[] versions;
+    private final Map<Long, Composite> cache;
+    private final Color background;
+
+    /**
+     * Constructeur public du fournisseur superposant les couches donnees.
+     *
+     * @param   layers
+     *          Les fournisseurs de tuiles des couches, de la plus basse a la plus haute.
+     * @param   background
+     *          La couleur de fond, visible sous les pixels transparents et les couches en chargement.
+     * @throws  IllegalArgumentException
+     *          En cas de liste de couches vide.
+     */
+    public CompositingTileProvider(List<TileProvider> layers, Color background) {
+
+        if (layers.isEmpty())
+            throw new IllegalArgumentException("la liste des couches ne doit pas etre vide");
+
+        this.layers = layers.toArray(new TileProvider[layers.size()]);
+        this.versions = new int[this.layers.length];
+        this.background = background;
+        this.cache = new LinkedHashMap<Long, Composite>(16, 0.75f, true) {
+            private static final long serialVersionUID = 3362818437734372937L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Composite> e) {
+                return size() > MAX_SIZE; // elimine la tuile la moins recemment utilisee
+            }
+        };
+    }
+
+    /**
+     * Retourne le nombre de couches.
+     *
+     * @return  Le nombre de couches.
+     */
+    public int layerCount() {
+        return layers.length;
+    }
+
+    /**
+     * Remplace la couche d'indice donne et incremente sa version : les tuiles composees seront recomposees a partir de cette couche.
+     *
+     * @param   index
+     *          L'indice de la couche, 0 pour la plus basse.
+     * @param   layer
+     *          Le nouveau fournisseur de tuiles de la couche.
+     * @throws  IndexOutOfBoundsException
+     *          En cas d'indice non compris dans l'intervalle [0, layerCount()-1].
+     */
+    public synchronized void setLayer(int index, TileProvider layer) {
+        if (index < 0 || index >= layers.length)
+            throw new IndexOutOfBoundsException("l'indice doit etre compris dans [0,"+(layers.length-1)+"] : "+index);
+
+        layers[index] = layer;
+        ++versions[index];
+    }
+
+    /**
+     * Retourne la tuile composee au niveau de zoom et aux coordonnees donnees, depuis le cache si aucune couche n'a change.
+     *
+     * @param   zoom
+     *          Le niveau de zoom de la tuile.
+     * @param   x
+     *          La coordonnee x de la tuile.
+     * @param   y
+     *          La coordonnee y de la tuile.
+     * @return  La tuile composee, provisoire et en chargement si une couche est en chargement.
+     * @throws  IllegalArgumentException
+     *          En cas de zoom negatif.
+     */
+    @Override
+    public Tile tileAt(int zoom, int x, int y) {
+
+        if (zoom < 0)
+            throw new IllegalArgumentException("le zoom ne doit pas etre negatif : "+zoom);
+
+        // les tuiles des couches sont demandees hors du verrou : une couche lente ne bloque pas les autres tuiles
+        final long key = TileCache.encodeTileCoordinates(zoom, x, y);
+        final TileProvider[] layers;
+        final int[] versions;
+        final Composite cached;
+        synchronized (this) {
+            layers = this.layers.clone();
+            versions = this.versions.clone();
+            cached = cache.get(key);
+        }
+
+        int from = 0; // plus basse couche ayant change
+        if (cached != null) {
+            while (from < layers.length && cached.versions[from] == versions[from]) {
+                ++from;
+            }
+            if (from == layers.length)
+                return cached.tile;
+        }
+
+        final BufferedImage[] below = new BufferedImage[layers.length]; // compositions des couches 0 a i
+        for (int i = 0; i < from; ++i) {
+            below[i] = cached.below[i];
+        }
+        boolean loading = false;
+        for (int i = from; i < layers.length; ++i) {
+            Tile t = layers[i].tileAt(zoom, x, y);
+            loading |= t.isLoading();
+
+            BufferedImage image = t.image();
+            if (image == null && i > 0) { // couche en chargement : les couches suivantes sont composees sans elle
+                below[i] = below[i-1];
+                continue;
+            }
+            if (i == 0 && !t.isLoading() && image.getType() == BufferedImage.TYPE_INT_RGB && layers.length > 1) {
+                below[i] = image; // deja opaque : gardee telle quelle
+                continue;
+            }
+            below[i] = new BufferedImage(TileProvider.TILE_SIZE, TileProvider.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+            Graphics2D context = below[i].createGraphics();
+            if (i > 0) {
+                context.drawImage(below[i-1], null, 0, 0);
+            } else {
+                context.setColor(background);
+                context.fillRect(0, 0, TileProvider.TILE_SIZE, TileProvider.TILE_SIZE);
+            }
+            if (image != null)
+                context.drawImage(image, null, 0, 0);
+            context.dispose();
+        }
+
+        if (loading) // tuile provisoire, recomposee a la prochaine demande
+            return new Tile(zoom, x, y, below[layers.length-1], true);
+
+        final Composite composite = new Composite(new Tile(zoom, x, y, below[layers.length-1]), versions, below);
+        synchronized (this) {
+            Composite current = cache.get(key);
+            if (current == null || !Arrays.equals(current.versions, this.versions)) // ne remplace pas une composition a jour
+                cache.put(key, composite);
+        }
+        return composite.tile;
+    }
+
+    // une tuile composee, avec les versions des couches et les compositions intermediaires dont elle est faite
+    private static final class Composite {
+
+        private final Tile tile;
+        private final int[] versions;
+        private final BufferedImage[] below;
+
+        private Composite(Tile tile, int[] versions, BufferedImage[] below) {
+            this.tile = tile;
+            this.versions = versions;
+            this.below = below;
+        }
+    }
+}
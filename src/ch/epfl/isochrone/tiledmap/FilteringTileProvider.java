@@ -1,11 +1,15 @@
 package ch.epfl.isochrone.tiledmap;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 /**
  * Un filtre de fournisseur de tuile abstrait. Applique sur chaque pixel la fonction transformARGB.
+ * Les pixels sont traites ligne par ligne directement dans le tableau d'entiers de l'image filtree (DataBufferInt),
+ * par paquets via transformARGB(int[], int[], int, int), que les filtres peuvent redefinir par une boucle simple (vectorisable par le compilateur).
+ * Les images d'origine qui ne sont pas au format TYPE_INT_ARGB sont d'abord converties d'un bloc par getRGB.
  */
-public abstract class FilteringTileProvider implements TileProvider {
+public abstract class FilteringTileProvider implements TileProvider, ARGBFilter {
 
     protected final TileProvider originalProvider;
 
@@ -26,8 +30,29 @@ public abstract class FilteringTileProvider implements TileProvider {
      *          La couleur d'origine.
      * @return  La couleur transformee.
      */
+    @Override
     abstract public int transformARGB(int argb);
 
+    /**
+     * Applique la transformation aux couleurs d'indices [from, to) du tableau src et les ecrit aux memes indices dans dst.
+     * Les deux tableaux peuvent etre le meme (transformation en place). Par defaut, appelle transformARGB sur chaque couleur.
+     *
+     * @param   src
+     *          Les couleurs d'origine.
+     * @param   dst
+     *          Les couleurs transformees.
+     * @param   from
+     *          L'indice de la premiere couleur.
+     * @param   to
+     *          L'indice suivant la derniere couleur.
+     */
+    @Override
+    public void transformARGB(int[] src, int[] dst, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            dst[i] = transformARGB(src[i]);
+        }
+    }
+
     /**
      * Retourne la tuile transformee au niveau de zoom et aux coordonnees donnees.
      * 
@@ -50,13 +75,41 @@ public abstract class FilteringTileProvider implements TileProvider {
         BufferedImage currentImage = originalProvider.tileAt(zoom, x, y).image();
         int width = currentImage.getWidth();
         int height = currentImage.getHeight();
-        BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);        
+        BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] dst = ((DataBufferInt) newImage.getRaster().getDataBuffer()).getData();
 
-        for (int dx = 0; dx < width; ++dx) {  
-            for (int dy = 0; dy < height; ++dy) {
-                newImage.setRGB(dx, dy, transformARGB(currentImage.getRGB(dx, dy)));            
-            }
+        int[] src = pixels(currentImage);
+        if (src == null) { // conversion d'un bloc, puis transformation en place
+            currentImage.getRGB(0, 0, width, height, dst, 0, width);
+            src = dst;
         }
+        transformRows(src, dst, width, height);
         return new Tile(zoom, x, y, newImage);
     }
+
+    /**
+     * Transforme les couleurs d'une image ligne par ligne. Peut etre redefinie pour appliquer plusieurs transformations par ligne.
+     *
+     * @param   src
+     *          Les couleurs d'origine, ligne par ligne.
+     * @param   dst
+     *          Les couleurs transformees, eventuellement le meme tableau.
+     * @param   width
+     *          La largeur de l'image.
+     * @param   height
+     *          La hauteur de l'image.
+     */
+    protected void transformRows(int[] src, int[] dst, int width, int height) {
+        transformARGB(src, dst, 0, width*height);
+    }
+
+    // retourne le tableau des couleurs ARGB de l'image si elle en est directement faite (non copie), null sinon
+    private static int[] pixels(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_ARGB || !(image.getRaster().getDataBuffer() instanceof DataBufferInt))
+            return null;
+        DataBufferInt buffer = (DataBufferInt) image.getRaster().getDataBuffer();
+        boolean whole = buffer.getNumBanks() == 1 && buffer.getOffset() == 0 && image.getRaster().getParent() == null
+                && buffer.getData().length == image.getWidth()*image.getHeight(); // pas une sous-image
+        return whole ? buffer.getData(): null;
+    }
 }
@@ -4,21 +4,56 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.geom.Ellipse2D;
 import java.awt.image.BufferedImage;
-import java.util.Set;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import ch.epfl.isochrone.geo.PointOSM;
 import ch.epfl.isochrone.timetable.FastestPathTree;
+import ch.epfl.isochrone.timetable.LatestDepartureTree;
 import ch.epfl.isochrone.timetable.Stop;
 
 /**
  * Un fournisseur de tuile isochrone.
+ * Les durees de trajet des arrets atteints sont extraites de l'arbre une fois pour toutes dans des tableaux ;
+ * elles sont comptees depuis le depart (arbre du chemin le plus rapide) ou jusqu'a l'arrivee (arbre des departs les plus tardifs).
+ * Deux rendus sont possibles (voir Rendering) : des disques superposes par tranche, ou un champ de durees calcule pixel par pixel.
+ * Dans les deux cas, seuls les arrets dont le plus grand disque peut toucher la tuile sont parcourus : ils sont retrouves dans une grille
+ * construite une fois par niveau de zoom (voir TileStopGrid), qui garde aussi leur position OSM ; celle-ci est tiree d'une projection
+ * des arrets si elle est donnee (voir StopProjection).
  */
 public final class IsochroneTileProvider implements TileProvider {
 
-    private final FastestPathTree pathTree;
     private final ColorTable colors;
     private final double walkingSpeed;
-    private final Set<Stop> stops;
+    private final Stop[] stops;
+    private final int[] travelTimes; // duree de trajet de chaque arret, indexee comme stops
+    private final Rendering rendering;
+    private final ConcurrentMap<Integer, TileStopGrid> grids; // par niveau de zoom, construites a la demande et partagees entre rendus
+    private final StopProjection projection; // null si les positions sont calculees par PointWGS84.toOSM
+
+    private static final double RADIUS_MARGIN = 1.05; // l'echelle varie avec la latitude entre l'arret et la tuile
+
+    /**
+     * Le rendu des tuiles isochrones.
+     */
+    public enum Rendering {
+
+        /**
+         * Un disque antialiase par tranche et par arret, dessine par Graphics2D de la tranche la plus lointaine a la plus proche.
+         */
+        SHAPES,
+
+        /**
+         * Pour chaque pixel, la duree minimale (duree de trajet jusqu'a l'arret plus temps de marche) sur les seuls arrets dont le disque
+         * le plus grand touche la tuile, ecrite directement dans la trame de l'image puis convertie en couleur de tranche, en une passe.
+         * Non antialiase.
+         */
+        RASTER
+    }
 
     /**
      * Constructueur du fournisseur de tuile isochrone.
@@ -37,11 +72,95 @@ public final class IsochroneTileProvider implements TileProvider {
         if (walkingSpeed < 0)
             throw new IllegalArgumentException("La vitesse de marche doit etre positive : "+walkingSpeed);
 
-        this.pathTree = pathTree;
         this.colors = colors;
         this.walkingSpeed = walkingSpeed;
-        this.stops = pathTree.stops();
+        this.rendering = Rendering.SHAPES;
+        this.grids = new ConcurrentHashMap<>();
+        this.projection = null;
+        this.stops = pathTree.stops().toArray(new Stop[0]);
+        this.travelTimes = new int[stops.length];
+        for (int i = 0; i < stops.length; ++i) {
+            travelTimes[i] = pathTree.arrivalTime(stops[i]) - pathTree.startingTime();
+        }
+        sortByTravelTime(stops, travelTimes);
+    }
+
+    // constructeur prive a partir des tableaux des arrets et de leur duree de trajet (non copies)
+    private IsochroneTileProvider(Stop[] stops, int[] travelTimes, ColorTable colors, double walkingSpeed, Rendering rendering,
+            ConcurrentMap<Integer, TileStopGrid> grids, StopProjection projection) {
+        this.colors = colors;
+        this.walkingSpeed = walkingSpeed;
+        this.rendering = rendering;
+        this.grids = grids;
+        this.projection = projection;
+        this.stops = stops;
+        this.travelTimes = travelTimes;
+    }
+
+    /**
+     * Retourne un fournisseur de tuile isochrone d'arrivee : chaque zone regroupe les points d'ou l'on peut partir
+     * au plus tard a l'heure d'arrivee de l'arbre moins la duree de la tranche, tout en arrivant a temps.
+     *
+     * @param   departureTree
+     *          L'arbre des departs les plus tardifs.
+     * @param   colors
+     *          La table de couleurs.
+     * @param   walkingSpeed
+     *          La vitesse de marche.
+     * @return  Le fournisseur de tuile isochrone d'arrivee.
+     * @throws  IllegalArgumentException
+     *          En cas de vitesse de marche negative.
+     */
+    public static IsochroneTileProvider arrivingBy(LatestDepartureTree departureTree, ColorTable colors, double walkingSpeed) {
+
+        if (walkingSpeed < 0)
+            throw new IllegalArgumentException("La vitesse de marche doit etre positive : "+walkingSpeed);
 
+        final Stop[] stops = departureTree.stops().toArray(new Stop[0]);
+        final int[] travelTimes = new int[stops.length];
+        for (int i = 0; i < stops.length; ++i) {
+            travelTimes[i] = departureTree.arrivalTime() - departureTree.departureTime(stops[i]);
+        }
+        sortByTravelTime(stops, travelTimes);
+        return new IsochroneTileProvider(stops, travelTimes, colors, walkingSpeed, Rendering.SHAPES, new ConcurrentHashMap<Integer, TileStopGrid>(), null);
+    }
+
+    // trie les arrets (et leur duree de trajet) par duree de trajet croissante
+    private static void sortByTravelTime(Stop[] stops, int[] travelTimes) {
+        final long[] order = new long[stops.length];
+        for (int i = 0; i < stops.length; ++i) {
+            order[i] = ((long) travelTimes[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        final Stop[] sortedStops = stops.clone();
+        for (int i = 0; i < stops.length; ++i) {
+            int index = (int) order[i];
+            stops[i] = sortedStops[index];
+            travelTimes[i] = (int) (order[i] >> 32);
+        }
+    }
+
+    /**
+     * Retourne un fournisseur de tuile isochrone identique, mais avec le rendu donne (par defaut SHAPES).
+     *
+     * @param   rendering
+     *          Le rendu des tuiles.
+     * @return  Le fournisseur de tuile isochrone avec le rendu donne.
+     */
+    public IsochroneTileProvider withRendering(Rendering rendering) {
+        return new IsochroneTileProvider(stops, travelTimes, colors, walkingSpeed, rendering, grids, projection);
+    }
+
+    /**
+     * Retourne un fournisseur de tuile isochrone identique, mais tirant les positions des arrets de la projection donnee
+     * plutot que de les calculer a chaque niveau de zoom. Les tuiles sont identiques.
+     *
+     * @param   projection
+     *          La projection des arrets (voir StopProjection.of).
+     * @return  Le fournisseur de tuile isochrone utilisant la projection donnee.
+     */
+    public IsochroneTileProvider withProjection(StopProjection projection) {
+        return new IsochroneTileProvider(stops, travelTimes, colors, walkingSpeed, rendering, grids, projection);
     }
 
     /**
@@ -63,6 +182,61 @@ public final class IsochroneTileProvider implements TileProvider {
         if (zoom < 0)
             throw new IllegalArgumentException("le zoom doit etre positif : "+zoom);
 
+        int x256 = x << TileProvider.TILE_BIT_SIZE;
+        int y256 = y << TileProvider.TILE_BIT_SIZE;
+
+        double rapport = pixelsPerMeter(zoom, x256, y256);
+        TileStopGrid grid = gridAt(zoom);
+        int[] candidates = grid.candidates(x, y);
+
+        BufferedImage tile = (rendering == Rendering.RASTER) ? rasterTile(grid, candidates, x256, y256, rapport): shapesTile(grid, candidates, x256, y256, rapport);
+        return new Tile(zoom, x, y, tile);
+    }
+
+    // calcul de l'echelle (px/m) au point donne
+    private static double pixelsPerMeter(int zoom, int x256, int y256) {
+        PointOSM p1 = new PointOSM(zoom, x256, y256);
+        PointOSM p2 = new PointOSM(zoom, x256, y256+1);
+        return 1/p1.toWGS84().distanceTo(p2.toWGS84());
+    }
+
+    // retourne la grille des arrets au niveau de zoom donne, construite au premier appel
+    private TileStopGrid gridAt(int zoom) {
+        TileStopGrid grid = grids.get(zoom);
+        if (grid == null) {
+            TileStopGrid previous = grids.putIfAbsent(zoom, grid = buildGrid(zoom));
+            if (previous != null)
+                grid = previous;
+        }
+        return grid;
+    }
+
+    // range chaque arret avec le rayon de son plus grand disque (tranche 1), avec une marge, a l'echelle de la tuile qui le contient
+    private TileStopGrid buildGrid(int zoom) {
+
+        final int maxTime = (colors.getSliceCount()-1)*colors.getTimeFrame();
+        final double[] xs = new double[stops.length], ys = new double[stops.length], radii = new double[stops.length];
+        final Map<Integer, Double> rowScales = new HashMap<>();
+        for (int j = 0; j < stops.length; ++j) {
+            if (travelTimes[j] < maxTime) {
+                PointOSM position = (projection != null) ? projection.toOSM(stops[j], zoom): stops[j].position().toOSM(zoom);
+                xs[j] = position.x();
+                ys[j] = position.y();
+                int x256 = position.roundedX() >> TileProvider.TILE_BIT_SIZE << TileProvider.TILE_BIT_SIZE;
+                int y256 = Math.min(position.roundedY(), PointOSM.maxXY(zoom)-1) >> TileProvider.TILE_BIT_SIZE << TileProvider.TILE_BIT_SIZE;
+                if (!rowScales.containsKey(y256)) // l'echelle ne depend que de la rangee de tuiles
+                    rowScales.put(y256, pixelsPerMeter(zoom, x256, y256));
+                radii[j] = (maxTime - travelTimes[j])*walkingSpeed*rowScales.get(y256)*RADIUS_MARGIN + 1;
+            } else {
+                radii[j] = -1;
+            }
+        }
+        return new TileStopGrid(zoom, xs, ys, radii);
+    }
+
+    // dessine les disques de chaque tranche, de la plus lointaine a la plus proche
+    private BufferedImage shapesTile(TileStopGrid grid, int[] candidates, int x256, int y256, double rapport) {
+
         BufferedImage tile = new BufferedImage(TileProvider.TILE_SIZE, TileProvider.TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
         Graphics2D context = tile.createGraphics();
         
@@ -70,27 +244,18 @@ public final class IsochroneTileProvider implements TileProvider {
         context.setColor(colors.getSliceColor(0));
         context.fillRect(0, 0, tile.getWidth(), tile.getHeight());
 
-        int x256 = x << TileProvider.TILE_BIT_SIZE;
-        int y256 = y << TileProvider.TILE_BIT_SIZE;
-
-        // calcul de l'echelle
-        PointOSM p1 = new PointOSM(zoom, x256, y256);
-        PointOSM p2 = new PointOSM(zoom, x256, y256+1);
-        double rapport = 1/p1.toWGS84().distanceTo(p2.toWGS84());
         int layers = colors.getSliceCount();
 
         for (int i = 1; i < layers; ++i) {
             
             int layerTime = (layers-i)*colors.getTimeFrame();
-            for (Stop s : stops) {
+            for (int j : candidates) {
 
-                int timeLeft = layerTime - (pathTree.arrivalTime(s) - pathTree.startingTime());
+                int timeLeft = layerTime - travelTimes[j];
                 if (timeLeft > 0) { // s'il reste du temps de marche apres l'arrivee a un arret
 
-                    PointOSM position = s.position().toOSM(zoom);
-
-                    double px = position.x() - x256;
-                    double py = position.y() - y256;
+                    double px = grid.x(j) - x256;
+                    double py = grid.y(j) - y256;
                     double radius = timeLeft*walkingSpeed*rapport;
 
                     // si l'arret est sur la tuile
@@ -103,6 +268,78 @@ public final class IsochroneTileProvider implements TileProvider {
                 }  
             }
         }      
-        return new Tile(zoom, x, y, tile);
+        return tile;
+    }
+
+    /*
+     * Ecrit dans la trame de l'image, pour chaque pixel (en son centre), la tranche la plus proche parmi celles des arrets
+     * dont le disque le plus grand touche la tuile, puis remplace les tranches par leur couleur.
+     * Un point a une duree t (duree de trajet jusqu'a l'arret plus temps de marche) est dans la tranche layers-1-floor(t/timeFrame) :
+     * la duree minimale sur les arrets donne donc la tranche maximale, comme la superposition des disques.
+     * Les durees ne sont pas calculees : le carre de la distance est compare aux carres des rayons des tranches de l'arret.
+     * Les arrets etant tries par duree de trajet, les pixels deja couverts par une tranche proche sont vite ecartes.
+     */
+    private BufferedImage rasterTile(TileStopGrid grid, int[] candidates, int x256, int y256, double rapport) {
+
+        final int size = TileProvider.TILE_SIZE;
+        final int layers = colors.getSliceCount();
+        final int timeFrame = colors.getTimeFrame();
+        final int maxTime = (layers-1)*timeFrame; // au-dela, seule la tranche 0 (fond)
+        final double pixelsPerSecond = walkingSpeed*rapport;
+        final double[] squaredRadii = new double[layers];
+
+        BufferedImage tile = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        final int[] raster = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData(); // d'abord les tranches (0 au depart), puis les couleurs
+
+        for (int j : candidates) {
+
+            int travelTime = travelTimes[j];
+            if (travelTime >= maxTime)
+                continue;
+
+            double px = grid.x(j) - x256;
+            double py = grid.y(j) - y256;
+            double radius = (maxTime - travelTime)*pixelsPerSecond;
+            if (px + radius <= 0 || px - radius >= size || py + radius <= 0 || py - radius >= size)
+                continue;
+
+            // carres des rayons de chaque tranche atteignable depuis l'arret, decroissants de la tranche 1 a la tranche topSlice
+            int topSlice = layers - 1 - travelTime / timeFrame;
+            for (int slice = 1; slice <= topSlice; ++slice) {
+                double sliceRadius = ((layers-slice)*timeFrame - travelTime)*pixelsPerSecond;
+                squaredRadii[slice] = sliceRadius*sliceRadius;
+            }
+
+            int fromRow = Math.max(0, (int) Math.ceil(py - radius - 0.5));
+            int toRow = Math.min(size-1, (int) Math.floor(py + radius - 0.5));
+            for (int v = fromRow; v <= toRow; ++v) {
+
+                double dy = v + 0.5 - py;
+                double halfWidth = Math.sqrt(Math.max(0, radius*radius - dy*dy));
+                int fromColumn = Math.max(0, (int) Math.ceil(px - halfWidth - 0.5));
+                int toColumn = Math.min(size-1, (int) Math.floor(px + halfWidth - 0.5));
+
+                for (int u = fromColumn, i = v*size + fromColumn; u <= toColumn; ++u, ++i) {
+                    int slice = raster[i];
+                    if (slice >= topSlice) // deja au moins aussi proche par un autre arret
+                        continue;
+                    double dx = u + 0.5 - px;
+                    double squaredDistance = dx*dx + dy*dy;
+                    while (slice < topSlice && squaredDistance < squaredRadii[slice+1]) {
+                        ++slice;
+                    }
+                    raster[i] = slice;
+                }
+            }
+        }
+
+        final int[] sliceColors = new int[layers];
+        for (int i = 0; i < layers; ++i) {
+            sliceColors[i] = colors.getSliceColor(i).getRGB();
+        }
+        for (int i = 0; i < raster.length; ++i) {
+            raster[i] = sliceColors[raster[i]];
+        }
+        return tile;
     }
 }
@@ -0,0 +1,116 @@
+package ch.epfl.isochrone.tiledmap;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import ch.epfl.isochrone.geo.PointOSM;
+import ch.epfl.isochrone.timetable.Stop;
+import ch.epfl.isochrone.timetable.TimeTable;
+
+/**
+ * Les coordonnees OSM des arrets, projetees une fois pour toutes au niveau de zoom 0 dans des tableaux indexes par identifiant.
+ * Les coordonnees a un autre niveau de zoom s'obtiennent par une simple multiplication par une puissance de deux,
+ * exacte en virgule flottante : elles sont identiques a celles de PointWGS84.toOSM, sans trigonometrie ni allocation.
+ * Classe immuable.
+ */
+public final class StopProjection {
+
+    private static final Map<TimeTable, StopProjection> CACHE = new WeakHashMap<>(); // une projection par table des horaires
+
+    private final Map<Stop, Integer> stopIds;
+    private final double[] xs; // au niveau de zoom 0
+    private final double[] ys;
+
+    /**
+     * Constructeur public de la projection des arrets donnes.
+     *
+     * @param   stops
+     *          Les arrets.
+     */
+    public StopProjection(Collection<Stop> stops) {
+        this.stopIds = new HashMap<>();
+        this.xs = new double[stops.size()];
+        this.ys = new double[stops.size()];
+        for (Stop s : stops) {
+            PointOSM position = s.position().toOSM(0);
+            xs[stopIds.size()] = position.x();
+            ys[stopIds.size()] = position.y();
+            stopIds.put(s, stopIds.size());
+        }
+    }
+
+    /**
+     * Retourne la projection des arrets de la table des horaires donnee, calculee au premier appel puis gardee
+     * tant que la table des horaires est utilisee.
+     *
+     * @param   timeTable
+     *          La table des horaires.
+     * @return  La projection des arrets de la table des horaires.
+     */
+    public static StopProjection of(TimeTable timeTable) {
+        synchronized (CACHE) {
+            StopProjection projection = CACHE.get(timeTable);
+            if (projection == null) {
+                projection = new StopProjection(timeTable.stops());
+                CACHE.put(timeTable, projection);
+            }
+            return projection;
+        }
+    }
+
+    /**
+     * Retourne l'identifiant de l'arret donne dans la projection.
+     *
+     * @param   stop
+     *          L'arret.
+     * @return  L'identifiant de l'arret, ou -1 s'il ne fait pas partie de la projection.
+     */
+    public int stopId(Stop stop) {
+        Integer id = stopIds.get(stop);
+        return (id == null) ? -1: id;
+    }
+
+    /**
+     * Retourne la coordonnee x de l'arret d'identifiant donne au niveau de zoom donne.
+     *
+     * @param   id
+     *          L'identifiant de l'arret.
+     * @param   zoom
+     *          Le niveau de zoom.
+     * @return  La coordonnee x (px).
+     */
+    public double x(int id, int zoom) {
+        return xs[id] * (1 << zoom);
+    }
+
+    /**
+     * Retourne la coordonnee y de l'arret d'identifiant donne au niveau de zoom donne.
+     *
+     * @param   id
+     *          L'identifiant de l'arret.
+     * @param   zoom
+     *          Le niveau de zoom.
+     * @return  La coordonnee y (px).
+     */
+    public double y(int id, int zoom) {
+        return ys[id] * (1 << zoom);
+    }
+
+    /**
+     * Retourne la position de l'arret donne au niveau de zoom donne, calculee par PointWGS84.toOSM s'il ne fait pas partie de la projection.
+     *
+     * @param   stop
+     *          L'arret.
+     * @param   zoom
+     *          Le niveau de zoom.
+     * @return  La position de l'arret en coordonnees OSM.
+     * @throws  IllegalArgumentException
+     *          En cas de zoom negatif.
+     */
+    public PointOSM toOSM(Stop stop, int zoom) {
+        final int id = stopId(stop);
+        return (id < 0) ? stop.position().toOSM(zoom): new PointOSM(zoom, x(id, zoom), y(id, zoom));
+    }
+}
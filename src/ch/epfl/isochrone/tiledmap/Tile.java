@@ -4,12 +4,15 @@ import java.awt.image.BufferedImage;
 
 /**
  * Une tuile.
+ * Une tuile en chargement (voir isLoading) doit etre redemandee : c'est Tile.LOADING, sans image, ou une tuile provisoire
+ * dont l'image ne contient pas encore toutes ses couches.
  */
 public final class Tile {
 
-    public static final Tile LOADING = new Tile(0, 0, 0, null);
+    public static final Tile LOADING = new Tile(0, 0, 0, null, true);
     private final int zoom, x, y;
     private final BufferedImage image;
+    private final boolean loading;
 
     /**
      * Constructeur public de tuile.
@@ -24,6 +27,24 @@ public final class Tile {
      *          En cas de zoom negatif.
      */
     public Tile(int zoom, int x, int y, BufferedImage image) {
+        this(zoom, x, y, image, false);
+    }
+
+    /**
+     * Constructeur d'une tuile, eventuellement provisoire, visible uniquement dans son paquetage.
+     *
+     * @param   x
+     *          La coodonnee X de la tuile.
+     * @param   y
+     *          La coordonnee Y de la tuile.
+     * @param   image
+     *          L'image representant la tuile.
+     * @param   loading
+     *          Vrai si la tuile est en chargement et doit etre redemandee.
+     * @throws  IllegalArgumentException
+     *          En cas de zoom negatif.
+     */
+    Tile(int zoom, int x, int y, BufferedImage image, boolean loading) {
 
         if (zoom < 0)
             throw new IllegalArgumentException("le zoom ne doit pas etre negatif : "+zoom);
@@ -32,6 +53,16 @@ public final class Tile {
         this.x = x;
         this.y = y;
         this.image = image;
+        this.loading = loading;
+    }
+
+    /**
+     * Indique si la tuile est en chargement : Tile.LOADING ou une tuile provisoire a laquelle il manque des couches.
+     *
+     * @return  Vrai si la tuile doit etre redemandee.
+     */
+    public boolean isLoading() {
+        return loading;
     }
 
     /**
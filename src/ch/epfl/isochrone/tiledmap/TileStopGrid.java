@@ -0,0 +1,126 @@
+package ch.epfl.isochrone.tiledmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.epfl.isochrone.geo.PointOSM;
+
+/**
+ * Une grille de disques (les zones atteignables a pied depuis les arrets) en coordonnees OSM a un niveau de zoom donne,
+ * permettant de retrouver les seuls disques pouvant toucher une tuile.
+ * Les cellules sont des carres de 2^k tuiles, au moins aussi grands que le plus grand rayon : chaque disque est range dans au plus
+ * quatre cellules, et une tuile est entierement contenue dans une seule cellule.
+ * Classe immuable visible uniquement dans son paquetage.
+ */
+final class TileStopGrid {
+
+    private static final int[] NO_STOPS = new int[0];
+
+    private final int cellBits; // log2 de la taille d'une cellule (px)
+    private final double[] xs;
+    private final double[] ys;
+    private final Map<Long, int[]> cells;
+
+    /**
+     * Constructeur d'une grille de disques. Les tableaux ne sont pas copies.
+     *
+     * @param   zoom
+     *          Le niveau de zoom des coordonnees.
+     * @param   xs
+     *          Les coordonnees x des centres des disques, indexees par identifiant.
+     * @param   ys
+     *          Les coordonnees y des centres des disques, indexees par identifiant.
+     * @param   radii
+     *          Les rayons des disques (px), negatifs pour les disques a ignorer, indexes par identifiant.
+     */
+    public TileStopGrid(int zoom, double[] xs, double[] ys, double[] radii) {
+
+        double maxRadius = 0;
+        for (double radius : radii) {
+            maxRadius = Math.max(maxRadius, radius);
+        }
+        int bits = TileProvider.TILE_BIT_SIZE;
+        while ((1 << bits) < maxRadius && bits < zoom + TileProvider.TILE_BIT_SIZE) {
+            ++bits;
+        }
+
+        final int maxCell = (PointOSM.maxXY(zoom) >> bits) - 1;
+        final Map<Long, List<Integer>> lists = new HashMap<>();
+        for (int id = 0; id < radii.length; ++id) { // par identifiant croissant : les listes restent triees
+            double radius = radii[id];
+            if (radius < 0)
+                continue;
+            int fromX = cell(xs[id] - radius, bits, maxCell), toX = cell(xs[id] + radius, bits, maxCell);
+            int fromY = cell(ys[id] - radius, bits, maxCell), toY = cell(ys[id] + radius, bits, maxCell);
+            for (int cx = fromX; cx <= toX; ++cx) {
+                for (int cy = fromY; cy <= toY; ++cy) {
+                    Long key = key(cx, cy);
+                    if (!lists.containsKey(key))
+                        lists.put(key, new ArrayList<Integer>());
+                    lists.get(key).add(id);
+                }
+            }
+        }
+
+        this.cellBits = bits;
+        this.xs = xs;
+        this.ys = ys;
+        this.cells = new HashMap<>();
+        for (Map.Entry<Long, List<Integer>> e : lists.entrySet()) {
+            int[] ids = new int[e.getValue().size()];
+            for (int i = 0; i < ids.length; ++i) {
+                ids[i] = e.getValue().get(i);
+            }
+            cells.put(e.getKey(), ids);
+        }
+    }
+
+    /**
+     * Retourne la coordonnee x du centre du disque d'identifiant donne.
+     *
+     * @param   id
+     *          L'identifiant du disque.
+     * @return  La coordonnee x (px).
+     */
+    public double x(int id) {
+        return xs[id];
+    }
+
+    /**
+     * Retourne la coordonnee y du centre du disque d'identifiant donne.
+     *
+     * @param   id
+     *          L'identifiant du disque.
+     * @return  La coordonnee y (px).
+     */
+    public double y(int id) {
+        return ys[id];
+    }
+
+    /**
+     * Retourne les identifiants (croissants) des disques pouvant toucher la tuile donnee : ceux de la cellule qui la contient.
+     * Le tableau retourne ne doit pas etre modifie.
+     *
+     * @param   x
+     *          La coordonnee x de la tuile.
+     * @param   y
+     *          La coordonnee y de la tuile.
+     * @return  Les identifiants des disques candidats.
+     */
+    public int[] candidates(int x, int y) {
+        final int shift = cellBits - TileProvider.TILE_BIT_SIZE;
+        final int[] ids = cells.get(key(x >> shift, y >> shift));
+        return (ids == null) ? NO_STOPS: ids;
+    }
+
+    // cellule contenant la coordonnee donnee, bornee a la carte
+    private static int cell(double coordinate, int bits, int maxCell) {
+        return Math.max(0, Math.min(maxCell, (int) Math.floor(coordinate) >> bits));
+    }
+
+    private static Long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,58 @@
+package ch.epfl.isochrone.tiledmap;
+
+/**
+ * Une transformation redefinissant la transparence de chaque pixel : seul l'octet alpha est remplace.
+ * Classe immuable.
+ */
+public final class TransparencyFilter implements ARGBFilter {
+
+    private final int opacity;
+
+    /**
+     * Constructeur de la transformation de transparence.
+     * 
+     * @param   opacity
+     *          La nouvelle opacite.
+     * @throws  IllegalArgumentException
+     *          En cas d'opacite non compris dans l'intervalle [0,1].
+     */
+    public TransparencyFilter(double opacity) {
+
+        if (opacity < 0 || opacity > 1)
+            throw new IllegalArgumentException("l'opacite doit etre comprise entre [0,1]");
+
+        this.opacity = (int) Math.round(255*opacity);
+    }
+
+    /**
+     * Applique une transformation de transparence.
+     * 
+     * @param   argb
+     *          La couleur d'origine.
+     * @return  La couleur avec la transparence redefinie.
+     */
+    @Override
+    public int transformARGB(int argb) {
+        return argb & 0x00FFFFFF | opacity << 24;
+    }
+
+    /**
+     * Applique la transformation de transparence par paquet.
+     *
+     * @param   src
+     *          Les couleurs d'origine.
+     * @param   dst
+     *          Les couleurs avec la transparence redefinie.
+     * @param   from
+     *          L'indice de la premiere couleur.
+     * @param   to
+     *          L'indice suivant la derniere couleur.
+     */
+    @Override
+    public void transformARGB(int[] src, int[] dst, int from, int to) {
+        final int alpha = opacity << 24;
+        for (int i = from; i < to; ++i) {
+            dst[i] = src[i] & 0x00FFFFFF | alpha;
+        }
+    }
+}
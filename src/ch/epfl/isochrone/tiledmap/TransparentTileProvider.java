@@ -1,11 +1,11 @@
 package ch.epfl.isochrone.tiledmap;
 
 /**
- * Un filtre de fournisseur de tuile redefinissant la transparence de chaque pixel.
+ * Un filtre de fournisseur de tuile redefinissant la transparence de chaque pixel (voir TransparencyFilter).
  */
 public final class TransparentTileProvider extends FilteringTileProvider {
 
-    private final int opacity;
+    private final TransparencyFilter filter;
 
     /**
      * Constructeur de filtre de transparence.
@@ -19,11 +19,7 @@ public final class TransparentTileProvider extends FilteringTileProvider {
      */
     public TransparentTileProvider(TileProvider originalProvider, double opacity) {
         super(originalProvider);
-
-        if (opacity < 0 || opacity > 1)
-            throw new IllegalArgumentException("l'opacite doit etre comprise entre [0,1]");
-
-        this.opacity = (int) Math.round(255*opacity);
+        this.filter = new TransparencyFilter(opacity);
     }
 
     /**
@@ -35,7 +31,23 @@ public final class TransparentTileProvider extends FilteringTileProvider {
      */
     @Override
     public int transformARGB(int argb) {
-        return argb & 0x00FFFFFF | opacity << 24;
+        return filter.transformARGB(argb);
     }
 
+    /**
+     * Applique la transformation de transparence par paquet : seul l'octet alpha est remplace.
+     *
+     * @param   src
+     *          Les couleurs d'origine.
+     * @param   dst
+     *          Les couleurs avec la transparence redefinie.
+     * @param   from
+     *          L'indice de la premiere couleur.
+     * @param   to
+     *          L'indice suivant la derniere couleur.
+     */
+    @Override
+    public void transformARGB(int[] src, int[] dst, int from, int to) {
+        filter.transformARGB(src, dst, from, to);
+    }
 }
@@ -0,0 +1,177 @@
+package ch.epfl.isochrone.timetable;
+
+import java.util.Arrays;
+
+/**
+ * Un moteur de recherche des chemins les plus rapides parcourant une seule fois les liaisons triees par heure de depart (Connection Scan),
+ * a l'exception des liaisons de meme depart, reparcourues tant qu'une liaison de duree nulle atteint un nouvel arret.
+ * Les liaisons sont celles du graphe donne et les trajets a pied sont propages apres chaque amelioration.
+ * Classe immuable.
+ */
+public final class ConnectionScan implements RoutingEngine {
+
+    private final Graph graph;
+
+    // liaisons triees par heure de depart puis d'arrivee
+    private final int[] departureTimes;
+    private final int[] arrivalTimes;
+    private final int[] fromStops;
+    private final int[] toStops;
+
+    // arcs a pied en representation CSR : les arcs de l'arret i sont les indices [walkOffsets[i], walkOffsets[i+1])
+    private final int[] walkOffsets;
+    private final int[] walkDestinations;
+    private final int[] walkingTimes;
+
+    /**
+     * Constructeur public du moteur a partir des trajets et des temps de marche d'un graphe.
+     * 
+     * @param   graph
+     *          Le graphe.
+     */
+    public ConnectionScan(Graph graph) {
+
+        this.graph = graph;
+        final int stopCount = graph.stopCount();
+        final int[] edgeOffsets = graph.edgeOffsets();
+        final int[] edgeDestinations = graph.edgeDestinations();
+        final int[] edgeWalkingTimes = graph.edgeWalkingTimes();
+        final int[] tripOffsets = graph.tripOffsets();
+        final int[] packedTrips = graph.packedTrips();
+
+        // tri des liaisons : le temps combine (depart puis duree) occupe les bits de poids fort, l'arc ceux de poids faible
+        final long[] keys = new long[packedTrips.length];
+        final int[] tripEdges = new int[packedTrips.length];
+        for (int e = 0; e < edgeDestinations.length; ++e) {
+            for (int t = tripOffsets[e]; t < tripOffsets[e+1]; ++t) {
+                keys[t] = (long) packedTrips[t] << 32 | t;
+                tripEdges[t] = e;
+            }
+        }
+        Arrays.sort(keys);
+
+        final int[] edgeSources = new int[edgeDestinations.length];
+        int walkCount = 0;
+        for (int s = 0; s < stopCount; ++s) {
+            for (int e = edgeOffsets[s]; e < edgeOffsets[s+1]; ++e) {
+                edgeSources[e] = s;
+                if (edgeWalkingTimes[e] >= 0)
+                    ++walkCount;
+            }
+        }
+
+        this.departureTimes = new int[keys.length];
+        this.arrivalTimes = new int[keys.length];
+        this.fromStops = new int[keys.length];
+        this.toStops = new int[keys.length];
+        for (int c = 0; c < keys.length; ++c) {
+            int packedTrip = (int) (keys[c] >>> 32);
+            int edge = tripEdges[(int) keys[c]];
+            departureTimes[c] = GraphEdge.unpackTripDepartureTime(packedTrip);
+            arrivalTimes[c] = GraphEdge.unpackTripArrivalTime(packedTrip);
+            fromStops[c] = edgeSources[edge];
+            toStops[c] = edgeDestinations[edge];
+        }
+
+        this.walkOffsets = new int[stopCount + 1];
+        this.walkDestinations = new int[walkCount];
+        this.walkingTimes = new int[walkCount];
+        int w = 0;
+        for (int s = 0; s < stopCount; ++s) {
+            walkOffsets[s] = w;
+            for (int e = edgeOffsets[s]; e < edgeOffsets[s+1]; ++e) {
+                if (edgeWalkingTimes[e] >= 0) {
+                    walkDestinations[w] = edgeDestinations[e];
+                    walkingTimes[w] = edgeWalkingTimes[e];
+                    ++w;
+                }
+            }
+        }
+        walkOffsets[stopCount] = w;
+    }
+
+    /**
+     * Retourne l'arbre du chemin le plus rapide depuis un arret de depart et un temps de depart en parcourant les liaisons.
+     * Les temps d'arrivee sont identiques a ceux de Graph.fastestPaths.
+     * 
+     * @param   startingStop
+     *          L'arret de depart.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @return  L'arbre du chemin le plus rapide depuis l'arret donne.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret non present dans le graphe.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     */
+    @Override
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime) {
+
+        final int start = graph.stopId(startingStop);
+        if (start < 0)
+            throw new IllegalArgumentException("l'arret doit faire partie du graphe : "+startingStop);
+        if (departureTime < 0)
+            throw new IllegalArgumentException("le temps de depart ne doit pas etre negatif : "+departureTime);
+
+        final int[] bestTimes = new int[graph.stopCount()];
+        final int[] predecessors = new int[graph.stopCount()];
+        Arrays.fill(bestTimes, SecondsPastMidnight.INFINITE);
+        Arrays.fill(predecessors, -1);
+        final IndexedMinHeap walkingQueue = new IndexedMinHeap(bestTimes);
+
+        bestTimes[start] = departureTime;
+        walk(start, bestTimes, predecessors, walkingQueue);
+
+        // les liaisons partant avant l'heure de depart ne peuvent pas etre prises
+        int from = GraphEdge.lowerBound(departureTimes, 0, departureTimes.length, departureTime);
+        while (from < departureTimes.length) {
+            final int time = departureTimes[from];
+            int to = from;
+            while (to < departureTimes.length && departureTimes[to] == time) {
+                ++to;
+            }
+            // une liaison de duree nulle peut atteindre l'origine d'une liaison de meme depart deja parcourue :
+            // les liaisons de meme depart sont reparcourues tant qu'elles atteignent un arret a cette heure
+            boolean reached;
+            do {
+                reached = scan(from, to, bestTimes, predecessors, walkingQueue);
+            } while (reached);
+            from = to;
+        }
+
+        return FastestPathTree.fromArrays(graph.stops(), graph.stopIds(), start, bestTimes, predecessors);
+    }
+
+    // parcourt les liaisons d'indices [from, to) et retourne vrai ssi l'une d'elles a ameliore un arret a son heure de depart
+    private boolean scan(int from, int to, int[] bestTimes, int[] predecessors, IndexedMinHeap walkingQueue) {
+        boolean zeroDuration = false;
+        for (int c = from; c < to; ++c) {
+            int destination = toStops[c];
+            if (bestTimes[fromStops[c]] <= departureTimes[c] && arrivalTimes[c] < bestTimes[destination]) {
+                bestTimes[destination] = arrivalTimes[c];
+                predecessors[destination] = fromStops[c];
+                walk(destination, bestTimes, predecessors, walkingQueue);
+                zeroDuration |= arrivalTimes[c] == departureTimes[c];
+            }
+        }
+        return zeroDuration;
+    }
+
+    // propage a pied (Dijkstra sur les arcs a pied) l'amelioration du temps d'arrivee a l'arret donne
+    private void walk(int stop, int[] bestTimes, int[] predecessors, IndexedMinHeap queue) {
+        queue.update(stop);
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            int currentTime = bestTimes[current];
+            for (int w = walkOffsets[current]; w < walkOffsets[current+1]; ++w) {
+                int destination = walkDestinations[w];
+                int time = Math.min(currentTime + walkingTimes[w], SecondsPastMidnight.INFINITE);
+                if (time < bestTimes[destination]) {
+                    bestTimes[destination] = time;
+                    predecessors[destination] = current;
+                    queue.update(destination);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package ch.epfl.isochrone.timetable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Un curseur sur les lignes d'un fichier CSV, lu directement dans ses octets (fichier projete en memoire ou flux lu d'un bloc).
+ * Chaque appel a next() passe a la ligne suivante et repere ses champs sans creer d'objet ; les entiers sont lus directement
+ * dans les octets et les noms peuvent etre retrouves dans une table de symboles. Les champs ne sont pas entoures de guillemets.
+ * Les lignes vides sont ignorees, les fins de ligne \n et \r\n sont acceptees.
+ */
+public final class CsvReader {
+
+    private final ByteBuffer data;
+    private final byte separator;
+    private final int limit;
+    private int position;
+
+    // les octets du champ i de la ligne courante sont les indices [fieldStarts[i], fieldEnds[i])
+    private int[] fieldStarts, fieldEnds;
+    private int fieldCount;
+
+    /**
+     * Constructeur public d'un curseur sur les octets [position, limit) du tampon donne.
+     *
+     * @param   data
+     *          Le tampon contenant le fichier (n'est pas modifie, sa position et sa limite sont ignorees ensuite).
+     * @param   separator
+     *          Le caractere separant les champs (ASCII).
+     * @throws  IllegalArgumentException
+     *          En cas de separateur non ASCII ou de fin de ligne.
+     */
+    public CsvReader(ByteBuffer data, char separator) {
+        this(data, separator, data.position(), data.limit());
+    }
+
+    // constructeur d'un curseur sur une tranche du tampon, utilise par split
+    private CsvReader(ByteBuffer data, char separator, int from, int to) {
+        if (separator >= 0x80 || separator == '\n' || separator == '\r')
+            throw new IllegalArgumentException("le separateur doit etre un caractere ASCII autre qu'une fin de ligne : "+separator);
+
+        this.data = data;
+        this.separator = (byte) separator;
+        this.position = from;
+        this.limit = to;
+        this.fieldStarts = new int[16];
+        this.fieldEnds = new int[16];
+        this.fieldCount = 0;
+    }
+
+    /**
+     * Projette en memoire le fichier donne et retourne un curseur sur ses lignes.
+     *
+     * @param   file
+     *          Le fichier (d'au plus 2 Go).
+     * @param   separator
+     *          Le caractere separant les champs.
+     * @return  Le curseur.
+     * @throws  IOException
+     *          En cas d'erreur de lecture.
+     */
+    public static CsvReader map(Path file, char separator) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new CsvReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), separator);
+        }
+    }
+
+    /**
+     * Lit entierement le flux donne (par exemple une ressource du classpath), le ferme et retourne un curseur sur ses lignes.
+     *
+     * @param   stream
+     *          Le flux.
+     * @param   separator
+     *          Le caractere separant les champs.
+     * @return  Le curseur.
+     * @throws  IOException
+     *          En cas d'erreur de lecture.
+     */
+    public static CsvReader read(InputStream stream, char separator) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[1 << 16];
+            int count;
+            while ((count = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            stream.close();
+        }
+        return new CsvReader(ByteBuffer.wrap(out.toByteArray()), separator);
+    }
+
+    /**
+     * Decoupe les lignes restantes en tranches de tailles voisines, coupees en fin de ligne, lisibles en parallele.
+     * Le curseur lui-meme n'est pas avance.
+     *
+     * @param   parts
+     *          Le nombre maximal de tranches.
+     * @return  Les curseurs des tranches, dans l'ordre du fichier.
+     * @throws  IllegalArgumentException
+     *          En cas de nombre de tranches non strictement positif.
+     */
+    public List<CsvReader> split(int parts) {
+        if (parts <= 0)
+            throw new IllegalArgumentException("le nombre de tranches doit etre strictement positif : "+parts);
+
+        final List<CsvReader> readers = new ArrayList<>(parts);
+        int from = position;
+        for (int p = 1; p <= parts && from < limit; ++p) {
+            int to = (p == parts) ? limit: Math.max(from, position + (int) ((long) (limit - position) * p / parts));
+            while (to < limit && (to == from || data.get(to - 1) != '\n')) { // la tranche se termine apres une fin de ligne
+                ++to;
+            }
+            if (to > from)
+                readers.add(new CsvReader(data, (char) separator, from, to));
+            from = to;
+        }
+        return readers;
+    }
+
+    /**
+     * Passe a la ligne non vide suivante.
+     *
+     * @return  Vrai ssi une ligne a ete lue, faux a la fin du fichier.
+     */
+    public boolean next() {
+        while (position < limit) {
+            int start = position;
+            int count = 0;
+            int i = start;
+            byte b = 0;
+
+            while (i < limit && (b = data.get(i)) != '\n') {
+                if (b == separator) {
+                    addField(count++, start, i);
+                    start = i + 1;
+                }
+                ++i;
+            }
+            position = (i < limit) ? i + 1: limit;
+
+            int end = (i > start && data.get(i - 1) == '\r') ? i - 1: i;
+            if (count == 0 && end == start)
+                continue; // ligne vide
+            addField(count++, start, end);
+            fieldCount = count;
+            return true;
+        }
+        fieldCount = 0;
+        return false;
+    }
+
+    /**
+     * Retourne le nombre de champs de la ligne courante.
+     *
+     * @return  Le nombre de champs.
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Lit le champ donne de la ligne courante comme un entier decimal, directement dans les octets.
+     *
+     * @param   field
+     *          L'indice du champ.
+     * @return  L'entier.
+     * @throws  IndexOutOfBoundsException
+     *          En cas d'indice de champ invalide.
+     * @throws  NumberFormatException
+     *          En cas de champ ne contenant pas un entier.
+     */
+    public int intField(int field) {
+        checkField(field);
+        int i = fieldStarts[field], end = fieldEnds[field];
+        final boolean negative = (i < end && data.get(i) == '-');
+        if (negative || (i < end && data.get(i) == '+'))
+            ++i;
+        if (i == end)
+            throw new NumberFormatException("entier attendu : "+stringField(field));
+
+        long value = 0;
+        for (; i < end; ++i) {
+            int digit = data.get(i) - '0';
+            if (digit < 0 || digit > 9)
+                throw new NumberFormatException("entier attendu : "+stringField(field));
+            value = 10*value + digit;
+            if (value > (long) Integer.MAX_VALUE + 1)
+                throw new NumberFormatException("entier trop grand : "+stringField(field));
+        }
+        if (negative)
+            value = -value;
+        if (value > Integer.MAX_VALUE)
+            throw new NumberFormatException("entier trop grand : "+stringField(field));
+        return (int) value;
+    }
+
+    /**
+     * Lit le champ donne de la ligne courante comme un nombre a virgule flottante.
+     *
+     * @param   field
+     *          L'indice du champ.
+     * @return  Le nombre.
+     * @throws  IndexOutOfBoundsException
+     *          En cas d'indice de champ invalide.
+     * @throws  NumberFormatException
+     *          En cas de champ ne contenant pas un nombre.
+     */
+    public double doubleField(int field) {
+        return Double.parseDouble(stringField(field));
+    }
+
+    /**
+     * Retourne le champ donne de la ligne courante sous forme de chaine de caracteres (UTF-8).
+     *
+     * @param   field
+     *          L'indice du champ.
+     * @return  La chaine de caracteres.
+     * @throws  IndexOutOfBoundsException
+     *          En cas d'indice de champ invalide.
+     */
+    public String stringField(int field) {
+        checkField(field);
+        final byte[] bytes = new byte[fieldEnds[field] - fieldStarts[field]];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = data.get(fieldStarts[field] + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retourne l'identifiant du champ donne de la ligne courante dans la table de symboles, sans creer d'objet.
+     *
+     * @param   field
+     *          L'indice du champ.
+     * @param   symbols
+     *          La table de symboles.
+     * @return  L'identifiant du champ ou -1 s'il n'est pas dans la table.
+     * @throws  IndexOutOfBoundsException
+     *          En cas d'indice de champ invalide.
+     */
+    public int symbolField(int field, SymbolTable symbols) {
+        checkField(field);
+        return symbols.lookup(data, fieldStarts[field], fieldEnds[field]);
+    }
+
+    /**
+     * Ajoute si necessaire le champ donne de la ligne courante a la table de symboles et retourne son identifiant.
+     *
+     * @param   field
+     *          L'indice du champ.
+     * @param   symbols
+     *          La table de symboles.
+     * @return  L'identifiant du champ.
+     * @throws  IndexOutOfBoundsException
+     *          En cas d'indice de champ invalide.
+     */
+    public int internField(int field, SymbolTable symbols) {
+        checkField(field);
+        return symbols.intern(data, fieldStarts[field], fieldEnds[field], null);
+    }
+
+    // retient les bornes du champ donne, en agrandissant les tableaux si necessaire
+    private void addField(int field, int start, int end) {
+        if (field == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, 2*field);
+            fieldEnds = Arrays.copyOf(fieldEnds, 2*field);
+        }
+        fieldStarts[field] = start;
+        fieldEnds[field] = end;
+    }
+
+    // verifie que l'indice de champ est valide pour la ligne courante
+    private void checkField(int field) {
+        if (field < 0 || field >= fieldCount)
+            throw new IndexOutOfBoundsException("indice de champ invalide : "+field+" (la ligne en a "+fieldCount+")");
+    }
+}
@@ -11,6 +11,7 @@ public final class Date implements Comparable<Date> {
 
     private final int day, year;
     private final Month month;
+    private final int fixed; // nombre de jours ecoules depuis l'an 0, calcule une seule fois
 
     /**
      * Enumeration des 7 jours de la semaine.
@@ -43,6 +44,7 @@ public final class Date implements Comparable<Date> {
         this.day = day;
         this.month = month;
         this.year = year;
+        this.fixed = dateToFixed(day, month, year);
     }
 
     /**
@@ -270,8 +272,8 @@ public final class Date implements Comparable<Date> {
         return new Date(d, m, y);
     }
 
-    // retourne le nombre de jours de la date (instance) ecoules depuis l'an 0
-    private int fixed() {
-        return dateToFixed(day, month, year);
+    // retourne le nombre de jours de la date (instance) ecoules depuis l'an 0, utilise comme indice de jour dans le paquetage
+    int fixed() {
+        return fixed;
     }
 }
\ No newline at end of file
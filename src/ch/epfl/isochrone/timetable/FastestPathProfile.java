@@ -0,0 +1,236 @@
+package ch.epfl.isochrone.timetable;
+
+import java.util.Arrays;
+
+/**
+ * Les profils des chemins les plus rapides depuis un arret de depart pour un intervalle de temps de depart.
+ * Pour chaque arret, le profil est un ensemble Pareto de couples (dernier depart possible, arrivee) ; n'importe quel
+ * arbre du chemin le plus rapide de l'intervalle peut en etre extrait sans refaire de recherche.
+ * Classe immuable.
+ */
+public final class FastestPathProfile {
+
+    private final Graph graph;
+    private final int startingStop;
+    private final int fromTime, toTime;
+    private final int[] walkingTimes, walkingPredecessors;
+
+    // les couples de l'arret i sont les indices [entryOffsets[i], entryOffsets[i+1]), tries par depart croissant
+    private final int[] entryOffsets;
+    private final int[] departureTimes, arrivalTimes, predecessors;
+
+    /**
+     * Constructeur prive des profils, utilise par le batisseur.
+     */
+    private FastestPathProfile(Graph graph, int startingStop, int fromTime, int toTime, int[] walkingTimes, int[] walkingPredecessors,
+            int[] entryOffsets, int[] departureTimes, int[] arrivalTimes, int[] predecessors) {
+        this.graph = graph;
+        this.startingStop = startingStop;
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+        this.walkingTimes = walkingTimes;
+        this.walkingPredecessors = walkingPredecessors;
+        this.entryOffsets = entryOffsets;
+        this.departureTimes = departureTimes;
+        this.arrivalTimes = arrivalTimes;
+        this.predecessors = predecessors;
+    }
+
+    /**
+     * Accesseur en lecture de l'arret de depart.
+     *
+     * @return  L'arret de depart.
+     */
+    public Stop startingStop() {
+        return graph.stops()[startingStop];
+    }
+
+    /**
+     * Accesseur en lecture du premier temps de depart de l'intervalle.
+     *
+     * @return  Le premier temps de depart.
+     */
+    public int fromTime() {
+        return fromTime;
+    }
+
+    /**
+     * Accesseur en lecture du dernier temps de depart de l'intervalle.
+     *
+     * @return  Le dernier temps de depart.
+     */
+    public int toTime() {
+        return toTime;
+    }
+
+    /**
+     * Retourne le temps d'arrivee le plus tot a un arret donne pour un temps de depart donne.
+     *
+     * @param   stop
+     *          L'arret.
+     * @param   departureTime
+     *          Le temps de depart, compris dans l'intervalle des profils.
+     * @return  Le temps d'arrivee a l'arret ou
+     *          SecondsPastMidnight.INFINITE si l'arret n'est pas atteignable.
+     * @throws  IllegalArgumentException
+     *          En cas de temps de depart non compris dans l'intervalle.
+     */
+    public int arrivalTime(Stop stop, int departureTime) {
+        checkDepartureTime(departureTime);
+        int id = graph.stopId(stop);
+        if (id < 0)
+            return SecondsPastMidnight.INFINITE;
+        if (id == startingStop)
+            return departureTime;
+
+        int entry = entryFor(id, departureTime);
+        int transit = (entry < 0) ? SecondsPastMidnight.INFINITE: arrivalTimes[entry];
+        return Math.min(transit, walkingArrivalTime(id, departureTime));
+    }
+
+    /**
+     * Retourne l'arbre du chemin le plus rapide pour un temps de depart donne, en temps lineaire en nombre d'arrets.
+     *
+     * @param   departureTime
+     *          Le temps de depart, compris dans l'intervalle des profils.
+     * @return  L'arbre du chemin le plus rapide, identique a celui de Graph.fastestPaths pour ce temps de depart.
+     * @throws  IllegalArgumentException
+     *          En cas de temps de depart non compris dans l'intervalle.
+     */
+    public FastestPathTree treeAt(int departureTime) {
+        checkDepartureTime(departureTime);
+
+        final int count = entryOffsets.length - 1;
+        final int[] times = new int[count];
+        final int[] treePredecessors = new int[count];
+
+        for (int id = 0; id < count; ++id) {
+            int entry = entryFor(id, departureTime);
+            int transit = (entry < 0) ? SecondsPastMidnight.INFINITE: arrivalTimes[entry];
+            int walk = walkingArrivalTime(id, departureTime);
+
+            if (walk < transit) { // le chemin uniquement a pied arrive strictement plus tot
+                times[id] = walk;
+                treePredecessors[id] = walkingPredecessors[id];
+            } else {
+                times[id] = transit;
+                treePredecessors[id] = (entry < 0) ? -1: predecessors[entry];
+            }
+        }
+        times[startingStop] = departureTime;
+
+        return FastestPathTree.fromArrays(graph.stops(), graph.stopIds(), startingStop, times, treePredecessors);
+    }
+
+    // verifie que le temps de depart est dans l'intervalle des profils
+    private void checkDepartureTime(int departureTime) {
+        if (departureTime < fromTime || departureTime > toTime)
+            throw new IllegalArgumentException("le temps de depart doit etre compris dans ["+fromTime+", "+toTime+"] : "+departureTime);
+    }
+
+    // retourne l'arrivee en marchant uniquement depuis l'arret de depart
+    private int walkingArrivalTime(int id, int departureTime) {
+        int walk = walkingTimes[id];
+        return (walk >= SecondsPastMidnight.INFINITE) ? SecondsPastMidnight.INFINITE: Math.min(departureTime + walk, SecondsPastMidnight.INFINITE);
+    }
+
+    // retourne le couple de depart le plus tot parmi ceux partant au plus tot au temps donne (c'est aussi l'arrivee la plus tot), ou -1
+    private int entryFor(int id, int departureTime) {
+        int end = entryOffsets[id+1];
+        int entry = GraphEdge.lowerBound(departureTimes, entryOffsets[id], end, departureTime);
+        return (entry < end) ? entry: -1;
+    }
+
+    /**
+     * Batisseur des profils, alimente par les recherches successives de Graph.fastestPathProfiles.
+     * Classe visible uniquement dans son paquetage.
+     */
+    static final class Builder {
+
+        private final Graph graph;
+        private final int startingStop;
+        private final int fromTime, toTime;
+        private final int[] walkingTimes, walkingPredecessors;
+        private final int[][] entries; // triplets (depart, arrivee, predecesseur) par arret, dans l'ordre d'ajout
+        private final int[] entryCounts;
+
+        /**
+         * Constructeur d'un batisseur de profils.
+         *
+         * @param   graph
+         *          Le graphe.
+         * @param   startingStop
+         *          L'identifiant de l'arret de depart.
+         * @param   fromTime
+         *          Le premier temps de depart de l'intervalle.
+         * @param   toTime
+         *          Le dernier temps de depart de l'intervalle.
+         * @param   walkingTimes
+         *          Les temps des chemins uniquement a pied depuis l'arret de depart.
+         * @param   walkingPredecessors
+         *          Les predecesseurs des chemins uniquement a pied.
+         */
+        Builder(Graph graph, int startingStop, int fromTime, int toTime, int[] walkingTimes, int[] walkingPredecessors) {
+            this.graph = graph;
+            this.startingStop = startingStop;
+            this.fromTime = fromTime;
+            this.toTime = toTime;
+            this.walkingTimes = walkingTimes;
+            this.walkingPredecessors = walkingPredecessors;
+            this.entries = new int[graph.stopCount()][];
+            this.entryCounts = new int[graph.stopCount()];
+        }
+
+        /**
+         * Ajoute un couple au profil d'un arret. Les couples doivent etre ajoutes par depart strictement decroissant et arrivee strictement decroissante.
+         *
+         * @param   id
+         *          L'identifiant de l'arret.
+         * @param   departureTime
+         *          Le dernier depart possible de l'arret de depart.
+         * @param   arrivalTime
+         *          L'arrivee a l'arret.
+         * @param   predecessor
+         *          L'identifiant du predecesseur.
+         * @return  Le batisseur.
+         */
+        Builder addEntry(int id, int departureTime, int arrivalTime, int predecessor) {
+            int count = entryCounts[id];
+            if (entries[id] == null)
+                entries[id] = new int[3*4];
+            else if (3*count == entries[id].length)
+                entries[id] = Arrays.copyOf(entries[id], 2*entries[id].length);
+
+            entries[id][3*count] = departureTime;
+            entries[id][3*count + 1] = arrivalTime;
+            entries[id][3*count + 2] = predecessor;
+            entryCounts[id] = count + 1;
+            return this;
+        }
+
+        /**
+         * Construit les profils a partir du batisseur, ranges a plat par depart croissant.
+         *
+         * @return  Les profils.
+         */
+        FastestPathProfile build() {
+            final int[] entryOffsets = new int[entryCounts.length + 1];
+            for (int id = 0; id < entryCounts.length; ++id) {
+                entryOffsets[id+1] = entryOffsets[id] + entryCounts[id];
+            }
+
+            final int total = entryOffsets[entryCounts.length];
+            final int[] departureTimes = new int[total], arrivalTimes = new int[total], predecessors = new int[total];
+            for (int id = 0; id < entryCounts.length; ++id) {
+                for (int i = 0; i < entryCounts[id]; ++i) { // les couples ont ete ajoutes par depart decroissant
+                    int target = entryOffsets[id+1] - 1 - i;
+                    departureTimes[target] = entries[id][3*i];
+                    arrivalTimes[target] = entries[id][3*i + 1];
+                    predecessors[target] = entries[id][3*i + 2];
+                }
+            }
+            return new FastestPathProfile(graph, startingStop, fromTime, toTime, walkingTimes, walkingPredecessors,
+                    entryOffsets, departureTimes, arrivalTimes, predecessors);
+        }
+    }
+}
@@ -1,21 +1,34 @@
 package ch.epfl.isochrone.timetable;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * Un arbre du chemin le plus rapide.
+ * Un arbre issu d'une recherche a plusieurs sources a plusieurs racines : les arrets de depart autres que la racine
+ * ont un predecesseur null.
+ * Les temps d'arrivee et les predecesseurs sont stockes dans des tableaux indexes par identifiant d'arret ; un arbre issu
+ * d'un graphe partage la table des identifiants du graphe.
  * Classe immuable. Possede un constructeur.
  */
 public final class FastestPathTree {
 
     private final Stop startingStop;
-    private final Map<Stop, Integer> arrivalTime;
-    private final Map<Stop, Stop> predecessor;
+    private final int startingTime;
+    private final Stop[] stops; // indexes par identifiant
+    private final Map<Stop, Integer> stopIds;
+    private final int[] arrivalTimes;
+    private final int[] predecessors; // -1 pour les racines
+    private final BitSet reached;
+    private final Set<Stop> reachedStops;
 
     /**
      * Constructeur public d'un arbre du chemin le plus rapide. La table des arrives doit correspondre avec celle des predecesseurs (sans compter l'arret de depart).
@@ -37,9 +50,57 @@ public final class FastestPathTree {
         }
         assert arrivalTime.size() == predecessor.size() + 1;
 
+        final Map<Stop, Integer> ids = new HashMap<>();
+        for (Stop s : arrivalTime.keySet()) {
+            ids.put(s, ids.size());
+        }
+        for (Stop s : predecessor.values()) { // un predecesseur peut ne pas avoir de temps d'arrivee
+            if (s != null && !ids.containsKey(s))
+                ids.put(s, ids.size());
+        }
+
         this.startingStop = startingStop;
-        this.arrivalTime = Collections.unmodifiableMap(arrivalTime);
-        this.predecessor = Collections.unmodifiableMap(predecessor);
+        this.startingTime = arrivalTime.containsKey(startingStop) ? arrivalTime.get(startingStop): SecondsPastMidnight.INFINITE;
+        this.stops = new Stop[ids.size()];
+        this.stopIds = ids;
+        this.arrivalTimes = new int[stops.length];
+        this.predecessors = new int[stops.length];
+        this.reached = new BitSet(stops.length);
+
+        Arrays.fill(arrivalTimes, SecondsPastMidnight.INFINITE);
+        Arrays.fill(predecessors, -1);
+        for (Map.Entry<Stop, Integer> e : ids.entrySet()) {
+            stops[e.getValue()] = e.getKey();
+        }
+        for (Map.Entry<Stop, Integer> e : arrivalTime.entrySet()) {
+            int id = ids.get(e.getKey());
+            arrivalTimes[id] = e.getValue();
+            reached.set(id);
+        }
+        for (Map.Entry<Stop, Stop> e : predecessor.entrySet()) {
+            if (e.getValue() != null)
+                predecessors[ids.get(e.getKey())] = ids.get(e.getValue());
+        }
+        this.reachedStops = new ReachedStops();
+    }
+
+    // constructeur prive d'un arbre adoptant (sans copie) les tableaux d'un moteur de recherche
+    private FastestPathTree(Stop[] stops, Map<Stop, Integer> stopIds, int startingStop, int startingTime, int[] arrivalTimes, int[] predecessors) {
+
+        this.startingStop = stops[startingStop];
+        this.startingTime = startingTime;
+        this.stops = stops;
+        this.stopIds = stopIds;
+        this.arrivalTimes = arrivalTimes;
+        this.predecessors = predecessors;
+        this.reached = new BitSet(stops.length);
+
+        for (int id = 0; id < stops.length; ++id) {
+            if (arrivalTimes[id] < SecondsPastMidnight.INFINITE)
+                reached.set(id);
+        }
+        predecessors[startingStop] = -1;
+        this.reachedStops = new ReachedStops();
     }
 
     /**
@@ -54,19 +115,19 @@ public final class FastestPathTree {
     /**
      * Accesseur en lecture du temps de depart.
      * 
-     * @return  Le temps de depart de l'arret de depart (racine).
+     * @return  Le temps de depart de l'arret de depart (racine), ou de l'origine d'une recherche a plusieurs sources.
      */
     public int startingTime() {
-        return arrivalTime.get(startingStop);
+        return startingTime;
     }
 
     /**
      * Retourne l'ensemble des arrets de l'arbre.
      * 
-     * @return  Les arrets de l'arbre.
+     * @return  Les arrets de l'arbre, dans l'ordre des identifiants.
      */
     public Set<Stop> stops() {
-        return arrivalTime.keySet();
+        return reachedStops;
     }
 
     /**
@@ -78,7 +139,8 @@ public final class FastestPathTree {
      *          SecondsPastMidnight.INFINITE si l'arret n'est pas dans l'arbre.
      */
     public int arrivalTime(Stop stop) {
-        return arrivalTime.containsKey(stop) ? arrivalTime.get(stop): SecondsPastMidnight.INFINITE;
+        final int id = reachedId(stop);
+        return (id < 0) ? SecondsPastMidnight.INFINITE: arrivalTimes[id];
     }
 
     /**
@@ -86,24 +148,118 @@ public final class FastestPathTree {
      * 
      * @param   stop
      *          L'arret d'arrivee.
-     * @return  La liste des arrets avec en premier l'arret de depart, puis tous les arrets jusqu'a l'arret donne.
+     * @return  La liste des arrets avec en premier l'arret de depart (une des racines), puis tous les arrets jusqu'a l'arret donne.
      * @throws  IllegalArgumentException
      *          En cas d'arret d'arrivee ne faisant pas partie de l'arbre du chemin le plus rapide.
      */
     public List<Stop> pathTo(Stop stop) {
 
-        if (!arrivalTime.containsKey(stop))
+        final int id = reachedId(stop);
+        if (id < 0)
             throw new IllegalArgumentException("l'arret d'arrivee doit faire partie de l'arbre : "+stop);
 
-        final LinkedList<Stop> temp = new LinkedList<>();
-        Stop currentStop = stop;
+        int length = 0;
+        for (int current = id; current >= 0; current = predecessors[current]) {
+            ++length;
+        }
+        final Stop[] path = new Stop[length];
+        for (int current = id; current >= 0; current = predecessors[current]) {
+            path[--length] = stops[current];
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(path));
+    }
+
+    // identifiant de l'arret donne s'il fait partie de l'arbre, -1 sinon
+    private int reachedId(Stop stop) {
+        final Integer id = stopIds.get(stop);
+        return (id != null && reached.get(id)) ? id: -1;
+    }
+
+    /**
+     * Construit un arbre du chemin le plus rapide a partir des tableaux indexes par identifiant d'arret d'un moteur de recherche.
+     * Les arrets dont le temps d'arrivee vaut SecondsPastMidnight.INFINITE ne font pas partie de l'arbre.
+     * Les tableaux sont adoptes sans copie : ils ne doivent plus etre modifies.
+     * 
+     * @param   stops
+     *          Les arrets, indexes par identifiant.
+     * @param   stopIds
+     *          Les identifiants des arrets.
+     * @param   startingStop
+     *          L'identifiant de l'arret de depart (racine).
+     * @param   arrivalTimes
+     *          Les temps d'arrivee, indexes par identifiant.
+     * @param   predecessors
+     *          Les identifiants des predecesseurs, indexes par identifiant.
+     * @return  L'arbre du chemin le plus rapide.
+     */
+    static FastestPathTree fromArrays(Stop[] stops, Map<Stop, Integer> stopIds, int startingStop, int[] arrivalTimes, int[] predecessors) {
+        return fromArrays(stops, stopIds, startingStop, arrivalTimes[startingStop], arrivalTimes, predecessors);
+    }
 
-        while (currentStop != null) {
-            temp.addFirst(currentStop);
-            currentStop = predecessor.get(currentStop);
+    /**
+     * Construit un arbre du chemin le plus rapide a plusieurs racines a partir des tableaux indexes par identifiant d'arret
+     * d'un moteur de recherche : les arrets atteints sans predecesseur (-1) sont des racines.
+     * Les tableaux sont adoptes sans copie : ils ne doivent plus etre modifies.
+     *
+     * @param   stops
+     *          Les arrets, indexes par identifiant.
+     * @param   stopIds
+     *          Les identifiants des arrets.
+     * @param   startingStop
+     *          L'identifiant de la racine la plus tot.
+     * @param   startingTime
+     *          Le temps de depart de l'origine.
+     * @param   arrivalTimes
+     *          Les temps d'arrivee, indexes par identifiant.
+     * @param   predecessors
+     *          Les identifiants des predecesseurs, -1 pour les racines, indexes par identifiant.
+     * @return  L'arbre du chemin le plus rapide.
+     */
+    static FastestPathTree fromArrays(Stop[] stops, Map<Stop, Integer> stopIds, int startingStop, int startingTime, int[] arrivalTimes, int[] predecessors) {
+        return new FastestPathTree(stops, stopIds, startingStop, startingTime, arrivalTimes, predecessors);
+    }
+
+    // vue des arrets atteints, parcourus dans l'ordre des identifiants
+    private final class ReachedStops extends AbstractSet<Stop> {
+
+        private final int size = reached.cardinality();
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return (o instanceof Stop) && reachedId((Stop) o) >= 0;
         }
 
-        return Collections.unmodifiableList(temp);
+        @Override
+        public Iterator<Stop> iterator() {
+            return new Iterator<Stop>() {
+                private int next = reached.nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public Stop next() {
+                    if (next < 0)
+                        throw new NoSuchElementException();
+                    final Stop stop = stops[next];
+                    next = reached.nextSetBit(next + 1);
+                    return stop;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
     }
 
     /**
@@ -1,40 +1,132 @@
 package ch.epfl.isochrone.timetable;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ch.epfl.isochrone.geo.PointWGS84;
 
 /**
  * Un graphe dont les noeuds representent les arrets et les arcs les trajets.
+ * Les trajets peuvent etre associes a leur service : un meme graphe (graphe maitre) sert alors a toutes les dates,
+ * la recherche ne prenant que les trajets des services actifs donnes sous forme de masque.
  * Classe immuable. Possede un constructeur.
  */
-public final class Graph {
+public final class Graph implements RoutingEngine {
+
+    private final Stop[] stops;
+    private final Map<Stop, Integer> stopIds;
+
+    // representation CSR : les arcs sortants de l'arret i sont les indices [edgeOffsets[i], edgeOffsets[i+1])
+    private final int[] edgeOffsets;
+    private final int[] edgeDestinations;
+    private final int[] edgeWalkingTimes;
+
+    // les trajets de l'arc e sont les indices [tripOffsets[e], tripOffsets[e+1]) du tableau a plat des temps combines
+    private final int[] tripOffsets;
+    private final int[] packedTrips;
+
+    // identifiant du service de chaque trajet (-1 : toujours actif), null si aucun trajet n'a de service
+    private final int[] tripServices;
+    private final Service[] services; // indexes par identifiant
 
-    private final Set<Stop> stops;
-    private final Map<Stop, List<GraphEdge>> outgoingEdges;
+    // representation CSR inverse : les arcs entrants de l'arret i sont les arcs reverseEdges[j], d'origine reverseSources[j],
+    // pour j dans [reverseOffsets[i], reverseOffsets[i+1])
+    private final int[] reverseOffsets;
+    private final int[] reverseEdges;
+    private final int[] reverseSources;
+
+    // grille des arrets pour les recherches depuis un point, construite a la demande pour les derniers parametres de marche
+    private volatile StopGrid pointGrid;
 
     /**
-     * Constructeur prive du graphe et ajoute l'ensemble des arrets et des arcs sortants de ces arrets.
+     * Constructeur prive du graphe a partir de sa representation CSR (compressed sparse row).
+     * Chaque arret a un identifiant dense (0 a n-1) correspondant a son indice dans le tableau des arrets.
      * Non instanciable sans son constructeur.
      * 
      * @param   stops
-     *          L'ensemble des arrets.
-     * @param   outgoingEdges
-     *          L'ensemble des arcs sortant des arrets.
+     *          Les arrets, indexes par identifiant.
+     * @param   edgeOffsets
+     *          Les debuts des arcs sortants de chaque arret (n+1 entrees).
+     * @param   edgeDestinations
+     *          Les identifiants des destinations des arcs.
+     * @param   edgeWalkingTimes
+     *          Les temps de marche des arcs, -1 s'il n'est pas possible de marcher.
+     * @param   tripOffsets
+     *          Les debuts des trajets de chaque arc (m+1 entrees).
+     * @param   packedTrips
+     *          Les temps combines de tous les trajets, tries par arc.
+     * @param   tripServices
+     *          Les identifiants des services des trajets, ou null si aucun trajet n'a de service.
+     * @param   services
+     *          Les services, indexes par identifiant.
      */
-    private Graph(Set<Stop> stops, Map<Stop, List<GraphEdge>> outgoingEdges) {
-        this.stops = stops; // pas de copie, car le constructeur s'en occupe deja
-        this.outgoingEdges = new HashMap<>(outgoingEdges);
+    private Graph(Stop[] stops, int[] edgeOffsets, int[] edgeDestinations, int[] edgeWalkingTimes, int[] tripOffsets, int[] packedTrips,
+            int[] tripServices, Service[] services) {
+
+        this.stops = stops; // pas de copie, car le batisseur s'en occupe deja
+        this.stopIds = new HashMap<>();
+        for (int id = 0; id < stops.length; ++id) {
+            stopIds.put(stops[id], id);
+        }
+
+        this.edgeOffsets = edgeOffsets;
+        this.edgeDestinations = edgeDestinations;
+        this.edgeWalkingTimes = edgeWalkingTimes;
+        this.tripOffsets = tripOffsets;
+        this.packedTrips = packedTrips;
+        this.tripServices = tripServices;
+        this.services = services;
+
+        // arcs entrants, ranges par destination (tri par denombrement)
+        this.reverseOffsets = new int[stops.length + 1];
+        this.reverseEdges = new int[edgeDestinations.length];
+        this.reverseSources = new int[edgeDestinations.length];
+        for (int destination : edgeDestinations) {
+            ++reverseOffsets[destination + 1];
+        }
+        for (int id = 0; id < stops.length; ++id) {
+            reverseOffsets[id + 1] += reverseOffsets[id];
+        }
+        final int[] next = Arrays.copyOf(reverseOffsets, stops.length);
+        for (int id = 0; id < stops.length; ++id) {
+            for (int e = edgeOffsets[id]; e < edgeOffsets[id+1]; ++e) {
+                int position = next[edgeDestinations[e]]++;
+                reverseEdges[position] = e;
+                reverseSources[position] = id;
+            }
+        }
+    }
+
+    /**
+     * Retourne le masque des services donnes parmi ceux des trajets du graphe, a passer aux recherches.
+     * Les services inconnus du graphe sont ignores.
+     *
+     * @param   activeServices
+     *          Les services actifs, par exemple ceux d'une date.
+     * @return  Le masque des identifiants des services actifs.
+     */
+    public BitSet serviceMask(Set<Service> activeServices) {
+        final BitSet mask = new BitSet(services.length);
+        for (int id = 0; id < services.length; ++id) {
+            if (activeServices.contains(services[id]))
+                mask.set(id);
+        }
+        return mask;
     }
 
     /**
      * Retourne l'arbre du chemin le plus rapide depuis un arret de depart et un temps de depart selon l'algorithme Dijkstra.
+     * La recherche travaille sur les identifiants des arrets avec un tas indexe ou seuls les arrets atteints sont inseres.
      * 
      * @param   startingStop
      *          L'arret de depart.
@@ -46,58 +138,598 @@ public final class Graph {
      * @throws  IllegalArgumentException
      *          En cas de temps negatif.         
      */
+    @Override
     public FastestPathTree fastestPaths(Stop startingStop, int departureTime) {
+        return fastestPaths(startingStop, departureTime, null);
+    }
+
+    /**
+     * Retourne l'arbre du chemin le plus rapide depuis un arret de depart et un temps de depart, en ne prenant que les trajets
+     * des services actifs (et ceux sans service).
+     *
+     * @param   startingStop
+     *          L'arret de depart.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @param   activeServices
+     *          Le masque des services actifs (voir serviceMask), ou null si tous les trajets sont actifs.
+     * @return  L'arbre du chemin le plus rapide depuis l'arret donne.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret non present dans le graphe.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime, BitSet activeServices) {
+        return fastestPaths(startingStop, departureTime, SecondsPastMidnight.INFINITE, null, activeServices);
+    }
+
+    /**
+     * Retourne l'arbre du chemin le plus rapide depuis un arret de depart et un temps de depart, en bornant la recherche :
+     * elle s'arrete des que le prochain arret du tas depasse la duree maximale de trajet, ou des que tous les arrets cibles sont fixes.
+     * Les arrets qui ne sont pas fixes a l'arret de la recherche ne font pas partie de l'arbre (temps d'arrivee SecondsPastMidnight.INFINITE).
+     *
+     * @param   startingStop
+     *          L'arret de depart.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @param   maxTravelTime
+     *          La duree maximale de trajet depuis le depart, ou SecondsPastMidnight.INFINITE pour ne pas borner la recherche.
+     * @param   targets
+     *          Les arrets cibles, ou null pour fixer tous les arrets atteignables.
+     * @param   activeServices
+     *          Le masque des services actifs (voir serviceMask), ou null si tous les trajets sont actifs.
+     * @return  L'arbre du chemin le plus rapide depuis l'arret donne, restreint aux arrets fixes.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret (de depart ou cible) non present dans le graphe.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime, int maxTravelTime, Set<Stop> targets, BitSet activeServices) {
 
-        if (!stops.contains(startingStop))
+        if (!stopIds.containsKey(startingStop))
             throw new IllegalArgumentException("l'arret doit faire partie du graphe : "+startingStop);
         if (departureTime < 0)
             throw new IllegalArgumentException("le temps de depart ne doit pas etre negatif : "+departureTime);
+        if (maxTravelTime < 0)
+            throw new IllegalArgumentException("la duree maximale de trajet ne doit pas etre negative : "+maxTravelTime);
+
+        BitSet targetIds = null;
+        if (targets != null) {
+            targetIds = new BitSet(stops.length);
+            for (Stop s : targets) {
+                Integer id = stopIds.get(s);
+                if (id == null)
+                    throw new IllegalArgumentException("l'arret cible doit faire partie du graphe : "+s);
+                targetIds.set(id);
+            }
+        }
+
+        final int start = stopIds.get(startingStop);
+        final int[] arrivalTimes = new int[stops.length];
+        final int[] predecessors = new int[stops.length];
+        Arrays.fill(arrivalTimes, SecondsPastMidnight.INFINITE);
+        Arrays.fill(predecessors, -1);
+
+        final IndexedMinHeap remainingStops = new IndexedMinHeap(arrivalTimes); // le tas lit directement les temps d'arrivee
+        arrivalTimes[start] = departureTime;
+        remainingStops.update(start);
+        search(arrivalTimes, predecessors, remainingStops, null, activeServices, maxArrivalTime(departureTime, maxTravelTime), targetIds);
+
+        return FastestPathTree.fromArrays(stops, stopIds, start, arrivalTimes, predecessors);
+    }
+
+    /**
+     * Retourne l'arbre du chemin le plus rapide depuis plusieurs arrets de depart, chacun a son propre temps de depart,
+     * en une seule recherche : tous les arrets de depart sont inseres dans le tas avant de la lancer.
+     * La racine de l'arbre est l'arret de depart le plus tot, les autres arrets de depart n'ont pas de predecesseur.
+     *
+     * @param   startingTimes
+     *          Les temps de depart des arrets de depart.
+     * @param   activeServices
+     *          Le masque des services actifs (voir serviceMask), ou null si tous les trajets sont actifs.
+     * @return  L'arbre du chemin le plus rapide depuis les arrets donnes.
+     * @throws  IllegalArgumentException
+     *          En cas d'absence d'arret de depart.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret non present dans le graphe.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     */
+    public FastestPathTree fastestPaths(Map<Stop, Integer> startingTimes, BitSet activeServices) {
+
+        if (startingTimes.isEmpty())
+            throw new IllegalArgumentException("il doit y avoir au moins un arret de depart");
+
+        final int[] arrivalTimes = new int[stops.length];
+        Arrays.fill(arrivalTimes, SecondsPastMidnight.INFINITE);
+        int start = -1;
+        for (Map.Entry<Stop, Integer> e : startingTimes.entrySet()) {
+            Integer id = stopIds.get(e.getKey());
+            if (id == null)
+                throw new IllegalArgumentException("l'arret doit faire partie du graphe : "+e.getKey());
+            if (e.getValue() < 0)
+                throw new IllegalArgumentException("le temps de depart ne doit pas etre negatif : "+e.getValue());
+
+            arrivalTimes[id] = e.getValue();
+            if (start < 0 || arrivalTimes[id] < arrivalTimes[start])
+                start = id;
+        }
+        return multiSourcePaths(arrivalTimes, start, arrivalTimes[start], SecondsPastMidnight.INFINITE, activeServices);
+    }
+
+    /**
+     * Retourne l'arbre du chemin le plus rapide depuis un point quelconque et un temps de depart : les arrets a distance de marche
+     * du point sont les arrets de depart, au temps de depart augmente du temps de marche pour les rejoindre.
+     * Le temps de depart de l'arbre est celui du point.
+     *
+     * @param   origin
+     *          Le point de depart.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @param   maxWalkingTime
+     *          Le temps de marche maximum jusqu'aux arrets de depart.
+     * @param   walkingSpeed
+     *          La vitesse de marche (m/s).
+     * @param   activeServices
+     *          Le masque des services actifs (voir serviceMask), ou null si tous les trajets sont actifs.
+     * @return  L'arbre du chemin le plus rapide depuis le point donne.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     * @throws  IllegalArgumentException
+     *          En cas de vitesse de marche negative ou nulle.
+     * @throws  IllegalArgumentException
+     *          En cas d'absence d'arret a distance de marche du point.
+     */
+    public FastestPathTree fastestPaths(PointWGS84 origin, int departureTime, int maxWalkingTime, double walkingSpeed, BitSet activeServices) {
+        return fastestPaths(origin, departureTime, maxWalkingTime, walkingSpeed, SecondsPastMidnight.INFINITE, activeServices);
+    }
+
+    /**
+     * Retourne l'arbre du chemin le plus rapide depuis un point quelconque et un temps de depart, en arretant la recherche
+     * des que le prochain arret du tas depasse la duree maximale de trajet depuis le point.
+     * Les arrets non fixes ne font pas partie de l'arbre.
+     *
+     * @param   origin
+     *          Le point de depart.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @param   maxWalkingTime
+     *          Le temps de marche maximum jusqu'aux arrets de depart.
+     * @param   walkingSpeed
+     *          La vitesse de marche (m/s).
+     * @param   maxTravelTime
+     *          La duree maximale de trajet depuis le depart, ou SecondsPastMidnight.INFINITE pour ne pas borner la recherche.
+     * @param   activeServices
+     *          Le masque des services actifs (voir serviceMask), ou null si tous les trajets sont actifs.
+     * @return  L'arbre du chemin le plus rapide depuis le point donne, restreint aux arrets fixes.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     * @throws  IllegalArgumentException
+     *          En cas de vitesse de marche negative ou nulle.
+     * @throws  IllegalArgumentException
+     *          En cas d'absence d'arret a distance de marche du point.
+     */
+    public FastestPathTree fastestPaths(PointWGS84 origin, int departureTime, int maxWalkingTime, double walkingSpeed, int maxTravelTime, BitSet activeServices) {
+
+        if (departureTime < 0)
+            throw new IllegalArgumentException("le temps de depart ne doit pas etre negatif : "+departureTime);
+        if (maxWalkingTime < 0)
+            throw new IllegalArgumentException("le temps de marche doit etre positif : "+maxWalkingTime);
+        if (walkingSpeed <= 0)
+            throw new IllegalArgumentException("la vitesse de marche doit etre positif non nulle : "+walkingSpeed);
+        if (maxTravelTime < 0)
+            throw new IllegalArgumentException("la duree maximale de trajet ne doit pas etre negative : "+maxTravelTime);
 
-        final FastestPathTree.Builder b = new FastestPathTree.Builder(startingStop, departureTime); // final pour y acceder dans la classe anonyme ci-dessous
+        StopGrid grid = pointGrid;
+        if (grid == null || !grid.hasParameters(maxWalkingTime, walkingSpeed)) {
+            grid = new StopGrid(stops, maxWalkingTime, walkingSpeed);
+            pointGrid = grid;
+        }
+        final int[] walkingTimes = grid.walkingTimesFrom(origin); // meme arrondi que les arcs a pied
 
-        // comparateur d'un stop à un autre en fonction du temps d'arrivee dans le constructeur l'arbre des chemins les plus rapides
-        Comparator<Stop> comparator = new Comparator<Stop>() {
-            @Override
-            public int compare(Stop s1, Stop s2) {
-                return b.arrivalTime(s1) - b.arrivalTime(s2);
+        final int[] arrivalTimes = new int[stops.length];
+        Arrays.fill(arrivalTimes, SecondsPastMidnight.INFINITE);
+        int start = -1;
+        for (int i = 0; i < walkingTimes.length; i += 2) {
+            int id = walkingTimes[i];
+            arrivalTimes[id] = departureTime + walkingTimes[i+1];
+            if (start < 0 || arrivalTimes[id] < arrivalTimes[start])
+                start = id;
+        }
+        if (start < 0)
+            throw new IllegalArgumentException("aucun arret n'est a distance de marche du point : "+origin);
+
+        return multiSourcePaths(arrivalTimes, start, departureTime, maxArrivalTime(departureTime, maxTravelTime), activeServices);
+    }
+
+    // recherche depuis les arrets de depart dont les temps sont deja ecrits dans arrivalTimes (les autres a l'infini)
+    private FastestPathTree multiSourcePaths(int[] arrivalTimes, int start, int startingTime, int maxArrivalTime, BitSet activeServices) {
+
+        final int[] predecessors = new int[stops.length];
+        Arrays.fill(predecessors, -1); // les arrets de depart restent sans predecesseur s'ils ne sont pas ameliores
+        final IndexedMinHeap remainingStops = new IndexedMinHeap(arrivalTimes);
+        for (int id = 0; id < stops.length; ++id) {
+            if (arrivalTimes[id] <= maxArrivalTime)
+                remainingStops.update(id);
+            else if (id != start) // la racine reste dans l'arbre, meme au-dela de la duree maximale
+                arrivalTimes[id] = SecondsPastMidnight.INFINITE;
+        }
+        search(arrivalTimes, predecessors, remainingStops, null, activeServices, maxArrivalTime, null);
+
+        return FastestPathTree.fromArrays(stops, stopIds, start, startingTime, arrivalTimes, predecessors);
+    }
+
+    /**
+     * Retourne l'arbre des departs les plus tardifs permettant d'arriver a un arret au plus tard au temps donne (recherche inverse).
+     *
+     * @param   targetStop
+     *          L'arret d'arrivee.
+     * @param   arrivalTime
+     *          Le temps d'arrivee au plus tard.
+     * @return  L'arbre des departs les plus tardifs vers l'arret donne.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret non present dans le graphe.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     */
+    public LatestDepartureTree latestDepartures(Stop targetStop, int arrivalTime) {
+        return latestDepartures(targetStop, arrivalTime, SecondsPastMidnight.INFINITE, null);
+    }
+
+    /**
+     * Retourne l'arbre des departs les plus tardifs permettant d'arriver a un arret au plus tard au temps donne, en ne prenant que
+     * les trajets des services actifs. La recherche de Dijkstra parcourt les arcs entrants depuis l'arret d'arrivee, du depart le plus
+     * tardif au plus tot, et ne garde que les departs pas plus anterieurs a l'arrivee que la duree maximale de trajet.
+     *
+     * @param   targetStop
+     *          L'arret d'arrivee.
+     * @param   arrivalTime
+     *          Le temps d'arrivee au plus tard.
+     * @param   maxTravelTime
+     *          La duree maximale de trajet jusqu'a l'arrivee, ou SecondsPastMidnight.INFINITE pour ne pas borner la recherche.
+     * @param   activeServices
+     *          Le masque des services actifs (voir serviceMask), ou null si tous les trajets sont actifs.
+     * @return  L'arbre des departs les plus tardifs vers l'arret donne.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret non present dans le graphe.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     */
+    public LatestDepartureTree latestDepartures(Stop targetStop, int arrivalTime, int maxTravelTime, BitSet activeServices) {
+
+        if (!stopIds.containsKey(targetStop))
+            throw new IllegalArgumentException("l'arret doit faire partie du graphe : "+targetStop);
+        if (arrivalTime < 0)
+            throw new IllegalArgumentException("le temps d'arrivee ne doit pas etre negatif : "+arrivalTime);
+        if (maxTravelTime < 0)
+            throw new IllegalArgumentException("la duree maximale de trajet ne doit pas etre negative : "+maxTravelTime);
+
+        final int target = stopIds.get(targetStop);
+        final int minDepartureTime = Math.max(0, arrivalTime - maxTravelTime); // les temps de depart ne sont jamais negatifs
+
+        // le tas etant minimal, il lit les temps de depart negatifs : le depart le plus tardif sort en premier
+        final int[] negatedDepartureTimes = new int[stops.length];
+        final int[] successors = new int[stops.length];
+        Arrays.fill(negatedDepartureTimes, SecondsPastMidnight.INFINITE);
+        Arrays.fill(successors, -1);
+        final IndexedMinHeap remainingStops = new IndexedMinHeap(negatedDepartureTimes);
+        negatedDepartureTimes[target] = -arrivalTime;
+        remainingStops.update(target);
+
+        while (!remainingStops.isEmpty()) {
+
+            int current = remainingStops.poll(); // son temps de depart est definitif
+            int currentTime = -negatedDepartureTimes[current];
+
+            for (int r = reverseOffsets[current], end = reverseOffsets[current+1]; r < end; ++r) {
+
+                int e = reverseEdges[r];
+                int source = reverseSources[r];
+                int latestDepartureTime = GraphEdge.latestDepartureTime(packedTrips, tripServices, activeServices, tripOffsets[e], tripOffsets[e+1], edgeWalkingTimes[e], currentTime);
+
+                if (-latestDepartureTime < negatedDepartureTimes[source] && latestDepartureTime >= minDepartureTime) {
+                    negatedDepartureTimes[source] = -latestDepartureTime;
+                    successors[source] = current;
+                    remainingStops.update(source);
+                }
             }
-        };
+        }
 
-        final PriorityQueue<Stop> remainingStops = new PriorityQueue<>(stops.size(), comparator);
-        remainingStops.addAll(stops); // on ajoute tous les stops dans la queue
+        for (int id = 0; id < stops.length; ++id) { // les arrets non atteints valent -SecondsPastMidnight.INFINITE
+            negatedDepartureTimes[id] = -negatedDepartureTimes[id];
+        }
+        return LatestDepartureTree.fromArrays(stops, stopIds, target, negatedDepartureTimes, successors);
+    }
 
-        Stop currentStop;
-        while ((currentStop = remainingStops.poll()) != null) {
+    /**
+     * Retourne les profils des chemins les plus rapides depuis un arret de depart pour tous les temps de depart d'un intervalle.
+     * Les temps de depart ou un trajet peut etre pris depuis l'arret de depart (directement ou apres une marche) sont parcourus
+     * du plus tard au plus tot en conservant les temps d'arrivee d'une recherche a l'autre : chaque recherche ne propage que les ameliorations.
+     * 
+     * @param   startingStop
+     *          L'arret de depart.
+     * @param   fromTime
+     *          Le premier temps de depart de l'intervalle.
+     * @param   toTime
+     *          Le dernier temps de depart de l'intervalle.
+     * @return  Les profils des chemins les plus rapides depuis l'arret donne.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret non present dans le graphe.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     * @throws  IllegalArgumentException
+     *          En cas d'intervalle vide.
+     */
+    public FastestPathProfile fastestPathProfiles(Stop startingStop, int fromTime, int toTime) {
+        return fastestPathProfiles(startingStop, fromTime, toTime, null);
+    }
 
-            if (b.arrivalTime(currentStop) == SecondsPastMidnight.INFINITE)
-                break; // les voisins d'un arret non atteignable, ne seront pas plus atteingable via cet arret, on arrete donc la recherche
+    /**
+     * Retourne les profils des chemins les plus rapides depuis un arret de depart pour tous les temps de depart d'un intervalle,
+     * en ne prenant que les trajets des services actifs (et ceux sans service).
+     *
+     * @param   startingStop
+     *          L'arret de depart.
+     * @param   fromTime
+     *          Le premier temps de depart de l'intervalle.
+     * @param   toTime
+     *          Le dernier temps de depart de l'intervalle.
+     * @param   activeServices
+     *          Le masque des services actifs (voir serviceMask), ou null si tous les trajets sont actifs.
+     * @return  Les profils des chemins les plus rapides depuis l'arret donne.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret non present dans le graphe.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     * @throws  IllegalArgumentException
+     *          En cas d'intervalle vide.
+     */
+    public FastestPathProfile fastestPathProfiles(Stop startingStop, int fromTime, int toTime, BitSet activeServices) {
 
-            if (!outgoingEdges.containsKey(currentStop))
-                continue;
+        if (!stopIds.containsKey(startingStop))
+            throw new IllegalArgumentException("l'arret doit faire partie du graphe : "+startingStop);
+        if (fromTime < 0)
+            throw new IllegalArgumentException("le temps de depart ne doit pas etre negatif : "+fromTime);
+        if (toTime < fromTime)
+            throw new IllegalArgumentException("l'intervalle de depart ne doit pas etre vide : ["+fromTime+", "+toTime+"]");
 
-            for (GraphEdge neighbourEdge : outgoingEdges.get(currentStop)) {
+        final int start = stopIds.get(startingStop);
 
-                Stop destination = neighbourEdge.destination();
-                int earliestArrivalTime = neighbourEdge.earliestArrivalTime(b.arrivalTime(currentStop));
+        // temps des chemins uniquement a pied, independants du temps de depart
+        final int[] walkingTimes = new int[stops.length];
+        final int[] walkingPredecessors = new int[stops.length];
+        walkingPaths(start, walkingTimes, walkingPredecessors);
 
-                if (earliestArrivalTime < b.arrivalTime(destination)) {                                        
-                    remainingStops.remove(destination); // on enleve et rajoute le stop pour qu'il puisse mettre a jour son emplacement
-                    b.setArrivalTime(destination, earliestArrivalTime, currentStop);
-                    remainingStops.add(destination);
+        // temps de depart candidats : les departs des trajets sortant des arrets atteignables a pied, moins le temps de marche
+        int[] candidates = new int[16];
+        int candidateCount = 0;
+        candidates[candidateCount++] = toTime;
+        for (int s = 0; s < stops.length; ++s) {
+            int walk = walkingTimes[s];
+            if (walk >= SecondsPastMidnight.INFINITE)
+                continue;
+            for (int e = edgeOffsets[s]; e < edgeOffsets[s+1]; ++e) {
+                int end = tripOffsets[e+1];
+                for (int t = GraphEdge.lowerBound(packedTrips, tripOffsets[e], end, (fromTime + walk) << 14); t < end; ++t) {
+                    int candidate = GraphEdge.unpackTripDepartureTime(packedTrips[t]) - walk;
+                    if (candidate > toTime)
+                        break;
+                    if (!GraphEdge.isActive(tripServices, activeServices, t))
+                        continue;
+                    if (candidateCount == candidates.length)
+                        candidates = Arrays.copyOf(candidates, 2*candidateCount);
+                    candidates[candidateCount++] = candidate;
                 }
             }
         }
+        Arrays.sort(candidates, 0, candidateCount);
+
+        final int[] arrivalTimes = new int[stops.length];
+        final int[] predecessors = new int[stops.length];
+        final int[] settled = new int[stops.length];
+        Arrays.fill(arrivalTimes, SecondsPastMidnight.INFINITE);
+        Arrays.fill(predecessors, -1);
+        final IndexedMinHeap remainingStops = new IndexedMinHeap(arrivalTimes);
+        final FastestPathProfile.Builder b = new FastestPathProfile.Builder(this, start, fromTime, toTime, walkingTimes, walkingPredecessors);
+
+        for (int i = candidateCount-1; i >= 0; --i) { // du depart le plus tard au plus tot
+
+            int departureTime = candidates[i];
+            if (i < candidateCount-1 && departureTime == candidates[i+1])
+                continue;
 
+            arrivalTimes[start] = departureTime;
+            remainingStops.update(start);
+            int count = search(arrivalTimes, predecessors, remainingStops, settled, activeServices, SecondsPastMidnight.INFINITE, null);
+
+            for (int j = 0; j < count; ++j) { // seuls les arrets ameliores ont ete fixes a nouveau
+                int id = settled[j];
+                if (id != start)
+                    b.addEntry(id, departureTime, arrivalTimes[id], predecessors[id]);
+            }
+        }
         return b.build();
     }
 
+    /*
+     * Poursuit la recherche de Dijkstra depuis les arrets du tas jusqu'a ce qu'il soit vide.
+     * Les temps d'arrivee deja presents sont consideres comme des bornes superieures atteignables : seuls les arrets ameliores sont propages.
+     * Retourne le nombre d'arrets fixes, dont les identifiants sont ecrits dans l'ordre dans settled (si non nul).
+     * Seuls les trajets des services actifs sont pris (tous si le masque est nul).
+     * Les arrets atteints apres maxArrivalTime ne sont pas inseres dans le tas ; si des cibles sont donnees, la recherche s'arrete
+     * des qu'elles sont toutes fixees et les arrets restant dans le tas sont remis a l'infini.
+     */
+    private int search(int[] arrivalTimes, int[] predecessors, IndexedMinHeap remainingStops, int[] settled, BitSet activeServices,
+            int maxArrivalTime, BitSet targets) {
+        return search(arrivalTimes, predecessors, remainingStops, settled, activeServices, maxArrivalTime, targets, null, 0);
+    }
+
+    /*
+     * Idem, mais si des tampons sont donnes, seuls les arrets dont le tampon vaut generation ont un temps d'arrivee valide
+     * (les autres sont consideres a l'infini) et les arrets ameliores recoivent ce tampon.
+     */
+    private int search(int[] arrivalTimes, int[] predecessors, IndexedMinHeap remainingStops, int[] settled, BitSet activeServices,
+            int maxArrivalTime, BitSet targets, int[] stamps, int generation) {
+
+        int count = 0;
+        int remainingTargets = (targets != null) ? targets.cardinality(): -1;
+        while (!remainingStops.isEmpty()) {
+
+            int current = remainingStops.poll(); // son temps d'arrivee est definitif
+            int currentTime = arrivalTimes[current];
+            if (settled != null)
+                settled[count] = current;
+            ++count;
+
+            if (remainingTargets >= 0 && targets.get(current) && --remainingTargets == 0) {
+                remainingStops.clear(SecondsPastMidnight.INFINITE); // arrets non fixes
+                break;
+            }
+
+            for (int e = edgeOffsets[current], end = edgeOffsets[current+1]; e < end; ++e) {
+
+                int destination = edgeDestinations[e];
+                int earliestArrivalTime = GraphEdge.earliestArrivalTime(packedTrips, tripServices, activeServices, tripOffsets[e], tripOffsets[e+1], edgeWalkingTimes[e], currentTime);
+
+                int knownArrivalTime = (stamps == null || stamps[destination] == generation) ? arrivalTimes[destination]: SecondsPastMidnight.INFINITE;
+
+                if (earliestArrivalTime < knownArrivalTime && earliestArrivalTime <= maxArrivalTime) {
+                    if (stamps != null)
+                        stamps[destination] = generation;
+                    arrivalTimes[destination] = earliestArrivalTime;
+                    predecessors[destination] = current;
+                    remainingStops.update(destination); // insertion ou diminution de cle
+                }
+            }
+        }
+        return count;
+    }
+
+    // retourne le dernier temps d'arrivee admis pour la duree maximale de trajet donnee (sans depassement)
+    private static int maxArrivalTime(int departureTime, int maxTravelTime) {
+        return (int) Math.min((long) departureTime + maxTravelTime, SecondsPastMidnight.INFINITE);
+    }
+
+    // calcule les temps des chemins uniquement a pied depuis l'arret donne (Dijkstra sur les seuls arcs a pied)
+    private void walkingPaths(int start, int[] walkingTimes, int[] walkingPredecessors) {
+
+        Arrays.fill(walkingTimes, SecondsPastMidnight.INFINITE);
+        Arrays.fill(walkingPredecessors, -1);
+        final IndexedMinHeap remainingStops = new IndexedMinHeap(walkingTimes);
+        walkingTimes[start] = 0;
+        remainingStops.update(start);
+
+        while (!remainingStops.isEmpty()) {
+            int current = remainingStops.poll();
+            for (int e = edgeOffsets[current]; e < edgeOffsets[current+1]; ++e) {
+                int walk = edgeWalkingTimes[e];
+                int destination = edgeDestinations[e];
+                if (walk >= 0 && walkingTimes[current] + walk < walkingTimes[destination]) {
+                    walkingTimes[destination] = walkingTimes[current] + walk;
+                    walkingPredecessors[destination] = current;
+                    remainingStops.update(destination);
+                }
+            }
+        }
+    }
+
+    /*
+     * Recherche depuis l'arret donne dans les tableaux d'un contexte de recherche (voir SearchContext), reutilises d'une recherche a l'autre :
+     * seuls les arrets dont le tampon vaut generation ont un temps d'arrivee valide, les autres sont consideres a l'infini.
+     * Le tableau n'est donc jamais reinitialise et une recherche n'alloue rien.
+     */
+    void search(int start, int departureTime, int maxTravelTime, BitSet targets, BitSet activeServices,
+            int[] arrivalTimes, int[] predecessors, int[] stamps, int generation, IndexedMinHeap remainingStops) {
+        arrivalTimes[start] = departureTime;
+        predecessors[start] = -1;
+        stamps[start] = generation;
+        remainingStops.update(start);
+        search(arrivalTimes, predecessors, remainingStops, null, activeServices, maxArrivalTime(departureTime, maxTravelTime), targets, stamps, generation);
+    }
+
+    /**
+     * Retourne le nombre d'arrets du graphe ; leurs identifiants vont de 0 a ce nombre moins un.
+     *
+     * @return  Le nombre d'arrets.
+     */
+    public int stopCount() {
+        return stops.length;
+    }
+
+    /**
+     * Retourne l'arret d'identifiant donne.
+     *
+     * @param   id
+     *          L'identifiant de l'arret.
+     * @return  L'arret.
+     * @throws  IndexOutOfBoundsException
+     *          En cas d'identifiant non compris dans l'intervalle [0, stopCount()-1].
+     */
+    public Stop stop(int id) {
+        if (id < 0 || id >= stops.length)
+            throw new IndexOutOfBoundsException("l'identifiant doit etre compris dans [0,"+(stops.length-1)+"] : "+id);
+        return stops[id];
+    }
+
+    /**
+     * Retourne l'identifiant de l'arret donne.
+     *
+     * @param   stop
+     *          L'arret.
+     * @return  L'identifiant de l'arret, ou -1 s'il ne fait pas partie du graphe.
+     */
+    public int stopId(Stop stop) {
+        Integer id = stopIds.get(stop);
+        return (id == null) ? -1: id;
+    }
+
+    // acces en lecture seule (non copies) aux donnees du graphe pour les autres moteurs de recherche du paquetage
+
+    Stop[] stops() {
+        return stops;
+    }
+
+    Map<Stop, Integer> stopIds() {
+        return stopIds;
+    }
+
+    int[] edgeOffsets() {
+        return edgeOffsets;
+    }
+
+    int[] edgeDestinations() {
+        return edgeDestinations;
+    }
+
+    int[] edgeWalkingTimes() {
+        return edgeWalkingTimes;
+    }
+
+    int[] tripOffsets() {
+        return tripOffsets;
+    }
+
+    int[] packedTrips() {
+        return packedTrips;
+    }
+
+    // null si aucun trajet n'a de service ; les autres moteurs de recherche considerent tous les trajets comme actifs
+    int[] tripServices() {
+        return tripServices;
+    }
+
     /**
      * Batisseur de graphe.
      */
     public final static class Builder {
 
+        private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+        private static final int MIN_CHUNK = 512; // nombre minimal d'arrets par tache parallele
+
         private final Set<Stop> stops;
         private final Map<Stop, Map<Stop, GraphEdge.Builder>> edgeBuilders;
+        private final Map<Service, Integer> serviceIds;
+        private final List<Service> services;
 
         /**
          * Constructeur public d'un graphe.
@@ -108,6 +740,8 @@ public final class Graph {
         public Builder(Set<Stop> stops) {
             this.stops = new HashSet<>(stops);
             this.edgeBuilders = new HashMap<>();
+            this.serviceIds = new HashMap<>();
+            this.services = new ArrayList<>();
         }
 
         /**
@@ -134,18 +768,73 @@ public final class Graph {
          */
         public Builder addTripEdge(Stop fromStop, Stop toStop, int departureTime, int arrivalTime) {
 
+            checkTrip(fromStop, toStop, departureTime, arrivalTime);
+
+            GraphEdge.Builder builder = getEdgeBuilder(fromStop, toStop);
+            builder.addTrip(departureTime, arrivalTime);
+
+            return this;
+        }
+
+        /**
+         * Ajoute un arc entre deux arrets (dans un seul sens) a un temps de depart et d'arrive donne, pour un trajet du service donne.
+         * Le trajet n'est pris par les recherches que si son service est actif.
+         * Permets les appels chaines.
+         *
+         * @param   fromStop
+         *          L'arret de depart.
+         * @param   toStop
+         *          L'arret d'arrivee.
+         * @param   departureTime
+         *          Le temps de depart.
+         * @param   arrivalTime
+         *          Le temps d'arrivee.
+         * @param   service
+         *          Le service du trajet.
+         * @return  Le batisseur.
+         * @throws  IllegalArgumentException
+         *          En cas d'arret de depart n'appartenant pas au graphe.
+         * @throws  IllegalArgumentException
+         *          En cas d'arret d'arrivee n'appartenant pas au graphe.
+         * @throws  IllegalArgumentException
+         *          En cas de temps negatif.
+         * @throws  IllegalArgumentException
+         *          En cas de temps d'arrivee anterieur au temps de depart.
+         */
+        public Builder addTripEdge(Stop fromStop, Stop toStop, int departureTime, int arrivalTime, Service service) {
+
+            checkTrip(fromStop, toStop, departureTime, arrivalTime);
+
+            getEdgeBuilder(fromStop, toStop).addTrip(departureTime, arrivalTime, serviceId(service));
+            return this;
+        }
+
+        /**
+         * Ajoute (ou remplace) le temps de marche d'un arret a un autre, dans un seul sens, par exemple une correspondance imposee.
+         * Permet les appels chaines.
+         *
+         * @param   fromStop
+         *          L'arret de depart.
+         * @param   toStop
+         *          L'arret d'arrivee.
+         * @param   walkingTime
+         *          Le temps de marche.
+         * @return  Le batisseur.
+         * @throws  IllegalArgumentException
+         *          En cas d'arret n'appartenant pas au graphe.
+         * @throws  IllegalArgumentException
+         *          En cas de temps de marche negatif.
+         */
+        public Builder addWalkEdge(Stop fromStop, Stop toStop, int walkingTime) {
+
             if (!stops.contains(fromStop))
                 throw new IllegalArgumentException("l'arret de depart ne fait pas partie du graphe : "+fromStop);
             if (!stops.contains(toStop))
                 throw new IllegalArgumentException("l'arret d'arrive ne fait pas partie du graphe : "+toStop);
-            if (departureTime < 0 || arrivalTime < 0)
-                throw new IllegalArgumentException("l'heure ne doit pas etre negative : "+departureTime+" et "+arrivalTime);
-            if (arrivalTime < departureTime)
-                throw new IllegalArgumentException("l'heure d'arrivee doit etre posterieure a celle de depart");
-
-            GraphEdge.Builder builder = getEdgeBuilder(fromStop, toStop);
-            builder.addTrip(departureTime, arrivalTime);
+            if (walkingTime < 0)
+                throw new IllegalArgumentException("le temps de marche doit etre positif : "+walkingTime);
 
+            getEdgeBuilder(fromStop, toStop).setWalkingTime(walkingTime);
             return this;
         }
 
@@ -170,45 +859,173 @@ public final class Graph {
             if (walkingSpeed <= 0)
                 throw new IllegalArgumentException("la vitesse de marche doit etre positif non nulle : "+walkingSpeed);
 
-            final int length = stops.size();
-            final Stop[] allStops = stops.toArray(new Stop[length]);
-
-            for (int i = 0; i < length; ++i) { // parcourt en O(log(n)) de tous les arrets
-                for (int j = i+1; j < length; ++j) {
-
-                    Stop s1 = allStops[i];
-                    Stop s2 = allStops[j];
+            final Stop[] allStops = stops.toArray(new Stop[stops.size()]);
+            final StopGrid grid = new StopGrid(allStops, maxWalkingTime, walkingSpeed);
 
-                    int walkingTime = (int) Math.round(s1.position().distanceTo(s2.position())/walkingSpeed);
+            // les paires sont cherchees en parallele par tranches d'identifiants, puis ajoutees dans l'ordre des tranches
+            final int chunks = Math.max(1, Math.min(PARALLELISM * 4, allStops.length / MIN_CHUNK));
+            final List<Callable<int[]>> tasks = new ArrayList<>(chunks);
+            for (int c = 0; c < chunks; ++c) {
+                final int from = (int) ((long) allStops.length * c / chunks);
+                final int to = (int) ((long) allStops.length * (c+1) / chunks);
+                tasks.add(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        return grid.walkingPairs(from, to);
+                    }
+                });
+            }
 
-                    if (walkingTime <= maxWalkingTime) {
-                        getEdgeBuilder(s1, s2).setWalkingTime(walkingTime);
-                        getEdgeBuilder(s2, s1).setWalkingTime(walkingTime);
-                    } // sinon rien, car GraphEdge.Builder initialise d'origine la valeur de marche a -1
+            for (int[] pairs : invokeAll(tasks)) { // seules les paires d'arrets de cellules voisines ont ete comparees
+                for (int i = 0; i < pairs.length; i += 3) {
+                    Stop s1 = allStops[pairs[i]];
+                    Stop s2 = allStops[pairs[i+1]];
+                    getEdgeBuilder(s1, s2).setWalkingTime(pairs[i+2]);
+                    getEdgeBuilder(s2, s1).setWalkingTime(pairs[i+2]);
                 }
-            }
+            } // les autres arcs gardent la valeur de marche -1 de GraphEdge.Builder
 
             return this;
         }
 
         /**
          * Construit un graphe a partir du batisseur.
+         * Les arcs et leurs trajets sont ranges a plat dans des tableaux d'entiers (representation CSR).
          * 
          * @return  Le graphe.
          */
         public Graph build() {
 
-            final Map<Stop, List<GraphEdge>> outgoingEdges = new HashMap<>();
+            final Stop[] allStops = stops.toArray(new Stop[stops.size()]);
+
+            // les arcs (tri et elagage des trajets) sont construits en parallele par tranches d'arrets
+            final int chunks = Math.max(1, Math.min(PARALLELISM * 4, allStops.length / MIN_CHUNK));
+            final List<Callable<List<GraphEdge>>> tasks = new ArrayList<>(chunks);
+            for (int c = 0; c < chunks; ++c) {
+                final int from = (int) ((long) allStops.length * c / chunks);
+                final int to = (int) ((long) allStops.length * (c+1) / chunks);
+                tasks.add(new Callable<List<GraphEdge>>() {
+                    @Override
+                    public List<GraphEdge> call() {
+                        List<GraphEdge> edges = new ArrayList<>();
+                        for (int id = from; id < to; ++id) {
+                            Map<Stop, GraphEdge.Builder> builders = edgeBuilders.get(allStops[id]);
+                            if (builders != null) {
+                                for (GraphEdge.Builder builder : builders.values()) {
+                                    edges.add(builder.build());
+                                }
+                            }
+                        }
+                        return edges;
+                    }
+                });
+            }
+
+            final List<GraphEdge> edges = new ArrayList<>();
+            for (List<GraphEdge> chunk : invokeAll(tasks)) {
+                edges.addAll(chunk);
+            }
+
+            final int[] edgeOffsets = new int[allStops.length + 1];
+            for (int id = 0; id < allStops.length; ++id) { // les taches ont parcouru les arrets dans l'ordre des identifiants
+                Map<Stop, GraphEdge.Builder> builders = edgeBuilders.get(allStops[id]);
+                edgeOffsets[id+1] = edgeOffsets[id] + ((builders == null) ? 0: builders.size());
+            }
+
+            int tripCount = 0;
+            for (GraphEdge edge : edges) {
+                tripCount += edge.tripCount();
+            }
+
+            final Map<Stop, Integer> ids = new HashMap<>();
+            for (int id = 0; id < allStops.length; ++id) {
+                ids.put(allStops[id], id);
+            }
+
+            final int[] edgeDestinations = new int[edges.size()];
+            final int[] edgeWalkingTimes = new int[edges.size()];
+            final int[] tripOffsets = new int[edges.size() + 1];
+            final int[] packedTrips = new int[tripCount];
+            final int[] tripServices = services.isEmpty() ? null: new int[tripCount];
+            int trip = 0;
 
-            for (Entry<Stop, Map<Stop, GraphEdge.Builder>> entry : edgeBuilders.entrySet()) { // parcourt les arrets et construit les arcs              
-                Stop fromStop = entry.getKey();                
-                outgoingEdges.put(fromStop, new LinkedList<GraphEdge>());
+            for (int e = 0; e < edges.size(); ++e) {
+                GraphEdge edge = edges.get(e);
+                edgeDestinations[e] = ids.get(edge.destination());
+                edgeWalkingTimes[e] = edge.walkingTime();
+                tripOffsets[e] = trip;
+                if (tripServices != null)
+                    edge.copyTripServices(tripServices, trip);
+                trip = edge.copyPackedTrips(packedTrips, trip);
+            }
+            tripOffsets[edges.size()] = trip;
+
+            return new Graph(allStops, edgeOffsets, edgeDestinations, edgeWalkingTimes, tripOffsets, packedTrips,
+                    tripServices, services.toArray(new Service[services.size()]));
+        }
+
+        /**
+         * Ajoute les arcs d'un autre batisseur portant sur les memes arrets, par exemple construit en parallele sur une partie des trajets.
+         * Permet les appels chaines.
+         *
+         * @param   that
+         *          Le batisseur fusionne, qui n'est pas modifie.
+         * @return  Le batisseur.
+         * @throws  IllegalArgumentException
+         *          En cas de batisseur portant sur d'autres arrets.
+         */
+        public Builder merge(Builder that) {
+
+            if (!stops.equals(that.stops))
+                throw new IllegalArgumentException("les batisseurs doivent porter sur les memes arrets");
+
+            final int[] thatServiceIds = new int[that.services.size()]; // identifiants ici des services de l'autre batisseur
+            for (int id = 0; id < thatServiceIds.length; ++id) {
+                thatServiceIds[id] = serviceId(that.services.get(id));
+            }
+
+            for (Map.Entry<Stop, Map<Stop, GraphEdge.Builder>> from : that.edgeBuilders.entrySet()) {
+                for (Map.Entry<Stop, GraphEdge.Builder> to : from.getValue().entrySet()) {
+                    getEdgeBuilder(from.getKey(), to.getKey()).merge(to.getValue(), thatServiceIds);
+                }
+            }
+            return this;
+        }
+
+        // verifie les arrets et les temps d'un trajet
+        private void checkTrip(Stop fromStop, Stop toStop, int departureTime, int arrivalTime) {
+            if (!stops.contains(fromStop))
+                throw new IllegalArgumentException("l'arret de depart ne fait pas partie du graphe : "+fromStop);
+            if (!stops.contains(toStop))
+                throw new IllegalArgumentException("l'arret d'arrive ne fait pas partie du graphe : "+toStop);
+            if (departureTime < 0 || arrivalTime < 0)
+                throw new IllegalArgumentException("l'heure ne doit pas etre negative : "+departureTime+" et "+arrivalTime);
+            if (arrivalTime < departureTime)
+                throw new IllegalArgumentException("l'heure d'arrivee doit etre posterieure a celle de depart");
+        }
+
+        // cree ou retrouve l'identifiant d'un service, attribues dans l'ordre d'apparition
+        private int serviceId(Service service) {
+            Integer id = serviceIds.get(service);
+            if (id == null) {
+                id = services.size();
+                serviceIds.put(service, id);
+                services.add(service);
+            }
+            return id;
+        }
 
-                for (GraphEdge.Builder edge : entry.getValue().values()) {
-                    outgoingEdges.get(fromStop).add(edge.build());
+        // execute les taches sur le pool commun et retourne leurs resultats dans l'ordre
+        private static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+            try {
+                final List<T> results = new ArrayList<>(tasks.size());
+                for (Future<T> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                    results.add(f.get());
                 }
+                return results;
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("echec de la construction parallele du graphe", e);
             }
-            return new Graph(stops, outgoingEdges);
         }
 
         // cree ou retrouve un batisseur d' arc entre deux arrets
@@ -0,0 +1,312 @@
+package ch.epfl.isochrone.timetable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Un cache des graphes construits par une source d'horaire, indexes par l'ensemble (trie) des noms des services actifs :
+ * deux dates aux memes services partagent le meme graphe. La memoire occupee par les graphes (estimee d'apres leurs tableaux)
+ * est bornee ; les graphes les moins recemment utilises sont evinces en premier. Les graphes des jours voisins de la date
+ * demandee sont construits a l'avance sur un fil d'arriere-plan, et un graphe en cours de construction n'est jamais construit deux fois ;
+ * un graphe demande dont la construction a l'avance n'a pas encore commence est construit dans le fil appelant.
+ * Les graphes construits a l'avance et pas encore demandes ont leur propre file d'eviction (du plus ancien au plus recent) :
+ * ils n'evincent qu'entre eux, et s'ils depassent la memoire maximale, ils sont gardes jusqu'a la demande suivante,
+ * qui les evince en premier.
+ * Classe thread-safe.
+ */
+public final class GraphCache {
+
+    private final TimeTableSource source;
+    private final TimeTable timetable;
+    private final int walkingTime;
+    private final double walkingSpeed;
+    private final long maxWeight;
+    private final ExecutorService prefetcher;
+
+    // graphes demandes, construits ou en construction, du moins au plus recemment utilise, et graphes construits a l'avance
+    // pas encore demandes, du plus ancien au plus recent ; proteges par le verrou de l'instance
+    private final LinkedHashMap<List<String>, Entry> entries;
+    private final LinkedHashMap<List<String>, Entry> prefetched;
+    private List<String> lastRequested;
+    private long weight;
+    private long hits, misses, evictions;
+
+    /**
+     * Constructeur public d'un cache des graphes de la source et de la table des horaires donnees.
+     *
+     * @param   source
+     *          La source des graphes.
+     * @param   timetable
+     *          La table des horaires (arrets et services) lue de la source.
+     * @param   walkingTime
+     *          Le temps de marche maximal des graphes.
+     * @param   walkingSpeed
+     *          La vitesse de marche (m/s) des graphes.
+     * @param   maxWeight
+     *          La memoire maximale (en octets, estimee) occupee par les graphes en cache ; le dernier graphe demande
+     *          est toujours garde, meme s'il la depasse, et un graphe construit a l'avance peut la depasser jusqu'a la demande suivante.
+     * @throws  IllegalArgumentException
+     *          En cas de memoire maximale negative.
+     */
+    public GraphCache(TimeTableSource source, TimeTable timetable, int walkingTime, double walkingSpeed, long maxWeight) {
+
+        if (maxWeight < 0)
+            throw new IllegalArgumentException("la memoire maximale ne doit pas etre negative : "+maxWeight);
+
+        this.source = source;
+        this.timetable = timetable;
+        this.walkingTime = walkingTime;
+        this.walkingSpeed = walkingSpeed;
+        this.maxWeight = maxWeight;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.prefetched = new LinkedHashMap<>();
+        this.prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "graph-prefetch");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Retourne le graphe des services actifs a la date donnee, en le construisant si necessaire, puis lance en arriere-plan
+     * la construction des graphes de la veille et du lendemain.
+     *
+     * @param   date
+     *          La date.
+     * @return  Le graphe.
+     * @throws  IOException
+     *          En cas d'erreur de lecture de la source.
+     */
+    public Graph graphForDate(Date date) throws IOException {
+        Graph graph = graphForServices(timetable.servicesForDate(date));
+        prefetch(date.relative(-1));
+        prefetch(date.relative(1));
+        return graph;
+    }
+
+    /**
+     * Retourne le graphe des services donnes, en le construisant dans le fil appelant si necessaire (ou en attendant la fin
+     * de sa construction en cours).
+     *
+     * @param   services
+     *          Les services actifs.
+     * @return  Le graphe.
+     * @throws  IOException
+     *          En cas d'erreur de lecture de la source.
+     */
+    public Graph graphForServices(Set<Service> services) throws IOException {
+        final List<String> key = keyOf(services);
+        Entry entry;
+        synchronized (this) {
+            lastRequested = key;
+            entry = entries.get(key);
+            if (entry == null && (entry = prefetched.remove(key)) != null)
+                entries.put(key, entry); // demande : rejoint les graphes utilises
+            if (entry != null) {
+                ++hits;
+            } else {
+                ++misses;
+                entry = new Entry(services);
+                entries.put(key, entry);
+            }
+        }
+        entry.task.run(); // sans effet si la construction est deja en cours ou terminee : n'attend pas le fil d'arriere-plan
+        return await(key, entry, true);
+    }
+
+    /**
+     * Lance en arriere-plan la construction du graphe des services actifs a la date donnee, s'il n'est pas deja en cache.
+     * N'est pas compte dans les succes et echecs du cache.
+     *
+     * @param   date
+     *          La date.
+     */
+    public void prefetch(Date date) {
+        final Set<Service> services = timetable.servicesForDate(date);
+        final List<String> key = keyOf(services);
+        final Entry entry;
+        synchronized (this) {
+            if (entries.containsKey(key) || prefetched.containsKey(key))
+                return;
+            entry = new Entry(services);
+            prefetched.put(key, entry);
+        }
+        prefetcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                entry.task.run();
+                try {
+                    await(key, entry, false);
+                } catch (IOException e) {
+                    // l'entree a ete retiree, le graphe sera reconstruit a la demande
+                }
+            }
+        });
+    }
+
+    /**
+     * Retourne le nombre de demandes trouvees dans le cache (graphes construits ou en construction).
+     *
+     * @return  Le nombre de succes.
+     */
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    /**
+     * Retourne le nombre de demandes ayant du construire leur graphe.
+     *
+     * @return  Le nombre d'echecs.
+     */
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    /**
+     * Retourne le nombre de graphes evinces du cache faute de memoire.
+     *
+     * @return  Le nombre d'evictions.
+     */
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Retourne le nombre de graphes en cache (construits ou en construction).
+     *
+     * @return  Le nombre de graphes.
+     */
+    public synchronized int size() {
+        return entries.size() + prefetched.size();
+    }
+
+    /**
+     * Retourne la memoire (en octets, estimee) occupee par les graphes construits en cache.
+     *
+     * @return  La memoire occupee.
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * Estime la memoire occupee par le graphe donne, d'apres la taille de ses tableaux (representation inverse comprise) et de sa table des arrets.
+     *
+     * @param   graph
+     *          Le graphe.
+     * @return  La memoire occupee (en octets).
+     */
+    static long weightOf(Graph graph) {
+        long ints = graph.edgeOffsets().length + graph.edgeDestinations().length + graph.edgeWalkingTimes().length
+                + graph.tripOffsets().length + graph.packedTrips().length
+                + graph.edgeOffsets().length + 2*graph.edgeDestinations().length; // representation inverse
+        return 4*ints + 56L*graph.stopCount(); // tableau des arrets et entree de la table des identifiants
+    }
+
+    // attend la fin de la construction de l'entree, puis la comptabilise (en la gardant si elle est demandee) ou la retire en cas d'echec
+    private Graph await(List<String> key, Entry entry, boolean requested) throws IOException {
+        final Graph graph;
+        try {
+            graph = entry.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("construction du graphe interrompue");
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                if (entry.cached) {
+                    entries.remove(key);
+                    prefetched.remove(key);
+                    entry.cached = false;
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw (Error) cause;
+        }
+
+        synchronized (this) {
+            if (entry.cached && entry.weight < 0) {
+                entry.weight = weightOf(graph);
+                weight += entry.weight;
+            }
+            if (requested)
+                evict(Collections.singleton(key), false);
+            else if (entry.cached)
+                evict(Arrays.asList(key, lastRequested), true); // ne chasse pas les graphes utilises pour garder celui-ci
+        }
+        return graph;
+    }
+
+    // evince les graphes construits jusqu'a respecter la memoire maximale, sauf ceux donnes : d'abord les graphes construits a l'avance
+    // du plus ancien au plus recent, puis, si prefetchedOnly est faux, les graphes demandes les moins recemment utilises
+    private void evict(Collection<List<String>> kept, boolean prefetchedOnly) {
+        evict(prefetched, kept);
+        if (!prefetchedOnly)
+            evict(entries, kept);
+    }
+
+    // evince les graphes construits de la table donnee, dans son ordre, jusqu'a respecter la memoire maximale, sauf ceux donnes
+    private void evict(Map<List<String>, Entry> table, Collection<List<String>> kept) {
+        Iterator<Map.Entry<List<String>, Entry>> it = table.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            Map.Entry<List<String>, Entry> e = it.next();
+            if (e.getValue().weight >= 0 && !kept.contains(e.getKey())) {
+                weight -= e.getValue().weight;
+                e.getValue().cached = false;
+                it.remove();
+                ++evictions;
+            }
+        }
+    }
+
+    // cle canonique d'un ensemble de services : leurs noms tries
+    private static List<String> keyOf(Set<Service> services) {
+        List<String> names = new ArrayList<>(services.size());
+        for (Service s : services) {
+            names.add(s.name());
+        }
+        Collections.sort(names);
+        return Collections.unmodifiableList(names);
+    }
+
+    // un graphe en cache : sa construction, sa memoire (-1 tant qu'il n'est pas construit) et sa presence dans le cache
+    private final class Entry {
+
+        private final FutureTask<Graph> task;
+        private long weight;
+        private boolean cached;
+
+        private Entry(final Set<Service> services) {
+            this.weight = -1;
+            this.cached = true;
+            this.task = new FutureTask<>(new Callable<Graph>() {
+                @Override
+                public Graph call() throws IOException {
+                    return source.readGraphForServices(timetable.stops(), services, walkingTime, walkingSpeed);
+                }
+            });
+        }
+    }
+}
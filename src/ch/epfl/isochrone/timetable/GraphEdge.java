@@ -1,7 +1,7 @@
 package ch.epfl.isochrone.timetable;
 
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.BitSet;
 import java.util.Set;
 
 /**
@@ -10,9 +10,12 @@ import java.util.Set;
  */
 final class GraphEdge {
 
+    private static final int MAX_DEPARTURE_TIME = 107999; // heure de depart maximale d'un temps combine
+
     private final Stop destination;
     private final int walkingTime;
-    private final Integer[] packedTrips;
+    private final int[] packedTrips;
+    private final int[] tripServices; // identifiant du service de chaque trajet (-1 : toujours actif), null si aucun
 
     /**
      * Encode un temps de depart et d'arrive en un seul entier (temps combine) contenant le temps de depart et la duree du trajet.
@@ -30,7 +33,7 @@ final class GraphEdge {
      */
     public static int packTrip(int departureTime, int arrivalTime) {
 
-        if (departureTime < 0 || departureTime > 107999)
+        if (departureTime < 0 || departureTime > MAX_DEPARTURE_TIME)
             throw new IllegalArgumentException("l'heure de depart doit etre comprise dans [0, 107999] : "+departureTime);
 
         int diff = arrivalTime - departureTime;
@@ -86,14 +89,64 @@ final class GraphEdge {
      *          En cas de temps de marche negatif, pas egal a -1.
      */
     public GraphEdge(Stop destination, int walkingTime, Set<Integer> packedTrips) {
+        this(destination, walkingTime, toArray(packedTrips), packedTrips.size());
+    }
+
+    /**
+     * Constructeur d'un arc de graphe a partir des premiers temps combines d'un tableau (non trie, non copie).
+     * Les trajets domines sont elimines.
+     * 
+     * @param   destination
+     *          La destination de l'arc.
+     * @param   walkingTime
+     *          Le temps de marche vers la destination. -1 s'il n'est pas possible d'y acceder a pied.
+     * @param   packedTrips
+     *          Les temps combines des liaisons de l'arc, modifies par le tri.
+     * @param   count
+     *          Le nombre de temps combines a prendre en compte.
+     * @throws  IllegalArgumentException
+     *          En cas de temps de marche negatif, pas egal a -1.
+     */
+    GraphEdge(Stop destination, int walkingTime, int[] packedTrips, int count) {
+        this(destination, walkingTime, packedTrips, null, count);
+    }
+
+    /**
+     * Constructeur d'un arc de graphe dont les trajets sont associes a des services (tableaux non tries, non copies).
+     * Seuls les trajets domines par un trajet du meme service sont elimines : chacun peut etre le seul actif a une date donnee.
+     *
+     * @param   destination
+     *          La destination de l'arc.
+     * @param   walkingTime
+     *          Le temps de marche vers la destination. -1 s'il n'est pas possible d'y acceder a pied.
+     * @param   packedTrips
+     *          Les temps combines des liaisons de l'arc, modifies par le tri.
+     * @param   tripServices
+     *          Les identifiants des services des liaisons (-1 pour une liaison toujours active), ou null si aucune n'en a.
+     * @param   count
+     *          Le nombre de temps combines a prendre en compte.
+     * @throws  IllegalArgumentException
+     *          En cas de temps de marche negatif, pas egal a -1.
+     */
+    GraphEdge(Stop destination, int walkingTime, int[] packedTrips, int[] tripServices, int count) {
 
         if (walkingTime < -1)
             throw new IllegalArgumentException("le temps de marche doit etre non-nul ou egal a -1 : "+walkingTime);
 
         this.destination = destination;
         this.walkingTime = walkingTime;
-        this.packedTrips = packedTrips.toArray(new Integer[packedTrips.size()]);
-        Arrays.sort(this.packedTrips); // tri pour permettre la recherche dichotomique
+        if (tripServices == null) {
+            this.packedTrips = pruneDominatedTrips(packedTrips, count);
+            this.tripServices = null;
+        } else {
+            long[] trips = pruneDominatedTripsByService(packedTrips, tripServices, count);
+            this.packedTrips = new int[trips.length];
+            this.tripServices = new int[trips.length];
+            for (int i = 0; i < trips.length; ++i) {
+                this.packedTrips[i] = (int) (trips[i] >>> 32);
+                this.tripServices[i] = (int) trips[i];
+            }
+        }
     }
 
     /**
@@ -115,17 +168,353 @@ final class GraphEdge {
      *          ou SecondsPastMidnight.INFINITE si aucun trajet n'est possible.
      */
     public int earliestArrivalTime(int departureTime) {
-        int key = Arrays.binarySearch(packedTrips, departureTime << 14);
-        if (key < 0) { // correcteur : si la cle n'est pas trouve (negatif), cle contient (-indice)-1 et ce bloc permet de retrouve la cle du prochain depart
-            key *= -1;
-            key -= 1;
-        }        
-        if (walkingTime < 0) { // s'il n'est pas possible d'effectuer le trajet a pied, on renvoie le prochain trajet ou l'infini si aucun trajet n'existe
-            return (key < packedTrips.length) ? unpackTripArrivalTime(packedTrips[key]): SecondsPastMidnight.INFINITE;
-        } else { // s'il est possible d'effectuer le trajet a pied, on renvoie le minimum entre le temps de trajet et celui a pied ou celui a pied si aucun trajet n'existe
-            int walkTime = Math.min(departureTime + walkingTime, SecondsPastMidnight.INFINITE);
-            return (key < packedTrips.length) ? Math.min(unpackTripArrivalTime(packedTrips[key]), walkTime): walkTime;
+        return earliestArrivalTime(packedTrips, 0, packedTrips.length, walkingTime, departureTime);
+    }
+
+    /**
+     * Retourne les premieres heures d'arrivee possibles pour plusieurs heures de depart en un seul appel.
+     * Les recherches sont restreintes a la suite du resultat precedent tant que les heures de depart sont croissantes.
+     * 
+     * @param   departureTimes
+     *          Les temps de depart.
+     * @param   arrivalTimes
+     *          Le tableau rempli avec les heures d'arrivee correspondantes (meme taille).
+     * @throws  IllegalArgumentException
+     *          En cas de tableaux de tailles differentes.
+     */
+    public void earliestArrivalTimes(int[] departureTimes, int[] arrivalTimes) {
+
+        if (departureTimes.length != arrivalTimes.length)
+            throw new IllegalArgumentException("les tableaux doivent etre de meme taille : "+departureTimes.length+" et "+arrivalTimes.length);
+
+        int from = 0, previous = Integer.MIN_VALUE;
+        for (int i = 0; i < departureTimes.length; ++i) {
+            int departureTime = departureTimes[i];
+            if (departureTime < previous)
+                from = 0; // heures non triees, on recommence la recherche depuis le debut
+            from = lowerBound(packedTrips, from, packedTrips.length, departureTime << 14);
+            arrivalTimes[i] = arrivalTime(packedTrips, from, packedTrips.length, walkingTime, departureTime);
+            previous = departureTime;
+        }
+    }
+
+    /**
+     * Retourne la premiere heure d'arrivee possible pour les trajets donnes dans un tableau a plat (representation CSR du graphe).
+     * 
+     * @param   packedTrips
+     *          Les temps combines tries de tous les arcs.
+     * @param   from
+     *          L'indice du premier trajet de l'arc (inclus).
+     * @param   to
+     *          L'indice du dernier trajet de l'arc (exclu).
+     * @param   walkingTime
+     *          Le temps de marche de l'arc, -1 s'il n'est pas possible de marcher.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @return  La premiere heure d'arrivee possible ou
+     *          ou le temps de marche correspondant
+     *          ou SecondsPastMidnight.INFINITE si aucun trajet n'est possible.
+     */
+    static int earliestArrivalTime(int[] packedTrips, int from, int to, int walkingTime, int departureTime) {
+        int key = lowerBound(packedTrips, from, to, departureTime << 14);
+        return arrivalTime(packedTrips, key, to, walkingTime, departureTime);
+    }
+
+    /**
+     * Retourne la premiere heure d'arrivee possible pour les trajets donnes dans un tableau a plat, en ne prenant que les trajets
+     * des services actifs. Les trajets n'etant pas elimines d'un service a l'autre, ils sont parcourus depuis le premier depart possible
+     * jusqu'a ce que leur depart ne puisse plus ameliorer la meilleure arrivee trouvee.
+     *
+     * @param   packedTrips
+     *          Les temps combines tries de tous les arcs.
+     * @param   tripServices
+     *          Les identifiants des services des trajets (-1 : toujours actif), ou null si tous sont actifs.
+     * @param   activeServices
+     *          Les identifiants des services actifs, ou null si tous le sont.
+     * @param   from
+     *          L'indice du premier trajet de l'arc (inclus).
+     * @param   to
+     *          L'indice du dernier trajet de l'arc (exclu).
+     * @param   walkingTime
+     *          Le temps de marche de l'arc, -1 s'il n'est pas possible de marcher.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @return  La premiere heure d'arrivee possible
+     *          ou le temps de marche correspondant
+     *          ou SecondsPastMidnight.INFINITE si aucun trajet n'est possible.
+     */
+    static int earliestArrivalTime(int[] packedTrips, int[] tripServices, BitSet activeServices, int from, int to, int walkingTime, int departureTime) {
+        if (tripServices == null) // trajets elimines sur tout l'arc
+            return earliestArrivalTime(packedTrips, from, to, walkingTime, departureTime);
+
+        int best = (walkingTime < 0) ? SecondsPastMidnight.INFINITE: Math.min(departureTime + walkingTime, SecondsPastMidnight.INFINITE);
+        for (int t = lowerBound(packedTrips, from, to, departureTime << 14); t < to; ++t) {
+            int packedTrip = packedTrips[t];
+            if (unpackTripDepartureTime(packedTrip) >= best)
+                break; // les trajets suivants n'arrivent pas avant leur depart
+            int service = tripServices[t];
+            if (service < 0 || activeServices == null || activeServices.get(service))
+                best = Math.min(best, unpackTripArrivalTime(packedTrip));
+        }
+        return best;
+    }
+
+    /**
+     * Retourne la derniere heure de depart possible depuis l'origine de l'arc pour arriver a sa destination au plus tard
+     * a l'heure d'arrivee donnee, pour les trajets donnes dans un tableau a plat (recherche inverse).
+     * Grace a l'elimination des trajets domines, les heures d'arrivee sont croissantes comme les heures de depart :
+     * le dernier trajet arrivant a temps est trouve par recherche dichotomique sur les arrivees.
+     *
+     * @param   packedTrips
+     *          Les temps combines tries de tous les arcs.
+     * @param   from
+     *          L'indice du premier trajet de l'arc (inclus).
+     * @param   to
+     *          L'indice du dernier trajet de l'arc (exclu).
+     * @param   walkingTime
+     *          Le temps de marche de l'arc, -1 s'il n'est pas possible de marcher.
+     * @param   arrivalTime
+     *          L'heure d'arrivee au plus tard.
+     * @return  La derniere heure de depart possible
+     *          ou le temps de marche correspondant
+     *          ou -SecondsPastMidnight.INFINITE si aucun trajet n'est possible.
+     */
+    static int latestDepartureTime(int[] packedTrips, int from, int to, int walkingTime, int arrivalTime) {
+        int index = arrivalUpperBound(packedTrips, from, to, arrivalTime) - 1; // dernier trajet arrivant a temps
+        int tripTime = (index >= from) ? unpackTripDepartureTime(packedTrips[index]): -SecondsPastMidnight.INFINITE;
+        if (walkingTime < 0)
+            return tripTime;
+        return Math.max(tripTime, arrivalTime - walkingTime);
+    }
+
+    /**
+     * Retourne la derniere heure de depart possible pour arriver au plus tard a l'heure donnee, en ne prenant que les trajets
+     * des services actifs. Les arrivees n'etant pas croissantes d'un service a l'autre, les trajets sont parcourus depuis le dernier
+     * depart possible jusqu'a ce que leur depart ne puisse plus ameliorer le meilleur depart trouve.
+     *
+     * @param   packedTrips
+     *          Les temps combines tries de tous les arcs.
+     * @param   tripServices
+     *          Les identifiants des services des trajets (-1 : toujours actif), ou null si tous sont actifs.
+     * @param   activeServices
+     *          Les identifiants des services actifs, ou null si tous le sont.
+     * @param   from
+     *          L'indice du premier trajet de l'arc (inclus).
+     * @param   to
+     *          L'indice du dernier trajet de l'arc (exclu).
+     * @param   walkingTime
+     *          Le temps de marche de l'arc, -1 s'il n'est pas possible de marcher.
+     * @param   arrivalTime
+     *          L'heure d'arrivee au plus tard.
+     * @return  La derniere heure de depart possible
+     *          ou le temps de marche correspondant
+     *          ou -SecondsPastMidnight.INFINITE si aucun trajet n'est possible.
+     */
+    static int latestDepartureTime(int[] packedTrips, int[] tripServices, BitSet activeServices, int from, int to, int walkingTime, int arrivalTime) {
+        if (tripServices == null) // trajets elimines sur tout l'arc
+            return latestDepartureTime(packedTrips, from, to, walkingTime, arrivalTime);
+
+        int best = (walkingTime < 0) ? -SecondsPastMidnight.INFINITE: arrivalTime - walkingTime;
+        int key = (Math.min(arrivalTime, MAX_DEPARTURE_TIME) + 1) << 14; // aucun trajet ne part apres l'arrivee
+        for (int t = lowerBound(packedTrips, from, to, key) - 1; t >= from; --t) {
+            int packedTrip = packedTrips[t];
+            if (unpackTripDepartureTime(packedTrip) <= best)
+                break; // les trajets precedents partent encore plus tot
+            int service = tripServices[t];
+            if ((service < 0 || activeServices == null || activeServices.get(service)) && unpackTripArrivalTime(packedTrip) <= arrivalTime)
+                best = unpackTripDepartureTime(packedTrip);
+        }
+        return best;
+    }
+
+    /**
+     * Retourne vrai ssi le trajet donne d'un tableau a plat est actif.
+     *
+     * @param   tripServices
+     *          Les identifiants des services des trajets (-1 : toujours actif), ou null si tous sont actifs.
+     * @param   activeServices
+     *          Les identifiants des services actifs, ou null si tous le sont.
+     * @param   trip
+     *          L'indice du trajet.
+     * @return  Vrai ssi le trajet est actif.
+     */
+    static boolean isActive(int[] tripServices, BitSet activeServices, int trip) {
+        return tripServices == null || activeServices == null || tripServices[trip] < 0 || activeServices.get(tripServices[trip]);
+    }
+
+    /**
+     * Retourne l'indice du premier element superieur ou egal a la cle dans l'intervalle trie donne, ou to s'il n'y en a pas.
+     * La boucle a un nombre fixe d'iterations et sa seule condition se compile en deplacement conditionnel (sans saut).
+     * 
+     * @param   sorted
+     *          Le tableau trie.
+     * @param   from
+     *          Le debut de l'intervalle (inclus).
+     * @param   to
+     *          La fin de l'intervalle (exclue).
+     * @param   key
+     *          La cle recherchee.
+     * @return  L'indice du premier element superieur ou egal a la cle.
+     */
+    static int lowerBound(int[] sorted, int from, int to, int key) {
+        int n = to - from;
+        if (n <= 0)
+            return from;
+
+        int base = from;
+        while (n > 1) {
+            int half = n >>> 1;
+            base = (sorted[base + half] < key) ? base + half: base;
+            n -= half;
         }
+        return (sorted[base] < key) ? base + 1: base;
+    }
+
+    // retourne l'indice du premier trajet arrivant apres l'heure donnee dans un intervalle de trajets aux arrivees croissantes (comme lowerBound)
+    private static int arrivalUpperBound(int[] packedTrips, int from, int to, int arrivalTime) {
+        int n = to - from;
+        if (n <= 0)
+            return from;
+
+        int base = from;
+        while (n > 1) {
+            int half = n >>> 1;
+            base = (unpackTripArrivalTime(packedTrips[base + half]) <= arrivalTime) ? base + half: base;
+            n -= half;
+        }
+        return (unpackTripArrivalTime(packedTrips[base]) <= arrivalTime) ? base + 1: base;
+    }
+
+    // retourne l'heure d'arrivee du trajet a l'indice donne (grace a l'elimination des trajets domines, c'est le plus rapide) ou a pied
+    private static int arrivalTime(int[] packedTrips, int index, int to, int walkingTime, int departureTime) {
+        int tripTime = (index < to) ? unpackTripArrivalTime(packedTrips[index]): SecondsPastMidnight.INFINITE;
+        if (walkingTime < 0)
+            return tripTime;
+        return Math.min(tripTime, Math.min(departureTime + walkingTime, SecondsPastMidnight.INFINITE));
+    }
+
+    /**
+     * Accesseur en lecture du temps de marche de l'arc.
+     * 
+     * @return  Le temps de marche, -1 s'il n'est pas possible d'y acceder a pied.
+     */
+    int walkingTime() {
+        return walkingTime;
+    }
+
+    /**
+     * Retourne le nombre de trajets de l'arc.
+     * 
+     * @return  Le nombre de trajets.
+     */
+    int tripCount() {
+        return packedTrips.length;
+    }
+
+    /**
+     * Copie les temps combines tries de l'arc dans le tableau donne.
+     * 
+     * @param   destination
+     *          Le tableau de destination.
+     * @param   offset
+     *          L'indice de la premiere copie.
+     * @return  L'indice suivant la derniere copie.
+     */
+    int copyPackedTrips(int[] destination, int offset) {
+        System.arraycopy(packedTrips, 0, destination, offset, packedTrips.length);
+        return offset + packedTrips.length;
+    }
+
+    /**
+     * Copie les identifiants des services des trajets de l'arc (-1 s'ils n'en ont pas) dans le tableau donne, dans l'ordre des temps combines.
+     *
+     * @param   destination
+     *          Le tableau de destination.
+     * @param   offset
+     *          L'indice de la premiere copie.
+     * @return  L'indice suivant la derniere copie.
+     */
+    int copyTripServices(int[] destination, int offset) {
+        if (tripServices == null)
+            Arrays.fill(destination, offset, offset + packedTrips.length, -1);
+        else
+            System.arraycopy(tripServices, 0, destination, offset, tripServices.length);
+        return offset + packedTrips.length;
+    }
+
+    /**
+     * Retourne vrai ssi des trajets de l'arc sont associes a un service.
+     *
+     * @return  Vrai ssi l'arc a des services.
+     */
+    boolean hasTripServices() {
+        return tripServices != null;
+    }
+
+    // convertit un ensemble de temps combines en tableau
+    private static int[] toArray(Set<Integer> packedTrips) {
+        int[] array = new int[packedTrips.size()];
+        int i = 0;
+        for (int packedTrip : packedTrips) {
+            array[i++] = packedTrip;
+        }
+        return array;
+    }
+
+    /*
+     * Trie les temps combines et elimine les trajets domines, c'est-a-dire ceux pour lesquels un autre trajet part
+     * au plus tot en meme temps et arrive strictement plus tot : ils ne peuvent jamais faire partie d'un chemin le plus rapide.
+     * Apres elimination, les heures de depart et d'arrivee sont strictement croissantes : le premier depart possible est aussi la premiere arrivee.
+     */
+    private static int[] pruneDominatedTrips(int[] packedTrips, int count) {
+
+        Arrays.sort(packedTrips, 0, count); // tri par depart puis par duree
+
+        int unique = 0;
+        for (int i = 0; i < count; ++i) { // pour un meme depart, on ne garde que la duree la plus courte (la premiere)
+            if (unique == 0 || unpackTripDepartureTime(packedTrips[unique-1]) != unpackTripDepartureTime(packedTrips[i]))
+                packedTrips[unique++] = packedTrips[i];
+        }
+
+        int kept = unique;
+        int minArrivalTime = Integer.MAX_VALUE;
+        for (int i = unique-1; i >= 0; --i) { // parcourt depuis le dernier depart en conservant les arrivees strictement plus tot
+            int arrivalTime = unpackTripArrivalTime(packedTrips[i]);
+            if (arrivalTime < minArrivalTime) {
+                minArrivalTime = arrivalTime;
+                packedTrips[--kept] = packedTrips[i];
+            }
+        }
+        return Arrays.copyOfRange(packedTrips, kept, unique);
+    }
+
+    /*
+     * Elimine les trajets domines par un trajet du meme service, puis retourne tous les trajets restants tries par temps combine.
+     * Chaque trajet est rendu dans un long : temps combine dans les 32 bits de poids fort, service dans ceux de poids faible.
+     */
+    private static long[] pruneDominatedTripsByService(int[] packedTrips, int[] tripServices, int count) {
+
+        final long[] trips = new long[count];
+        for (int i = 0; i < count; ++i) { // regroupement par service
+            trips[i] = (long) tripServices[i] << 32 | packedTrips[i];
+        }
+        Arrays.sort(trips);
+
+        final int[] group = new int[count];
+        int kept = 0;
+        for (int from = 0; from < count;) {
+            int service = (int) (trips[from] >> 32), to = from;
+            while (to < count && (int) (trips[to] >> 32) == service) {
+                group[to - from] = (int) trips[to];
+                ++to;
+            }
+            for (int packedTrip : pruneDominatedTrips(group, to - from)) {
+                trips[kept++] = (long) packedTrip << 32 | (service & 0xFFFFFFFFL);
+            }
+            from = to;
+        }
+        Arrays.sort(trips, 0, kept);
+        return Arrays.copyOf(trips, kept);
     }
 
     /**
@@ -134,7 +523,9 @@ final class GraphEdge {
     public final static class Builder {
 
         private final Stop destination;
-        private final Set<Integer> packedTrips;
+        private int[] packedTrips;
+        private int[] tripServices; // null tant qu'aucun trajet n'a de service
+        private int tripCount;
         private int walkingTime;
         /**
          * Constructeur public d'un batisseur d'arc de graphe.
@@ -145,7 +536,8 @@ final class GraphEdge {
         public Builder(Stop destination) {
             this.destination = destination;
             this.walkingTime = -1;
-            this.packedTrips = new HashSet<>();
+            this.packedTrips = new int[4];
+            this.tripCount = 0;
         }
 
         /**
@@ -178,17 +570,96 @@ final class GraphEdge {
          * @return  Le batisseur.
          */
         public Builder addTrip(int departureTime, int arrivalTime) {
-            packedTrips.add(packTrip(departureTime, arrivalTime)); // lance deja IllegalArgumentException si le temps n'est pas valide 
+            int packedTrip = packTrip(departureTime, arrivalTime); // lance deja IllegalArgumentException si le temps n'est pas valide 
+            if (tripCount == packedTrips.length)
+                packedTrips = Arrays.copyOf(packedTrips, 2*tripCount);
+            packedTrips[tripCount++] = packedTrip; // les doublons sont elimines a la construction
+            if (tripServices != null)
+                setTripService(tripCount-1, -1);
+            return this;
+        }
+
+        /**
+         * Ajoute un trajet d'un service a l'arc en construction.
+         * Permet les appels chaines.
+         *
+         * @param   departureTime
+         *          Le temps de depart de l'arc en construction.
+         * @param   arrivalTime
+         *          Le temps d'arrive de l'arc en construction.
+         * @param   service
+         *          L'identifiant du service du trajet (positif ou nul).
+         * @return  Le batisseur.
+         */
+        Builder addTrip(int departureTime, int arrivalTime, int service) {
+            addTrip(departureTime, arrivalTime);
+            setTripService(tripCount-1, service);
+            return this;
+        }
+
+        /**
+         * Ajoute les trajets et le temps de marche (s'il existe) d'un autre batisseur du meme arc.
+         * Permet les appels chaines.
+         *
+         * @param   that
+         *          Le batisseur fusionne, qui n'est pas modifie.
+         * @return  Le batisseur.
+         */
+        Builder merge(Builder that) {
+            return merge(that, null);
+        }
+
+        /**
+         * Ajoute les trajets et le temps de marche (s'il existe) d'un autre batisseur du meme arc, dont les identifiants de services
+         * sont traduits par la table donnee.
+         * Permet les appels chaines.
+         *
+         * @param   that
+         *          Le batisseur fusionne, qui n'est pas modifie.
+         * @param   serviceIds
+         *          Les identifiants dans ce batisseur des services de l'autre, indexes par leur identifiant dans l'autre
+         *          (null si les identifiants sont les memes).
+         * @return  Le batisseur.
+         */
+        Builder merge(Builder that, int[] serviceIds) {
+            final int offset = tripCount;
+            if (tripCount + that.tripCount > packedTrips.length)
+                packedTrips = Arrays.copyOf(packedTrips, Math.max(2*packedTrips.length, tripCount + that.tripCount));
+            System.arraycopy(that.packedTrips, 0, packedTrips, tripCount, that.tripCount);
+            tripCount += that.tripCount;
+
+            if (tripServices != null || that.tripServices != null) {
+                for (int i = 0; i < that.tripCount; ++i) {
+                    int service = (that.tripServices == null) ? -1: that.tripServices[i];
+                    setTripService(offset + i, (service >= 0 && serviceIds != null) ? serviceIds[service]: service);
+                }
+            }
+            if (that.walkingTime >= 0)
+                walkingTime = that.walkingTime;
             return this;
         }
 
+        // fixe le service du trajet donne, en creant (trajets precedents toujours actifs) ou agrandissant le tableau des services
+        private void setTripService(int trip, int service) {
+            if (tripServices == null) {
+                tripServices = new int[packedTrips.length];
+                Arrays.fill(tripServices, -1);
+            } else if (tripServices.length < packedTrips.length) {
+                int length = tripServices.length;
+                tripServices = Arrays.copyOf(tripServices, packedTrips.length);
+                Arrays.fill(tripServices, length, tripServices.length, -1);
+            }
+            tripServices[trip] = service;
+        }
+
         /**
          * Construit l'arc de graphe a partir du batisseur.
          * 
          * @return  L'arc de graphe.
          */
         public GraphEdge build() {
-            return new GraphEdge(destination, walkingTime, packedTrips);
+            return new GraphEdge(destination, walkingTime, Arrays.copyOf(packedTrips, tripCount),
+                    (tripServices == null) ? null: Arrays.copyOf(tripServices, tripCount), tripCount);
         }
     }
 }
@@ -0,0 +1,489 @@
+package ch.epfl.isochrone.timetable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+/**
+ * Un lecteur d'horaire depuis une archive GTFS (stops.txt, trips.txt, stop_times.txt, calendar.txt, calendar_dates.txt et
+ * transfers.txt), lue directement dans le zip. Les colonnes sont retrouvees par leur nom dans l'en-tete ; les trajets d'arret
+ * en arret sont deduits au fil de la lecture de stop_times.txt, course par course, sans garder le fichier en memoire : les lignes
+ * d'une meme course doivent donc y etre consecutives (dans n'importe quel ordre), sinon la lecture du graphe echoue.
+ * Les arrets sont crees une seule fois par lecteur : les graphes doivent etre construits avec les arrets de sa table des horaires.
+ */
+public final class GtfsReader implements TimeTableSource {
+
+    private static final int MAX_DEPARTURE_TIME = 107999; // les bornes de GraphEdge.packTrip
+    private static final int MAX_TRIP_DURATION = 9999;
+    private static final int EXCEPTION_ADDED = 1;
+    private static final int EXCEPTION_REMOVED = 2;
+    private static final int TRANSFER_NOT_POSSIBLE = 3;
+
+    private final Path file;
+    private Map<String, Stop> stopsById;
+
+    /**
+     * Constructeur public d'un lecteur de l'archive GTFS donnee.
+     *
+     * @param   file
+     *          Le fichier zip GTFS.
+     */
+    public GtfsReader(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Lit et retourne les arrets (stops.txt, hors gares et entrees) et les services (calendar.txt et calendar_dates.txt).
+     * Un service uniquement defini par des dates incluses n'a aucun jour d'operation regulier.
+     *
+     * @return  La table des horaires.
+     * @throws  IOException
+     *          En cas d'erreur de lecture ou de fichier obligatoire absent.
+     */
+    @Override
+    public TimeTable readTimeTable() throws IOException {
+
+        final TimeTable.Builder builder = new TimeTable.Builder();
+        for (Stop s : stopsById().values()) {
+            builder.addStop(s);
+        }
+
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+
+            // calendar.txt : service_id, monday..sunday, start_date, end_date
+            final Map<String, int[]> calendars = new HashMap<>(); // debut, fin, jours d'operation (un bit par jour)
+            final String[] dayColumns = {"monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday"};
+            Table calendar = Table.open(zip, "calendar.txt", false);
+            if (calendar != null) {
+                try {
+                    while (calendar.next()) {
+                        int days = 0;
+                        for (int day = 0; day < 7; ++day) {
+                            if ("1".equals(calendar.get(dayColumns[day])))
+                                days |= 1 << day;
+                        }
+                        calendars.put(calendar.get("service_id"), new int[] {
+                                Integer.parseInt(calendar.get("start_date")), Integer.parseInt(calendar.get("end_date")), days});
+                    }
+                } finally {
+                    calendar.close();
+                }
+            }
+
+            // calendar_dates.txt : service_id, date, exception_type
+            final Map<String, Set<Integer>> included = new HashMap<>(), excluded = new HashMap<>();
+            Table dates = Table.open(zip, "calendar_dates.txt", false);
+            if (dates != null) {
+                try {
+                    while (dates.next()) {
+                        int type = Integer.parseInt(dates.get("exception_type"));
+                        Map<String, Set<Integer>> target = (type == EXCEPTION_ADDED) ? included: (type == EXCEPTION_REMOVED) ? excluded: null;
+                        if (target == null)
+                            continue;
+                        String service = dates.get("service_id");
+                        if (!target.containsKey(service))
+                            target.put(service, new HashSet<Integer>());
+                        target.get(service).add(Integer.parseInt(dates.get("date")));
+                    }
+                } finally {
+                    dates.close();
+                }
+            }
+
+            final Set<String> serviceIds = new HashSet<>(calendars.keySet());
+            serviceIds.addAll(included.keySet());
+            for (String id : serviceIds) {
+                builder.addService(buildService(id, calendars.get(id), included.get(id), excluded.get(id)));
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Lit et retourne le graphe des arrets et services donnes : trajets entre arrets consecutifs des courses des services
+     * actifs, trajets a pied, puis correspondances de transfers.txt (temps minimal de correspondance, qui remplace le temps de marche).
+     *
+     * @param   stops
+     *          Les arrets inclus dans le graphe, provenant de la table des horaires de ce lecteur.
+     * @param   services
+     *          Les services actifs dans le graphe.
+     * @param   walkingTime
+     *          Le temps de marche maximal.
+     * @param   walkingSpeed
+     *          La vitesse de marche (m/s).
+     * @return  Le graphe.
+     * @throws  IOException
+     *          En cas d'erreur de lecture, de fichier obligatoire absent ou de course aux lignes non consecutives.
+     */
+    @Override
+    public Graph readGraphForServices(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) throws IOException {
+        return readGraph(stops, services, walkingTime, walkingSpeed, false);
+    }
+
+    /**
+     * Lit et retourne le graphe maitre des arrets et services donnes, dont chaque trajet est associe au service de sa course.
+     *
+     * @param   stops
+     *          Les arrets inclus dans le graphe, provenant de la table des horaires de ce lecteur.
+     * @param   services
+     *          Tous les services dont les trajets sont inclus dans le graphe.
+     * @param   walkingTime
+     *          Le temps de marche maximal.
+     * @param   walkingSpeed
+     *          La vitesse de marche (m/s).
+     * @return  Le graphe maitre.
+     * @throws  IOException
+     *          En cas d'erreur de lecture, de fichier obligatoire absent ou de course aux lignes non consecutives.
+     */
+    @Override
+    public Graph readMasterGraph(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) throws IOException {
+        return readGraph(stops, services, walkingTime, walkingSpeed, true);
+    }
+
+    // lit le graphe des arrets et services donnes, dont les trajets sont associes a leur service si demande
+    private Graph readGraph(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed, boolean withServices) throws IOException {
+
+        final Map<String, Stop> stopsById = new HashMap<>(); // uniquement les arrets du graphe
+        for (Map.Entry<String, Stop> e : stopsById().entrySet()) {
+            if (stops.contains(e.getValue()))
+                stopsById.put(e.getKey(), e.getValue());
+        }
+        final Map<String, Service> servicesById = new HashMap<>();
+        for (Service s : services) {
+            servicesById.put(s.name(), s);
+        }
+
+        final Graph.Builder builder = new Graph.Builder(stops);
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+
+            // trips.txt : trip_id, service_id
+            final Map<String, Service> activeTrips = new HashMap<>(); // service de chaque course des services donnes
+            Table trips = Table.open(zip, "trips.txt", true);
+            try {
+                while (trips.next()) {
+                    Service service = servicesById.get(trips.get("service_id"));
+                    if (service != null)
+                        activeTrips.put(trips.get("trip_id"), service);
+                }
+            } finally {
+                trips.close();
+            }
+
+            // stop_times.txt : trip_id, arrival_time, departure_time, stop_id, stop_sequence ; une course a la fois
+            final List<int[]> tripRows = new ArrayList<>(); // sequence, indice de l'arret, arrivee, depart
+            final List<Stop> tripStops = new ArrayList<>();
+            final Set<String> readTrips = new HashSet<>(); // courses deja terminees
+            String currentTrip = null;
+            Service currentService = null; // null si la course n'est pas a inclure
+            Table stopTimes = Table.open(zip, "stop_times.txt", true);
+            try {
+                while (stopTimes.next()) {
+                    String trip = stopTimes.get("trip_id");
+                    if (!trip.equals(currentTrip)) {
+                        addHops(builder, tripRows, tripStops, withServices ? currentService: null);
+                        if (currentTrip != null)
+                            readTrips.add(currentTrip);
+                        if (readTrips.contains(trip)) // le trajet entre les deux blocs serait perdu
+                            throw new IOException("lignes non consecutives dans stop_times.txt pour la course : "+trip);
+                        currentTrip = trip;
+                        currentService = activeTrips.get(trip);
+                    }
+                    if (currentService == null)
+                        continue;
+
+                    tripStops.add(stopsById.get(stopTimes.get("stop_id"))); // null si l'arret n'est pas dans le graphe
+                    tripRows.add(new int[] {
+                            Integer.parseInt(stopTimes.get("stop_sequence")), tripStops.size() - 1,
+                            parseTime(stopTimes.get("arrival_time")), parseTime(stopTimes.get("departure_time"))});
+                }
+                addHops(builder, tripRows, tripStops, withServices ? currentService: null);
+            } finally {
+                stopTimes.close();
+            }
+
+            builder.addAllWalkEdges(walkingTime, walkingSpeed);
+
+            // transfers.txt : from_stop_id, to_stop_id, transfer_type, min_transfer_time
+            Table transfers = Table.open(zip, "transfers.txt", false);
+            if (transfers != null) {
+                try {
+                    while (transfers.next()) {
+                        Stop from = stopsById.get(transfers.get("from_stop_id")), to = stopsById.get(transfers.get("to_stop_id"));
+                        String type = transfers.get("transfer_type"), time = transfers.get("min_transfer_time");
+                        if (from != null && to != null && from != to && !time.isEmpty()
+                                && (type.isEmpty() || Integer.parseInt(type) != TRANSFER_NOT_POSSIBLE))
+                            builder.addWalkEdge(from, to, Integer.parseInt(time));
+                    }
+                } finally {
+                    transfers.close();
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    // lit (une seule fois) les arrets de stops.txt, indexes par identifiant GTFS
+    private Map<String, Stop> stopsById() throws IOException {
+        if (stopsById != null)
+            return stopsById;
+
+        final Map<String, Stop> stops = new HashMap<>();
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            // stops.txt : stop_id, stop_name, stop_lat, stop_lon, location_type
+            Table table = Table.open(zip, "stops.txt", true);
+            try {
+                while (table.next()) {
+                    String type = table.get("location_type");
+                    if (!type.isEmpty() && !type.equals("0")) // gares, entrees et noeuds ne sont pas des arrets
+                        continue;
+                    double latitude = Math.toRadians(Double.parseDouble(table.get("stop_lat")));
+                    double longitude = Math.toRadians(Double.parseDouble(table.get("stop_lon")));
+                    stops.put(table.get("stop_id"), new Stop(table.get("stop_name"), new PointWGS84(longitude, latitude)));
+                }
+            } finally {
+                table.close();
+            }
+        }
+        stopsById = Collections.unmodifiableMap(stops);
+        return stopsById;
+    }
+
+    // ajoute les trajets entre arrets horaires consecutifs de la course lue (triee par sequence), associes au service s'il est non nul, puis la vide
+    private static void addHops(Graph.Builder builder, List<int[]> rows, List<Stop> stops, Service service) {
+
+        Collections.sort(rows, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] r1, int[] r2) {
+                return Integer.compare(r1[0], r2[0]);
+            }
+        });
+
+        int[] previous = null;
+        for (int[] row : rows) {
+            if (row[2] < 0 && row[3] < 0)
+                continue; // arret sans horaire : le trajet relie les arrets horaires qui l'entourent
+            int arrival = (row[2] >= 0) ? row[2]: row[3], departure = (row[3] >= 0) ? row[3]: row[2];
+
+            if (previous != null) {
+                Stop from = stops.get(previous[1]), to = stops.get(row[1]);
+                int previousDeparture = (previous[3] >= 0) ? previous[3]: previous[2];
+                boolean valid = from != null && to != null && from != to && previousDeparture <= MAX_DEPARTURE_TIME
+                        && arrival >= previousDeparture && arrival - previousDeparture <= MAX_TRIP_DURATION;
+                if (valid && service != null)
+                    builder.addTripEdge(from, to, previousDeparture, arrival, service);
+                else if (valid)
+                    builder.addTripEdge(from, to, previousDeparture, arrival);
+            }
+            previous = new int[] {row[0], row[1], arrival, departure};
+        }
+        rows.clear();
+        stops.clear();
+    }
+
+    // construit un service GTFS ; les dates incluses hors de l'intervalle l'elargissent sans y ajouter de jours reguliers
+    private static Service buildService(String id, int[] calendar, Set<Integer> included, Set<Integer> excluded) {
+
+        final Set<Integer> includedDates = (included == null) ? Collections.<Integer>emptySet(): included;
+        final Set<Integer> excludedDates = (excluded == null) ? Collections.<Integer>emptySet(): excluded;
+        int start = (calendar == null) ? Integer.MAX_VALUE: calendar[0];
+        int end = (calendar == null) ? Integer.MIN_VALUE: calendar[1];
+        final int days = (calendar == null) ? 0: calendar[2];
+        final int regularStart = start, regularEnd = end;
+        for (int d : includedDates) {
+            start = Math.min(start, d);
+            end = Math.max(end, d);
+        }
+
+        final Date startingDate = dateFromInt(start), endingDate = dateFromInt(end);
+        final Service.Builder b = new Service.Builder(id, startingDate, endingDate);
+        for (Date.DayOfWeek day : Date.DayOfWeek.values()) {
+            if ((days & (1 << day.ordinal())) != 0)
+                b.addOperatingDay(day);
+        }
+        for (int d : includedDates) {
+            if (!excludedDates.contains(d))
+                b.addIncludedDate(dateFromInt(d));
+        }
+        for (int d : excludedDates) {
+            if (d >= start && d <= end && !includedDates.contains(d))
+                b.addExcludedDate(dateFromInt(d));
+        }
+
+        // les jours reguliers de l'intervalle elargi, hors de l'intervalle du calendrier, sont exclus
+        if (days != 0) {
+            for (Date d = startingDate; d.compareTo(endingDate) <= 0; d = d.relative(1)) {
+                int date = SnapshotWriter.dateToInt(d);
+                if ((date < regularStart || date > regularEnd) && (days & (1 << d.dayOfWeek().ordinal())) != 0
+                        && !includedDates.contains(date))
+                    b.addExcludedDate(d);
+            }
+        }
+        return b.build();
+    }
+
+    // convertit une heure GTFS (H:MM:SS, eventuellement au-dela de 24h) en secondes, -1 si elle est vide
+    static int parseTime(String time) {
+        if (time.isEmpty())
+            return -1;
+        String[] parts = time.trim().split(":");
+        if (parts.length != 3)
+            throw new NumberFormatException("heure GTFS invalide : "+time);
+        int hours = Integer.parseInt(parts[0]), minutes = Integer.parseInt(parts[1]), seconds = Integer.parseInt(parts[2]);
+        if (hours < 0 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59)
+            throw new NumberFormatException("heure GTFS invalide : "+time);
+        return 3600*hours + 60*minutes + seconds; // pas de SecondsPastMidnight.fromHMS : GTFS admet plus de 29 heures
+    }
+
+    // convertit une date du format entier (20000101) en Date
+    private static Date dateFromInt(int date) {
+        return new Date(date % 100, (date / 100) % 100, date / 10000);
+    }
+
+    /**
+     * Un fichier CSV d'une archive GTFS lu ligne par ligne, dont les colonnes sont designees par leur nom d'en-tete.
+     * Les champs peuvent etre entoures de guillemets (guillemets doubles pour un guillemet, virgules et fins de ligne permises).
+     */
+    static final class Table {
+
+        private final BufferedReader reader;
+        private final Map<String, Integer> columns;
+        private final List<String> fields;
+
+        private Table(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            this.fields = new ArrayList<>();
+            this.columns = new HashMap<>();
+            if (readRecord()) {
+                for (int i = 0; i < fields.size(); ++i) {
+                    columns.put(fields.get(i).trim(), i);
+                }
+            }
+        }
+
+        /**
+         * Ouvre le fichier donne de l'archive, ou qu'il soit dans l'arborescence du zip.
+         *
+         * @param   zip
+         *          L'archive.
+         * @param   name
+         *          Le nom du fichier.
+         * @param   required
+         *          Vrai ssi l'absence du fichier est une erreur.
+         * @return  Le fichier, ou null s'il est absent et facultatif.
+         * @throws  IOException
+         *          En cas d'erreur de lecture ou de fichier obligatoire absent.
+         */
+        static Table open(ZipFile zip, String name, boolean required) throws IOException {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().equals(name) || entry.getName().endsWith("/"+name))
+                    return new Table(new BufferedReader(new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)));
+            }
+            if (required)
+                throw new IOException("fichier GTFS introuvable : "+name);
+            return null;
+        }
+
+        /**
+         * Passe a l'enregistrement non vide suivant.
+         *
+         * @return  Vrai ssi un enregistrement a ete lu, faux a la fin du fichier.
+         * @throws  IOException
+         *          En cas d'erreur de lecture.
+         */
+        boolean next() throws IOException {
+            while (readRecord()) {
+                if (fields.size() > 1 || !fields.get(0).isEmpty())
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Retourne le champ de la colonne donnee de l'enregistrement courant.
+         *
+         * @param   column
+         *          Le nom de la colonne.
+         * @return  Le champ, ou la chaine vide si la colonne est absente ou l'enregistrement trop court.
+         */
+        String get(String column) {
+            Integer index = columns.get(column);
+            return (index == null || index >= fields.size()) ? "": fields.get(index);
+        }
+
+        /**
+         * Ferme le fichier.
+         *
+         * @throws  IOException
+         *          En cas d'erreur de lecture.
+         */
+        void close() throws IOException {
+            reader.close();
+        }
+
+        // lit un enregistrement (eventuellement sur plusieurs lignes) dans la liste des champs
+        private boolean readRecord() throws IOException {
+            String line = reader.readLine();
+            if (line == null)
+                return false;
+            if (!line.isEmpty() && line.charAt(0) == '\uFEFF') // marque d'ordre des octets
+                line = line.substring(1);
+
+            fields.clear();
+            final StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == line.length()) {
+                    if (!quoted)
+                        break;
+                    String continuation = reader.readLine(); // fin de ligne dans un champ entre guillemets
+                    if (continuation == null)
+                        break;
+                    field.append('\n');
+                    line = continuation;
+                    i = 0;
+                    continue;
+                }
+                char c = line.charAt(i++);
+                if (quoted) {
+                    if (c == '"' && i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        ++i;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return true;
+        }
+    }
+}
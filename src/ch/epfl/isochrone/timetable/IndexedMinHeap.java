@@ -0,0 +1,152 @@
+package ch.epfl.isochrone.timetable;
+
+import java.util.Arrays;
+
+/**
+ * Un tas binaire minimal d'identifiants entiers (0 a n-1) indexe, permettant la diminution de cle.
+ * Les cles sont lues dans un tableau externe : toute diminution d'une cle doit etre signalee via update.
+ * Classe visible uniquement dans son paquetage.
+ */
+final class IndexedMinHeap {
+
+    private final int[] keys;
+    private final int[] heap;
+    private final int[] positions;
+    private int size;
+
+    /**
+     * Constructeur d'un tas vide dont les cles sont lues dans le tableau donne (non copie).
+     *
+     * @param   keys
+     *          Les cles des identifiants, indexees par identifiant.
+     */
+    public IndexedMinHeap(int[] keys) {
+        this.keys = keys;
+        this.heap = new int[keys.length];
+        this.positions = new int[keys.length];
+        this.size = 0;
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Retourne vrai ssi le tas est vide.
+     *
+     * @return  Vrai ssi le tas ne contient aucun identifiant.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Retourne vrai ssi l'identifiant donne est dans le tas.
+     *
+     * @param   id
+     *          L'identifiant.
+     * @return  Vrai ssi l'identifiant est dans le tas.
+     */
+    public boolean contains(int id) {
+        return positions[id] >= 0;
+    }
+
+    /**
+     * Ajoute l'identifiant donne s'il est absent ou met a jour sa position apres une diminution de sa cle.
+     *
+     * @param   id
+     *          L'identifiant ajoute ou mis a jour.
+     */
+    public void update(int id) {
+        int position = positions[id];
+        if (position < 0) {
+            position = size++;
+            heap[position] = id;
+            positions[id] = position;
+        }
+        siftUp(position);
+    }
+
+    /**
+     * Retire et retourne l'identifiant de cle minimale.
+     *
+     * @return  L'identifiant de cle minimale.
+     * @throws  IllegalStateException
+     *          En cas de tas vide.
+     */
+    public int poll() {
+
+        if (size == 0)
+            throw new IllegalStateException("le tas est vide");
+
+        int min = heap[0];
+        positions[min] = -1;
+        if (--size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    /**
+     * Vide le tas.
+     */
+    public void clear() {
+        for (int i = 0; i < size; ++i) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Vide le tas en donnant la cle donnee a tous les identifiants qu'il contenait.
+     *
+     * @param   key
+     *          La nouvelle cle des identifiants retires.
+     */
+    public void clear(int key) {
+        for (int i = 0; i < size; ++i) {
+            keys[heap[i]] = key;
+        }
+        clear();
+    }
+
+    // remonte l'element a la position donnee tant que sa cle est inferieure a celle de son parent
+    private void siftUp(int position) {
+        int id = heap[position];
+        int key = keys[id];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentId = heap[parent];
+            if (keys[parentId] <= key)
+                break;
+            heap[position] = parentId;
+            positions[parentId] = position;
+            position = parent;
+        }
+        heap[position] = id;
+        positions[id] = position;
+    }
+
+    // descend l'element a la position donnee tant que sa cle est superieure a celle d'un de ses enfants
+    private void siftDown(int position) {
+        int id = heap[position];
+        int key = keys[id];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2*position + 1;
+            int childId = heap[child];
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[childId]) {
+                child = right;
+                childId = heap[right];
+            }
+            if (key <= keys[childId])
+                break;
+            heap[position] = childId;
+            positions[childId] = position;
+            position = child;
+        }
+        heap[position] = id;
+        positions[id] = position;
+    }
+}
@@ -0,0 +1,244 @@
+package ch.epfl.isochrone.timetable;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Un arbre des departs les plus tardifs vers un arret d'arrivee, resultat d'une recherche inverse :
+ * chaque arret est associe a la derniere heure a laquelle on peut en partir pour arriver a temps, et a son successeur
+ * sur le chemin correspondant.
+ * Les temps de depart et les successeurs sont stockes dans des tableaux indexes par identifiant d'arret, comme ceux de
+ * FastestPathTree ; un arbre issu d'un graphe partage la table des identifiants du graphe.
+ * Classe immuable. Possede un constructeur.
+ */
+public final class LatestDepartureTree {
+
+    private final Stop targetStop;
+    private final Stop[] stops; // indexes par identifiant
+    private final Map<Stop, Integer> stopIds;
+    private final int[] departureTimes;
+    private final int[] successors; // -1 pour l'arret d'arrivee
+    private final BitSet reached;
+    private final Set<Stop> reachedStops;
+
+    /**
+     * Constructeur public d'un arbre des departs les plus tardifs. La table des departs doit correspondre avec celle des successeurs
+     * (sans compter l'arret d'arrivee).
+     *
+     * @param   targetStop
+     *          L'arret d'arrivee (racine).
+     * @param   departureTime
+     *          Les derniers temps de depart des arrets, dont le temps d'arrivee a l'arret d'arrivee.
+     * @param   successor
+     *          Les successeurs des arrets.
+     * @throws  IllegalArgumentException
+     *          En cas de pair (temps de depart et arret suivant) ne correspondant pas.
+     */
+    public LatestDepartureTree(Stop targetStop, Map<Stop, Integer> departureTime, Map<Stop, Stop> successor) {
+
+        for (Stop s : departureTime.keySet()) {
+            if (!successor.containsKey(s) && !s.equals(targetStop))
+                throw new IllegalArgumentException("chaque entree dans la table des temps de depart doit correspondre a une entre dans la table des successeurs");
+        }
+        if (!departureTime.containsKey(targetStop))
+            throw new IllegalArgumentException("l'arret d'arrivee doit faire partie de l'arbre : "+targetStop);
+
+        final Map<Stop, Integer> ids = new HashMap<>();
+        for (Stop s : departureTime.keySet()) {
+            ids.put(s, ids.size());
+        }
+        for (Map.Entry<Stop, Stop> e : successor.entrySet()) { // un chemin peut passer par des arrets sans temps de depart
+            for (Stop s : Arrays.asList(e.getKey(), e.getValue())) {
+                if (s != null && !ids.containsKey(s))
+                    ids.put(s, ids.size());
+            }
+        }
+
+        this.targetStop = targetStop;
+        this.stops = new Stop[ids.size()];
+        this.stopIds = ids;
+        this.departureTimes = new int[stops.length];
+        this.successors = new int[stops.length];
+        this.reached = new BitSet(stops.length);
+
+        Arrays.fill(departureTimes, -SecondsPastMidnight.INFINITE);
+        Arrays.fill(successors, -1);
+        for (Map.Entry<Stop, Integer> e : ids.entrySet()) {
+            stops[e.getValue()] = e.getKey();
+        }
+        for (Map.Entry<Stop, Integer> e : departureTime.entrySet()) {
+            int id = ids.get(e.getKey());
+            departureTimes[id] = e.getValue();
+            reached.set(id);
+        }
+        for (Map.Entry<Stop, Stop> e : successor.entrySet()) {
+            if (e.getValue() != null)
+                successors[ids.get(e.getKey())] = ids.get(e.getValue());
+        }
+        successors[ids.get(targetStop)] = -1;
+        this.reachedStops = new ReachedStops();
+    }
+
+    // constructeur prive d'un arbre adoptant (sans copie) les tableaux de la recherche inverse
+    private LatestDepartureTree(Stop[] stops, Map<Stop, Integer> stopIds, int targetStop, int[] departureTimes, int[] successors) {
+
+        this.targetStop = stops[targetStop];
+        this.stops = stops;
+        this.stopIds = stopIds;
+        this.departureTimes = departureTimes;
+        this.successors = successors;
+        this.reached = new BitSet(stops.length);
+
+        for (int id = 0; id < stops.length; ++id) {
+            if (departureTimes[id] > -SecondsPastMidnight.INFINITE)
+                reached.set(id);
+        }
+        successors[targetStop] = -1;
+        this.reachedStops = new ReachedStops();
+    }
+
+    /**
+     * Accesseur en lecture de l'arret d'arrivee.
+     *
+     * @return  L'arret d'arrivee.
+     */
+    public Stop targetStop() {
+        return targetStop;
+    }
+
+    /**
+     * Accesseur en lecture du temps d'arrivee.
+     *
+     * @return  Le temps d'arrivee au plus tard a l'arret d'arrivee (racine).
+     */
+    public int arrivalTime() {
+        return departureTimes[stopIds.get(targetStop)];
+    }
+
+    /**
+     * Retourne l'ensemble des arrets de l'arbre.
+     *
+     * @return  Les arrets de l'arbre, dans l'ordre des identifiants.
+     */
+    public Set<Stop> stops() {
+        return reachedStops;
+    }
+
+    /**
+     * Retourne le dernier temps de depart d'un arret donne permettant d'arriver a temps.
+     *
+     * @param   stop
+     *          L'arret.
+     * @return  Le dernier temps de depart de l'arret ou
+     *          -SecondsPastMidnight.INFINITE si l'arret n'est pas dans l'arbre.
+     */
+    public int departureTime(Stop stop) {
+        final int id = reachedId(stop);
+        return (id < 0) ? -SecondsPastMidnight.INFINITE: departureTimes[id];
+    }
+
+    /**
+     * Retourne une liste des arrets decrivant un chemin partant le plus tard possible de l'arret donne jusqu'a l'arret d'arrivee (racine).
+     *
+     * @param   stop
+     *          L'arret de depart.
+     * @return  La liste des arrets avec en premier l'arret donne, puis tous les arrets jusqu'a l'arret d'arrivee.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret de depart ne faisant pas partie de l'arbre.
+     */
+    public List<Stop> pathFrom(Stop stop) {
+
+        final int id = reachedId(stop);
+        if (id < 0)
+            throw new IllegalArgumentException("l'arret de depart doit faire partie de l'arbre : "+stop);
+
+        int length = 0;
+        for (int current = id; current >= 0; current = successors[current]) {
+            ++length;
+        }
+        final Stop[] path = new Stop[length];
+        length = 0;
+        for (int current = id; current >= 0; current = successors[current]) {
+            path[length++] = stops[current];
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(path));
+    }
+
+    // identifiant de l'arret donne s'il fait partie de l'arbre, -1 sinon
+    private int reachedId(Stop stop) {
+        final Integer id = stopIds.get(stop);
+        return (id != null && reached.get(id)) ? id: -1;
+    }
+
+    /**
+     * Construit un arbre des departs les plus tardifs a partir des tableaux indexes par identifiant d'arret de la recherche inverse.
+     * Les arrets dont le temps de depart vaut -SecondsPastMidnight.INFINITE ne font pas partie de l'arbre.
+     * Les tableaux sont adoptes sans copie : ils ne doivent plus etre modifies.
+     *
+     * @param   stops
+     *          Les arrets, indexes par identifiant.
+     * @param   stopIds
+     *          Les identifiants des arrets.
+     * @param   targetStop
+     *          L'identifiant de l'arret d'arrivee (racine).
+     * @param   departureTimes
+     *          Les temps de depart, indexes par identifiant.
+     * @param   successors
+     *          Les identifiants des successeurs, indexes par identifiant.
+     * @return  L'arbre des departs les plus tardifs.
+     */
+    static LatestDepartureTree fromArrays(Stop[] stops, Map<Stop, Integer> stopIds, int targetStop, int[] departureTimes, int[] successors) {
+        return new LatestDepartureTree(stops, stopIds, targetStop, departureTimes, successors);
+    }
+
+    // vue des arrets de l'arbre, parcourus dans l'ordre des identifiants
+    private final class ReachedStops extends AbstractSet<Stop> {
+
+        private final int size = reached.cardinality();
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return (o instanceof Stop) && reachedId((Stop) o) >= 0;
+        }
+
+        @Override
+        public Iterator<Stop> iterator() {
+            return new Iterator<Stop>() {
+                private int next = reached.nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public Stop next() {
+                    if (next < 0)
+                        throw new NoSuchElementException();
+                    final Stop stop = stops[next];
+                    next = reached.nextSetBit(next + 1);
+                    return stop;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
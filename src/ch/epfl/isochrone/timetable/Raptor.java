@@ -0,0 +1,537 @@
+package ch.epfl.isochrone.timetable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Un moteur de recherche des chemins les plus rapides par tours (RAPTOR) : le tour k trouve les arrivees utilisant k vehicules.
+ * Les courses (un meme vehicule) sont regroupees en lignes de meme suite d'arrets sans depassement ; chaque tour parcourt une
+ * seule fois les lignes passant par les arrets ameliores au tour precedent, en parallele lorsqu'elles sont nombreuses.
+ * Classe immuable. Possede un constructeur.
+ */
+public final class Raptor implements RoutingEngine {
+
+    /**
+     * Nombre de correspondances illimite.
+     */
+    public static final int UNLIMITED_TRANSFERS = Integer.MAX_VALUE;
+
+    private static final int PARALLEL_ROUTES = 256; // nombre de lignes a parcourir a partir duquel un tour est parallelise
+
+    private final Graph graph;
+
+    // les arrets de la ligne r sont les indices [routeStopOffsets[r], routeStopOffsets[r+1]) de routeStops
+    private final int[] routeStopOffsets;
+    private final int[] routeStops;
+
+    // la ligne r a routeTripCounts[r] courses, l'heure de la course j a la position i est a l'indice routeTimeOffsets[r] + j*longueur + i
+    private final int[] routeTripCounts;
+    private final int[] routeTimeOffsets;
+    private final int[] arrivalTimes;
+    private final int[] departureTimes;
+
+    // les lignes passant par l'arret s sont les indices [stopRouteOffsets[s], stopRouteOffsets[s+1]), avec leur position dans la ligne
+    private final int[] stopRouteOffsets;
+    private final int[] stopRoutes;
+    private final int[] stopRoutePositions;
+
+    /**
+     * Constructeur prive du routeur, utilise par le batisseur.
+     */
+    private Raptor(Graph graph, int[] routeStopOffsets, int[] routeStops, int[] routeTripCounts, int[] routeTimeOffsets, int[] arrivalTimes, int[] departureTimes) {
+
+        this.graph = graph;
+        this.routeStopOffsets = routeStopOffsets;
+        this.routeStops = routeStops;
+        this.routeTripCounts = routeTripCounts;
+        this.routeTimeOffsets = routeTimeOffsets;
+        this.arrivalTimes = arrivalTimes;
+        this.departureTimes = departureTimes;
+
+        // index inverse : lignes par arret
+        final int stopCount = graph.stopCount();
+        this.stopRouteOffsets = new int[stopCount + 1];
+        for (int s : routeStops) {
+            ++stopRouteOffsets[s + 1];
+        }
+        for (int s = 0; s < stopCount; ++s) {
+            stopRouteOffsets[s + 1] += stopRouteOffsets[s];
+        }
+        this.stopRoutes = new int[routeStops.length];
+        this.stopRoutePositions = new int[routeStops.length];
+        final int[] next = Arrays.copyOf(stopRouteOffsets, stopCount);
+        for (int r = 0; r + 1 < routeStopOffsets.length; ++r) {
+            for (int i = routeStopOffsets[r]; i < routeStopOffsets[r+1]; ++i) {
+                int s = routeStops[i];
+                stopRoutes[next[s]] = r;
+                stopRoutePositions[next[s]] = i - routeStopOffsets[r];
+                ++next[s];
+            }
+        }
+    }
+
+    /**
+     * Construit un routeur dont les courses sont les liaisons du graphe donne, chacune etant une course d'un seul troncon.
+     * Les temps d'arrivee sont les memes que ceux de Graph.fastestPaths, mais les courses d'un meme vehicule n'etant pas connues,
+     * chaque liaison compte comme un vehicule dans le nombre de correspondances. Les services des trajets ne sont pas pris en compte.
+     *
+     * @param   graph
+     *          Le graphe.
+     * @return  Le routeur.
+     */
+    public static Raptor forGraph(Graph graph) {
+
+        final int[] edgeOffsets = graph.edgeOffsets();
+        final int[] edgeDestinations = graph.edgeDestinations();
+        final int[] tripOffsets = graph.tripOffsets();
+        final int[] packedTrips = graph.packedTrips();
+
+        final Builder builder = new Builder();
+        for (int s = 0; s < graph.stopCount(); ++s) {
+            for (int e = edgeOffsets[s]; e < edgeOffsets[s+1]; ++e) {
+                List<Stop> sequence = Arrays.asList(graph.stop(s), graph.stop(edgeDestinations[e]));
+                for (int t = tripOffsets[e]; t < tripOffsets[e+1]; ++t) {
+                    int[] times = {GraphEdge.unpackTripDepartureTime(packedTrips[t]), GraphEdge.unpackTripArrivalTime(packedTrips[t])};
+                    builder.addTrip(sequence, times, times);
+                }
+            }
+        }
+        return builder.build(graph);
+    }
+
+    /**
+     * Retourne l'arbre du chemin le plus rapide sans limite de correspondances.
+     * Le predecesseur d'un arret atteint en vehicule est l'arret ou ce vehicule a ete pris.
+     *
+     * @param   startingStop
+     *          L'arret de depart.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @return  L'arbre du chemin le plus rapide depuis l'arret donne.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret non present dans le reseau.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     */
+    @Override
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime) {
+        return search(startingStop, departureTime, UNLIMITED_TRANSFERS).tree();
+    }
+
+    /**
+     * Recherche les arrivees les plus tot depuis un arret de depart avec un nombre maximal de correspondances.
+     *
+     * @param   startingStop
+     *          L'arret de depart.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @param   maxTransfers
+     *          Le nombre maximal de correspondances (changements de vehicule), ou UNLIMITED_TRANSFERS.
+     * @return  Le resultat de la recherche (arbre et nombre de correspondances par arret).
+     * @throws  IllegalArgumentException
+     *          En cas d'arret non present dans le reseau.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     * @throws  IllegalArgumentException
+     *          En cas de nombre de correspondances negatif.
+     */
+    public Result search(Stop startingStop, int departureTime, int maxTransfers) {
+
+        final int start = graph.stopId(startingStop);
+        if (start < 0)
+            throw new IllegalArgumentException("l'arret doit faire partie du reseau : "+startingStop);
+        if (departureTime < 0)
+            throw new IllegalArgumentException("le temps de depart ne doit pas etre negatif : "+departureTime);
+        if (maxTransfers < 0)
+            throw new IllegalArgumentException("le nombre de correspondances ne doit pas etre negatif : "+maxTransfers);
+
+        final int stopCount = graph.stopCount();
+        final int routeCount = routeTripCounts.length;
+        final int[] current = new int[stopCount]; // arrivees avec au plus k vehicules
+        final int[] previous = new int[stopCount]; // arrivees avec au plus k-1 vehicules
+        final int[] predecessors = new int[stopCount];
+        final int[] transfers = new int[stopCount];
+        final boolean[] marked = new boolean[stopCount];
+        final int[] routeStarts = new int[routeCount]; // premiere position marquee de chaque ligne a parcourir, -1 sinon
+        final IndexedMinHeap walkingQueue = new IndexedMinHeap(current);
+        Arrays.fill(current, SecondsPastMidnight.INFINITE);
+        Arrays.fill(predecessors, -1);
+        Arrays.fill(transfers, -1);
+        Arrays.fill(routeStarts, -1);
+
+        // tour 0 : uniquement a pied
+        current[start] = departureTime;
+        transfers[start] = 0;
+        marked[start] = true;
+        walkingQueue.update(start);
+        walk(current, predecessors, transfers, marked, walkingQueue);
+
+        final long maxRounds = (long) maxTransfers + 1;
+        for (int round = 1; round <= maxRounds; ++round) {
+
+            // lignes passant par les arrets marques, a partir de la premiere position marquee
+            int[] routes = new int[16];
+            int count = 0;
+            for (int s = 0; s < stopCount; ++s) {
+                if (!marked[s])
+                    continue;
+                marked[s] = false;
+                for (int i = stopRouteOffsets[s]; i < stopRouteOffsets[s+1]; ++i) {
+                    int r = stopRoutes[i];
+                    int position = stopRoutePositions[i];
+                    if (routeStarts[r] < 0) {
+                        if (count == routes.length)
+                            routes = Arrays.copyOf(routes, 2*count);
+                        routes[count++] = r;
+                        routeStarts[r] = position;
+                    } else if (position < routeStarts[r]) {
+                        routeStarts[r] = position;
+                    }
+                }
+            }
+            if (count == 0)
+                break;
+
+            System.arraycopy(current, 0, previous, 0, stopCount);
+            final int[] improvements = scanRoutes(routes, count, routeStarts, previous);
+            for (int i = 0; i < count; ++i) {
+                routeStarts[routes[i]] = -1;
+            }
+
+            // fusion des ameliorations dans l'ordre des lignes, puis propagation a pied
+            for (int i = 0; improvements[i] >= 0; i += 3) {
+                int stop = improvements[i], time = improvements[i+1];
+                if (time < current[stop]) {
+                    current[stop] = time;
+                    predecessors[stop] = improvements[i+2];
+                    transfers[stop] = round - 1;
+                    marked[stop] = true;
+                    walkingQueue.update(stop);
+                }
+            }
+            walk(current, predecessors, transfers, marked, walkingQueue);
+        }
+
+        return new Result(FastestPathTree.fromArrays(graph.stops(), graph.stopIds(), start, current, predecessors), graph.stops(), transfers);
+    }
+
+    /*
+     * Parcourt les lignes donnees en ne montant qu'aux arrets atteints au tour precedent.
+     * Retourne les ameliorations sous forme de triplets (arret, arrivee, arret de montee) dans l'ordre des lignes, terminees par -1.
+     * Les lignes sont reparties en blocs parcourus en parallele lorsqu'elles sont nombreuses ; chaque bloc ecrit dans son propre tableau.
+     */
+    private int[] scanRoutes(final int[] routes, int count, final int[] routeStarts, final int[] previous) {
+
+        if (count < PARALLEL_ROUTES)
+            return scanRoutes(routes, 0, count, routeStarts, previous);
+
+        final int chunks = Math.min(Runtime.getRuntime().availableProcessors() * 4, count / (PARALLEL_ROUTES / 4));
+        final List<Callable<int[]>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; ++c) {
+            final int from = (int) ((long) count * c / chunks);
+            final int to = (int) ((long) count * (c+1) / chunks);
+            tasks.add(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return scanRoutes(routes, from, to, routeStarts, previous);
+                }
+            });
+        }
+
+        try {
+            int[] merged = new int[0];
+            int length = 0;
+            for (Future<int[]> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                int[] part = f.get();
+                int partLength = 0;
+                while (partLength < part.length && part[partLength] >= 0) {
+                    partLength += 3;
+                }
+                merged = Arrays.copyOf(merged, length + partLength + 1);
+                System.arraycopy(part, 0, merged, length, partLength);
+                length += partLength;
+                merged[length] = -1;
+            }
+            return merged;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("echec du parcours parallele des lignes", e);
+        }
+    }
+
+    // parcourt sequentiellement les lignes d'indices [from, to) du tableau donne
+    private int[] scanRoutes(int[] routes, int from, int to, int[] routeStarts, int[] previous) {
+
+        int[] improvements = new int[3*16 + 1];
+        int length = 0;
+
+        for (int k = from; k < to; ++k) {
+            int r = routes[k];
+            int firstStop = routeStopOffsets[r];
+            int stopCount = routeStopOffsets[r+1] - firstStop;
+            int trips = routeTripCounts[r];
+            int times = routeTimeOffsets[r];
+            int trip = -1, boardingStop = -1;
+
+            for (int i = routeStarts[r]; i < stopCount; ++i) {
+                int stop = routeStops[firstStop + i];
+
+                if (trip >= 0) {
+                    int arrival = arrivalTimes[times + trip*stopCount + i];
+                    if (arrival < previous[stop]) {
+                        if (length + 3 >= improvements.length)
+                            improvements = Arrays.copyOf(improvements, 2*improvements.length + 1);
+                        improvements[length++] = stop;
+                        improvements[length++] = arrival;
+                        improvements[length++] = boardingStop;
+                    }
+                }
+
+                // peut-on prendre une course plus tot a cet arret ?
+                int reached = previous[stop];
+                if (reached < SecondsPastMidnight.INFINITE && (trip < 0 || reached <= departureTimes[times + trip*stopCount + i])) {
+                    int earliest = earliestTrip(times, stopCount, trips, i, reached, (trip < 0) ? trips: trip + 1);
+                    if (earliest >= 0 && earliest != trip) {
+                        trip = earliest;
+                        boardingStop = stop;
+                    }
+                }
+            }
+        }
+        improvements[length] = -1;
+        return improvements;
+    }
+
+    // retourne la premiere course parmi [0, limit) partant au plus tot au temps donne a la position donnee, ou -1
+    private int earliestTrip(int times, int stopCount, int trips, int position, int time, int limit) {
+        int low = 0, high = Math.min(limit, trips);
+        while (low < high) { // les courses d'une ligne ne se depassent pas : les departs sont croissants a chaque position
+            int middle = (low + high) >>> 1;
+            if (departureTimes[times + middle*stopCount + position] < time)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return (low < Math.min(limit, trips)) ? low: -1;
+    }
+
+    // propage a pied (Dijkstra sur les arcs a pied du graphe) les ameliorations des arrets de la file
+    private void walk(int[] current, int[] predecessors, int[] transfers, boolean[] marked, IndexedMinHeap queue) {
+
+        final int[] edgeOffsets = graph.edgeOffsets();
+        final int[] edgeDestinations = graph.edgeDestinations();
+        final int[] edgeWalkingTimes = graph.edgeWalkingTimes();
+
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int e = edgeOffsets[s]; e < edgeOffsets[s+1]; ++e) {
+                int walk = edgeWalkingTimes[e];
+                int destination = edgeDestinations[e];
+                if (walk < 0)
+                    continue;
+                int time = Math.min(current[s] + walk, SecondsPastMidnight.INFINITE);
+                if (time < current[destination]) {
+                    current[destination] = time;
+                    predecessors[destination] = s;
+                    transfers[destination] = transfers[s];
+                    marked[destination] = true;
+                    queue.update(destination);
+                }
+            }
+        }
+    }
+
+    /**
+     * Le resultat d'une recherche par tours : l'arbre du chemin le plus rapide et le nombre de correspondances par arret.
+     * Classe immuable.
+     */
+    public static final class Result {
+
+        private final FastestPathTree tree;
+        private final Map<Stop, Integer> transfers;
+
+        private Result(FastestPathTree tree, Stop[] stops, int[] transfers) {
+            this.tree = tree;
+            this.transfers = new HashMap<>();
+            for (int id = 0; id < stops.length; ++id) {
+                if (transfers[id] >= 0)
+                    this.transfers.put(stops[id], transfers[id]);
+            }
+        }
+
+        /**
+         * Accesseur en lecture de l'arbre du chemin le plus rapide.
+         *
+         * @return  L'arbre du chemin le plus rapide.
+         */
+        public FastestPathTree tree() {
+            return tree;
+        }
+
+        /**
+         * Retourne le nombre de correspondances du chemin le plus rapide vers l'arret donne.
+         *
+         * @param   stop
+         *          L'arret.
+         * @return  Le nombre de correspondances (0 pour un seul vehicule ou a pied) ou
+         *          -1 si l'arret n'est pas atteint.
+         */
+        public int transfers(Stop stop) {
+            Integer count = transfers.get(stop);
+            return (count == null) ? -1: count;
+        }
+    }
+
+    /**
+     * Batisseur du routeur par tours.
+     */
+    public static final class Builder {
+
+        private final Map<List<Stop>, List<int[]>> tripsBySequence;
+
+        /**
+         * Constructeur public d'un batisseur de routeur par tours.
+         */
+        public Builder() {
+            this.tripsBySequence = new HashMap<>();
+        }
+
+        /**
+         * Ajoute une course (un meme vehicule) passant par les arrets donnes.
+         * Permet les appels chaines.
+         *
+         * @param   stops
+         *          La suite des arrets de la course (au moins deux).
+         * @param   arrivalTimes
+         *          Les heures d'arrivee a chaque arret.
+         * @param   departureTimes
+         *          Les heures de depart de chaque arret.
+         * @return  Le batisseur.
+         * @throws  IllegalArgumentException
+         *          En cas de course de moins de deux arrets ou de tableaux de taille differente.
+         * @throws  IllegalArgumentException
+         *          En cas d'heures decroissantes le long de la course.
+         */
+        public Builder addTrip(List<Stop> stops, int[] arrivalTimes, int[] departureTimes) {
+
+            if (stops.size() < 2 || arrivalTimes.length != stops.size() || departureTimes.length != stops.size())
+                throw new IllegalArgumentException("une course doit avoir au moins deux arrets et une heure d'arrivee et de depart par arret");
+
+            final int[] times = new int[2*stops.size()]; // arrivees puis departs
+            for (int i = 0; i < stops.size(); ++i) {
+                if (departureTimes[i] < arrivalTimes[i] || (i > 0 && arrivalTimes[i] < departureTimes[i-1]))
+                    throw new IllegalArgumentException("les heures d'une course doivent etre croissantes");
+                times[i] = arrivalTimes[i];
+                times[stops.size() + i] = departureTimes[i];
+            }
+
+            List<Stop> sequence = new ArrayList<>(stops);
+            if (!tripsBySequence.containsKey(sequence))
+                tripsBySequence.put(sequence, new ArrayList<int[]>());
+            tripsBySequence.get(sequence).add(times);
+            return this;
+        }
+
+        /**
+         * Construit le routeur a partir du batisseur en reprenant les arrets et les trajets a pied du graphe donne.
+         * Les courses d'une meme suite d'arrets qui se depassent sont placees dans des lignes differentes.
+         *
+         * @param   graph
+         *          Le graphe contenant les arrets des courses et les arcs a pied.
+         * @return  Le routeur.
+         * @throws  IllegalArgumentException
+         *          En cas d'arret de course ne faisant pas partie du graphe.
+         */
+        public Raptor build(Graph graph) {
+
+            final List<int[]> routeSequences = new ArrayList<>();
+            final List<List<int[]>> routeTrips = new ArrayList<>();
+
+            for (Map.Entry<List<Stop>, List<int[]>> entry : tripsBySequence.entrySet()) {
+
+                final int length = entry.getKey().size();
+                final int[] sequence = new int[length];
+                for (int i = 0; i < length; ++i) {
+                    sequence[i] = graph.stopId(entry.getKey().get(i));
+                    if (sequence[i] < 0)
+                        throw new IllegalArgumentException("l'arret doit faire partie du graphe : "+entry.getKey().get(i));
+                }
+
+                List<int[]> trips = new ArrayList<>(entry.getValue());
+                Collections.sort(trips, new Comparator<int[]>() { // tri par premier depart
+                    @Override
+                    public int compare(int[] t1, int[] t2) {
+                        return Integer.compare(t1[length], t2[length]);
+                    }
+                });
+
+                // repartition sans depassement : chaque course rejoint la premiere ligne dont la derniere course la precede partout
+                List<List<int[]>> lines = new ArrayList<>();
+                for (int[] trip : trips) {
+                    List<int[]> target = null;
+                    for (List<int[]> line : lines) {
+                        if (precedes(line.get(line.size() - 1), trip)) {
+                            target = line;
+                            break;
+                        }
+                    }
+                    if (target == null) {
+                        target = new ArrayList<>();
+                        lines.add(target);
+                    }
+                    target.add(trip);
+                }
+                for (List<int[]> line : lines) {
+                    routeSequences.add(sequence);
+                    routeTrips.add(line);
+                }
+            }
+
+            final int routeCount = routeSequences.size();
+            final int[] routeStopOffsets = new int[routeCount + 1];
+            final int[] routeTripCounts = new int[routeCount];
+            final int[] routeTimeOffsets = new int[routeCount];
+            int stopTotal = 0, timeTotal = 0;
+            for (int r = 0; r < routeCount; ++r) {
+                routeStopOffsets[r] = stopTotal;
+                routeTimeOffsets[r] = timeTotal;
+                routeTripCounts[r] = routeTrips.get(r).size();
+                stopTotal += routeSequences.get(r).length;
+                timeTotal += routeSequences.get(r).length * routeTripCounts[r];
+            }
+            routeStopOffsets[routeCount] = stopTotal;
+
+            final int[] routeStops = new int[stopTotal];
+            final int[] arrivalTimes = new int[timeTotal];
+            final int[] departureTimes = new int[timeTotal];
+            for (int r = 0; r < routeCount; ++r) {
+                int[] sequence = routeSequences.get(r);
+                System.arraycopy(sequence, 0, routeStops, routeStopOffsets[r], sequence.length);
+                int j = 0;
+                for (int[] trip : routeTrips.get(r)) {
+                    System.arraycopy(trip, 0, arrivalTimes, routeTimeOffsets[r] + j*sequence.length, sequence.length);
+                    System.arraycopy(trip, sequence.length, departureTimes, routeTimeOffsets[r] + j*sequence.length, sequence.length);
+                    ++j;
+                }
+            }
+            return new Raptor(graph, routeStopOffsets, routeStops, routeTripCounts, routeTimeOffsets, arrivalTimes, departureTimes);
+        }
+
+        // retourne vrai ssi la premiere course ne passe jamais apres la seconde
+        private static boolean precedes(int[] first, int[] second) {
+            for (int i = 0; i < first.length; ++i) {
+                if (first[i] > second[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ch.epfl.isochrone.timetable;
+
+/**
+ * Interface pour les moteurs de recherche des chemins les plus rapides.
+ */
+public interface RoutingEngine {
+
+    /**
+     * Retourne l'arbre du chemin le plus rapide depuis un arret de depart et un temps de depart.
+     * 
+     * @param   startingStop
+     *          L'arret de depart.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @return  L'arbre du chemin le plus rapide depuis l'arret donne.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret non present dans le reseau.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     */
+    public FastestPathTree fastestPaths(Stop startingStop, int departureTime);
+
+    /**
+     * Enumeration des algorithmes de recherche disponibles, permettant de choisir le moteur a l'execution.
+     */
+    public enum Algorithm {
+
+        /**
+         * Algorithme de Dijkstra directement sur le graphe.
+         */
+        DIJKSTRA {
+            @Override
+            public RoutingEngine engineFor(Graph graph) {
+                return graph;
+            }
+        },
+
+        /**
+         * Parcours des liaisons triees par heure de depart (Connection Scan).
+         */
+        CONNECTION_SCAN {
+            @Override
+            public RoutingEngine engineFor(Graph graph) {
+                return new ConnectionScan(graph);
+            }
+        },
+
+        /**
+         * Recherche par tours (RAPTOR) sur les liaisons du graphe, chacune etant une course d'un seul troncon.
+         */
+        RAPTOR {
+            @Override
+            public RoutingEngine engineFor(Graph graph) {
+                return Raptor.forGraph(graph);
+            }
+        };
+
+        /**
+         * Retourne le moteur de recherche de l'algorithme pour le graphe donne.
+         * 
+         * @param   graph
+         *          Le graphe.
+         * @return  Le moteur de recherche.
+         */
+        public abstract RoutingEngine engineFor(Graph graph);
+    }
+}
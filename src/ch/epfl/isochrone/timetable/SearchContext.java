@@ -0,0 +1,147 @@
+package ch.epfl.isochrone.timetable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Un contexte de recherche des chemins les plus rapides dans un graphe, reutilisable d'une recherche a l'autre :
+ * il possede le tas et les tableaux des temps d'arrivee et des predecesseurs, alloues une fois pour toutes.
+ * Chaque recherche incremente un numero de generation ; un arret n'a de temps d'arrivee valide que si son tampon vaut
+ * la generation courante, si bien que les tableaux ne sont jamais reinitialises et qu'une recherche n'alloue rien.
+ * Seul l'arbre retourne par tree (resultat) est alloue.
+ * <p>
+ * Un contexte n'est pas sur pour les fils d'execution : il en faut un par fil.
+ */
+public final class SearchContext {
+
+    private final Graph graph;
+    private final int[] arrivalTimes;
+    private final int[] predecessors;
+    private final int[] stamps;
+    private final IndexedMinHeap remainingStops;
+    private final BitSet targets;
+    private int generation;
+    private int startingStop;
+
+    /**
+     * Constructeur public d'un contexte de recherche pour le graphe donne.
+     *
+     * @param   graph
+     *          Le graphe.
+     */
+    public SearchContext(Graph graph) {
+        this.graph = graph;
+        this.arrivalTimes = new int[graph.stopCount()];
+        this.predecessors = new int[graph.stopCount()];
+        this.stamps = new int[graph.stopCount()];
+        this.remainingStops = new IndexedMinHeap(arrivalTimes); // le tas lit directement les temps d'arrivee
+        this.targets = new BitSet(graph.stopCount());
+        this.generation = 0;
+        this.startingStop = -1;
+    }
+
+    /**
+     * Accesseur en lecture du graphe.
+     *
+     * @return  Le graphe du contexte.
+     */
+    public Graph graph() {
+        return graph;
+    }
+
+    /**
+     * Recherche les chemins les plus rapides depuis un arret de depart et un temps de depart, comme Graph.fastestPaths,
+     * en remplacant le resultat de la recherche precedente.
+     *
+     * @param   startingStop
+     *          L'arret de depart.
+     * @param   departureTime
+     *          Le temps de depart.
+     * @param   maxTravelTime
+     *          La duree maximale de trajet depuis le depart, ou SecondsPastMidnight.INFINITE pour ne pas borner la recherche.
+     * @param   target
+     *          L'arret cible, ou null pour fixer tous les arrets atteignables.
+     * @param   activeServices
+     *          Le masque des services actifs (voir Graph.serviceMask), ou null si tous les trajets sont actifs.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret (de depart ou cible) non present dans le graphe.
+     * @throws  IllegalArgumentException
+     *          En cas de temps negatif.
+     */
+    public void fastestPaths(Stop startingStop, int departureTime, int maxTravelTime, Stop target, BitSet activeServices) {
+
+        final int start = graph.stopId(startingStop);
+        if (start < 0)
+            throw new IllegalArgumentException("l'arret doit faire partie du graphe : "+startingStop);
+        if (departureTime < 0)
+            throw new IllegalArgumentException("le temps de depart ne doit pas etre negatif : "+departureTime);
+        if (maxTravelTime < 0)
+            throw new IllegalArgumentException("la duree maximale de trajet ne doit pas etre negative : "+maxTravelTime);
+
+        targets.clear();
+        if (target != null) {
+            final int id = graph.stopId(target);
+            if (id < 0)
+                throw new IllegalArgumentException("l'arret cible doit faire partie du graphe : "+target);
+            targets.set(id);
+        }
+
+        nextGeneration();
+        this.startingStop = start;
+        graph.search(start, departureTime, maxTravelTime, (target != null) ? targets: null, activeServices,
+                arrivalTimes, predecessors, stamps, generation, remainingStops);
+    }
+
+    /**
+     * Retourne le temps d'arrivee a l'arret d'identifiant donne lors de la derniere recherche.
+     *
+     * @param   id
+     *          L'identifiant de l'arret (voir Graph.stopId).
+     * @return  Le temps d'arrivee a l'arret ou
+     *          SecondsPastMidnight.INFINITE si l'arret n'a pas ete atteint.
+     */
+    public int arrivalTime(int id) {
+        return (stamps[id] == generation && generation > 0) ? arrivalTimes[id]: SecondsPastMidnight.INFINITE;
+    }
+
+    /**
+     * Retourne l'identifiant du predecesseur de l'arret d'identifiant donne lors de la derniere recherche.
+     *
+     * @param   id
+     *          L'identifiant de l'arret (voir Graph.stopId).
+     * @return  L'identifiant du predecesseur, ou -1 pour l'arret de depart et les arrets non atteints.
+     */
+    public int predecessor(int id) {
+        return (arrivalTime(id) < SecondsPastMidnight.INFINITE) ? predecessors[id]: -1;
+    }
+
+    /**
+     * Construit l'arbre du chemin le plus rapide de la derniere recherche ; seul le resultat est alloue.
+     *
+     * @return  L'arbre du chemin le plus rapide.
+     * @throws  IllegalStateException
+     *          Si aucune recherche n'a ete faite.
+     */
+    public FastestPathTree tree() {
+
+        if (startingStop < 0)
+            throw new IllegalStateException("aucune recherche n'a ete faite");
+
+        final int[] treeArrivalTimes = new int[arrivalTimes.length];
+        final int[] treePredecessors = new int[arrivalTimes.length];
+        for (int id = 0; id < arrivalTimes.length; ++id) {
+            treeArrivalTimes[id] = arrivalTime(id);
+            treePredecessors[id] = predecessor(id);
+        }
+        return FastestPathTree.fromArrays(graph.stops(), graph.stopIds(), startingStop, treeArrivalTimes, treePredecessors);
+    }
+
+    // passe a la generation suivante ; les tampons ne sont remis a zero qu'au depassement du compteur
+    private void nextGeneration() {
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            generation = 0;
+        }
+        ++generation;
+    }
+}
@@ -1,5 +1,9 @@
 package ch.epfl.isochrone.timetable;
 
+import static ch.epfl.isochrone.math.Math.modF;
+
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -14,6 +18,10 @@ public final class Service {
     private final Set<Date.DayOfWeek> operatingDays;
     private final Set<Date> excludedDates, includedDates;
 
+    // jours d'operation effectifs (exceptions comprises) : le bit i correspond au jour firstDay + i
+    private final int firstDay, lastDay;
+    private final BitSet operatingDaysMap;
+
     /**
      * Constructeur public d'un service.
      * 
@@ -43,6 +51,23 @@ public final class Service {
         this.operatingDays = new HashSet<>(operatingDays);
         this.excludedDates = new HashSet<>(excludedDates);
         this.includedDates = new HashSet<>(includedDates);
+
+        this.firstDay = startingDate.fixed();
+        this.lastDay = endingDate.fixed();
+        this.operatingDaysMap = new BitSet(lastDay - firstDay + 1);
+        final Date.DayOfWeek[] days = Date.DayOfWeek.values();
+        for (int day = firstDay; day <= lastDay; ++day) {
+            if (this.operatingDays.contains(days[modF(day - 1, 7)])) // meme calcul que Date.dayOfWeek
+                operatingDaysMap.set(day - firstDay);
+        }
+        for (Date d : this.excludedDates) {
+            if (d.fixed() >= firstDay && d.fixed() <= lastDay)
+                operatingDaysMap.clear(d.fixed() - firstDay);
+        }
+        for (Date d : this.includedDates) { // une date a la fois exclue et incluse est operationnelle
+            if (d.fixed() >= firstDay && d.fixed() <= lastDay)
+                operatingDaysMap.set(d.fixed() - firstDay);
+        }
     }
 
     /**
@@ -54,6 +79,51 @@ public final class Service {
         return name;
     }
 
+    /**
+     * Accesseur en lecture de la date de debut du service.
+     *
+     * @return  La date de debut.
+     */
+    Date startingDate() {
+        return startingDate;
+    }
+
+    /**
+     * Accesseur en lecture de la date de fin du service.
+     *
+     * @return  La date de fin.
+     */
+    Date endingDate() {
+        return endingDate;
+    }
+
+    /**
+     * Accesseur en lecture des jours d'operation du service.
+     *
+     * @return  Les jours d'operation (non modifiable).
+     */
+    Set<Date.DayOfWeek> operatingDays() {
+        return Collections.unmodifiableSet(operatingDays);
+    }
+
+    /**
+     * Accesseur en lecture des dates ou le service n'est pas fonctionnel.
+     *
+     * @return  Les dates exclues (non modifiable).
+     */
+    Set<Date> excludedDates() {
+        return Collections.unmodifiableSet(excludedDates);
+    }
+
+    /**
+     * Accesseur en lecture des dates ou le service est fonctionnel en plus de ses jours d'operation.
+     *
+     * @return  Les dates incluses (non modifiable).
+     */
+    Set<Date> includedDates() {
+        return Collections.unmodifiableSet(includedDates);
+    }
+
     /**
      * Retourne vrai ssi le service est operationnel le jour donne (c'est-a-dire
      * compris dans les jours operationels et ne faisant pas defaut aux exceptions), faux sinon.
@@ -63,11 +133,37 @@ public final class Service {
      * @return  Vrai ssi le service est operationnel le jour donne, faux sinon.
      */
     public boolean isOperatingOn(Date date) {
-        return  startingDate.compareTo(date) <= 0 &&
-                endingDate.compareTo(date) >= 0 &&
-                ((operatingDays.contains(date.dayOfWeek()) &&
-                        !excludedDates.contains(date)) ||
-                        includedDates.contains(date));
+        return isOperatingOnDay(date.fixed());
+    }
+
+    /**
+     * Retourne vrai ssi le service est operationnel le jour donne par son nombre de jours depuis l'an 0, d'apres la table
+     * des jours d'operation calculee a la construction.
+     *
+     * @param   day
+     *          Le jour (voir Date.fixed).
+     * @return  Vrai ssi le service est operationnel ce jour-la, faux sinon.
+     */
+    boolean isOperatingOnDay(int day) {
+        return day >= firstDay && day <= lastDay && operatingDaysMap.get(day - firstDay);
+    }
+
+    /**
+     * Retourne le premier jour du service (voir Date.fixed).
+     *
+     * @return  Le premier jour.
+     */
+    int firstDay() {
+        return firstDay;
+    }
+
+    /**
+     * Retourne le dernier jour du service (voir Date.fixed).
+     *
+     * @return  Le dernier jour.
+     */
+    int lastDay() {
+        return lastDay;
     }
 
     /**
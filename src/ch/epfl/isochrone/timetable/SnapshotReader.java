@@ -0,0 +1,230 @@
+package ch.epfl.isochrone.timetable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+/**
+ * Un lecteur d'horaire depuis un instantane binaire ecrit par SnapshotWriter, projete en memoire.
+ * La somme de controle est verifiee a l'ouverture ; les trajets des services actifs sont lus directement dans le fichier
+ * projete, sans objet intermediaire, lors de la construction du graphe.
+ * Classe immuable.
+ */
+public final class SnapshotReader implements TimeTableSource {
+
+    private final ByteBuffer data;
+    private final int servicesOffset;
+    private final String[] stopNames;
+    private final int[] stopPositions; // position de la latitude et de la longitude de chaque arret
+    private final Map<String, Integer> hopOffsets; // position de la section des trajets de chaque service
+
+    /**
+     * Constructeur public d'un lecteur de l'instantane contenu dans le fichier donne, projete en memoire.
+     *
+     * @param   file
+     *          Le fichier de l'instantane.
+     * @throws  IOException
+     *          En cas d'erreur de lecture ou de fichier qui n'est pas un instantane valide.
+     */
+    public SnapshotReader(Path file) throws IOException {
+        this(map(file));
+    }
+
+    /**
+     * Constructeur public d'un lecteur de l'instantane contenu dans le tampon donne (de sa position a sa limite).
+     *
+     * @param   buffer
+     *          Le tampon contenant l'instantane.
+     * @throws  IOException
+     *          En cas de tampon qui n'est pas un instantane valide.
+     */
+    public SnapshotReader(ByteBuffer buffer) throws IOException {
+
+        this.data = buffer.slice();
+        if (data.limit() < 12 || data.getInt(0) != SnapshotWriter.MAGIC)
+            throw new IOException("ce n'est pas un instantane d'horaire");
+        if (data.getInt(4) != SnapshotWriter.VERSION)
+            throw new IOException("version d'instantane non supportee : "+data.getInt(4));
+
+        final int end = data.limit() - 4;
+        final CRC32 crc = new CRC32();
+        final ByteBuffer content = data.duplicate();
+        content.position(0).limit(end);
+        crc.update(content);
+        if ((int) crc.getValue() != data.getInt(end))
+            throw new IOException("somme de controle de l'instantane invalide");
+
+        // index des sections : noms et positions des arrets, debut des services et des trajets de chaque service
+        final ByteBuffer in = data.duplicate();
+        in.limit(end).position(8);
+        try {
+            this.stopNames = new String[in.getInt()];
+            this.stopPositions = new int[stopNames.length];
+            for (int i = 0; i < stopNames.length; ++i) {
+                stopNames[i] = readString(in);
+                stopPositions[i] = in.position();
+                in.position(in.position() + 16);
+            }
+
+            this.servicesOffset = in.position();
+            final String[] serviceNames = new String[in.getInt()];
+            for (int i = 0; i < serviceNames.length; ++i) {
+                serviceNames[i] = readString(in);
+                in.position(in.position() + 9);
+                skipInts(in, in.getInt()); // dates exclues
+                skipInts(in, in.getInt()); // dates incluses
+            }
+
+            this.hopOffsets = new HashMap<>();
+            for (String name : serviceNames) {
+                hopOffsets.put(name, in.position());
+                skipInts(in, 4*in.getInt());
+            }
+        } catch (RuntimeException e) { // depassement du tampon ou taille negative
+            throw new IOException("instantane d'horaire mal forme", e);
+        }
+        if (in.position() != end)
+            throw new IOException("instantane d'horaire mal forme");
+    }
+
+    /**
+     * Lit et retourne les arrets et services (exceptions de services compris) dans une table des horaires.
+     *
+     * @return  La table des horaires de l'instantane.
+     */
+    @Override
+    public TimeTable readTimeTable() {
+
+        final TimeTable.Builder builder = new TimeTable.Builder();
+        for (int i = 0; i < stopNames.length; ++i) {
+            double latitude = data.getDouble(stopPositions[i]);
+            double longitude = data.getDouble(stopPositions[i] + 8);
+            builder.addStop(new Stop(stopNames[i], new PointWGS84(longitude, latitude)));
+        }
+
+        final ByteBuffer in = data.duplicate();
+        in.position(servicesOffset);
+        for (int i = in.getInt(); i > 0; --i) {
+            Service.Builder b = new Service.Builder(readString(in), dateFromInt(in.getInt()), dateFromInt(in.getInt()));
+            int days = in.get();
+            for (Date.DayOfWeek day : Date.DayOfWeek.values()) {
+                if ((days & (1 << day.ordinal())) != 0)
+                    b.addOperatingDay(day);
+            }
+            for (int j = in.getInt(); j > 0; --j) {
+                b.addExcludedDate(dateFromInt(in.getInt()));
+            }
+            for (int j = in.getInt(); j > 0; --j) {
+                b.addIncludedDate(dateFromInt(in.getInt()));
+            }
+            builder.addService(b.build());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Construit et retourne le graphe correspondant aux arrets et services donnes selon un temps et une vitesse de marche,
+     * a partir des colonnes de trajets des services actifs.
+     *
+     * @param   stops
+     *          Les arrets inclus dans le graphe (retrouves dans l'instantane par leur nom).
+     * @param   services
+     *          Les services actifs dans le graphe (retrouves dans l'instantane par leur nom).
+     * @param   walkingTime
+     *          Le temps de marche maximal.
+     * @param   walkingSpeed
+     *          La vitesse de marche (m/s).
+     * @return  Le graphe.
+     */
+    @Override
+    public Graph readGraphForServices(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) {
+        return readGraph(stops, services, walkingTime, walkingSpeed, false);
+    }
+
+    /**
+     * Construit et retourne le graphe maitre des arrets et services donnes, dont chaque trajet est associe a son service.
+     *
+     * @param   stops
+     *          Les arrets inclus dans le graphe (retrouves dans l'instantane par leur nom).
+     * @param   services
+     *          Tous les services dont les trajets sont inclus dans le graphe (retrouves dans l'instantane par leur nom).
+     * @param   walkingTime
+     *          Le temps de marche maximal.
+     * @param   walkingSpeed
+     *          La vitesse de marche (m/s).
+     * @return  Le graphe maitre.
+     */
+    @Override
+    public Graph readMasterGraph(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) {
+        return readGraph(stops, services, walkingTime, walkingSpeed, true);
+    }
+
+    // construit le graphe des arrets et services donnes, dont les trajets sont associes a leur service si demande
+    private Graph readGraph(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed, boolean withServices) {
+
+        final Map<String, Stop> stopsMap = new HashMap<>();
+        for (Stop s : stops) {
+            stopsMap.put(s.name(), s);
+        }
+        final Stop[] stopsByIndex = new Stop[stopNames.length]; // null pour les arrets absents du graphe
+        for (int i = 0; i < stopNames.length; ++i) {
+            stopsByIndex[i] = stopsMap.get(stopNames[i]);
+        }
+
+        final Graph.Builder builder = new Graph.Builder(stops);
+        for (Service s : services) {
+            Integer offset = hopOffsets.get(s.name());
+            if (offset == null)
+                continue;
+
+            int count = data.getInt(offset);
+            ByteBuffer section = data.duplicate();
+            section.position(offset + 4);
+            IntBuffer columns = section.slice().asIntBuffer(); // vue sur le fichier : arrets de depart, departs, arrets d'arrivee, arrivees
+            for (int i = 0; i < count; ++i) {
+                Stop from = stopsByIndex[columns.get(i)], to = stopsByIndex[columns.get(2*count + i)];
+                if (from != null && to != null && withServices)
+                    builder.addTripEdge(from, to, columns.get(count + i), columns.get(3*count + i), s);
+                else if (from != null && to != null)
+                    builder.addTripEdge(from, to, columns.get(count + i), columns.get(3*count + i));
+            }
+        }
+
+        return builder.addAllWalkEdges(walkingTime, walkingSpeed).build();
+    }
+
+    // projette le fichier donne en memoire
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // avance le tampon du nombre d'entiers donne
+    private static void skipInts(ByteBuffer in, int count) {
+        in.position(in.position() + 4*count);
+    }
+
+    // lit une chaine : longueur puis octets UTF-8
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // convertit une date du format entier (20000101) en Date
+    private static Date dateFromInt(int date) {
+        return new Date(date % 100, (date / 100) % 100, date / 10000);
+    }
+}
@@ -0,0 +1,171 @@
+package ch.epfl.isochrone.timetable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Un convertisseur des donnees CSV en instantane binaire de l'horaire, relu par SnapshotReader.
+ * <p>
+ * Format (entiers gros-boutistes) :
+ * <ul>
+ * <li>en-tete : nombre magique "ISOC", version ;</li>
+ * <li>arrets : nombre, puis pour chacun son nom (longueur et octets UTF-8), sa latitude et sa longitude (en radians) ;</li>
+ * <li>services : nombre, puis pour chacun son nom, ses dates de debut et de fin (aaaammjj), ses jours d'operation (un bit par jour),
+ *     ses dates exclues et incluses (nombre puis dates) ;</li>
+ * <li>trajets, regroupes par service dans l'ordre des services : nombre, puis les colonnes des arrets de depart, des departs,
+ *     des arrets d'arrivee et des arrivees (les arrets sont designes par leur indice) ;</li>
+ * <li>somme de controle CRC32 de tout ce qui precede.</li>
+ * </ul>
+ * Classe non instanciable.
+ */
+public final class SnapshotWriter {
+
+    static final int MAGIC = 0x49534f43; // "ISOC"
+    static final int VERSION = 1;
+
+    private SnapshotWriter() {}
+
+    /**
+     * Lit les donnees CSV du lecteur donne et les ecrit en instantane binaire dans le fichier donne.
+     *
+     * @param   reader
+     *          Le lecteur des donnees CSV.
+     * @param   file
+     *          Le fichier de l'instantane, remplace s'il existe.
+     * @throws  IOException
+     *          En cas d'erreur de lecture ou d'ecriture.
+     */
+    public static void write(TimeTableReader reader, Path file) throws IOException {
+
+        final TimeTable timetable = reader.readTimeTable();
+
+        // arrets et services dans l'ordre de leur nom, pour un fichier reproductible
+        final List<Stop> stops = new ArrayList<>(timetable.stops());
+        Collections.sort(stops, new Comparator<Stop>() {
+            @Override
+            public int compare(Stop s1, Stop s2) {
+                return s1.name().compareTo(s2.name());
+            }
+        });
+        final List<Service> services = new ArrayList<>(timetable.services());
+        Collections.sort(services, new Comparator<Service>() {
+            @Override
+            public int compare(Service s1, Service s2) {
+                return s1.name().compareTo(s2.name());
+            }
+        });
+
+        final SymbolTable stopNames = new SymbolTable();
+        final int[] stopIndices = new int[stops.size()]; // indice dans le fichier de chaque symbole d'arret
+        for (int i = 0; i < stops.size(); ++i) {
+            stopIndices[stopNames.intern(stops.get(i).name())] = i;
+        }
+        final SymbolTable serviceNames = new SymbolTable();
+        for (Service s : services) {
+            serviceNames.intern(s.name());
+        }
+
+        // TRAJETS : Nom;Arret1;Depart;Arret2;Arrivee, repartis par service (4 entiers par trajet)
+        final int[][] hops = new int[services.size()][];
+        final int[] hopCounts = new int[services.size()];
+        final CsvReader stopTimes = reader.readStopTimes();
+        while (stopTimes.next()) {
+            int service = stopTimes.symbolField(0, serviceNames);
+            int fromStop = stopTimes.symbolField(1, stopNames);
+            int toStop = stopTimes.symbolField(3, stopNames);
+            if (service < 0 || fromStop < 0 || toStop < 0 || fromStop == toStop)
+                continue;
+
+            int count = hopCounts[service];
+            if (hops[service] == null)
+                hops[service] = new int[4*64];
+            else if (4*count == hops[service].length)
+                hops[service] = Arrays.copyOf(hops[service], 2*hops[service].length);
+            hops[service][4*count] = stopIndices[fromStop];
+            hops[service][4*count + 1] = stopTimes.intField(2);
+            hops[service][4*count + 2] = stopIndices[toStop];
+            hops[service][4*count + 3] = stopTimes.intField(4);
+            hopCounts[service] = count + 1;
+        }
+
+        final CRC32 crc = new CRC32();
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(stream, 1 << 16), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(stops.size());
+            for (Stop s : stops) {
+                writeString(out, s.name());
+                out.writeDouble(s.position().latitude());
+                out.writeDouble(s.position().longitude());
+            }
+
+            out.writeInt(services.size());
+            for (Service s : services) {
+                writeString(out, s.name());
+                out.writeInt(dateToInt(s.startingDate()));
+                out.writeInt(dateToInt(s.endingDate()));
+                int days = 0;
+                for (Date.DayOfWeek day : s.operatingDays()) {
+                    days |= 1 << day.ordinal();
+                }
+                out.writeByte(days);
+                writeDates(out, s.excludedDates());
+                writeDates(out, s.includedDates());
+            }
+
+            for (int service = 0; service < services.size(); ++service) {
+                int count = hopCounts[service];
+                out.writeInt(count);
+                for (int column = 0; column < 4; ++column) {
+                    for (int i = 0; i < count; ++i) {
+                        out.writeInt(hops[service][4*i + column]);
+                    }
+                }
+            }
+
+            out.flush();
+            out = new DataOutputStream(new BufferedOutputStream(stream)); // la somme de controle ne se couvre pas elle-meme
+            out.writeInt((int) crc.getValue());
+            out.flush();
+        }
+    }
+
+    // ecrit une chaine : longueur puis octets UTF-8
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // ecrit des dates triees : nombre puis dates au format aaaammjj
+    private static void writeDates(DataOutputStream out, Iterable<Date> dates) throws IOException {
+        List<Date> sorted = new ArrayList<>();
+        for (Date d : dates) {
+            sorted.add(d);
+        }
+        Collections.sort(sorted);
+        out.writeInt(sorted.size());
+        for (Date d : sorted) {
+            out.writeInt(dateToInt(d));
+        }
+    }
+
+    // convertit une date au format entier aaaammjj
+    static int dateToInt(Date date) {
+        return date.year()*10000 + date.intMonth()*100 + date.day();
+    }
+}
@@ -0,0 +1,248 @@
+package ch.epfl.isochrone.timetable;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+/**
+ * Une grille uniforme des arrets, sur leurs coordonnees cartesiennes de la sphere unite, permettant de trouver les paires
+ * d'arrets a distance de marche sans les comparer toutes. Une paire n'est evaluee (distance exacte de PointWGS84.distanceTo)
+ * que si ses arrets sont dans des cellules voisines et que leur corde est inferieure a celle du rayon de marche ; la corde
+ * etant une fonction croissante de la distance sur la sphere, ce filtre ne rejette aucune paire valide. La grille trouve
+ * de la meme maniere les arrets a distance de marche d'un point quelconque.
+ * Classe immuable, visible uniquement dans son paquetage.
+ */
+final class StopGrid {
+
+    private static final int EARTH_RADIUS = 6378137; // le meme rayon que PointWGS84.distanceTo
+    private static final int CELL_BITS = 21;
+    private static final double MIN_CELL_SIZE = 2d / (1 << (CELL_BITS - 1)); // au plus 2^20 cellules par axe
+    private static final double MARGIN = 1e-9; // marge relative absorbant les erreurs d'arrondi du filtre
+
+    private final Stop[] stops;
+    private final int maxWalkingTime;
+    private final double walkingSpeed;
+    private final double[] x, y, z;
+    private final double cellSize, maxChord2;
+
+    // les arrets tries par cellule : cellKeys[i] est la cle de la cellule de l'arret cellStops[i]
+    private final long[] cellKeys;
+    private final int[] cellStops;
+
+    /**
+     * Constructeur de la grille des arrets donnes pour un temps et une vitesse de marche.
+     *
+     * @param   stops
+     *          Les arrets, indexes par identifiant.
+     * @param   maxWalkingTime
+     *          Le temps de marche maximum (en secondes).
+     * @param   walkingSpeed
+     *          La vitesse de marche (en metres par secondes).
+     */
+    StopGrid(Stop[] stops, int maxWalkingTime, double walkingSpeed) {
+
+        this.stops = stops;
+        this.maxWalkingTime = maxWalkingTime;
+        this.walkingSpeed = walkingSpeed;
+
+        // Math.round(d/v) <= t ssi d < (t + 0.5)*v
+        final double angle = Math.min((maxWalkingTime + 0.5) * walkingSpeed / EARTH_RADIUS, Math.PI);
+        final double maxChord = 2 * Math.sin(angle / 2) * (1 + MARGIN) + MARGIN;
+        this.maxChord2 = maxChord * maxChord;
+        this.cellSize = Math.max(maxChord, MIN_CELL_SIZE);
+
+        final int length = stops.length;
+        this.x = new double[length];
+        this.y = new double[length];
+        this.z = new double[length];
+        final long[] keys = new long[length];
+        final Integer[] order = new Integer[length];
+        for (int i = 0; i < length; ++i) {
+            double latitude = stops[i].position().latitude(), longitude = stops[i].position().longitude();
+            x[i] = Math.cos(latitude) * Math.cos(longitude);
+            y[i] = Math.cos(latitude) * Math.sin(longitude);
+            z[i] = Math.sin(latitude);
+            keys[i] = key(cell(x[i]), cell(y[i]), cell(z[i]));
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() { // tri par cellule puis par identifiant
+            @Override
+            public int compare(Integer i, Integer j) {
+                int c = Long.compare(keys[i], keys[j]);
+                return (c != 0) ? c: Integer.compare(i, j);
+            }
+        });
+
+        this.cellKeys = new long[length];
+        this.cellStops = new int[length];
+        for (int i = 0; i < length; ++i) {
+            cellStops[i] = order[i];
+            cellKeys[i] = keys[order[i]];
+        }
+    }
+
+    /**
+     * Retourne toutes les paires d'arrets a distance de marche, identiques a celles d'une comparaison de toutes les paires.
+     *
+     * @return  Les triplets (arret, arret d'identifiant superieur, temps de marche) mis a plat.
+     */
+    int[] walkingPairs() {
+        return walkingPairs(0, stops.length);
+    }
+
+    /**
+     * Retourne les paires d'arrets a distance de marche dont le plus petit identifiant est dans l'intervalle donne.
+     *
+     * @param   from
+     *          Le premier identifiant (inclus).
+     * @param   to
+     *          Le dernier identifiant (exclus).
+     * @return  Les triplets (arret, arret d'identifiant superieur, temps de marche) mis a plat, par arrets croissants.
+     */
+    int[] walkingPairs(int from, int to) {
+
+        int[] pairs = new int[3*16];
+        int length = 0;
+
+        for (int i = from; i < to; ++i) {
+            int cx = cell(x[i]), cy = cell(y[i]), cz = cell(z[i]);
+            int first = length;
+
+            for (int dx = -1; dx <= 1; ++dx) {
+                for (int dy = -1; dy <= 1; ++dy) {
+                    for (int dz = -1; dz <= 1; ++dz) {
+                        long key = key(cx + dx, cy + dy, cz + dz);
+                        for (int k = firstIndex(key, i + 1); k < cellKeys.length && cellKeys[k] == key; ++k) {
+                            int j = cellStops[k];
+                            double ex = x[i] - x[j], ey = y[i] - y[j], ez = z[i] - z[j];
+                            if (ex*ex + ey*ey + ez*ez > maxChord2)
+                                continue;
+
+                            int walkingTime = (int) Math.round(stops[i].position().distanceTo(stops[j].position()) / walkingSpeed);
+                            if (walkingTime <= maxWalkingTime) {
+                                if (length == pairs.length)
+                                    pairs = Arrays.copyOf(pairs, 2*length);
+                                pairs[length++] = i;
+                                pairs[length++] = j;
+                                pairs[length++] = walkingTime;
+                            }
+                        }
+                    }
+                }
+            }
+            sortBySecondStop(pairs, first, length);
+        }
+        return Arrays.copyOf(pairs, length);
+    }
+
+    /**
+     * Retourne les arrets a distance de marche du point donne, identiques a ceux d'une comparaison avec tous les arrets.
+     *
+     * @param   origin
+     *          Le point de depart.
+     * @return  Les couples (arret, temps de marche depuis le point) mis a plat, par arrets croissants.
+     */
+    int[] walkingTimesFrom(PointWGS84 origin) {
+
+        final double latitude = origin.latitude(), longitude = origin.longitude();
+        final double ox = Math.cos(latitude) * Math.cos(longitude);
+        final double oy = Math.cos(latitude) * Math.sin(longitude);
+        final double oz = Math.sin(latitude);
+        final int cx = cell(ox), cy = cell(oy), cz = cell(oz);
+
+        int[] times = new int[2*16];
+        int length = 0;
+
+        for (int dx = -1; dx <= 1; ++dx) {
+            for (int dy = -1; dy <= 1; ++dy) {
+                for (int dz = -1; dz <= 1; ++dz) {
+                    long key = key(cx + dx, cy + dy, cz + dz);
+                    for (int k = firstIndex(key, 0); k < cellKeys.length && cellKeys[k] == key; ++k) {
+                        int j = cellStops[k];
+                        double ex = ox - x[j], ey = oy - y[j], ez = oz - z[j];
+                        if (ex*ex + ey*ey + ez*ez > maxChord2)
+                            continue;
+
+                        int walkingTime = (int) Math.round(origin.distanceTo(stops[j].position()) / walkingSpeed);
+                        if (walkingTime <= maxWalkingTime) {
+                            if (length == times.length)
+                                times = Arrays.copyOf(times, 2*length);
+                            times[length++] = j;
+                            times[length++] = walkingTime;
+                        }
+                    }
+                }
+            }
+        }
+        sortByStop(times, length);
+        return Arrays.copyOf(times, length);
+    }
+
+    /**
+     * Retourne vrai ssi la grille a ete construite pour le temps et la vitesse de marche donnes.
+     *
+     * @param   maxWalkingTime
+     *          Le temps de marche maximum (en secondes).
+     * @param   walkingSpeed
+     *          La vitesse de marche (en metres par secondes).
+     * @return  Vrai ssi la grille peut repondre aux recherches avec ces parametres.
+     */
+    boolean hasParameters(int maxWalkingTime, double walkingSpeed) {
+        return this.maxWalkingTime == maxWalkingTime && this.walkingSpeed == walkingSpeed;
+    }
+
+    // trie par insertion les couples [0, length) par arret
+    private static void sortByStop(int[] times, int length) {
+        for (int i = 2; i < length; i += 2) {
+            int j = times[i], walkingTime = times[i+1];
+            int k = i;
+            while (k > 0 && times[k-2] > j) {
+                times[k] = times[k-2];
+                times[k+1] = times[k-1];
+                k -= 2;
+            }
+            times[k] = j;
+            times[k+1] = walkingTime;
+        }
+    }
+
+    // trie par insertion les triplets [from, to) par second arret, dans l'ordre d'une comparaison de toutes les paires
+    private static void sortBySecondStop(int[] pairs, int from, int to) {
+        for (int i = from + 3; i < to; i += 3) {
+            int j = pairs[i+1], walkingTime = pairs[i+2];
+            int k = i;
+            while (k > from && pairs[k-2] > j) {
+                pairs[k+1] = pairs[k-2];
+                pairs[k+2] = pairs[k-1];
+                k -= 3;
+            }
+            pairs[k+1] = j;
+            pairs[k+2] = walkingTime;
+        }
+    }
+
+    // retourne le premier indice de la cellule donnee dont l'arret a un identifiant au moins egal a celui donne
+    private int firstIndex(long key, int id) {
+        int low = 0, high = cellKeys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cellKeys[middle] < key || (cellKeys[middle] == key && cellStops[middle] < id))
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    // retourne l'indice de la cellule contenant la coordonnee donnee, comprise dans [-1, 1]
+    private int cell(double coordinate) {
+        return (int) Math.floor((coordinate + 1) / cellSize) + 1; // decalage pour que les voisins restent positifs
+    }
+
+    // assemble les indices de cellule en une cle (21 bits par axe)
+    private static long key(int cx, int cy, int cz) {
+        final long mask = (1L << CELL_BITS) - 1;
+        return ((cx & mask) << (2*CELL_BITS)) | ((cy & mask) << CELL_BITS) | (cz & mask);
+    }
+}
@@ -0,0 +1,180 @@
+package ch.epfl.isochrone.timetable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Une table de symboles associant a chaque nom (suite d'octets UTF-8) un identifiant dense (0 a n-1), permettant de
+ * retrouver un nom lu par CsvReader sans creer de chaine de caracteres. Table a adressage ouvert sur le contenu des octets.
+ * Les recherches peuvent etre faites en parallele tant qu'aucun nom n'est ajoute.
+ */
+public final class SymbolTable {
+
+    private byte[] bytes; // les octets de tous les noms, mis bout a bout
+    private int byteCount;
+    private int[] offsets; // les octets du nom i sont les indices [offsets[i], offsets[i+1])
+    private String[] names;
+    private int size;
+    private int[] slots; // identifiant + 1, 0 pour une case vide
+
+    /**
+     * Constructeur public d'une table de symboles vide.
+     */
+    public SymbolTable() {
+        this.bytes = new byte[256];
+        this.offsets = new int[17];
+        this.names = new String[16];
+        this.slots = new int[32];
+    }
+
+    /**
+     * Retourne le nombre de noms de la table.
+     *
+     * @return  Le nombre de noms.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retourne le nom d'identifiant donne.
+     *
+     * @param   id
+     *          L'identifiant.
+     * @return  Le nom.
+     * @throws  IndexOutOfBoundsException
+     *          En cas d'identifiant non compris dans [0, size()[.
+     */
+    public String name(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("identifiant de symbole invalide : "+id);
+        return names[id];
+    }
+
+    /**
+     * Ajoute le nom donne s'il est absent et retourne son identifiant.
+     *
+     * @param   name
+     *          Le nom.
+     * @return  L'identifiant du nom.
+     */
+    public int intern(String name) {
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        return intern(ByteBuffer.wrap(encoded), 0, encoded.length, name);
+    }
+
+    /**
+     * Retourne l'identifiant du nom donne.
+     *
+     * @param   name
+     *          Le nom.
+     * @return  L'identifiant du nom ou -1 s'il est absent.
+     */
+    public int id(String name) {
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        return lookup(ByteBuffer.wrap(encoded), 0, encoded.length);
+    }
+
+    /**
+     * Retourne l'identifiant du nom forme des octets [from, to) du tampon donne, sans le modifier ni creer d'objet.
+     *
+     * @param   buffer
+     *          Le tampon.
+     * @param   from
+     *          L'indice du premier octet (inclus).
+     * @param   to
+     *          L'indice du dernier octet (exclus).
+     * @return  L'identifiant du nom ou -1 s'il est absent.
+     */
+    int lookup(ByteBuffer buffer, int from, int to) {
+        final int mask = slots.length - 1;
+        for (int slot = hash(buffer, from, to) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (matches(id, buffer, from, to))
+                return id;
+        }
+        return -1;
+    }
+
+    /**
+     * Ajoute le nom forme des octets [from, to) du tampon donne s'il est absent et retourne son identifiant.
+     *
+     * @param   buffer
+     *          Le tampon.
+     * @param   from
+     *          L'indice du premier octet (inclus).
+     * @param   to
+     *          L'indice du dernier octet (exclus).
+     * @param   name
+     *          Le nom deja decode, ou null s'il doit l'etre.
+     * @return  L'identifiant du nom.
+     */
+    int intern(ByteBuffer buffer, int from, int to, String name) {
+        int id = lookup(buffer, from, to);
+        if (id >= 0)
+            return id;
+
+        final int length = to - from;
+        if (byteCount + length > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(2*bytes.length, byteCount + length));
+        for (int i = 0; i < length; ++i) {
+            bytes[byteCount + i] = buffer.get(from + i);
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, 2*size);
+            offsets = Arrays.copyOf(offsets, 2*size + 1);
+        }
+        id = size++;
+        names[id] = (name != null) ? name: new String(bytes, byteCount, length, StandardCharsets.UTF_8);
+        offsets[id] = byteCount;
+        byteCount += length;
+        offsets[size] = byteCount;
+
+        if (2*size > slots.length)
+            rehash();
+        else
+            insert(id, hash(buffer, from, to));
+        return id;
+    }
+
+    // double la taille de la table de hachage et y replace tous les identifiants
+    private void rehash() {
+        slots = new int[2*slots.length];
+        ByteBuffer all = ByteBuffer.wrap(bytes);
+        for (int id = 0; id < size; ++id) {
+            insert(id, hash(all, offsets[id], offsets[id+1]));
+        }
+    }
+
+    // place l'identifiant dans la premiere case libre a partir de son hachage
+    private void insert(int id, int hash) {
+        final int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    // retourne vrai ssi le nom d'identifiant donne est forme des octets donnes
+    private boolean matches(int id, ByteBuffer buffer, int from, int to) {
+        int start = offsets[id];
+        if (offsets[id+1] - start != to - from)
+            return false;
+        for (int i = from; i < to; ++i) {
+            if (bytes[start++] != buffer.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    // hachage FNV-1a des octets [from, to)
+    private static int hash(ByteBuffer buffer, int from, int to) {
+        int h = 0x811c9dc5;
+        for (int i = from; i < to; ++i) {
+            h = (h ^ (buffer.get(i) & 0xff)) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
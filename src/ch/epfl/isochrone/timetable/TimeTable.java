@@ -1,8 +1,13 @@
 package ch.epfl.isochrone.timetable;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -14,6 +19,10 @@ public final class TimeTable {
     private final Set<Stop> stops;
     private final Set<Service> services;
 
+    // services actifs de chaque jour a partir de firstDay (voir Date.fixed) ; les jours aux memes services partagent le meme ensemble
+    private final int firstDay;
+    private final List<Set<Service>> servicesByDay;
+
     /**
      * Constructeur public d'une table des horaires.
      * 
@@ -25,6 +34,34 @@ public final class TimeTable {
     public TimeTable(Set<Stop> stops, Collection<Service> services) {
         this.stops = new HashSet<>(stops);
         this.services = new HashSet<>(services);
+
+        int first = Integer.MAX_VALUE, last = Integer.MIN_VALUE;
+        for (Service s : this.services) {
+            first = Math.min(first, s.firstDay());
+            last = Math.max(last, s.lastDay());
+        }
+        this.firstDay = first;
+        this.servicesByDay = new ArrayList<>();
+
+        final Service[] all = this.services.toArray(new Service[this.services.size()]);
+        final Map<BitSet, Set<Service>> distinctSets = new HashMap<>();
+        for (int day = first; day <= last; ++day) {
+            BitSet active = new BitSet(all.length);
+            for (int i = 0; i < all.length; ++i) {
+                if (all[i].isOperatingOnDay(day))
+                    active.set(i);
+            }
+            Set<Service> set = distinctSets.get(active);
+            if (set == null) {
+                set = new HashSet<>();
+                for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i+1)) {
+                    set.add(all[i]);
+                }
+                set = Collections.unmodifiableSet(set);
+                distinctSets.put(active, set);
+            }
+            servicesByDay.add(set);
+        }
     }
 
     /**
@@ -37,22 +74,30 @@ public final class TimeTable {
     }
 
     /**
-     * Retourne les services operationnels pour une date donnee.
+     * Accesseur en lecture de tous les services (non-modifiable).
+     *
+     * @return  Les services de la table.
+     */
+    public Set<Service> services() {
+        return Collections.unmodifiableSet(services);
+    }
+
+    /**
+     * Retourne les services operationnels pour une date donnee, precalcules pour chaque jour (sans parcourir les services
+     * ni creer d'objet).
      * 
      * @param   date
      *          La date a tester
      * @return  services
-     *          Les services operationnels.
+     *          Les services operationnels (non-modifiable, partage par les jours aux memes services).
      */
     public Set<Service> servicesForDate(Date date) {
 
-        HashSet<Service> activeServices = new HashSet<>();
+        if (servicesByDay.isEmpty())
+            return Collections.emptySet();
 
-        for (Service s : services) {
-            if (s.isOperatingOn(date))
-                activeServices.add(s);
-        }
-        return activeServices;
+        int day = date.fixed() - firstDay;
+        return (day >= 0 && day < servicesByDay.size()) ? servicesByDay.get(day): Collections.<Service>emptySet();
     }
 
     /**
@@ -1,14 +1,16 @@
 package ch.epfl.isochrone.timetable;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import ch.epfl.isochrone.geo.PointWGS84;
 
@@ -16,10 +18,12 @@ import ch.epfl.isochrone.geo.PointWGS84;
  * Un lecteur d'horaire depuis les donnees CSV.
  * Classe immuable.
  */
-public final class TimeTableReader {
+public final class TimeTableReader implements TimeTableSource {
 
     private final static int SERVICE_ACTIF = 1;
-    private final static String SERVICE_ON_THIS_DAY = "1";
+    private final static int SERVICE_ON_THIS_DAY = 1;
+    private final static char SEPARATOR = ';';
+    private final static int PARALLELISM = Runtime.getRuntime().availableProcessors();
     private final String baseResourceName;
 
     /**
@@ -39,6 +43,7 @@ public final class TimeTableReader {
      * @throws  IOException
      *          En cas d'erreur de lecture.
      */
+    @Override
     public TimeTable readTimeTable() throws IOException {
 
         TimeTable.Builder builder = new TimeTable.Builder();
@@ -53,63 +58,56 @@ public final class TimeTableReader {
     private void addStopsFromFile(TimeTable.Builder timetable) throws IOException {
 
         // Nom;latitude;longitude
-        String line;
-        final BufferedReader reader = createReader("stops.csv");
+        final CsvReader reader = createReader("stops.csv");
 
-        while ((line = reader.readLine()) != null) {
+        while (reader.next()) {
 
-            String args[] = line.split(";");
-            assert args.length == 3;
+            assert reader.fieldCount() == 3;
 
-            String name = args[0];
-            double longitude = Math.toRadians(Double.parseDouble(args[2]));
-            double latitude = Math.toRadians(Double.parseDouble(args[1]));
+            String name = reader.stringField(0);
+            double longitude = Math.toRadians(reader.doubleField(2));
+            double latitude = Math.toRadians(reader.doubleField(1));
             PointWGS84 position = new PointWGS84(longitude, latitude); 
 
             timetable.addStop(new Stop(name, position));
         }
-        reader.close();
     }
 
     // lit et ajoute les services (et exceptions) de calendar.csv (et calendar_dates.csv) dans le constructeur de table des horaires
     private void addServicesFromFile(TimeTable.Builder timetable) throws IOException {
 
         // SERVICES : Nom;Lu;Ma;Me;Je;Ve;Sa;Di;Debut;Fin(format:20130913)
-        String line;
         final Map<String, Service.Builder> builders = new HashMap<>();
-        final BufferedReader calendarReader = createReader("calendar.csv");
+        final CsvReader calendarReader = createReader("calendar.csv");
 
-        while ((line = calendarReader.readLine()) != null) {
+        while (calendarReader.next()) {
 
-            String args[] = line.split(";");
-            assert args.length == 10;
+            assert calendarReader.fieldCount() == 10;
 
-            String name = args[0];
-            Date startingDate = dateFromText(args[8]);
-            Date endingDate = dateFromText(args[9]);
+            String name = calendarReader.stringField(0);
+            Date startingDate = dateFromInt(calendarReader.intField(8));
+            Date endingDate = dateFromInt(calendarReader.intField(9));
             Service.Builder b = new Service.Builder(name, startingDate, endingDate);
 
             for (int day = 0; day < 7; ++day) {
-                if (args[day+1].equals(SERVICE_ON_THIS_DAY)) {
+                if (calendarReader.intField(day+1) == SERVICE_ON_THIS_DAY) {
                     b.addOperatingDay(Date.DayOfWeek.values()[day]); // ajoute un jour d'operation en recuperant le jour dans Date.DayOfWeek
                 }
             }        
 
             builders.put(name, b);
         }
-        calendarReader.close();
 
         // EXCEPTIONS : Nom;Date;Type
-        final BufferedReader exceptionReader = createReader("calendar_dates.csv");
+        final CsvReader exceptionReader = createReader("calendar_dates.csv");
 
-        while ((line = exceptionReader.readLine()) != null) {
+        while (exceptionReader.next()) {
 
-            String args[] = line.split(";");
-            assert args.length == 3;
+            assert exceptionReader.fieldCount() == 3;
 
-            String name = args[0];
-            Date date = dateFromText(args[1]);
-            int type = Integer.parseInt(args[2]);
+            String name = exceptionReader.stringField(0);
+            Date date = dateFromInt(exceptionReader.intField(1));
+            int type = exceptionReader.intField(2);
 
             if (type == SERVICE_ACTIF) {
                 builders.get(name).addIncludedDate(date);
@@ -117,7 +115,6 @@ public final class TimeTableReader {
                 builders.get(name).addExcludedDate(date);
             }
         }  
-        exceptionReader.close();
 
         for (Service.Builder b : builders.values()) {
             timetable.addService(b.build());
@@ -139,58 +136,272 @@ public final class TimeTableReader {
      * @throws  IOException
      *          En cas d'erreur de lecture.
      */
+    @Override
     public Graph readGraphForServices(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) throws IOException {
+        return readGraph(stops, services, walkingTime, walkingSpeed, false);
+    }
+
+    /**
+     * Lit et retourne le graphe maitre des arrets et services donnes, dont chaque trajet est associe a son service.
+     *
+     * @param   stops
+     *          Les arrets inclus dans le graphe.
+     * @param   services
+     *          Tous les services dont les trajets sont inclus dans le graphe.
+     * @param   walkingTime
+     *          Le temps de marche maximal.
+     * @param   walkingSpeed
+     *          La vitesse de marche (m/s).
+     * @return  Le graphe maitre.
+     * @throws  IOException
+     *          En cas d'erreur de lecture.
+     */
+    @Override
+    public Graph readMasterGraph(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) throws IOException {
+        return readGraph(stops, services, walkingTime, walkingSpeed, true);
+    }
+
+    // lit le graphe des arrets et services donnes, dont les trajets sont associes a leur service si demande
+    private Graph readGraph(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed, boolean withServices) throws IOException {
+
+        // les noms d'arrets et de services sont retrouves dans des tables de symboles, sans creer de chaines
+        final SymbolTable stopNames = new SymbolTable();
+        final Stop[] stopsBySymbol = stopsBySymbol(stops, stopNames);
+        final SymbolTable serviceNames = serviceNames(services);
+        final Service[] servicesBySymbol = withServices ? servicesBySymbol(services, serviceNames): null;
+
+        // TRAJETS : Nom;Arret1;Depart;Arret2;Arrivee
+        // le fichier est decoupe en tranches analysees en parallele, chacune dans son propre batisseur, puis fusionnees deux a deux
+        final List<CsvReader> parts = createReader("stop_times.csv").split(PARALLELISM * 4);
+        final Graph.Builder builder = parts.isEmpty()
+                ? new Graph.Builder(stops)
+                : ForkJoinPool.commonPool().invoke(new TripEdgesTask(parts, 0, parts.size(), stops, stopNames, stopsBySymbol, serviceNames, servicesBySymbol));
+
+        return builder.addAllWalkEdges(walkingTime, walkingSpeed).build();
+    }
+
+    /**
+     * Retourne un curseur sur les trajets (Nom;Arret1;Depart;Arret2;Arrivee), utilise par le convertisseur en instantane.
+     *
+     * @return  Le curseur sur stop_times.csv.
+     * @throws  IOException
+     *          En cas d'erreur de lecture.
+     */
+    CsvReader readStopTimes() throws IOException {
+        return createReader("stop_times.csv");
+    }
+
+    /**
+     * Lit et retourne le routeur par tours (RAPTOR) correspondant aux arrets et services donnes.
+     * Le fichier des trajets ne nomme pas les courses : elles sont reconstituees en supposant que les trajets d'une course y sont
+     * consecutifs et dans l'ordre du parcours. Deux trajets consecutifs d'un meme service sont donc consideres comme une seule course
+     * si l'arret d'arrivee du premier est l'arret de depart du second et que le second ne part pas avant l'arrivee du premier ;
+     * sinon (autre service, autre arret ou retour en arriere dans le temps), une nouvelle course commence.
+     * Deux courses distinctes qui s'enchainent ainsi sont fusionnees : les temps d'arrivee n'en sont pas changes,
+     * seul le nombre de correspondances peut etre sous-estime.
+     * Les arcs a pied sont ceux du graphe construit dans la meme lecture.
+     *
+     * @param   stops
+     *          L'ensemble des arrets.
+     * @param   services
+     *          L'ensemble des services.
+     * @param   walkingTime
+     *          Le temps de marche maximum (en secondes).
+     * @param   walkingSpeed
+     *          La vitesse de marche (en metres par secondes).
+     * @return  Le routeur par tours.
+     * @throws  IOException
+     *          En cas d'erreur de lecture.
+     */
+    public Raptor readRaptorForServices(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) throws IOException {
+
+        final Graph.Builder graphBuilder = new Graph.Builder(stops);
+        final Raptor.Builder raptorBuilder = new Raptor.Builder();
+        final SymbolTable stopNames = new SymbolTable();
+        final Stop[] stopsBySymbol = stopsBySymbol(stops, stopNames);
+        final SymbolTable serviceNames = serviceNames(services);
 
-        String line;
-        final Graph.Builder builder = new Graph.Builder(stops);
-        final Map<String, Stop> stopsMap = new HashMap<>();
-        final Set<String> servicesNames = new HashSet<>();
+        // course en cours de lecture : service, arrets, arrivees et departs
+        int tripService = -1;
+        final List<Stop> tripStops = new ArrayList<>();
+        final List<Integer> tripArrivals = new ArrayList<>();
+        final List<Integer> tripDepartures = new ArrayList<>();
 
-        for (Stop s : stops) { // association de chaque arret a son nom dans une table pour facilitier la verification future
-            stopsMap.put(s.name(), s);
+        // TRAJETS : Nom;Arret1;Depart;Arret2;Arrivee
+        final CsvReader reader = createReader("stop_times.csv");
+        while (reader.next()) {
+
+            assert reader.fieldCount() == 5;
+
+            int service = reader.symbolField(0, serviceNames);
+            int fromStop = reader.symbolField(1, stopNames);
+            int toStop = reader.symbolField(3, stopNames);
+
+            if (service >= 0 && fromStop >= 0 && toStop >= 0 && fromStop != toStop) {
+
+                Stop from = stopsBySymbol[fromStop], to = stopsBySymbol[toStop];
+                int departureTime = reader.intField(2);
+                int arrivalTime = reader.intField(4);
+
+                graphBuilder.addTripEdge(from, to, departureTime, arrivalTime);
+
+                int last = tripStops.size() - 1;
+                if (last >= 0 && service == tripService && tripStops.get(last) == from && tripArrivals.get(last) <= departureTime) {
+                    tripDepartures.set(last, departureTime); // le trajet prolonge la course en cours
+                } else {
+                    addTrip(raptorBuilder, tripStops, tripArrivals, tripDepartures);
+                    tripService = service;
+                    tripStops.add(from);
+                    tripArrivals.add(departureTime);
+                    tripDepartures.add(departureTime);
+                }
+                tripStops.add(to);
+                tripArrivals.add(arrivalTime);
+                tripDepartures.add(arrivalTime);
+
+            } else {
+                addTrip(raptorBuilder, tripStops, tripArrivals, tripDepartures);
+            }
         }
+        addTrip(raptorBuilder, tripStops, tripArrivals, tripDepartures);
+
+        return raptorBuilder.build(graphBuilder.addAllWalkEdges(walkingTime, walkingSpeed).build());
+    }
 
-        for (Service s : services) { // recuperation des noms de services pour faciliter la verification future
-            servicesNames.add(s.name());
+    // ajoute la course en cours au batisseur, s'il y en a une, et la vide
+    private void addTrip(Raptor.Builder builder, List<Stop> stops, List<Integer> arrivals, List<Integer> departures) {
+        if (stops.isEmpty())
+            return;
+
+        final int[] arrivalTimes = new int[stops.size()], departureTimes = new int[stops.size()];
+        for (int i = 0; i < stops.size(); ++i) {
+            arrivalTimes[i] = arrivals.get(i);
+            departureTimes[i] = departures.get(i);
         }
+        builder.addTrip(stops, arrivalTimes, departureTimes);
+        stops.clear();
+        arrivals.clear();
+        departures.clear();
+    }
 
-        // TRAJETS : Nom;Arret1;Depart;Arret2;Arrivee
-        final BufferedReader reader = createReader("stop_times.csv");         
-        while ((line = reader.readLine()) != null) {
+    // ajoute au batisseur les trajets des services et arrets donnes lus par le curseur, associes a leur service si servicesBySymbol est non nul
+    private static void addTripEdges(Graph.Builder builder, CsvReader reader, SymbolTable stopNames, Stop[] stopsBySymbol, SymbolTable serviceNames,
+            Service[] servicesBySymbol) {
+
+        while (reader.next()) {
 
-            String args[] = line.split(";");
-            assert args.length == 5;
+            assert reader.fieldCount() == 5;
 
-            String name = args[0];
-            String fromStop = args[1];
-            String toStop = args[3];
+            int service = reader.symbolField(0, serviceNames);
+            int fromStop = reader.symbolField(1, stopNames);
+            int toStop = reader.symbolField(3, stopNames);
 
-            // !fromStop.equals(toStop) sert a enlever les arcs qui pointent sur eux meme (mauvaises donnees de TL en cause, source professeur)
-            if (servicesNames.contains(name) && !fromStop.equals(toStop) && stopsMap.containsKey(fromStop) && stopsMap.containsKey(toStop)) {
+            // fromStop != toStop sert a enlever les arcs qui pointent sur eux meme (mauvaises donnees de TL en cause, source professeur)
+            if (service >= 0 && fromStop >= 0 && toStop >= 0 && fromStop != toStop) {
 
-                int departureTime = Integer.parseInt(args[2]);
-                int arrivalTime = Integer.parseInt(args[4]);
+                int departureTime = reader.intField(2);
+                int arrivalTime = reader.intField(4);
 
-                builder.addTripEdge(stopsMap.get(fromStop), stopsMap.get(toStop), departureTime, arrivalTime);
+                if (servicesBySymbol == null)
+                    builder.addTripEdge(stopsBySymbol[fromStop], stopsBySymbol[toStop], departureTime, arrivalTime);
+                else
+                    builder.addTripEdge(stopsBySymbol[fromStop], stopsBySymbol[toStop], departureTime, arrivalTime, servicesBySymbol[service]);
             }
         }
-        reader.close();
+    }
 
-        return builder.addAllWalkEdges(walkingTime, walkingSpeed).build();
+    // ajoute les noms des arrets a la table de symboles et retourne les arrets indexes par identifiant de symbole
+    private static Stop[] stopsBySymbol(Set<Stop> stops, SymbolTable stopNames) {
+        Stop[] stopsBySymbol = new Stop[stops.size()];
+        for (Stop s : stops) { // un nom en double garde le dernier arret, comme le faisait la table des noms
+            stopsBySymbol[stopNames.intern(s.name())] = s;
+        }
+        return stopsBySymbol;
+    }
+
+    // retourne les services donnes indexes par identifiant de symbole de leur nom
+    private static Service[] servicesBySymbol(Set<Service> services, SymbolTable serviceNames) {
+        Service[] servicesBySymbol = new Service[serviceNames.size()];
+        for (Service s : services) {
+            servicesBySymbol[serviceNames.id(s.name())] = s;
+        }
+        return servicesBySymbol;
+    }
+
+    // retourne la table de symboles des noms des services donnes
+    private static SymbolTable serviceNames(Set<Service> services) {
+        SymbolTable serviceNames = new SymbolTable();
+        for (Service s : services) {
+            serviceNames.intern(s.name());
+        }
+        return serviceNames;
+    }
+
+    /**
+     * Tache d'analyse d'une suite de tranches du fichier des trajets, divisee en deux tant qu'elle en contient plusieurs.
+     * Chaque tranche remplit son propre batisseur de graphe ; les batisseurs sont fusionnes en remontant, sans verrou partage.
+     * Les tables de symboles ne sont que consultees.
+     */
+    private static final class TripEdgesTask extends RecursiveTask<Graph.Builder> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<CsvReader> parts;
+        private final int from, to;
+        private final Set<Stop> stops;
+        private final SymbolTable stopNames, serviceNames;
+        private final Stop[] stopsBySymbol;
+        private final Service[] servicesBySymbol;
+
+        TripEdgesTask(List<CsvReader> parts, int from, int to, Set<Stop> stops, SymbolTable stopNames, Stop[] stopsBySymbol, SymbolTable serviceNames,
+                Service[] servicesBySymbol) {
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+            this.stops = stops;
+            this.stopNames = stopNames;
+            this.stopsBySymbol = stopsBySymbol;
+            this.serviceNames = serviceNames;
+            this.servicesBySymbol = servicesBySymbol;
+        }
+
+        @Override
+        protected Graph.Builder compute() {
+            if (to - from == 1) {
+                Graph.Builder builder = new Graph.Builder(stops);
+                addTripEdges(builder, parts.get(from), stopNames, stopsBySymbol, serviceNames, servicesBySymbol);
+                return builder;
+            }
+
+            int middle = (from + to) >>> 1;
+            TripEdgesTask left = new TripEdgesTask(parts, from, middle, stops, stopNames, stopsBySymbol, serviceNames, servicesBySymbol);
+            left.fork();
+            Graph.Builder right = new TripEdgesTask(parts, middle, to, stops, stopNames, stopsBySymbol, serviceNames, servicesBySymbol).compute();
+            return left.join().merge(right);
+        }
     }
 
-    // cree un lecteur selon le chemin des donnees et un fichier
-    private BufferedReader createReader(String file) throws IOException {
-        InputStream stream = getClass().getResourceAsStream(baseResourceName+file);
-        assert stream != null : "fichier introuvable : "+baseResourceName+file;
-        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    // cree un curseur sur un fichier des donnees : projete en memoire si la ressource est un fichier, lue d'un bloc sinon (archive jar)
+    private CsvReader createReader(String file) throws IOException {
+        URL resource = getClass().getResource(baseResourceName+file);
+        if (resource == null)
+            throw new IOException("fichier introuvable : "+baseResourceName+file);
+
+        if ("file".equals(resource.getProtocol())) {
+            try {
+                return CsvReader.map(Paths.get(resource.toURI()), SEPARATOR);
+            } catch (URISyntaxException e) {
+                // chemin non convertible : lecture par flux
+            }
+        }
+        return CsvReader.read(resource.openStream(), SEPARATOR);
     }
 
-    // convertit les dates du format texte (2000:01:01) en Date
-    private Date dateFromText(String texte) {
-        int year = Integer.parseInt(texte.substring(0, 4));
-        int month = Integer.parseInt(texte.substring(4, 6));
-        int day = Integer.parseInt(texte.substring(6, 8));
+    // convertit les dates du format entier (20000101) en Date
+    private Date dateFromInt(int date) {
+        int year = date / 10000;
+        int month = (date / 100) % 100;
+        int day = date % 100;
         return new Date(day, month, year);
     }
 }
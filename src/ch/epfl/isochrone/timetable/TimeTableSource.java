@@ -0,0 +1,56 @@
+package ch.epfl.isochrone.timetable;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Une source d'horaire : fournit la table des horaires et le graphe des services actifs.
+ * Implementee par le lecteur des donnees CSV et par celui des instantanes binaires.
+ */
+public interface TimeTableSource {
+
+    /**
+     * Lit et retourne les arrets et services (exceptions de services compris) dans une table des horaires.
+     *
+     * @return  La table des horaires.
+     * @throws  IOException
+     *          En cas d'erreur de lecture.
+     */
+    public TimeTable readTimeTable() throws IOException;
+
+    /**
+     * Lit et retourne le graphe correspondant aux arrets et services donnes selon un temps et une vitesse de marche.
+     *
+     * @param   stops
+     *          Les arrets inclus dans le graphe.
+     * @param   services
+     *          Les services actifs dans le graphe.
+     * @param   walkingTime
+     *          Le temps de marche maximal.
+     * @param   walkingSpeed
+     *          La vitesse de marche (m/s).
+     * @return  Le graphe.
+     * @throws  IOException
+     *          En cas d'erreur de lecture.
+     */
+    public Graph readGraphForServices(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) throws IOException;
+
+    /**
+     * Lit et retourne le graphe maitre des arrets et services donnes : chaque trajet y est associe a son service,
+     * et les recherches ne prennent que ceux des services actifs (voir Graph.serviceMask). Changer de date ne demande alors
+     * aucune nouvelle lecture.
+     *
+     * @param   stops
+     *          Les arrets inclus dans le graphe.
+     * @param   services
+     *          Tous les services dont les trajets sont inclus dans le graphe.
+     * @param   walkingTime
+     *          Le temps de marche maximal.
+     * @param   walkingSpeed
+     *          La vitesse de marche (m/s).
+     * @return  Le graphe maitre.
+     * @throws  IOException
+     *          En cas d'erreur de lecture.
+     */
+    public Graph readMasterGraph(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) throws IOException;
+}
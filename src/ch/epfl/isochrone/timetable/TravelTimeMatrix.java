@@ -0,0 +1,225 @@
+package ch.epfl.isochrone.timetable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Une matrice des durees de trajet depuis plusieurs arrets de depart, a plusieurs temps de depart, vers tous les arrets d'un graphe.
+ * La ligne i*d+j (d etant le nombre de temps de depart) contient les durees depuis le i-eme arret de depart au j-eme temps de depart,
+ * indexees par identifiant d'arret du graphe (voir Graph.stop) ; les arrets non atteints valent SecondsPastMidnight.INFINITE.
+ * Les recherches sont reparties en parallele par blocs de lignes ; chaque bloc reutilise son propre contexte
+ * de recherche (voir SearchContext) et n'alloue que les lignes du resultat.
+ * <p>
+ * Format du fichier (entiers gros-boutistes) : nombre de lignes, nombre de colonnes, puis les durees ligne par ligne.
+ * Classe immuable.
+ */
+public final class TravelTimeMatrix {
+
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final int MIN_ROWS = 4; // nombre minimal de lignes par tache parallele
+    private static final int HEADER_SIZE = 8;
+
+    private final Graph graph;
+    private final int[] origins;
+    private final int[] departureTimes;
+    private final BitSet activeServices;
+
+    /**
+     * Constructeur public d'une matrice des durees de trajet.
+     *
+     * @param   graph
+     *          Le graphe.
+     * @param   origins
+     *          Les arrets de depart.
+     * @param   departureTimes
+     *          Les temps de depart.
+     * @param   activeServices
+     *          Le masque des services actifs du graphe (voir Graph.serviceMask), ou null si tous les trajets sont actifs.
+     * @throws  IllegalArgumentException
+     *          En cas d'arret de depart non present dans le graphe.
+     * @throws  IllegalArgumentException
+     *          En cas de temps de depart negatif.
+     */
+    public TravelTimeMatrix(Graph graph, List<Stop> origins, int[] departureTimes, BitSet activeServices) {
+
+        this.origins = new int[origins.size()];
+        for (int i = 0; i < this.origins.length; ++i) {
+            this.origins[i] = graph.stopId(origins.get(i));
+            if (this.origins[i] < 0)
+                throw new IllegalArgumentException("l'arret doit faire partie du graphe : "+origins.get(i));
+        }
+        for (int time : departureTimes) {
+            if (time < 0)
+                throw new IllegalArgumentException("le temps de depart ne doit pas etre negatif : "+time);
+        }
+
+        this.graph = graph;
+        this.departureTimes = departureTimes.clone();
+        this.activeServices = (activeServices == null) ? null: (BitSet) activeServices.clone();
+    }
+
+    /**
+     * Retourne le nombre de lignes de la matrice : une par arret de depart et temps de depart.
+     *
+     * @return  Le nombre de lignes.
+     */
+    public int rowCount() {
+        return origins.length * departureTimes.length;
+    }
+
+    /**
+     * Retourne le nombre de colonnes de la matrice : une par arret du graphe.
+     *
+     * @return  Le nombre de colonnes.
+     */
+    public int columnCount() {
+        return graph.stopCount();
+    }
+
+    /**
+     * Calcule la matrice des durees de trajet en memoire.
+     *
+     * @return  Les durees de trajet, une ligne par arret de depart et temps de depart.
+     * @throws  IllegalStateException
+     *          En cas d'interruption du fil appelant pendant le calcul (son drapeau d'interruption reste leve).
+     */
+    public int[][] compute() {
+
+        final int[][] matrix = new int[rowCount()][];
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for (final int[] range : chunks(0)) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    SearchContext context = new SearchContext(graph);
+                    for (int row = range[0]; row < range[1]; ++row) {
+                        matrix[row] = new int[columnCount()];
+                        computeRow(row, context, matrix[row]);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try {
+            invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("calcul de la matrice interrompu", e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // les taches de compute ne lancent pas d'IOException
+        }
+        return matrix;
+    }
+
+    /**
+     * Calcule la matrice des durees de trajet et l'ecrit dans le fichier donne, projete en memoire :
+     * chaque bloc de lignes est ecrit directement dans sa propre projection, sans garder la matrice en memoire.
+     *
+     * @param   file
+     *          Le fichier, remplace s'il existe.
+     * @throws  IOException
+     *          En cas d'erreur d'ecriture.
+     * @throws  InterruptedIOException
+     *          En cas d'interruption du fil appelant pendant le calcul (son drapeau d'interruption reste leve).
+     */
+    public void writeTo(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(rowCount()).putInt(columnCount()).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, HEADER_SIZE - header.remaining());
+            }
+            final long size = HEADER_SIZE + 4L * rowCount() * columnCount();
+            if (size > HEADER_SIZE) // le fichier a sa taille finale avant les projections paralleles
+                channel.write(ByteBuffer.allocate(1), size - 1);
+
+            final List<Callable<Void>> tasks = new ArrayList<>();
+            for (final int[] range : chunks(Integer.MAX_VALUE / (4 * Math.max(1, columnCount())))) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        long position = HEADER_SIZE + 4L * range[0] * columnCount();
+                        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, 4L * (range[1] - range[0]) * columnCount());
+                        IntBuffer out = buffer.asIntBuffer();
+                        SearchContext context = new SearchContext(graph);
+                        int[] row = new int[columnCount()];
+                        for (int r = range[0]; r < range[1]; ++r) {
+                            computeRow(r, context, row);
+                            out.put(row);
+                        }
+                        buffer.force();
+                        return null;
+                    }
+                });
+            }
+            try {
+                invokeAll(tasks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("calcul de la matrice interrompu");
+            }
+        }
+    }
+
+    // ecrit les durees de trajet de la ligne donnee dans le tableau donne
+    private void computeRow(int row, SearchContext context, int[] travelTimes) {
+        final int departureTime = departureTimes[row % departureTimes.length];
+        context.fastestPaths(graph.stop(origins[row / departureTimes.length]), departureTime, SecondsPastMidnight.INFINITE, null, activeServices);
+        for (int id = 0; id < travelTimes.length; ++id) {
+            int arrivalTime = context.arrivalTime(id);
+            travelTimes[id] = (arrivalTime < SecondsPastMidnight.INFINITE) ? arrivalTime - departureTime: SecondsPastMidnight.INFINITE;
+        }
+    }
+
+    // decoupe les lignes en blocs [debut, fin) pour les taches paralleles, d'au plus maxRows lignes si maxRows est positif
+    private List<int[]> chunks(int maxRows) {
+        final int rows = rowCount();
+        int chunks = Math.max(1, Math.min(PARALLELISM * 4, rows / MIN_ROWS));
+        if (maxRows > 0)
+            chunks = Math.max(chunks, (rows + maxRows - 1) / maxRows);
+
+        final List<int[]> ranges = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; ++c) {
+            int from = (int) ((long) rows * c / chunks);
+            int to = (int) ((long) rows * (c+1) / chunks);
+            if (from < to)
+                ranges.add(new int[] {from, to});
+        }
+        return ranges;
+    }
+
+    // execute les taches sur le pool commun et attend leur fin, en relancant l'exception d'une tache qui a echoue
+    private static void invokeAll(List<Callable<Void>> tasks) throws InterruptedException, IOException {
+        if (Thread.interrupted()) // le pool peut executer les taches sans voir l'interruption d'un fil externe
+            throw new InterruptedException();
+        try {
+            for (Future<Void> f : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw (Error) cause;
+        }
+    }
+}
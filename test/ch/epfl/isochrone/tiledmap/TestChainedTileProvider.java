@@ -0,0 +1,107 @@
+package ch.epfl.isochrone.tiledmap;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TestChainedTileProvider {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoFilter() {
+        new ChainedTileProvider(null, Collections.<ARGBFilter>emptyList());
+    }
+
+    @Test
+    public void testSameAsNestedFilters() {
+        TileProvider original = gradient(BufferedImage.TYPE_INT_ARGB);
+        TileProvider nested = new TransparentTileProvider(new InvertingTileProvider(original), 0.5);
+        TileProvider chained = new ChainedTileProvider(original,
+                Arrays.<ARGBFilter>asList(new InvertingFilter(), new TransparencyFilter(0.5)));
+
+        BufferedImage expected = nested.tileAt(1, 0, 0).image(), actual = chained.tileAt(1, 0, 0).image();
+        for (int dy = 0; dy < expected.getHeight(); ++dy) {
+            for (int dx = 0; dx < expected.getWidth(); ++dx) {
+                assertEquals(expected.getRGB(dx, dy), actual.getRGB(dx, dy));
+            }
+        }
+    }
+
+    @Test
+    public void testOtherImageType() {
+        TileProvider original = gradient(BufferedImage.TYPE_3BYTE_BGR);
+        TileProvider chained = new ChainedTileProvider(original, Arrays.<ARGBFilter>asList(new InvertingFilter()));
+        BufferedImage source = original.tileAt(1, 0, 0).image(), actual = chained.tileAt(1, 0, 0).image();
+        for (int dy = 0; dy < source.getHeight(); ++dy) {
+            for (int dx = 0; dx < source.getWidth(); ++dx) {
+                assertEquals(source.getRGB(dx, dy) ^ 0x00FFFFFF, actual.getRGB(dx, dy));
+            }
+        }
+    }
+
+    @Test
+    public void testSourceNotModified() {
+        final BufferedImage source = gradient(BufferedImage.TYPE_INT_ARGB).tileAt(1, 0, 0).image();
+        final int before = source.getRGB(3, 5);
+        TileProvider chained = new ChainedTileProvider(new TileProvider() {
+            @Override
+            public Tile tileAt(int zoom, int x, int y) {
+                return new Tile(zoom, x, y, source);
+            }
+        }, Arrays.<ARGBFilter>asList(new InvertingFilter()));
+        chained.tileAt(1, 0, 0);
+        assertEquals(before, source.getRGB(3, 5));
+    }
+
+    // tuile en degrade, differente par pixel
+    private static TileProvider gradient(final int type) {
+        return new TileProvider() {
+            @Override
+            public Tile tileAt(int zoom, int x, int y) {
+                BufferedImage i = new BufferedImage(64, 32, type);
+                Graphics2D context = i.createGraphics();
+                for (int dy = 0; dy < 32; ++dy) {
+                    for (int dx = 0; dx < 64; ++dx) {
+                        context.setColor(new Color(4*dx, 8*dy, 255 - 4*dx));
+                        context.fillRect(dx, dy, 1, 1);
+                    }
+                }
+                return new Tile(zoom, x, y, i);
+            }
+        };
+    }
+
+    // filtre sans transformation par paquet : utilise la transformation par defaut
+    private static final class InvertingTileProvider extends FilteringTileProvider {
+
+        private InvertingTileProvider(TileProvider originalProvider) {
+            super(originalProvider);
+        }
+
+        @Override
+        public int transformARGB(int argb) {
+            return argb ^ 0x00FFFFFF;
+        }
+    }
+
+    // transformation seule, sans fournisseur de tuile
+    private static final class InvertingFilter implements ARGBFilter {
+
+        @Override
+        public int transformARGB(int argb) {
+            return argb ^ 0x00FFFFFF;
+        }
+
+        @Override
+        public void transformARGB(int[] src, int[] dst, int from, int to) {
+            for (int i = from; i < to; ++i) {
+                dst[i] = transformARGB(src[i]);
+            }
+        }
+    }
+}
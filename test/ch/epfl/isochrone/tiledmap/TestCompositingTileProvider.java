@@ -0,0 +1,194 @@
+package ch.epfl.isochrone.tiledmap;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TestCompositingTileProvider {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoLayer() {
+        new CompositingTileProvider(Collections.<TileProvider>emptyList(), Color.WHITE);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidLayerIndex() {
+        new CompositingTileProvider(Arrays.<TileProvider>asList(new CountingProvider(Color.RED, 255)), Color.WHITE).setLayer(1, null);
+    }
+
+    @Test
+    public void testSameAsDrawingLayers() {
+        CountingProvider base = new CountingProvider(Color.RED, 255), overlay = new CountingProvider(Color.BLUE, 128);
+        TileProvider composite = new CompositingTileProvider(Arrays.<TileProvider>asList(base, overlay), Color.WHITE);
+
+        BufferedImage expected = new BufferedImage(TileProvider.TILE_SIZE, TileProvider.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = expected.createGraphics();
+        g.drawImage(base.tileAt(2, 1, 1).image(), null, 0, 0);
+        g.drawImage(overlay.tileAt(2, 1, 1).image(), null, 0, 0);
+        g.dispose();
+
+        Tile tile = composite.tileAt(2, 1, 1);
+        assertEquals(2, tile.zoom());
+        for (int dy = 0; dy < TileProvider.TILE_SIZE; dy += 17) {
+            for (int dx = 0; dx < TileProvider.TILE_SIZE; dx += 17) {
+                assertEquals(expected.getRGB(dx, dy), tile.image().getRGB(dx, dy));
+            }
+        }
+    }
+
+    @Test
+    public void testCompositeIsCached() {
+        CountingProvider base = new CountingProvider(Color.RED, 255), overlay = new CountingProvider(Color.BLUE, 128);
+        TileProvider composite = new CompositingTileProvider(Arrays.<TileProvider>asList(base, overlay), Color.WHITE);
+        assertSame(composite.tileAt(2, 1, 1), composite.tileAt(2, 1, 1));
+        assertEquals(1, base.calls);
+        assertEquals(1, overlay.calls);
+    }
+
+    @Test
+    public void testOnlyChangedLayersAreRecomposited() {
+        CountingProvider base = new CountingProvider(Color.RED, 255), overlay = new CountingProvider(Color.BLUE, 128);
+        CompositingTileProvider composite = new CompositingTileProvider(Arrays.<TileProvider>asList(base, overlay), Color.WHITE);
+        Tile before = composite.tileAt(2, 1, 1);
+
+        CountingProvider newOverlay = new CountingProvider(Color.GREEN, 128);
+        composite.setLayer(1, newOverlay);
+        Tile after = composite.tileAt(2, 1, 1);
+        assertNotSame(before, after);
+        assertEquals(1, base.calls);
+        assertEquals(1, newOverlay.calls);
+        assertFalse(before.image().getRGB(0, 0) == after.image().getRGB(0, 0));
+    }
+
+    @Test
+    public void testLoadingLayerIsNotCached() {
+        final boolean[] loaded = {false};
+        TileProvider loading = new TileProvider() {
+            @Override
+            public Tile tileAt(int zoom, int x, int y) {
+                return loaded[0] ? new CountingProvider(Color.RED, 255).tileAt(zoom, x, y): Tile.LOADING;
+            }
+        };
+        CountingProvider overlay = new CountingProvider(Color.BLUE, 128);
+        TileProvider composite = new CompositingTileProvider(Arrays.<TileProvider>asList(loading, overlay), Color.WHITE);
+        Tile partial = composite.tileAt(2, 1, 1);
+        assertTrue(partial.isLoading());
+        assertNotSame(partial, composite.tileAt(2, 1, 1));
+
+        loaded[0] = true;
+        Tile tile = composite.tileAt(2, 1, 1);
+        assertFalse(tile.isLoading());
+        assertSame(tile, composite.tileAt(2, 1, 1));
+    }
+
+    @Test
+    public void testOverlayIsDrawnOverBackgroundWhileLoading() {
+        TileProvider loading = new TileProvider() {
+            @Override
+            public Tile tileAt(int zoom, int x, int y) {
+                return Tile.LOADING;
+            }
+        };
+        CountingProvider overlay = new CountingProvider(Color.BLUE, 128);
+        Tile tile = new CompositingTileProvider(Arrays.<TileProvider>asList(loading, overlay), Color.WHITE).tileAt(2, 1, 1);
+        assertEquals(2, tile.zoom());
+        assertEquals(expected(Color.WHITE, overlay.tileAt(2, 1, 1)), tile.image().getRGB(0, 0));
+    }
+
+    @Test
+    public void testTransparentBaseShowsBackground() {
+        CountingProvider base = new CountingProvider(Color.RED, 0), overlay = new CountingProvider(Color.BLUE, 128);
+        Tile tile = new CompositingTileProvider(Arrays.<TileProvider>asList(base, overlay), Color.WHITE).tileAt(2, 1, 1);
+        assertFalse(tile.isLoading());
+        assertEquals(expected(Color.WHITE, overlay.tileAt(2, 1, 1)), tile.image().getRGB(0, 0));
+    }
+
+    // couleur attendue de la tuile donnee dessinee sur un fond uni
+    private static int expected(Color background, Tile tile) {
+        BufferedImage expected = new BufferedImage(TileProvider.TILE_SIZE, TileProvider.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = expected.createGraphics();
+        g.setColor(background);
+        g.fillRect(0, 0, TileProvider.TILE_SIZE, TileProvider.TILE_SIZE);
+        g.drawImage(tile.image(), null, 0, 0);
+        g.dispose();
+        return expected.getRGB(0, 0);
+    }
+
+    @Test
+    public void testSlowLayerDoesNotBlockOtherTiles() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1), release = new CountDownLatch(1);
+        final CountingProvider base = new CountingProvider(Color.RED, 255);
+        TileProvider slow = new TileProvider() {
+            @Override
+            public Tile tileAt(int zoom, int x, int y) {
+                if (x == 1) { // tuile lente : attend d'etre liberee
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return base.tileAt(zoom, x, y);
+            }
+        };
+        final TileProvider composite = new CompositingTileProvider(Arrays.<TileProvider>asList(slow, new CountingProvider(Color.BLUE, 128)), Color.WHITE);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Tile> pending = executor.submit(new Callable<Tile>() {
+                @Override
+                public Tile call() {
+                    return composite.tileAt(2, 1, 1);
+                }
+            });
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            Future<Tile> other = executor.submit(new Callable<Tile>() {
+                @Override
+                public Tile call() {
+                    return composite.tileAt(2, 0, 0);
+                }
+            });
+            assertEquals(0, other.get(5, TimeUnit.SECONDS).x()); // n'attend pas la tuile lente
+            release.countDown();
+            assertEquals(1, pending.get(5, TimeUnit.SECONDS).x());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    // fournisseur de tuiles unies comptant ses appels
+    private static final class CountingProvider implements TileProvider {
+
+        private final Color color;
+        private int calls;
+
+        private CountingProvider(Color color, int alpha) {
+            this.color = new Color(color.getRed(), color.getGreen(), color.getBlue(), alpha);
+        }
+
+        @Override
+        public Tile tileAt(int zoom, int x, int y) {
+            ++calls;
+            BufferedImage image = new BufferedImage(TileProvider.TILE_SIZE, TileProvider.TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
+            g.setColor(color);
+            g.fillRect(0, 0, TileProvider.TILE_SIZE, TileProvider.TILE_SIZE);
+            g.dispose();
+            return new Tile(zoom, x, y, image);
+        }
+    }
+}
@@ -1,12 +1,20 @@
 package ch.epfl.isochrone.tiledmap;
 
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
 
 import javax.imageio.ImageIO;
 
 import org.junit.Test;
 
+import ch.epfl.isochrone.geo.PointOSM;
 import ch.epfl.isochrone.timetable.Date;
 import ch.epfl.isochrone.timetable.FastestPathTree;
 import ch.epfl.isochrone.timetable.Graph;
@@ -22,6 +30,11 @@ public class TestIsochroneTileProvider {
         new IsochroneTileProvider(null, null, -2);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testArrivingByWrongWalkingSpeed() {
+        IsochroneTileProvider.arrivingBy(null, null, -2);
+    }
+
     @Test
     public void testTileAt() {
 
@@ -77,4 +90,80 @@ public class TestIsochroneTileProvider {
             throw new IllegalStateException(e.getMessage());
         }
     }
+
+    @Test
+    public void testRasterSingleStop() {
+        PointOSM center = new PointOSM(11, (1061 << 8) + 128, (724 << 8) + 128);
+        Stop stop = new Stop("Centre", center.toWGS84());
+        FastestPathTree tree = new FastestPathTree.Builder(stop, 1000).build();
+        ColorTable colors = new ColorTable.Builder(300).addColor(Color.BLACK).addColor(Color.BLUE).addColor(Color.RED).build();
+
+        BufferedImage image = new IsochroneTileProvider(tree, colors, 1.25).withRendering(IsochroneTileProvider.Rendering.RASTER).tileAt(11, 1061, 724).image();
+        assertEquals(Color.RED.getRGB(), image.getRGB(128, 128));
+        assertEquals(Color.BLACK.getRGB(), image.getRGB(0, 0)); // a plus de 600 s de marche
+    }
+
+    @Test
+    public void testRasterSameAsShapes() {
+        Random rng = new Random(2021);
+        Stop start = new Stop("Depart", new PointOSM(13, (4246 << 8) + 128, (2897 << 8) + 128).toWGS84());
+        FastestPathTree.Builder b = new FastestPathTree.Builder(start, 0);
+        for (int i = 0; i < 200; ++i) { // arrets repartis sur la tuile et ses voisines
+            PointOSM position = new PointOSM(13, (4245 << 8) + rng.nextInt(768), (2896 << 8) + rng.nextInt(768));
+            b.setArrivalTime(new Stop("S"+i, position.toWGS84()), rng.nextInt(1500), start);
+        }
+        ColorTable colors = new ColorTable.Builder(300).addColor(0, 0, 0).addColor(0, 0, 1).addColor(0, 1, 0).addColor(1, 1, 0).addColor(1, 0, 0).build();
+
+        IsochroneTileProvider shapes = new IsochroneTileProvider(b.build(), colors, 1.25);
+        IsochroneTileProvider raster = shapes.withRendering(IsochroneTileProvider.Rendering.RASTER);
+        BufferedImage expected = shapes.tileAt(13, 4246, 2897).image(), actual = raster.tileAt(13, 4246, 2897).image();
+        int same = 0;
+        Set<Integer> sliceColors = new HashSet<>();
+        for (int v = 0; v < TileProvider.TILE_SIZE; ++v) {
+            for (int u = 0; u < TileProvider.TILE_SIZE; ++u) {
+                sliceColors.add(actual.getRGB(u, v));
+                if (expected.getRGB(u, v) == actual.getRGB(u, v))
+                    ++same;
+            }
+        }
+        assertEquals(colors.getSliceCount(), sliceColors.size());
+        assertTrue("pixels identiques : "+same, same > 0.95 * TileProvider.TILE_SIZE * TileProvider.TILE_SIZE); // seuls les bords antialiases different
+    }
+
+    @Test
+    public void testNeighbouringTiles() {
+        PointOSM center = new PointOSM(16, (33952 << 8) + 128, (23170 << 8) + 128);
+        Stop stop = new Stop("Centre", center.toWGS84());
+        FastestPathTree tree = new FastestPathTree.Builder(stop, 1000).build();
+        ColorTable colors = new ColorTable.Builder(300).addColor(Color.BLACK).addColor(Color.BLUE).addColor(Color.RED).build();
+
+        for (IsochroneTileProvider.Rendering rendering : IsochroneTileProvider.Rendering.values()) {
+            IsochroneTileProvider p = new IsochroneTileProvider(tree, colors, 1.25).withRendering(rendering);
+            assertEquals(Color.BLUE.getRGB(), p.tileAt(16, 33953, 23170).image().getRGB(200, 128)); // 750 m (~1.8 tuile) de marche
+            assertEquals(Color.BLACK.getRGB(), p.tileAt(16, 33955, 23170).image().getRGB(128, 128));
+            assertEquals(Color.BLUE.getRGB(), p.tileAt(16, 33951, 23169).image().getRGB(100, 200));
+        }
+    }
+
+    @Test
+    public void testProjectionSameTiles() {
+        Random rng = new Random(2023);
+        Stop start = new Stop("Depart", new PointOSM(13, (4246 << 8) + 128, (2897 << 8) + 128).toWGS84());
+        FastestPathTree.Builder b = new FastestPathTree.Builder(start, 0);
+        for (int i = 0; i < 100; ++i) {
+            b.setArrivalTime(new Stop("S"+i, new PointOSM(13, (4245 << 8) + rng.nextInt(768), (2896 << 8) + rng.nextInt(768)).toWGS84()), rng.nextInt(1500), start);
+        }
+        FastestPathTree tree = b.build();
+        ColorTable colors = new ColorTable.Builder(300).addColor(0, 0, 0).addColor(0, 0, 1).addColor(0, 1, 0).build();
+
+        IsochroneTileProvider p = new IsochroneTileProvider(tree, colors, 1.25).withRendering(IsochroneTileProvider.Rendering.RASTER);
+        IsochroneTileProvider projected = new IsochroneTileProvider(tree, colors, 1.25).withRendering(IsochroneTileProvider.Rendering.RASTER)
+                .withProjection(new StopProjection(tree.stops()));
+        BufferedImage expected = p.tileAt(13, 4246, 2897).image(), actual = projected.tileAt(13, 4246, 2897).image();
+        for (int v = 0; v < TileProvider.TILE_SIZE; ++v) {
+            for (int u = 0; u < TileProvider.TILE_SIZE; ++u) {
+                assertEquals(expected.getRGB(u, v), actual.getRGB(u, v));
+            }
+        }
+    }
 }
@@ -0,0 +1,55 @@
+package ch.epfl.isochrone.tiledmap;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointOSM;
+import ch.epfl.isochrone.geo.PointWGS84;
+import ch.epfl.isochrone.timetable.Stop;
+import ch.epfl.isochrone.timetable.TimeTable;
+import ch.epfl.isochrone.timetable.TimeTableReader;
+
+public class TestStopProjection {
+
+    @Test
+    public void testSameAsToOSM() {
+        Random rng = new Random(2023);
+        Stop[] stops = new Stop[50];
+        for (int i = 0; i < stops.length; ++i) {
+            stops[i] = new Stop("S"+i, new PointWGS84(Math.toRadians(360*rng.nextDouble() - 180), Math.toRadians(170*rng.nextDouble() - 85)));
+        }
+        StopProjection projection = new StopProjection(Arrays.asList(stops));
+        for (Stop s : stops) {
+            int id = projection.stopId(s);
+            for (int zoom = 0; zoom <= 19; ++zoom) {
+                PointOSM expected = s.position().toOSM(zoom);
+                assertEquals(expected.x(), projection.x(id, zoom), 0); // multiplication exacte par une puissance de deux
+                assertEquals(expected.y(), projection.y(id, zoom), 0);
+                assertEquals(expected.roundedX(), projection.toOSM(s, zoom).roundedX());
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownStop() {
+        StopProjection projection = new StopProjection(Arrays.<Stop>asList());
+        Stop s = new Stop("X", new PointWGS84(0.1, 0.8));
+        assertEquals(-1, projection.stopId(s));
+        assertEquals(s.position().toOSM(12).y(), projection.toOSM(s, 12).y(), 0);
+    }
+
+    @Test
+    public void testOnePerTimeTable() throws IOException {
+        TimeTable timeTable = new TimeTableReader("/time-table-test/").readTimeTable();
+        StopProjection projection = StopProjection.of(timeTable);
+        assertSame(projection, StopProjection.of(timeTable));
+        for (Stop s : timeTable.stops()) {
+            assertTrue(projection.stopId(s) >= 0);
+        }
+    }
+}
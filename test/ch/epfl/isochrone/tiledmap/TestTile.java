@@ -26,4 +26,11 @@ public class TestTile {
         assertEquals(i, t.image());
     }
 
+    @Test
+    public void testIsLoading() {
+        assertTrue(Tile.LOADING.isLoading());
+        assertFalse(new Tile(0, 0, 0, null).isLoading());
+        assertTrue(new Tile(0, 0, 0, null, true).isLoading());
+    }
+
 }
@@ -0,0 +1,48 @@
+package ch.epfl.isochrone.tiledmap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestTileStopGrid {
+
+    @Test
+    public void testCandidatesInTile() {
+        double[] xs = {100, 300, 1000}, ys = {100, 100, 1000}, radii = {10, 10, 10};
+        TileStopGrid grid = new TileStopGrid(4, xs, ys, radii);
+        assertArrayEquals(new int[] {0}, grid.candidates(0, 0));
+        assertArrayEquals(new int[] {1}, grid.candidates(1, 0));
+        assertArrayEquals(new int[] {2}, grid.candidates(3, 3));
+        assertArrayEquals(new int[0], grid.candidates(2, 2));
+        assertEquals(300, grid.x(1), 0);
+        assertEquals(1000, grid.y(2), 0);
+    }
+
+    @Test
+    public void testDiskOverNeighbouringTiles() {
+        double[] xs = {250}, ys = {5}, radii = {20};
+        TileStopGrid grid = new TileStopGrid(4, xs, ys, radii);
+        assertArrayEquals(new int[] {0}, grid.candidates(0, 0));
+        assertArrayEquals(new int[] {0}, grid.candidates(1, 0));
+        assertArrayEquals(new int[0], grid.candidates(0, 1));
+    }
+
+    @Test
+    public void testLargeDisks() {
+        double[] xs = {100, 2000}, ys = {100, 2000}, radii = {600, 10};
+        TileStopGrid grid = new TileStopGrid(4, xs, ys, radii);
+        for (int x = 0; x <= 2; ++x) { // le rayon de 600 px touche les tuiles voisines
+            for (int y = 0; y <= 2; ++y) {
+                assertArrayEquals(new int[] {0}, grid.candidates(x, y));
+            }
+        }
+        assertArrayEquals(new int[] {1}, grid.candidates(7, 7));
+    }
+
+    @Test
+    public void testIgnoredDisks() {
+        double[] xs = {100, 100}, ys = {100, 100}, radii = {-1, 10};
+        TileStopGrid grid = new TileStopGrid(4, xs, ys, radii);
+        assertArrayEquals(new int[] {1}, grid.candidates(0, 0));
+    }
+}
@@ -0,0 +1,28 @@
+package ch.epfl.isochrone.tiledmap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestTransparencyFilter {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongOpacity() {
+        new TransparencyFilter(1.5);
+    }
+
+    @Test
+    public void testTransformARGB() {
+        ARGBFilter f = new TransparencyFilter(0.5);
+        assertEquals(0x80FF7F00, f.transformARGB(0xFFFF7F00));
+        assertEquals(0x80123456, f.transformARGB(0x00123456));
+    }
+
+    @Test
+    public void testTransformRange() {
+        ARGBFilter f = new TransparencyFilter(0);
+        int[] src = {0xFF000001, 0xFF000002, 0xFF000003}, dst = new int[3];
+        f.transformARGB(src, dst, 1, 3);
+        assertArrayEquals(new int[] {0, 0x00000002, 0x00000003}, dst);
+    }
+}
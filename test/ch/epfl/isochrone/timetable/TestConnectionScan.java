@@ -0,0 +1,126 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestConnectionScan {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFastestPathsWrongStop() {
+        Set<Stop> stops = new HashSet<>();
+        Stop a = new Stop("A", new PointWGS84(0, 0));
+        stops.add(a);
+        new ConnectionScan(new Graph.Builder(stops).build()).fastestPaths(new Stop("B", null), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFastestPathsWrongTime() {
+        Set<Stop> stops = new HashSet<>();
+        Stop a = new Stop("A", new PointWGS84(0, 0));
+        stops.add(a);
+        new ConnectionScan(new Graph.Builder(stops).build()).fastestPaths(a, -1);
+    }
+
+    @Test
+    public void testSameArrivalTimesAsDijkstra() {
+        Random rng = new Random(2013);
+        for (int g = 0; g < 20; ++g) {
+            List<Stop> stops = new ArrayList<>();
+            Graph graph = randomGraph(rng, stops);
+            RoutingEngine csa = RoutingEngine.Algorithm.CONNECTION_SCAN.engineFor(graph);
+
+            for (int q = 0; q < 20; ++q) {
+                Stop start = stops.get(rng.nextInt(stops.size()));
+                int departure = rng.nextInt(SecondsPastMidnight.fromHMS(24, 0, 0));
+                FastestPathTree expected = graph.fastestPaths(start, departure);
+                FastestPathTree actual = csa.fastestPaths(start, departure);
+
+                assertEquals(expected.stops(), actual.stops());
+                for (Stop s : stops) {
+                    assertEquals(expected.arrivalTime(s), actual.arrivalTime(s));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testZeroDurationChain() {
+        Set<Stop> stops = new HashSet<>();
+        PointWGS84 p = new PointWGS84(0, 0);
+        Stop a = new Stop("A", p);
+        Stop b = new Stop("B", new PointWGS84(0, 0.01));
+        Stop c = new Stop("C", new PointWGS84(0, 0.02));
+        stops.add(a);
+        stops.add(b);
+        stops.add(c);
+        Graph g = new Graph.Builder(stops)
+        .addTripEdge(b, c, 100, 100) // peut etre triee avant la liaison qui atteint B
+        .addTripEdge(a, b, 100, 100)
+        .build();
+
+        FastestPathTree t = new ConnectionScan(g).fastestPaths(a, 50);
+        assertEquals(100, t.arrivalTime(b));
+        assertEquals(100, t.arrivalTime(c));
+        assertEquals(g.fastestPaths(a, 50).arrivalTime(c), t.arrivalTime(c));
+    }
+
+    // cree un graphe aleatoire d'arrets proches (pour avoir des trajets a pied, dont certains de duree nulle entre arrets confondus)
+    // avec des trajets de duree parfois nulle, et des enchainements de liaisons de duree nulle a la meme heure
+    static Graph randomGraph(Random rng, List<Stop> stops) {
+        Set<Stop> stopSet = new HashSet<>();
+        for (int i = 0; i < 60; ++i) {
+            PointWGS84 position = (i % 10 == 9) ? stops.get(i-1).position(): // arret confondu avec le precedent
+                new PointWGS84(Math.toRadians(6.6 + rng.nextDouble()*0.03), Math.toRadians(46.5 + rng.nextDouble()*0.03));
+            Stop s = new Stop("S"+i, position);
+            stops.add(s);
+            stopSet.add(s);
+        }
+
+        Graph.Builder b = new Graph.Builder(stopSet);
+        for (int line = 0; line < 15; ++line) { // des lignes parcourues plusieurs fois dans la journee
+            List<Stop> route = randomRoute(rng, stops);
+            for (int run = 0; run < 10; ++run) {
+                int time = rng.nextInt(SecondsPastMidnight.fromHMS(24, 0, 0));
+                for (int i = 0; i + 1 < route.size(); ++i) {
+                    int arrival = time + (rng.nextInt(4) == 0 ? 0: 30 + rng.nextInt(300));
+                    b.addTripEdge(route.get(i), route.get(i+1), time, arrival);
+                    time = arrival + (rng.nextInt(3) == 0 ? 0: rng.nextInt(60));
+                }
+            }
+        }
+        for (int chain = 0; chain < 20; ++chain) { // liaisons de duree nulle a la meme minute, ajoutees dans le desordre
+            List<Stop> route = randomRoute(rng, stops);
+            int time = 60 * rng.nextInt(24 * 60);
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i + 1 < route.size(); ++i) {
+                order.add(i);
+            }
+            Collections.shuffle(order, rng);
+            for (int i : order) {
+                b.addTripEdge(route.get(i), route.get(i+1), time, time);
+            }
+        }
+        return b.addAllWalkEdges(300, 1.25).build();
+    }
+
+    // retourne une suite aleatoire d'arrets distincts
+    private static List<Stop> randomRoute(Random rng, List<Stop> stops) {
+        List<Stop> route = new ArrayList<>();
+        for (int i = 0; i < 2 + rng.nextInt(8); ++i) {
+            Stop s = stops.get(rng.nextInt(stops.size()));
+            if (!route.contains(s))
+                route.add(s);
+        }
+        return route;
+    }
+}
@@ -0,0 +1,134 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestCsvReader {
+
+    private static CsvReader reader(String text) {
+        return new CsvReader(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), ';');
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNewlineSeparator() {
+        new CsvReader(ByteBuffer.allocate(0), '\n');
+    }
+
+    @Test
+    public void testRowsAndFields() {
+        CsvReader r = reader("a;12;-3\r\n\n;x\nCroisettes;é;+7");
+        assertTrue(r.next());
+        assertEquals(3, r.fieldCount());
+        assertEquals("a", r.stringField(0));
+        assertEquals(12, r.intField(1));
+        assertEquals(-3, r.intField(2));
+
+        assertTrue(r.next()); // la ligne vide est ignoree
+        assertEquals(2, r.fieldCount());
+        assertEquals("", r.stringField(0));
+        assertEquals("x", r.stringField(1));
+
+        assertTrue(r.next()); // derniere ligne sans fin de ligne
+        assertEquals("é", r.stringField(1));
+        assertEquals(7, r.intField(2));
+        assertFalse(r.next());
+        assertFalse(r.next());
+    }
+
+    @Test
+    public void testIntFieldBounds() {
+        CsvReader r = reader(Integer.MAX_VALUE+";"+Integer.MIN_VALUE+";2147483648;1x;-");
+        r.next();
+        assertEquals(Integer.MAX_VALUE, r.intField(0));
+        assertEquals(Integer.MIN_VALUE, r.intField(1));
+        for (int field = 2; field < 5; ++field) {
+            try {
+                r.intField(field);
+                fail();
+            } catch (NumberFormatException e) {
+                // attendu
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testWrongField() {
+        CsvReader r = reader("a;b");
+        r.next();
+        r.stringField(2);
+    }
+
+    @Test
+    public void testDoubleField() {
+        CsvReader r = reader("46.5411232548;6.64799239616");
+        r.next();
+        assertEquals(46.5411232548, r.doubleField(0), 0);
+        assertEquals(6.64799239616, r.doubleField(1), 0);
+    }
+
+    @Test
+    public void testSymbols() {
+        SymbolTable symbols = new SymbolTable();
+        int flon = symbols.intern("Lausanne-Flon");
+        CsvReader r = reader("Lausanne-Flon;Ouchy\nOuchy;Lausanne-Flon");
+        r.next();
+        assertEquals(flon, r.symbolField(0, symbols));
+        assertEquals(-1, r.symbolField(1, symbols));
+        int ouchy = r.internField(1, symbols);
+        assertEquals("Ouchy", symbols.name(ouchy));
+        r.next();
+        assertEquals(ouchy, r.symbolField(0, symbols));
+        assertEquals(flon, r.symbolField(1, symbols));
+    }
+
+    @Test
+    public void testSplitKeepsAllRows() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            text.append("row").append(i).append(';').append(i).append(i % 7 == 0 ? "\r\n": "\n");
+        }
+        for (int parts : new int[] {1, 3, 16, 5000}) {
+            List<Integer> values = new ArrayList<>();
+            for (CsvReader r : reader(text.toString()).split(parts)) {
+                while (r.next()) {
+                    assertEquals("row"+r.intField(1), r.stringField(0));
+                    values.add(r.intField(1));
+                }
+            }
+            assertEquals(1000, values.size());
+            for (int i = 0; i < 1000; ++i) {
+                assertEquals(i, (int) values.get(i));
+            }
+        }
+        assertTrue(reader("").split(4).isEmpty());
+    }
+
+    @Test
+    public void testMapAndRead() throws IOException {
+        Path file = Files.createTempFile("isochrone", ".csv");
+        try {
+            Files.write(file, "Service;87120\nService;87181\n".getBytes(StandardCharsets.UTF_8));
+            CsvReader mapped = CsvReader.map(file, ';');
+            CsvReader read = CsvReader.read(new ByteArrayInputStream(Files.readAllBytes(file)), ';');
+            for (CsvReader r : new CsvReader[] {mapped, read}) {
+                assertTrue(r.next());
+                assertEquals(87120, r.intField(1));
+                assertTrue(r.next());
+                assertEquals(87181, r.intField(1));
+                assertFalse(r.next());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
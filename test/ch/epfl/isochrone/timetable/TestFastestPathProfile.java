@@ -0,0 +1,81 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestFastestPathProfile {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyWindow() {
+        Set<Stop> stops = new HashSet<>();
+        Stop a = new Stop("A", new PointWGS84(0, 0));
+        stops.add(a);
+        new Graph.Builder(stops).build().fastestPathProfiles(a, 100, 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTreeAtOutsideWindow() {
+        Set<Stop> stops = new HashSet<>();
+        Stop a = new Stop("A", new PointWGS84(0, 0));
+        stops.add(a);
+        new Graph.Builder(stops).build().fastestPathProfiles(a, 100, 200).treeAt(201);
+    }
+
+    @Test
+    public void testSmallProfile() {
+        Set<Stop> stops = new HashSet<>();
+        PointWGS84 p = new PointWGS84(0, 0);
+        Stop a = new Stop("A", p);
+        Stop b = new Stop("B", p);
+        stops.add(a);
+        stops.add(b);
+        Graph g = new Graph.Builder(stops)
+        .addTripEdge(a, b, 100, 200)
+        .addTripEdge(a, b, 300, 350)
+        .build();
+
+        FastestPathProfile profile = g.fastestPathProfiles(a, 0, 400);
+        assertEquals(200, profile.arrivalTime(b, 0));
+        assertEquals(200, profile.arrivalTime(b, 100));
+        assertEquals(350, profile.arrivalTime(b, 101));
+        assertEquals(SecondsPastMidnight.INFINITE, profile.arrivalTime(b, 301));
+        assertEquals(42, profile.arrivalTime(a, 42));
+    }
+
+    @Test
+    public void testTreesEqualFastestPaths() {
+        Random rng = new Random(1789);
+        for (int g = 0; g < 10; ++g) {
+            List<Stop> stops = new ArrayList<>();
+            Graph graph = TestConnectionScan.randomGraph(rng, stops);
+
+            for (int q = 0; q < 5; ++q) {
+                Stop start = stops.get(rng.nextInt(stops.size()));
+                int from = rng.nextInt(SecondsPastMidnight.fromHMS(20, 0, 0));
+                int to = from + rng.nextInt(SecondsPastMidnight.fromHMS(3, 0, 0));
+                FastestPathProfile profile = graph.fastestPathProfiles(start, from, to);
+
+                for (int i = 0; i < 20; ++i) {
+                    int departure = from + rng.nextInt(to - from + 1);
+                    FastestPathTree expected = graph.fastestPaths(start, departure);
+                    FastestPathTree actual = profile.treeAt(departure);
+
+                    assertEquals(expected.stops(), actual.stops());
+                    for (Stop s : actual.stops()) {
+                        assertEquals(expected.arrivalTime(s), actual.arrivalTime(s));
+                        assertEquals(start, actual.pathTo(s).get(0));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package ch.epfl.isochrone.timetable;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -168,6 +170,33 @@ public class TestFastestPathTree {
         assertEquals(20, t.arrivalTime(s3));
     }
 
+    @Test
+    public void testFromArrays() {
+        Stop[] stops = {new Stop("Test0", null), new Stop("Test1", null), new Stop("Test2", null), new Stop("Test3", null)};
+        Map<Stop, Integer> ids = new HashMap<>();
+        for (int id = 0; id < stops.length; ++id) {
+            ids.put(stops[id], id);
+        }
+        int[] arrivalTimes = {SecondsPastMidnight.INFINITE, 10, 30, 20};
+        int[] predecessors = {-1, 3, 3, -1}; // deux racines : 1 et 3
+        FastestPathTree t = FastestPathTree.fromArrays(stops, ids, 1, 5, arrivalTimes, predecessors);
+
+        assertEquals(stops[1], t.startingStop());
+        assertEquals(5, t.startingTime());
+        assertEquals(Arrays.asList(stops[1], stops[2], stops[3]), new ArrayList<>(t.stops()));
+        assertFalse(t.stops().contains(stops[0]));
+        assertEquals(SecondsPastMidnight.INFINITE, t.arrivalTime(stops[0]));
+        assertEquals(SecondsPastMidnight.INFINITE, t.arrivalTime(new Stop("Test0", null)));
+        assertEquals(Arrays.asList(stops[1]), t.pathTo(stops[1])); // la racine n'a pas de predecesseur
+        assertEquals(Arrays.asList(stops[3], stops[2]), t.pathTo(stops[2]));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testStopsUnmodifiable() {
+        FastestPathTree t = create();
+        t.stops().clear();
+    }
+
     private FastestPathTree create() {
         Stop s1 = new Stop("Test1", null);
         Stop s2 = new Stop("Test2", null);
@@ -4,10 +4,15 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Ignore;
@@ -137,6 +142,419 @@ public class TestGraph {
         g.fastestPaths(a1, -20);
     }
 
+    @Test
+    public void testFastestPathsSmallGraph() {
+        Set<Stop> stops = new HashSet<>();
+        PointWGS84 p = new PointWGS84(0, 0);
+        Stop a = new Stop("A", p);
+        Stop b = new Stop("B", p);
+        Stop c = new Stop("C", p);
+        Stop d = new Stop("D", p);
+        stops.add(a);
+        stops.add(b);
+        stops.add(c);
+        stops.add(d);
+        Graph g = new Graph.Builder(stops)
+        .addTripEdge(a, b, 100, 200)
+        .addTripEdge(a, c, 100, 150)
+        .addTripEdge(c, b, 160, 180)
+        .addTripEdge(b, a, 300, 400)
+        .build();
+
+        FastestPathTree t = g.fastestPaths(a, 50);
+        assertEquals(50, t.arrivalTime(a));
+        assertEquals(180, t.arrivalTime(b));
+        assertEquals(150, t.arrivalTime(c));
+        assertEquals(SecondsPastMidnight.INFINITE, t.arrivalTime(d));
+        assertEquals(3, t.stops().size());
+        assertEquals(Arrays.asList(a, c, b), t.pathTo(b));
+
+        FastestPathTree late = g.fastestPaths(a, 101);
+        assertEquals(1, late.stops().size());
+    }
+
+    @Test
+    public void testMasterGraphServiceMask() {
+        Set<Stop> stops = new HashSet<>();
+        PointWGS84 p = new PointWGS84(0, 0);
+        Stop a = new Stop("A", p);
+        Stop b = new Stop("B", p);
+        stops.add(a);
+        stops.add(b);
+        Service slow = new Service.Builder("lent", new Date(1, 1, 2013), new Date(31, 12, 2013)).build();
+        Service fast = new Service.Builder("rapide", new Date(1, 1, 2013), new Date(31, 12, 2013)).build();
+        Graph g = new Graph.Builder(stops)
+        .addTripEdge(a, b, 100, 200, slow)
+        .addTripEdge(a, b, 100, 150, fast) // domine le trajet lent, mais seulement quand son service est actif
+        .addTripEdge(a, b, 300, 310)
+        .build();
+
+        assertEquals(200, g.fastestPaths(a, 50, g.serviceMask(Collections.singleton(slow))).arrivalTime(b));
+        assertEquals(150, g.fastestPaths(a, 50, g.serviceMask(Collections.singleton(fast))).arrivalTime(b));
+        assertEquals(310, g.fastestPaths(a, 50, g.serviceMask(Collections.<Service>emptySet())).arrivalTime(b)); // trajet sans service
+        assertEquals(150, g.fastestPaths(a, 50, null).arrivalTime(b));
+        assertEquals(150, g.fastestPaths(a, 50).arrivalTime(b));
+    }
+
+    @Test
+    public void testMultiSourceFastestPaths() {
+        Set<Stop> stops = new HashSet<>();
+        PointWGS84 p = new PointWGS84(0, 0);
+        Stop a = new Stop("A", p);
+        Stop b = new Stop("B", p);
+        Stop c = new Stop("C", p);
+        Stop d = new Stop("D", p);
+        stops.add(a);
+        stops.add(b);
+        stops.add(c);
+        stops.add(d);
+        Graph g = new Graph.Builder(stops)
+        .addTripEdge(a, c, 100, 300)
+        .addTripEdge(b, c, 200, 250)
+        .addTripEdge(a, d, 100, 150)
+        .build();
+
+        Map<Stop, Integer> startingTimes = new HashMap<>();
+        startingTimes.put(a, 50);
+        startingTimes.put(b, 120);
+        FastestPathTree t = g.fastestPaths(startingTimes, null);
+        assertEquals(a, t.startingStop());
+        assertEquals(50, t.startingTime());
+        assertEquals(120, t.arrivalTime(b));
+        assertEquals(250, t.arrivalTime(c));
+        assertEquals(150, t.arrivalTime(d));
+        assertEquals(Arrays.asList(b, c), t.pathTo(c));
+        assertEquals(Arrays.asList(b), t.pathTo(b));
+        assertEquals(Arrays.asList(a, d), t.pathTo(d));
+    }
+
+    @Test
+    public void testMultiSourceSameAsBestSingleSource() {
+        Random rng = new Random(2015);
+        List<Stop> stops = randomStops(rng, 200);
+        Graph g = randomGraph(rng, stops, 3000);
+
+        for (int q = 0; q < 10; ++q) {
+            Map<Stop, Integer> startingTimes = new HashMap<>();
+            for (int i = 0; i < 4; ++i) {
+                startingTimes.put(stops.get(rng.nextInt(stops.size())), SecondsPastMidnight.fromHMS(8, 0, 0) + rng.nextInt(600));
+            }
+            FastestPathTree multi = g.fastestPaths(startingTimes, null);
+            for (Stop s : stops) {
+                int best = SecondsPastMidnight.INFINITE;
+                for (Map.Entry<Stop, Integer> e : startingTimes.entrySet()) {
+                    best = Math.min(best, g.fastestPaths(e.getKey(), e.getValue()).arrivalTime(s));
+                }
+                assertEquals(best, multi.arrivalTime(s));
+                if (best < SecondsPastMidnight.INFINITE)
+                    assertTrue(startingTimes.containsKey(multi.pathTo(s).get(0)));
+            }
+        }
+    }
+
+    @Test
+    public void testFastestPathsFromPoint() {
+        Set<Stop> stops = new HashSet<>();
+        PointWGS84 origin = new PointWGS84(Math.toRadians(6.6), Math.toRadians(46.5));
+        Stop near = new Stop("proche", new PointWGS84(Math.toRadians(6.601), Math.toRadians(46.5)));
+        Stop far = new Stop("loin", new PointWGS84(Math.toRadians(6.7), Math.toRadians(46.5)));
+        stops.add(near);
+        stops.add(far);
+        Graph g = new Graph.Builder(stops).addTripEdge(near, far, 1000, 1500).build();
+
+        int walk = (int) Math.round(origin.distanceTo(near.position()) / 1.25);
+        FastestPathTree t = g.fastestPaths(origin, 500, 300, 1.25, null);
+        assertEquals(500, t.startingTime());
+        assertEquals(near, t.startingStop());
+        assertEquals(500 + walk, t.arrivalTime(near));
+        assertEquals(1500, t.arrivalTime(far));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFastestPathsFromPointTooFar() {
+        Stop s = new Stop("A", new PointWGS84(Math.toRadians(6.7), Math.toRadians(46.5)));
+        Graph g = new Graph.Builder(Collections.singleton(s)).build();
+        g.fastestPaths(new PointWGS84(Math.toRadians(6.6), Math.toRadians(46.5)), 500, 300, 1.25, null);
+    }
+
+    @Test
+    public void testFastestPathsHorizonAndTargets() {
+        Random rng = new Random(2016);
+        List<Stop> stops = randomStops(rng, 200);
+        Graph g = randomGraph(rng, stops, 3000);
+
+        for (int q = 0; q < 10; ++q) {
+            Stop start = stops.get(rng.nextInt(stops.size()));
+            int departure = SecondsPastMidnight.fromHMS(7, 0, 0) + rng.nextInt(3600);
+            FastestPathTree full = g.fastestPaths(start, departure);
+
+            FastestPathTree bounded = g.fastestPaths(start, departure, 1800, null, null);
+            for (Stop s : stops) {
+                int expected = (full.arrivalTime(s) - departure <= 1800) ? full.arrivalTime(s): SecondsPastMidnight.INFINITE;
+                assertEquals(expected, bounded.arrivalTime(s));
+            }
+
+            Set<Stop> targets = new HashSet<>(Arrays.asList(stops.get(rng.nextInt(stops.size())), stops.get(rng.nextInt(stops.size()))));
+            FastestPathTree targeted = g.fastestPaths(start, departure, SecondsPastMidnight.INFINITE, targets, null);
+            for (Stop t : targets) {
+                assertEquals(full.arrivalTime(t), targeted.arrivalTime(t));
+            }
+            for (Stop s : targeted.stops()) {
+                assertEquals(full.arrivalTime(s), targeted.arrivalTime(s));
+                assertTrue(targeted.stops().containsAll(targeted.pathTo(s)));
+            }
+        }
+    }
+
+    @Test
+    public void testFastestPathsStopsAtTarget() {
+        Set<Stop> stops = new HashSet<>();
+        PointWGS84 p = new PointWGS84(0, 0);
+        Stop a = new Stop("A", p);
+        Stop b = new Stop("B", p);
+        Stop c = new Stop("C", p);
+        stops.add(a);
+        stops.add(b);
+        stops.add(c);
+        Graph g = new Graph.Builder(stops)
+        .addTripEdge(a, b, 100, 150)
+        .addTripEdge(b, c, 200, 250)
+        .build();
+
+        FastestPathTree t = g.fastestPaths(a, 50, SecondsPastMidnight.INFINITE, Collections.singleton(b), null);
+        assertEquals(150, t.arrivalTime(b));
+        assertEquals(SecondsPastMidnight.INFINITE, t.arrivalTime(c)); // la recherche s'arrete a la cible
+        assertEquals(2, t.stops().size());
+
+        assertEquals(1, g.fastestPaths(a, 50, 99, null, null).stops().size());
+    }
+
+    @Test
+    public void testLatestDeparturesSmallGraph() {
+        Set<Stop> stops = new HashSet<>();
+        PointWGS84 p = new PointWGS84(0, 0);
+        Stop a = new Stop("A", p);
+        Stop b = new Stop("B", p);
+        Stop c = new Stop("C", p);
+        Stop d = new Stop("D", p);
+        stops.add(a);
+        stops.add(b);
+        stops.add(c);
+        stops.add(d);
+        Graph g = new Graph.Builder(stops)
+        .addTripEdge(a, b, 100, 200)
+        .addTripEdge(a, c, 120, 150)
+        .addTripEdge(c, b, 160, 180)
+        .addTripEdge(b, d, 300, 400)
+        .build();
+
+        LatestDepartureTree t = g.latestDepartures(b, 200);
+        assertEquals(b, t.targetStop());
+        assertEquals(200, t.arrivalTime());
+        assertEquals(120, t.departureTime(a));
+        assertEquals(160, t.departureTime(c));
+        assertEquals(-SecondsPastMidnight.INFINITE, t.departureTime(d));
+        assertEquals(3, t.stops().size());
+        assertEquals(Arrays.asList(a, c, b), t.pathFrom(a));
+
+        assertEquals(2, g.latestDepartures(b, 200, 50, null).stops().size()); // le depart de A a 120 est trop tot
+    }
+
+    @Test
+    public void testLatestDeparturesSameAsForwardSearch() {
+        Random rng = new Random(2017);
+        List<Stop> stops = randomStops(rng, 150);
+        Service service = new Service.Builder("S", new Date(1, 1, 2013), new Date(31, 12, 2013)).build();
+        Graph.Builder b = new Graph.Builder(new HashSet<>(stops)), masterBuilder = new Graph.Builder(new HashSet<>(stops));
+        for (int i = 0; i < 2000; ++i) {
+            int departure = SecondsPastMidnight.fromHMS(6, 0, 0) + rng.nextInt(SecondsPastMidnight.fromHMS(4, 0, 0));
+            Stop from = stops.get(rng.nextInt(stops.size())), to = stops.get(rng.nextInt(stops.size()));
+            int arrival = departure + rng.nextInt(900);
+            b.addTripEdge(from, to, departure, arrival);
+            if (i % 3 != 0)
+                masterBuilder.addTripEdge(from, to, departure, arrival, service);
+        }
+        Graph g = b.addAllWalkEdges(300, 1.25).build();
+        Graph master = masterBuilder.addAllWalkEdges(300, 1.25).build();
+        BitSet none = master.serviceMask(Collections.<Service>emptySet());
+
+        for (int q = 0; q < 10; ++q) {
+            Stop target = stops.get(rng.nextInt(stops.size()));
+            int deadline = SecondsPastMidnight.fromHMS(8, 0, 0) + rng.nextInt(3600);
+            for (Graph graph : Arrays.asList(g, master)) {
+                BitSet mask = (graph == master && q % 2 == 0) ? none: null;
+                LatestDepartureTree tree = graph.latestDepartures(target, deadline, SecondsPastMidnight.INFINITE, mask);
+                for (Stop s : stops) {
+                    int departure = tree.departureTime(s);
+                    if (departure > -SecondsPastMidnight.INFINITE) { // partir plus tard fait arriver trop tard
+                        assertTrue(graph.fastestPaths(s, departure, mask).arrivalTime(target) <= deadline);
+                        assertTrue(graph.fastestPaths(s, departure + 1, mask).arrivalTime(target) > deadline);
+                    } else {
+                        assertTrue(graph.fastestPaths(s, 0, mask).arrivalTime(target) > deadline);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMasterGraphWithoutMask() {
+        Set<Stop> stops = new HashSet<>();
+        PointWGS84 p = new PointWGS84(0, 0);
+        Stop a = new Stop("A", p);
+        Stop b = new Stop("B", p);
+        stops.add(a);
+        stops.add(b);
+        Service slow = new Service.Builder("lent", new Date(1, 1, 2013), new Date(31, 12, 2013)).build();
+        Service fast = new Service.Builder("rapide", new Date(1, 1, 2013), new Date(31, 12, 2013)).build();
+        Graph g = new Graph.Builder(stops)
+        .addTripEdge(a, b, 90, 200, slow) // premier depart, mais pas elimine par le trajet rapide d'un autre service
+        .addTripEdge(a, b, 100, 150, fast)
+        .build();
+
+        assertEquals(150, g.fastestPaths(a, 50).arrivalTime(b)); // sans masque, tous les services sont actifs
+        assertEquals(150, g.fastestPaths(a, 50, null).arrivalTime(b));
+        assertEquals(200, g.fastestPaths(a, 50, g.serviceMask(Collections.singleton(slow))).arrivalTime(b));
+    }
+
+
+    @Test
+    public void testMasterGraphSameAsGraphPerServices() {
+        Random rng = new Random(2014);
+        List<Stop> stops = randomStops(rng, 300);
+        Set<Stop> stopSet = new HashSet<>(stops);
+        List<Service> services = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            services.add(new Service.Builder("S"+i, new Date(1, 1, 2013), new Date(31, 12, 2013)).build());
+        }
+
+        int[][] trips = new int[5000][];
+        for (int i = 0; i < trips.length; ++i) {
+            int departure = rng.nextInt(SecondsPastMidnight.fromHMS(24, 0, 0));
+            trips[i] = new int[] {rng.nextInt(stops.size()), rng.nextInt(stops.size()), departure, departure + rng.nextInt(900), rng.nextInt(3)};
+        }
+        // graphe maitre fusionne de deux batisseurs, qui ne numerotent pas les services dans le meme ordre
+        Graph.Builder left = new Graph.Builder(stopSet), right = new Graph.Builder(stopSet);
+        for (int i = trips.length-1; i >= 0; --i) {
+            int[] t = trips[i];
+            (i % 2 == 0 ? left: right).addTripEdge(stops.get(t[0]), stops.get(t[1]), t[2], t[3], services.get(t[4]));
+        }
+        Graph master = left.merge(right.addAllWalkEdges(300, 1.25)).build();
+
+        for (int subset = 0; subset < 8; ++subset) {
+            Set<Service> active = new HashSet<>();
+            Graph.Builder b = new Graph.Builder(stopSet);
+            for (int i = 0; i < 3; ++i) {
+                if ((subset & (1 << i)) != 0)
+                    active.add(services.get(i));
+            }
+            for (int[] t : trips) {
+                if (active.contains(services.get(t[4])))
+                    b.addTripEdge(stops.get(t[0]), stops.get(t[1]), t[2], t[3]);
+            }
+            Graph expected = b.addAllWalkEdges(300, 1.25).build();
+
+            for (int q = 0; q < 5; ++q) {
+                Stop start = stops.get(rng.nextInt(stops.size()));
+                int departure = rng.nextInt(SecondsPastMidnight.fromHMS(24, 0, 0));
+                FastestPathTree t1 = expected.fastestPaths(start, departure), t2 = master.fastestPaths(start, departure, master.serviceMask(active));
+                assertEquals(t1.stops(), t2.stops());
+                for (Stop s : t1.stops()) {
+                    assertEquals(t1.arrivalTime(s), t2.arrivalTime(s));
+                }
+
+                FastestPathProfile p1 = expected.fastestPathProfiles(start, departure, departure + 1800);
+                FastestPathProfile p2 = master.fastestPathProfiles(start, departure, departure + 1800, master.serviceMask(active));
+                for (int time = departure; time <= departure + 1800; time += 300) {
+                    FastestPathTree pt1 = p1.treeAt(time), pt2 = p2.treeAt(time);
+                    for (Stop s : stops) {
+                        assertEquals(pt1.arrivalTime(s), pt2.arrivalTime(s));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMasterGraphFromReader() throws IOException {
+        TimeTableReader reader = new TimeTableReader("/time-table-test/");
+        TimeTable timetable = reader.readTimeTable();
+        Graph master = reader.readMasterGraph(timetable.stops(), timetable.services(), 300, 1.25);
+        List<Stop> stops = new ArrayList<>(timetable.stops());
+        Random rng = new Random(2013);
+
+        for (Date date : Arrays.asList(new Date(1, 10, 2013), new Date(5, 10, 2013))) { // mardi et samedi
+            Set<Service> services = timetable.servicesForDate(date);
+            Graph graph = reader.readGraphForServices(timetable.stops(), services, 300, 1.25);
+            for (int q = 0; q < 10; ++q) {
+                Stop start = stops.get(rng.nextInt(stops.size()));
+                int departure = SecondsPastMidnight.fromHMS(6 + rng.nextInt(14), 0, 0);
+                FastestPathTree t1 = graph.fastestPaths(start, departure), t2 = master.fastestPaths(start, departure, master.serviceMask(services));
+                assertEquals(t1.stops(), t2.stops());
+                for (Stop s : t1.stops()) {
+                    assertEquals(t1.arrivalTime(s), t2.arrivalTime(s));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMergeOtherStops() {
+        Set<Stop> stops = new HashSet<>();
+        stops.add(new Stop("A", new PointWGS84(0, 0)));
+        new Graph.Builder(stops).merge(new Graph.Builder(Collections.<Stop>emptySet()));
+    }
+
+    @Test
+    public void testMergeSameAsSingleBuilder() {
+        Random rng = new Random(2013);
+        List<Stop> stops = randomStops(rng, 1500); // assez d'arrets pour que les arcs soient construits en parallele
+        Set<Stop> stopSet = new HashSet<>(stops);
+
+        Graph.Builder single = new Graph.Builder(stopSet);
+        Graph.Builder left = new Graph.Builder(stopSet), right = new Graph.Builder(stopSet);
+        for (int i = 0; i < 20000; ++i) {
+            Stop from = stops.get(rng.nextInt(stops.size())), to = stops.get(rng.nextInt(stops.size()));
+            int departure = rng.nextInt(SecondsPastMidnight.fromHMS(24, 0, 0));
+            int arrival = departure + rng.nextInt(600);
+            single.addTripEdge(from, to, departure, arrival);
+            (rng.nextBoolean() ? left: right).addTripEdge(from, to, departure, arrival);
+        }
+        Graph expected = single.addAllWalkEdges(300, 1.25).build();
+        Graph actual = left.merge(right.addAllWalkEdges(300, 1.25)).build();
+
+        for (int q = 0; q < 10; ++q) {
+            Stop start = stops.get(rng.nextInt(stops.size()));
+            int departure = rng.nextInt(SecondsPastMidnight.fromHMS(24, 0, 0));
+            FastestPathTree t1 = expected.fastestPaths(start, departure), t2 = actual.fastestPaths(start, departure);
+            assertEquals(t1.stops(), t2.stops());
+            for (Stop s : t1.stops()) {
+                assertEquals(t1.arrivalTime(s), t2.arrivalTime(s));
+            }
+        }
+    }
+
+    // des arrets aleatoires autour de Lausanne
+    private static List<Stop> randomStops(Random rng, int count) {
+        List<Stop> stops = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            double longitude = Math.toRadians(6.6 + rng.nextDouble()*0.05);
+            double latitude = Math.toRadians(46.5 + rng.nextDouble()*0.05);
+            stops.add(new Stop("S"+i, new PointWGS84(longitude, latitude)));
+        }
+        return stops;
+    }
+
+    // un graphe de trajets aleatoires sur toute la journee entre les arrets donnes, avec les arcs a pied
+    private static Graph randomGraph(Random rng, List<Stop> stops, int tripCount) {
+        Graph.Builder b = new Graph.Builder(new HashSet<>(stops));
+        for (int i = 0; i < tripCount; ++i) {
+            int departure = rng.nextInt(SecondsPastMidnight.fromHMS(24, 0, 0));
+            b.addTripEdge(stops.get(rng.nextInt(stops.size())), stops.get(rng.nextInt(stops.size())), departure, departure + rng.nextInt(900));
+        }
+        return b.addAllWalkEdges(300, 1.25).build();
+    }
+
     @Test
     @Ignore // Worked on the real dataset
     public void testFastestPaths() throws IOException {
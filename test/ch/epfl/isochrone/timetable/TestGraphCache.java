@@ -0,0 +1,204 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestGraphCache {
+
+    private static final Date WEDNESDAY = new Date(2, 10, 2013), THURSDAY = new Date(3, 10, 2013), SATURDAY = new Date(5, 10, 2013);
+
+    @Test
+    public void testSameServicesShareGraph() throws IOException {
+        CountingSource source = new CountingSource();
+        TimeTable timeTable = source.readTimeTable();
+        GraphCache cache = new GraphCache(source, timeTable, 300, 1.25, Long.MAX_VALUE);
+
+        Graph g1 = cache.graphForServices(timeTable.servicesForDate(WEDNESDAY));
+        Graph g2 = cache.graphForServices(timeTable.servicesForDate(THURSDAY));
+        assertSame(g1, g2);
+        assertEquals(1, source.builds.get());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+        assertEquals(GraphCache.weightOf(g1), cache.weight());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        CountingSource source = new CountingSource();
+        TimeTable timeTable = source.readTimeTable();
+        Set<Service> week = timeTable.servicesForDate(WEDNESDAY), weekEnd = timeTable.servicesForDate(SATURDAY);
+        assertFalse(week.equals(weekEnd));
+
+        long weekWeight = GraphCache.weightOf(new CountingSource().readGraphForServices(timeTable.stops(), week, 300, 1.25));
+        GraphCache cache = new GraphCache(source, timeTable, 300, 1.25, weekWeight); // un seul graphe tient dans le cache
+        Graph g1 = cache.graphForServices(week);
+        cache.graphForServices(weekEnd);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.evictionCount());
+
+        Graph g2 = cache.graphForServices(week);
+        assertNotSame(g1, g2);
+        assertEquals(3, source.builds.get());
+        assertEquals(3, cache.missCount());
+        assertEquals(0, cache.hitCount());
+    }
+
+    @Test
+    public void testRequestedGraphIsKeptOverBudget() throws IOException {
+        CountingSource source = new CountingSource();
+        TimeTable timeTable = source.readTimeTable();
+        GraphCache cache = new GraphCache(source, timeTable, 300, 1.25, 0);
+        Graph g = cache.graphForServices(timeTable.servicesForDate(WEDNESDAY));
+        assertEquals(1, cache.size());
+        assertSame(g, cache.graphForServices(timeTable.servicesForDate(WEDNESDAY)));
+    }
+
+    @Test
+    public void testNeighbouringDaysArePrefetched() throws IOException {
+        CountingSource source = new CountingSource();
+        TimeTable timeTable = source.readTimeTable();
+        GraphCache cache = new GraphCache(source, timeTable, 300, 1.25, Long.MAX_VALUE);
+
+        cache.graphForDate(new Date(4, 10, 2013)); // vendredi : le samedi est construit a l'avance
+        Graph weekEnd = cache.graphForServices(timeTable.servicesForDate(SATURDAY));
+        assertNotNull(weekEnd);
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, source.builds.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testPrefetchKeepsRequestedGraph() throws IOException, InterruptedException {
+        CountingSource source = new CountingSource();
+        TimeTable timeTable = source.readTimeTable();
+        Set<Service> week = timeTable.servicesForDate(WEDNESDAY), weekEnd = timeTable.servicesForDate(SATURDAY);
+        long weekWeight = GraphCache.weightOf(new CountingSource().readGraphForServices(timeTable.stops(), week, 300, 1.25));
+        GraphCache cache = new GraphCache(source, timeTable, 300, 1.25, weekWeight); // un seul graphe tient dans le cache
+
+        Graph g = cache.graphForServices(week);
+        cache.prefetch(SATURDAY);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (cache.weight() == weekWeight && System.currentTimeMillis() < deadline) { // attend la fin de la construction a l'avance
+            Thread.sleep(10);
+        }
+        assertTrue(cache.weight() > weekWeight);
+        assertEquals(0, cache.evictionCount());
+        assertEquals(2, cache.size());
+        assertSame(g, cache.graphForServices(week));
+
+        // la demande suivante evince le graphe construit a l'avance, pas encore demande
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertEquals(weekWeight, cache.weight());
+        assertSame(g, cache.graphForServices(week));
+        assertEquals(2, source.builds.get());
+        assertNotNull(cache.graphForServices(weekEnd));
+        assertEquals(3, source.builds.get());
+    }
+
+    @Test
+    public void testRequestDoesNotWaitForQueuedPrefetch() throws Exception {
+        final CountingSource source = new CountingSource();
+        TimeTable timeTable = source.readTimeTable();
+        final Set<Service> week = timeTable.servicesForDate(WEDNESDAY);
+        final GraphCache cache = new GraphCache(source, timeTable, 300, 1.25, Long.MAX_VALUE);
+
+        source.blocked = timeTable.servicesForDate(SATURDAY);
+        cache.prefetch(SATURDAY); // occupe le fil d'arriere-plan
+        cache.prefetch(WEDNESDAY); // en attente derriere le samedi
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Graph> graph = executor.submit(new Callable<Graph>() {
+                @Override
+                public Graph call() throws IOException {
+                    return cache.graphForServices(week);
+                }
+            });
+            assertNotNull(graph.get(10, TimeUnit.SECONDS)); // construit dans le fil appelant
+            assertEquals(1, cache.hitCount());
+        } finally {
+            source.release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedBuildIsRetried() throws IOException {
+        CountingSource source = new CountingSource();
+        TimeTable timeTable = source.readTimeTable();
+        GraphCache cache = new GraphCache(source, timeTable, 300, 1.25, Long.MAX_VALUE);
+
+        source.failing = true;
+        try {
+            cache.graphForServices(timeTable.servicesForDate(WEDNESDAY));
+            fail();
+        } catch (IOException e) {
+            assertEquals(0, cache.size());
+        }
+        source.failing = false;
+        assertNotNull(cache.graphForServices(timeTable.servicesForDate(WEDNESDAY)));
+        assertEquals(2, source.builds.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWeight() throws IOException {
+        CountingSource source = new CountingSource();
+        new GraphCache(source, source.readTimeTable(), 300, 1.25, -1);
+    }
+
+    @Test
+    public void testEmptyServicesKey() throws IOException {
+        CountingSource source = new CountingSource();
+        TimeTable timeTable = source.readTimeTable();
+        GraphCache cache = new GraphCache(source, timeTable, 300, 1.25, Long.MAX_VALUE);
+        assertSame(cache.graphForServices(Collections.<Service>emptySet()), cache.graphForServices(timeTable.servicesForDate(SATURDAY)));
+    }
+
+    private static final class CountingSource implements TimeTableSource {
+
+        private final TimeTableReader reader = new TimeTableReader("/time-table-test/");
+        private final AtomicInteger builds = new AtomicInteger();
+        private volatile boolean failing;
+        private volatile Set<Service> blocked; // services dont la construction attend la liberation du verrou
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public TimeTable readTimeTable() throws IOException {
+            return reader.readTimeTable();
+        }
+
+        @Override
+        public Graph readGraphForServices(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) throws IOException {
+            builds.incrementAndGet();
+            if (services.equals(blocked)) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing)
+                throw new IOException("echec de lecture");
+            return reader.readGraphForServices(stops, services, walkingTime, walkingSpeed);
+        }
+
+        @Override
+        public Graph readMasterGraph(Set<Stop> stops, Set<Service> services, int walkingTime, double walkingSpeed) throws IOException {
+            return reader.readMasterGraph(stops, services, walkingTime, walkingSpeed);
+        }
+    }
+}
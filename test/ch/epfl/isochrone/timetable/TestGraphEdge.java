@@ -2,6 +2,8 @@ package ch.epfl.isochrone.timetable;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Random;
@@ -130,6 +132,119 @@ public class TestGraphEdge {
         assertEquals(SecondsPastMidnight.INFINITE, g2.earliestArrivalTime(4001));
     }
 
+    @Test
+    public void testEarliestArrivalTimeInRange() {
+        int[] trips = {
+                GraphEdge.packTrip(500, 600), // autre arc
+                GraphEdge.packTrip(1000, 1050),
+                GraphEdge.packTrip(2000, 2050),
+                GraphEdge.packTrip(3000, 3050),
+                GraphEdge.packTrip(100, 150) // autre arc
+        };
+        assertEquals(1050, GraphEdge.earliestArrivalTime(trips, 1, 4, -1, 1));
+        assertEquals(2050, GraphEdge.earliestArrivalTime(trips, 1, 4, -1, 1001));
+        assertEquals(3050, GraphEdge.earliestArrivalTime(trips, 1, 4, -1, 3000));
+        assertEquals(SecondsPastMidnight.INFINITE, GraphEdge.earliestArrivalTime(trips, 1, 4, -1, 3001));
+        assertEquals(3101, GraphEdge.earliestArrivalTime(trips, 1, 4, 100, 3001));
+        assertEquals(1030, GraphEdge.earliestArrivalTime(trips, 1, 4, 30, 1000));
+        assertEquals(130, GraphEdge.earliestArrivalTime(trips, 2, 2, 30, 100));
+    }
+
+    @Test
+    public void testLatestDepartureTimeInRange() {
+        int[] trips = {
+                GraphEdge.packTrip(500, 600), // autre arc
+                GraphEdge.packTrip(1000, 1050),
+                GraphEdge.packTrip(2000, 2050),
+                GraphEdge.packTrip(3000, 3050),
+                GraphEdge.packTrip(100, 150) // autre arc
+        };
+        assertEquals(3000, GraphEdge.latestDepartureTime(trips, 1, 4, -1, 5000));
+        assertEquals(2000, GraphEdge.latestDepartureTime(trips, 1, 4, -1, 3049));
+        assertEquals(1000, GraphEdge.latestDepartureTime(trips, 1, 4, -1, 1050));
+        assertEquals(-SecondsPastMidnight.INFINITE, GraphEdge.latestDepartureTime(trips, 1, 4, -1, 1049));
+        assertEquals(949, GraphEdge.latestDepartureTime(trips, 1, 4, 100, 1049));
+        assertEquals(2020, GraphEdge.latestDepartureTime(trips, 1, 4, 30, 2050));
+        assertEquals(70, GraphEdge.latestDepartureTime(trips, 2, 2, 30, 100));
+    }
+
+    @Test
+    public void testLatestDepartureTimeWithServices() {
+        int[] trips = {
+                GraphEdge.packTrip(1000, 1500),
+                GraphEdge.packTrip(1100, 1200),
+                GraphEdge.packTrip(1200, 1600)
+        };
+        int[] services = {0, 1, -1};
+        BitSet first = new BitSet(), second = new BitSet();
+        first.set(0);
+        second.set(1);
+        assertEquals(1000, GraphEdge.latestDepartureTime(trips, services, first, 0, 3, -1, 1500));
+        assertEquals(1100, GraphEdge.latestDepartureTime(trips, services, second, 0, 3, -1, 1500));
+        assertEquals(1100, GraphEdge.latestDepartureTime(trips, services, null, 0, 3, -1, 1500)); // tous les services
+        assertEquals(1200, GraphEdge.latestDepartureTime(trips, services, first, 0, 3, -1, 1600)); // trajet sans service
+        assertEquals(-SecondsPastMidnight.INFINITE, GraphEdge.latestDepartureTime(trips, services, first, 0, 3, -1, 1499));
+        assertEquals(1449, GraphEdge.latestDepartureTime(trips, services, second, 0, 3, 50, 1499));
+    }
+
+    @Test
+    public void testDominatedTripsArePruned() {
+        Stop s = new Stop("Test", new PointWGS84(0, 0));
+        GraphEdge g = new GraphEdge.Builder(s)
+        .addTrip(1000, 1500) // domine par le depart de 1100
+        .addTrip(1100, 1200)
+        .addTrip(1100, 1300) // meme depart mais plus long
+        .addTrip(1100, 1200) // doublon
+        .addTrip(1400, 1450)
+        .build();
+        assertEquals(2, g.tripCount());
+        assertEquals(1200, g.earliestArrivalTime(900));
+        assertEquals(1200, g.earliestArrivalTime(1100));
+        assertEquals(1450, g.earliestArrivalTime(1101));
+    }
+
+    @Test
+    public void testLowerBound() {
+        Random rng = new Random(7);
+        for (int n = 0; n < 50; ++n) {
+            int[] a = new int[n];
+            for (int i = 0; i < n; ++i) {
+                a[i] = rng.nextInt(100);
+            }
+            Arrays.sort(a);
+            for (int key = -1; key <= 101; ++key) {
+                int expected = 0;
+                while (expected < n && a[expected] < key) {
+                    ++expected;
+                }
+                assertEquals(expected, GraphEdge.lowerBound(a, 0, n, key));
+            }
+        }
+    }
+
+    @Test
+    public void testEarliestArrivalTimes() {
+        Stop s = new Stop("Test", new PointWGS84(0, 0));
+        GraphEdge g = new GraphEdge.Builder(s)
+        .setWalkingTime(250)
+        .addTrip(1000, 1050)
+        .addTrip(2000, 2050)
+        .addTrip(3000, 3050)
+        .build();
+        int[] departures = {1, 990, 1001, 3001, 1000};
+        int[] arrivals = new int[departures.length];
+        g.earliestArrivalTimes(departures, arrivals);
+        for (int i = 0; i < departures.length; ++i) {
+            assertEquals(g.earliestArrivalTime(departures[i]), arrivals[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEarliestArrivalTimesWrongLength() {
+        GraphEdge g = new GraphEdge.Builder(null).build();
+        g.earliestArrivalTimes(new int[2], new int[3]);
+    }
+
     @Test
     public void testBuilderDestination() {
         Stop s = new Stop("Test", new PointWGS84(0, 0));
@@ -0,0 +1,172 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestGtfsReader {
+
+    private static Path file;
+
+    private static final String STOP_TIMES = "trip_id,arrival_time,departure_time,stop_id,stop_sequence\n"
+            + "t1,08:10:00,08:11:00,B,2\n"
+            + "t1,08:00:00,08:00:00,A,1\n"
+            + "t1,08:30:00,08:30:00,C,3\n"
+            + "t3,09:00:00,09:00:00,A,1\n"
+            + "t3,,,B,2\n"
+            + "t3,9:20:00,9:20:00,C,3\n"
+            + "t2,25:00:00,25:00:00,A,1\n"
+            + "t2,25:05:00,25:05:00,B,2\n";
+
+    @BeforeClass
+    public static void writeFeed() throws IOException {
+        file = writeFeed(STOP_TIMES);
+    }
+
+    @AfterClass
+    public static void deleteFeed() throws IOException {
+        Files.delete(file);
+    }
+
+    @Test
+    public void testStops() throws IOException {
+        TimeTable timeTable = new GtfsReader(file).readTimeTable();
+        Map<String, Stop> stops = stopsByName(timeTable);
+        assertEquals(3, stops.size());
+        assertTrue(stops.containsKey("Arret, A"));
+        assertEquals(Math.toRadians(46.51), stops.get("B").position().latitude(), 1e-12);
+        assertEquals(Math.toRadians(6.6), stops.get("B").position().longitude(), 1e-12);
+    }
+
+    @Test
+    public void testServicesWithCalendarDates() throws IOException {
+        TimeTable timeTable = new GtfsReader(file).readTimeTable();
+        assertEquals("[WK]", timeTable.servicesForDate(new Date(1, 10, 2013)).toString());
+        assertEquals("[]", timeTable.servicesForDate(new Date(14, 10, 2013)).toString());
+        assertEquals("[SAT]", timeTable.servicesForDate(new Date(5, 10, 2013)).toString());
+        assertEquals("[]", timeTable.servicesForDate(new Date(1, 11, 2013)).toString());
+        assertEquals("[WK]", timeTable.servicesForDate(new Date(2, 11, 2013)).toString());
+    }
+
+    @Test
+    public void testGraphFromStopTimesAndTransfers() throws IOException {
+        GtfsReader reader = new GtfsReader(file);
+        TimeTable timeTable = reader.readTimeTable();
+        Map<String, Stop> stops = stopsByName(timeTable);
+        Date date = new Date(1, 10, 2013);
+        Graph graph = reader.readGraphForServices(timeTable.stops(), timeTable.servicesForDate(date), 300, 1.25);
+
+        FastestPathTree tree = graph.fastestPaths(stops.get("Arret, A"), SecondsPastMidnight.fromHMS(8, 0, 0));
+        assertEquals(SecondsPastMidnight.fromHMS(8, 10, 0), tree.arrivalTime(stops.get("B")));
+        assertEquals(SecondsPastMidnight.fromHMS(8, 11, 0), tree.arrivalTime(stops.get("C"))); // correspondance de 60s
+
+        tree = graph.fastestPaths(stops.get("Arret, A"), SecondsPastMidnight.fromHMS(8, 30, 0));
+        assertEquals(SecondsPastMidnight.INFINITE, tree.arrivalTime(stops.get("B")));
+        assertEquals(SecondsPastMidnight.fromHMS(9, 20, 0), tree.arrivalTime(stops.get("C"))); // arret sans horaire saute
+    }
+
+    @Test
+    public void testTimesPastMidnight() throws IOException {
+        GtfsReader reader = new GtfsReader(file);
+        TimeTable timeTable = reader.readTimeTable();
+        Map<String, Stop> stops = stopsByName(timeTable);
+        Graph graph = reader.readGraphForServices(timeTable.stops(), timeTable.servicesForDate(new Date(5, 10, 2013)), 300, 1.25);
+
+        FastestPathTree tree = graph.fastestPaths(stops.get("Arret, A"), SecondsPastMidnight.fromHMS(24, 0, 0));
+        assertEquals(SecondsPastMidnight.fromHMS(25, 5, 0), tree.arrivalTime(stops.get("B")));
+    }
+
+    @Test
+    public void testMasterGraph() throws IOException {
+        GtfsReader reader = new GtfsReader(file);
+        TimeTable timeTable = reader.readTimeTable();
+        Map<String, Stop> stops = stopsByName(timeTable);
+        Graph master = reader.readMasterGraph(timeTable.stops(), timeTable.services(), 300, 1.25);
+        Stop a = stops.get("Arret, A"), b = stops.get("B");
+
+        int midnight = SecondsPastMidnight.fromHMS(24, 0, 0);
+        assertEquals(SecondsPastMidnight.fromHMS(25, 5, 0),
+                master.fastestPaths(a, midnight, master.serviceMask(timeTable.servicesForDate(new Date(5, 10, 2013)))).arrivalTime(b));
+        assertEquals(SecondsPastMidnight.INFINITE,
+                master.fastestPaths(a, midnight, master.serviceMask(timeTable.servicesForDate(new Date(1, 10, 2013)))).arrivalTime(b));
+    }
+
+    @Test
+    public void testParseTime() {
+        assertEquals(-1, GtfsReader.parseTime(""));
+        assertEquals(SecondsPastMidnight.fromHMS(7, 5, 3), GtfsReader.parseTime("7:05:03"));
+        assertEquals(SecondsPastMidnight.fromHMS(26, 0, 0), GtfsReader.parseTime("26:00:00"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseInvalidTime() {
+        GtfsReader.parseTime("08:00");
+    }
+
+    @Test
+    public void testSplitTripIsRejected() throws IOException {
+        Path split = writeFeed("trip_id,arrival_time,departure_time,stop_id,stop_sequence\n"
+                + "t1,08:00:00,08:00:00,A,1\n"
+                + "t1,08:10:00,08:11:00,B,2\n"
+                + "t3,09:00:00,09:00:00,A,1\n"
+                + "t1,08:30:00,08:30:00,C,3\n"); // le trajet B-C de t1 serait perdu
+        try {
+            GtfsReader reader = new GtfsReader(split);
+            TimeTable timeTable = reader.readTimeTable();
+            reader.readGraphForServices(timeTable.stops(), timeTable.servicesForDate(new Date(1, 10, 2013)), 300, 1.25);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("t1"));
+        } finally {
+            Files.delete(split);
+        }
+    }
+
+    private static Map<String, Stop> stopsByName(TimeTable timeTable) {
+        Map<String, Stop> stops = new HashMap<>();
+        for (Stop s : timeTable.stops()) {
+            stops.put(s.name(), s);
+        }
+        return stops;
+    }
+
+    private static Path writeFeed(String stopTimes) throws IOException {
+        Path feed = Files.createTempFile("isochrone", ".zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(feed))) {
+            addEntry(zip, "feed/stops.txt", "\uFEFFstop_id,stop_name,stop_lat,stop_lon,location_type\r\n"
+                    + "P,Gare,46.5,6.6,1\r\n"
+                    + "A,\"Arret, A\",46.5,6.6,0\r\n"
+                    + "B,B,46.51,6.6,\r\n"
+                    + "C,C,46.6,6.7,0\r\n");
+            addEntry(zip, "feed/trips.txt", "route_id,service_id,trip_id\n"
+                    + "R,WK,t1\nR,WK,t3\nR,SAT,t2\n");
+            addEntry(zip, "feed/stop_times.txt", stopTimes);
+            addEntry(zip, "feed/calendar.txt", "service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date\n"
+                    + "WK,1,1,1,1,1,0,0,20131001,20131031\n");
+            addEntry(zip, "feed/calendar_dates.txt", "service_id,date,exception_type\n"
+                    + "WK,20131014,2\nWK,20131102,1\nSAT,20131005,1\n");
+            addEntry(zip, "feed/transfers.txt", "from_stop_id,to_stop_id,transfer_type,min_transfer_time\n"
+                    + "B,C,2,60\nA,C,3,\n");
+        }
+        return feed;
+    }
+
+    private static void addEntry(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        OutputStream out = zip;
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+}
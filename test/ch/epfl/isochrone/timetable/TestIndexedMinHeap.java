@@ -0,0 +1,76 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestIndexedMinHeap {
+
+    @Test(expected = IllegalStateException.class)
+    public void testPollEmpty() {
+        new IndexedMinHeap(new int[3]).poll();
+    }
+
+    @Test
+    public void testPollOrder() {
+        Random rng = new Random(42);
+        int[] keys = new int[500];
+        IndexedMinHeap heap = new IndexedMinHeap(keys);
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = rng.nextInt(1000);
+            heap.update(i);
+        }
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; ++i) {
+            assertEquals(sorted[i], keys[heap.poll()]);
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testDecreaseKey() {
+        int[] keys = {50, 40, 30, 20};
+        IndexedMinHeap heap = new IndexedMinHeap(keys);
+        for (int i = 0; i < keys.length; ++i) {
+            heap.update(i);
+        }
+        keys[0] = 10;
+        heap.update(0);
+        assertEquals(0, heap.poll());
+        assertFalse(heap.contains(0));
+        assertEquals(3, heap.poll());
+        keys[1] = 5;
+        heap.update(1);
+        assertEquals(1, heap.poll());
+        assertEquals(2, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testClear() {
+        int[] keys = {3, 2, 1};
+        IndexedMinHeap heap = new IndexedMinHeap(keys);
+        heap.update(0);
+        heap.update(2);
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(2));
+        heap.update(1);
+        assertEquals(1, heap.poll());
+    }
+
+    @Test
+    public void testClearWithKey() {
+        int[] keys = {3, 2, 1};
+        IndexedMinHeap heap = new IndexedMinHeap(keys);
+        heap.update(0);
+        heap.update(2);
+        heap.clear(9);
+        assertTrue(heap.isEmpty());
+        assertArrayEquals(new int[] {9, 2, 9}, keys);
+    }
+}
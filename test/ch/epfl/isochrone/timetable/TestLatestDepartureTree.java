@@ -0,0 +1,86 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestLatestDepartureTree {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorWrongStopCorrespondance() {
+        Stop s1 = new Stop("Test1", null);
+        Stop s2 = new Stop("Test2", null);
+        Map<Stop, Integer> time = new HashMap<>();
+        time.put(s1, 100);
+        time.put(s2, 50);
+        new LatestDepartureTree(s1, time, new HashMap<Stop, Stop>());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorMissingTarget() {
+        new LatestDepartureTree(new Stop("Test1", null), new HashMap<Stop, Integer>(), new HashMap<Stop, Stop>());
+    }
+
+    @Test
+    public void testDepartureTimeAndPathFrom() {
+        Stop s1 = new Stop("Test1", null);
+        Stop s2 = new Stop("Test2", null);
+        Stop s3 = new Stop("Test3", null);
+        Map<Stop, Integer> time = new HashMap<>();
+        Map<Stop, Stop> after = new HashMap<>();
+        time.put(s1, 100);
+        time.put(s2, 80);
+        time.put(s3, 40);
+        after.put(s2, s1);
+        after.put(s3, s2);
+        LatestDepartureTree t = new LatestDepartureTree(s1, time, after);
+
+        assertEquals(100, t.arrivalTime());
+        assertEquals(40, t.departureTime(s3));
+        assertEquals(-SecondsPastMidnight.INFINITE, t.departureTime(new Stop("Test4", null)));
+        assertEquals(Arrays.asList(s3, s2, s1), t.pathFrom(s3));
+        assertEquals(Arrays.asList(s1), t.pathFrom(s1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPathFromWrongStop() {
+        Stop s1 = new Stop("Test1", null);
+        Map<Stop, Integer> time = new HashMap<>();
+        time.put(s1, 100);
+        new LatestDepartureTree(s1, time, new HashMap<Stop, Stop>()).pathFrom(new Stop("Test2", null));
+    }
+
+    @Test
+    public void testFromArrays() {
+        Stop[] stops = {new Stop("Test0", null), new Stop("Test1", null), new Stop("Test2", null), new Stop("Test3", null)};
+        Map<Stop, Integer> ids = new HashMap<>();
+        for (int id = 0; id < stops.length; ++id) {
+            ids.put(stops[id], id);
+        }
+        int[] departureTimes = {-SecondsPastMidnight.INFINITE, 100, 40, 80};
+        int[] successors = {-1, -1, 3, 1};
+        LatestDepartureTree t = LatestDepartureTree.fromArrays(stops, ids, 1, departureTimes, successors);
+
+        assertEquals(stops[1], t.targetStop());
+        assertEquals(100, t.arrivalTime());
+        assertEquals(Arrays.asList(stops[1], stops[2], stops[3]), new ArrayList<>(t.stops()));
+        assertFalse(t.stops().contains(stops[0]));
+        assertEquals(-SecondsPastMidnight.INFINITE, t.departureTime(stops[0]));
+        assertEquals(-SecondsPastMidnight.INFINITE, t.departureTime(new Stop("Test0", null)));
+        assertEquals(Arrays.asList(stops[2], stops[3], stops[1]), t.pathFrom(stops[2]));
+        assertEquals(Arrays.asList(stops[1]), t.pathFrom(stops[1]));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testStopsUnmodifiable() {
+        Stop s1 = new Stop("Test1", null);
+        Map<Stop, Integer> time = new HashMap<>();
+        time.put(s1, 100);
+        new LatestDepartureTree(s1, time, new HashMap<Stop, Stop>()).stops().clear();
+    }
+}
@@ -0,0 +1,204 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestRaptor {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSearchWrongStop() {
+        Set<Stop> stops = new HashSet<>();
+        stops.add(new Stop("A", new PointWGS84(0, 0)));
+        new Raptor.Builder().build(new Graph.Builder(stops).build()).fastestPaths(new Stop("B", null), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSearchNegativeTransfers() {
+        Set<Stop> stops = new HashSet<>();
+        Stop a = new Stop("A", new PointWGS84(0, 0));
+        stops.add(a);
+        new Raptor.Builder().build(new Graph.Builder(stops).build()).search(a, 10, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddTripDecreasingTimes() {
+        Stop a = new Stop("A", null), b = new Stop("B", null);
+        new Raptor.Builder().addTrip(Arrays.asList(a, b), new int[] {100, 90}, new int[] {100, 90});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuildUnknownStop() {
+        Stop a = new Stop("A", null), b = new Stop("B", null);
+        Set<Stop> stops = new HashSet<>();
+        stops.add(a);
+        new Raptor.Builder().addTrip(Arrays.asList(a, b), new int[] {100, 200}, new int[] {100, 200}).build(new Graph.Builder(stops).build());
+    }
+
+    @Test
+    public void testTransfersLimit() {
+        Stop a = new Stop("A", new PointWGS84(0, 0)), b = new Stop("B", new PointWGS84(0, 0.5));
+        Stop c = new Stop("C", new PointWGS84(0, 1)), d = new Stop("D", new PointWGS84(0, 1.5));
+        Set<Stop> stops = new HashSet<>(Arrays.asList(a, b, c, d));
+
+        Raptor raptor = new Raptor.Builder()
+        .addTrip(Arrays.asList(a, b, c), new int[] {100, 200, 300}, new int[] {100, 210, 300})
+        .addTrip(Arrays.asList(c, d), new int[] {400, 500}, new int[] {400, 500})
+        .build(new Graph.Builder(stops).build());
+
+        Raptor.Result direct = raptor.search(a, 50, 0);
+        assertEquals(300, direct.tree().arrivalTime(c));
+        assertEquals(SecondsPastMidnight.INFINITE, direct.tree().arrivalTime(d));
+        assertEquals(0, direct.transfers(a));
+        assertEquals(0, direct.transfers(c));
+        assertEquals(-1, direct.transfers(d));
+        assertEquals(Arrays.asList(a, c), direct.tree().pathTo(c)); // le predecesseur est l'arret de montee
+
+        Raptor.Result oneTransfer = raptor.search(a, 50, 1);
+        assertEquals(500, oneTransfer.tree().arrivalTime(d));
+        assertEquals(1, oneTransfer.transfers(d));
+        assertEquals(500, raptor.fastestPaths(a, 50).arrivalTime(d));
+    }
+
+    @Test
+    public void testOvertakingTrips() {
+        Stop a = new Stop("A", new PointWGS84(0, 0)), b = new Stop("B", new PointWGS84(0, 0.5)), c = new Stop("C", new PointWGS84(0, 1));
+        Set<Stop> stops = new HashSet<>(Arrays.asList(a, b, c));
+
+        // la course express part apres la course lente mais la depasse avant C
+        Raptor raptor = new Raptor.Builder()
+        .addTrip(Arrays.asList(a, b, c), new int[] {100, 200, 900}, new int[] {100, 200, 900})
+        .addTrip(Arrays.asList(a, b, c), new int[] {150, 250, 400}, new int[] {150, 250, 400})
+        .build(new Graph.Builder(stops).build());
+
+        assertEquals(400, raptor.fastestPaths(a, 50).arrivalTime(c));
+        assertEquals(400, raptor.fastestPaths(b, 180).arrivalTime(c));
+        assertEquals(SecondsPastMidnight.INFINITE, raptor.fastestPaths(b, 260).arrivalTime(c));
+    }
+
+    @Test
+    public void testSameArrivalTimesAsDijkstra() {
+        Random rng = new Random(2014);
+        for (int g = 0; g < 10; ++g) {
+            checkAgainstDijkstra(rng, 15);
+        }
+    }
+
+    @Test
+    public void testSameArrivalTimesAsDijkstraParallel() {
+        Random rng = new Random(2015);
+        for (int g = 0; g < 2; ++g) {
+            checkAgainstDijkstra(rng, 400); // assez de lignes pour que les tours soient parcourus en parallele
+        }
+    }
+
+    @Test
+    public void testEnginesSameAsDijkstra() {
+        Random rng = new Random(2016);
+        for (int g = 0; g < 10; ++g) {
+            List<Stop> stops = new ArrayList<>();
+            Graph graph = TestConnectionScan.randomGraph(rng, stops);
+
+            for (RoutingEngine.Algorithm algorithm : RoutingEngine.Algorithm.values()) {
+                RoutingEngine engine = algorithm.engineFor(graph);
+                for (int q = 0; q < 10; ++q) {
+                    Stop start = stops.get(rng.nextInt(stops.size()));
+                    int departure = rng.nextInt(SecondsPastMidnight.fromHMS(24, 0, 0));
+                    FastestPathTree expected = graph.fastestPaths(start, departure), actual = engine.fastestPaths(start, departure);
+
+                    assertEquals(algorithm.toString(), expected.stops(), actual.stops());
+                    for (Stop s : stops) {
+                        assertEquals(algorithm.toString(), expected.arrivalTime(s), actual.arrivalTime(s));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadTripsAreNotMergedAcrossVehicles() throws IOException {
+        TimeTableReader reader = new TimeTableReader("/time-table-raptor-test/");
+        TimeTable timeTable = reader.readTimeTable();
+        Map<String, Stop> stops = new HashMap<>();
+        for (Stop s : timeTable.stops()) {
+            stops.put(s.name(), s);
+        }
+        Raptor raptor = reader.readRaptorForServices(timeTable.stops(), timeTable.services(), 300, 1.25);
+        Stop a = stops.get("A"), b = stops.get("B"), c = stops.get("C"), d = stops.get("D");
+
+        // B-C repart avant l'arrivee de A-B : deux courses, pas de correspondance possible
+        assertEquals(SecondsPastMidnight.INFINITE, raptor.fastestPaths(a, 35000).arrivalTime(c));
+        // B-C puis C-D s'enchainent : une seule course
+        assertEquals(36300, raptor.search(b, 32000, 0).tree().arrivalTime(d));
+        // D-A est d'un autre service : une correspondance est necessaire
+        assertEquals(SecondsPastMidnight.INFINITE, raptor.search(c, 35000, 0).tree().arrivalTime(a));
+        assertEquals(37300, raptor.search(c, 35000, 1).tree().arrivalTime(a));
+    }
+
+    private static void checkAgainstDijkstra(Random rng, int lineCount) {
+        List<Stop> stops = new ArrayList<>();
+        Set<Stop> stopSet = new HashSet<>();
+        for (int i = 0; i < 60; ++i) {
+            double longitude = Math.toRadians(6.6 + rng.nextDouble()*0.03);
+            double latitude = Math.toRadians(46.5 + rng.nextDouble()*0.03);
+            Stop s = new Stop("S"+i, new PointWGS84(longitude, latitude));
+            stops.add(s);
+            stopSet.add(s);
+        }
+
+        Graph.Builder graphBuilder = new Graph.Builder(stopSet);
+        Raptor.Builder raptorBuilder = new Raptor.Builder();
+        for (int line = 0; line < lineCount; ++line) {
+            List<Stop> route = new ArrayList<>();
+            for (int i = 0; i < 2 + rng.nextInt(8); ++i) {
+                Stop s = stops.get(rng.nextInt(stops.size()));
+                if (!route.contains(s))
+                    route.add(s);
+            }
+            if (route.size() < 2)
+                continue;
+
+            for (int run = 0; run < 10; ++run) {
+                int[] arrivals = new int[route.size()], departures = new int[route.size()];
+                int time = rng.nextInt(SecondsPastMidnight.fromHMS(24, 0, 0));
+                arrivals[0] = time;
+                for (int i = 0; i + 1 < route.size(); ++i) {
+                    departures[i] = time;
+                    int arrival = time + 30 + rng.nextInt(300);
+                    graphBuilder.addTripEdge(route.get(i), route.get(i+1), time, arrival);
+                    arrivals[i+1] = arrival;
+                    time = arrival + rng.nextInt(60);
+                }
+                departures[route.size() - 1] = arrivals[route.size() - 1];
+                raptorBuilder.addTrip(route, arrivals, departures);
+            }
+        }
+        Graph graph = graphBuilder.addAllWalkEdges(300, 1.25).build();
+        Raptor raptor = raptorBuilder.build(graph);
+
+        for (int q = 0; q < 20; ++q) {
+            Stop start = stops.get(rng.nextInt(stops.size()));
+            int departure = rng.nextInt(SecondsPastMidnight.fromHMS(24, 0, 0));
+            FastestPathTree expected = graph.fastestPaths(start, departure);
+            Raptor.Result actual = raptor.search(start, departure, Raptor.UNLIMITED_TRANSFERS);
+
+            assertEquals(expected.stops(), actual.tree().stops());
+            for (Stop s : stops) {
+                assertEquals(expected.arrivalTime(s), actual.tree().arrivalTime(s));
+                assertEquals(expected.stops().contains(s), actual.transfers(s) >= 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestSearchContext {
+
+    @Test
+    public void testSameAsFastestPaths() {
+        Random rng = new Random(2020);
+        Graph g = TestConnectionScan.randomGraph(rng, new ArrayList<Stop>());
+        SearchContext context = new SearchContext(g);
+        for (int i = 0; i < 50; ++i) { // les resultats des recherches precedentes ne doivent pas deteindre
+            Stop start = g.stop(rng.nextInt(g.stopCount()));
+            int departureTime = SecondsPastMidnight.fromHMS(6, 0, 0) + rng.nextInt(SecondsPastMidnight.fromHMS(6, 0, 0));
+            int maxTravelTime = (i % 2 == 0) ? SecondsPastMidnight.INFINITE: rng.nextInt(3600);
+
+            FastestPathTree expected = g.fastestPaths(start, departureTime, maxTravelTime, null, null);
+            context.fastestPaths(start, departureTime, maxTravelTime, null, null);
+            for (int id = 0; id < g.stopCount(); ++id) {
+                assertEquals(expected.arrivalTime(g.stop(id)), context.arrivalTime(id));
+            }
+            FastestPathTree actual = context.tree();
+            assertEquals(expected.stops(), actual.stops());
+            for (Stop s : actual.stops()) {
+                assertEquals(expected.pathTo(s), actual.pathTo(s));
+            }
+        }
+    }
+
+    @Test
+    public void testTarget() {
+        Random rng = new Random(2021);
+        Graph g = TestConnectionScan.randomGraph(rng, new ArrayList<Stop>());
+        SearchContext context = new SearchContext(g);
+        Stop start = g.stop(0), target = g.stop(42);
+        int departureTime = SecondsPastMidnight.fromHMS(8, 0, 0);
+
+        context.fastestPaths(start, departureTime, SecondsPastMidnight.INFINITE, null, null);
+        FastestPathTree full = context.tree();
+        context.fastestPaths(start, departureTime, SecondsPastMidnight.INFINITE, target, null);
+        assertEquals(full.arrivalTime(target), context.arrivalTime(g.stopId(target)));
+        assertEquals(g.fastestPaths(start, departureTime, SecondsPastMidnight.INFINITE, Collections.singleton(target), null).stops(),
+                context.tree().stops());
+    }
+
+    @Test
+    public void testPredecessor() {
+        Random rng = new Random(2022);
+        Graph g = TestConnectionScan.randomGraph(rng, new ArrayList<Stop>());
+        SearchContext context = new SearchContext(g);
+        context.fastestPaths(g.stop(3), SecondsPastMidnight.fromHMS(8, 0, 0), 0, null, null);
+        assertEquals(-1, context.predecessor(3));
+        for (int id = 0; id < g.stopCount(); ++id) {
+            if (id == 3)
+                continue;
+            if (context.arrivalTime(id) < SecondsPastMidnight.INFINITE) // atteint sans delai (arret confondu, liaison de duree nulle)
+                assertTrue(context.predecessor(id) >= 0);
+            else
+                assertEquals(-1, context.predecessor(id));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTreeWithoutSearch() {
+        new SearchContext(TestConnectionScan.randomGraph(new Random(2023), new ArrayList<Stop>())).tree();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongStop() {
+        new SearchContext(TestConnectionScan.randomGraph(new Random(2024), new ArrayList<Stop>())).fastestPaths(new Stop("X", new PointWGS84(0, 0)), 0, 0, null, null);
+    }
+
+    @Test
+    public void testNoAllocationPerSearch() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        Graph g = TestConnectionScan.randomGraph(new Random(2025), new ArrayList<Stop>());
+        SearchContext context = new SearchContext(g);
+        Stop[] starts = {g.stop(0), g.stop(10), g.stop(20), g.stop(30)};
+        Stop target = g.stop(50);
+        int departureTime = SecondsPastMidnight.fromHMS(7, 0, 0);
+        for (int i = 0; i < 2000; ++i) { // mise en regime
+            context.fastestPaths(starts[i % starts.length], departureTime, SecondsPastMidnight.INFINITE, (i % 2 == 0) ? null: target, null);
+        }
+
+        final int searches = 2000;
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < searches; ++i) {
+            context.fastestPaths(starts[i % starts.length], departureTime, SecondsPastMidnight.INFINITE, (i % 2 == 0) ? null: target, null);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("octets alloues pour "+searches+" recherches : "+allocated, allocated < searches); // moins d'un octet par recherche
+    }
+}
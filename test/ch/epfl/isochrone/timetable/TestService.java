@@ -133,6 +133,24 @@ public class TestService {
         assertTrue(s.isOperatingOn(new Date(9, Month.MARCH, 2014)));
     }
 
+    @Test
+    public void testIsOperatingOnSameAsRules() {
+        Date start = new Date(30, Month.DECEMBER, 2011), end = new Date(2, Month.MARCH, 2012); // annee bissextile
+        Service.Builder b = new Service.Builder("s", start, end)
+        .addOperatingDay(DayOfWeek.MONDAY)
+        .addOperatingDay(DayOfWeek.SATURDAY)
+        .addExcludedDate(new Date(2, Month.JANUARY, 2012))
+        .addIncludedDate(new Date(29, Month.FEBRUARY, 2012));
+        Service s = b.build();
+
+        for (Date d = start.relative(-10); d.compareTo(end.relative(10)) <= 0; d = d.relative(1)) {
+            boolean expected = d.compareTo(start) >= 0 && d.compareTo(end) <= 0
+                    && (((d.dayOfWeek() == DayOfWeek.MONDAY || d.dayOfWeek() == DayOfWeek.SATURDAY) && !d.equals(new Date(2, Month.JANUARY, 2012)))
+                            || d.equals(new Date(29, Month.FEBRUARY, 2012)));
+            assertEquals(d.toString(), expected, s.isOperatingOn(d));
+        }
+    }
+
     @Test
     public void testToString() {
         Date start = new Date(1, Month.JANUARY, 1);
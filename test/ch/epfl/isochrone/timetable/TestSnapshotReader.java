@@ -0,0 +1,75 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestSnapshotReader {
+
+    @Test
+    public void testSameTimeTableAndGraphAsCsv() throws IOException {
+        TimeTableReader csv = new TimeTableReader("/time-table-test/");
+        Path file = Files.createTempFile("isochrone", ".snapshot");
+        try {
+            SnapshotWriter.write(csv, file);
+            SnapshotReader snapshot = new SnapshotReader(file);
+
+            TimeTable expected = csv.readTimeTable(), actual = snapshot.readTimeTable();
+            Map<String, Stop> actualStops = new HashMap<>();
+            for (Stop s : actual.stops()) {
+                actualStops.put(s.name(), s);
+            }
+            assertEquals(expected.stops().size(), actual.stops().size());
+            for (Stop s : expected.stops()) {
+                assertEquals(s.position().latitude(), actualStops.get(s.name()).position().latitude(), 0);
+                assertEquals(s.position().longitude(), actualStops.get(s.name()).position().longitude(), 0);
+            }
+
+            Date date = new Date(1, 10, 2013);
+            for (int day = 0; day < 120; ++day) { // memes services actifs, exceptions comprises
+                assertEquals(expected.servicesForDate(date.relative(day)).toString(), actual.servicesForDate(date.relative(day)).toString());
+            }
+
+            Set<Service> services = actual.servicesForDate(date);
+            assertFalse(services.isEmpty());
+            Graph expectedGraph = csv.readGraphForServices(expected.stops(), expected.servicesForDate(date), 300, 1.25);
+            Graph actualGraph = snapshot.readGraphForServices(actual.stops(), services, 300, 1.25);
+            for (Stop s : expected.stops()) {
+                FastestPathTree t1 = expectedGraph.fastestPaths(s, 80000);
+                FastestPathTree t2 = actualGraph.fastestPaths(actualStops.get(s.name()), 80000);
+                assertEquals(t1.stops().size(), t2.stops().size());
+                for (Stop reached : t1.stops()) {
+                    assertEquals(t1.arrivalTime(reached), t2.arrivalTime(actualStops.get(reached.name())));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptedSnapshot() throws IOException {
+        Path file = Files.createTempFile("isochrone", ".snapshot");
+        try {
+            SnapshotWriter.write(new TimeTableReader("/time-table-test/"), file);
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length / 2] ^= 1;
+            new SnapshotReader(ByteBuffer.wrap(bytes));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotASnapshot() throws IOException {
+        new SnapshotReader(ByteBuffer.wrap("Service;1;1;1;1;1;0;0;20130923;20131213".getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,128 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestStopGrid {
+
+    @Test
+    public void testSamePairsAsBruteForce() {
+        Random rng = new Random(2013);
+        for (int g = 0; g < 10; ++g) {
+            Stop[] stops = randomStops(rng, 400, 0.05);
+            int maxWalkingTime = rng.nextInt(600);
+            double walkingSpeed = 0.5 + rng.nextDouble();
+            assertArrayEquals(bruteForce(stops, maxWalkingTime, walkingSpeed), new StopGrid(stops, maxWalkingTime, walkingSpeed).walkingPairs());
+        }
+    }
+
+    @Test
+    public void testSamePairsAsBruteForceLargeRadius() {
+        Random rng = new Random(2014);
+        Stop[] stops = randomStops(rng, 200, 180); // partout sur la terre, rayon de plus d'un demi-tour
+        assertArrayEquals(bruteForce(stops, 20000000, 1), new StopGrid(stops, 20000000, 1).walkingPairs());
+        assertArrayEquals(bruteForce(stops, 3000000, 1), new StopGrid(stops, 3000000, 1).walkingPairs());
+    }
+
+    @Test
+    public void testZeroWalkingTimeAndDuplicates() {
+        Stop[] stops = new Stop[] {
+                new Stop("A", new PointWGS84(0.1, 0.8)),
+                new Stop("B", new PointWGS84(0.1, 0.8)),
+                new Stop("C", new PointWGS84(0.1, 0.80001))
+        };
+        assertArrayEquals(new int[] {0, 1, 0}, new StopGrid(stops, 0, 1.25).walkingPairs());
+        assertArrayEquals(bruteForce(stops, 100, 1.25), new StopGrid(stops, 100, 1.25).walkingPairs());
+    }
+
+    @Test
+    public void testPairsRange() {
+        Random rng = new Random(2015);
+        Stop[] stops = randomStops(rng, 300, 0.03);
+        StopGrid grid = new StopGrid(stops, 300, 1.25);
+        List<Integer> parts = new ArrayList<>();
+        for (int from = 0; from < stops.length; from += 70) {
+            for (int v : grid.walkingPairs(from, Math.min(from + 70, stops.length))) {
+                parts.add(v);
+            }
+        }
+        int[] all = grid.walkingPairs();
+        assertEquals(all.length, parts.size());
+        for (int i = 0; i < all.length; ++i) {
+            assertEquals(all[i], (int) parts.get(i));
+        }
+    }
+
+    @Test
+    public void testSameStopsFromPointAsBruteForce() {
+        Random rng = new Random(2016);
+        for (int g = 0; g < 10; ++g) {
+            Stop[] stops = randomStops(rng, 400, 0.05);
+            int maxWalkingTime = rng.nextInt(600);
+            double walkingSpeed = 0.5 + rng.nextDouble();
+            StopGrid grid = new StopGrid(stops, maxWalkingTime, walkingSpeed);
+            for (int p = 0; p < 20; ++p) {
+                PointWGS84 origin = randomStops(rng, 1, 0.06)[0].position();
+                assertArrayEquals(bruteForce(stops, origin, maxWalkingTime, walkingSpeed), grid.walkingTimesFrom(origin));
+            }
+        }
+        Stop[] stops = randomStops(rng, 200, 180);
+        PointWGS84 origin = new PointWGS84(Math.PI, 0);
+        assertArrayEquals(bruteForce(stops, origin, 20000000, 1), new StopGrid(stops, 20000000, 1).walkingTimesFrom(origin));
+    }
+
+    // des arrets aleatoires autour de Lausanne, dans un carre de cote donne (en degres)
+    private static Stop[] randomStops(Random rng, int count, double size) {
+        Stop[] stops = new Stop[count];
+        for (int i = 0; i < count; ++i) {
+            double longitude = Math.max(-180, Math.min(180, 6.6 + (rng.nextDouble() - 0.5)*size));
+            double latitude = Math.max(-90, Math.min(90, 46.5 + (rng.nextDouble() - 0.5)*size));
+            stops[i] = new Stop("S"+i, new PointWGS84(Math.toRadians(longitude), Math.toRadians(latitude)));
+        }
+        return stops;
+    }
+
+    // la comparaison du point avec tous les arrets, telle que le faisait Graph.fastestPaths
+    private static int[] bruteForce(Stop[] stops, PointWGS84 origin, int maxWalkingTime, double walkingSpeed) {
+        List<Integer> times = new ArrayList<>();
+        for (int i = 0; i < stops.length; ++i) {
+            int walkingTime = (int) Math.round(origin.distanceTo(stops[i].position())/walkingSpeed);
+            if (walkingTime <= maxWalkingTime) {
+                times.add(i);
+                times.add(walkingTime);
+            }
+        }
+        int[] result = new int[times.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = times.get(i);
+        }
+        return result;
+    }
+
+    // la comparaison de toutes les paires, telle que le faisait Graph.Builder.addAllWalkEdges
+    private static int[] bruteForce(Stop[] stops, int maxWalkingTime, double walkingSpeed) {
+        List<Integer> pairs = new ArrayList<>();
+        for (int i = 0; i < stops.length; ++i) {
+            for (int j = i+1; j < stops.length; ++j) {
+                int walkingTime = (int) Math.round(stops[i].position().distanceTo(stops[j].position())/walkingSpeed);
+                if (walkingTime <= maxWalkingTime) {
+                    pairs.add(i);
+                    pairs.add(j);
+                    pairs.add(walkingTime);
+                }
+            }
+        }
+        int[] result = new int[pairs.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = pairs.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,40 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestSymbolTable {
+
+    @Test
+    public void testInternAndLookup() {
+        SymbolTable t = new SymbolTable();
+        assertEquals(-1, t.id("Renens"));
+        for (int i = 0; i < 1000; ++i) { // plusieurs agrandissements de la table
+            assertEquals(i, t.intern("S"+i));
+        }
+        assertEquals(1000, t.size());
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(i, t.intern("S"+i));
+            assertEquals(i, t.id("S"+i));
+            assertEquals("S"+i, t.name(i));
+        }
+        assertEquals(-1, t.id("S1000"));
+        assertEquals(-1, t.id(""));
+        assertEquals(1000, t.intern(""));
+        assertEquals(1000, t.id(""));
+    }
+
+    @Test
+    public void testUtf8Names() {
+        SymbolTable t = new SymbolTable();
+        int id = t.intern("Préverenges");
+        assertEquals(id, t.id("Préverenges"));
+        assertEquals(-1, t.id("Preverenges"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testWrongId() {
+        new SymbolTable().name(0);
+    }
+}
@@ -153,4 +153,35 @@ public class TestTimeTable {
         TimeTable t3 = bt.build();
         assertEquals(testList, t3.servicesForDate(new Date(5, Month.MARCH, 2014)));
     }
+
+    @Test
+    public void testServicesForDateSameAsServices() {
+        Date start = new Date(1, Month.JANUARY, 2014);
+        Set<Service> services = new HashSet<>();
+        services.add(new Service.Builder("semaine", start, new Date(30, Month.JUNE, 2014))
+        .addOperatingDay(DayOfWeek.MONDAY).addOperatingDay(DayOfWeek.FRIDAY)
+        .addExcludedDate(new Date(6, Month.JANUARY, 2014)).build());
+        services.add(new Service.Builder("fin de semaine", new Date(1, Month.MARCH, 2014), new Date(31, Month.DECEMBER, 2014))
+        .addOperatingDay(DayOfWeek.SUNDAY)
+        .addIncludedDate(new Date(5, Month.MARCH, 2014)).build());
+        TimeTable t = new TimeTable(Collections.<Stop> emptySet(), services);
+
+        for (Date d = start.relative(-5); d.compareTo(new Date(5, Month.JANUARY, 2015)) <= 0; d = d.relative(1)) {
+            Set<Service> expected = new HashSet<>();
+            for (Service s : services) {
+                if (s.isOperatingOn(d))
+                    expected.add(s);
+            }
+            assertEquals(d.toString(), expected, t.servicesForDate(d));
+        }
+        // les lundis de janvier et de fevrier partagent le meme ensemble
+        assertSame(t.servicesForDate(new Date(13, Month.JANUARY, 2014)), t.servicesForDate(new Date(3, Month.FEBRUARY, 2014)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testServicesForDateUnmodifiable() {
+        Date d = new Date(1, Month.JANUARY, 2014);
+        TimeTable t = new TimeTable(Collections.<Stop> emptySet(), Collections.singleton(new Service.Builder("s", d, d).build()));
+        t.servicesForDate(d).clear();
+    }
 }
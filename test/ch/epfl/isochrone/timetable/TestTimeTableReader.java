@@ -23,6 +23,8 @@ public class TestTimeTableReader {
         TimeTable t = r.readTimeTable();
         @SuppressWarnings("unused")
         Graph g = r.readGraphForServices(t.stops(), Collections.<Service>emptySet(), 0, 0d);
+        @SuppressWarnings("unused")
+        Raptor raptor = r.readRaptorForServices(t.stops(), Collections.<Service>emptySet(), 0, 0d);
     }
 
     @Test
@@ -80,4 +82,9 @@ public class TestTimeTableReader {
         reader.readGraphForServices(stops, services, 10, 10);
         
     }
+
+    @Test(expected = IOException.class)
+    public void testMissingFile() throws IOException {
+        new TimeTableReader("/time-table-absent/").readTimeTable();
+    }
 }
@@ -0,0 +1,100 @@
+package ch.epfl.isochrone.timetable;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.isochrone.geo.PointWGS84;
+
+public class TestTravelTimeMatrix {
+
+    @Test
+    public void testSameAsFastestPaths() {
+        Graph g = TestConnectionScan.randomGraph(new Random(2018), new ArrayList<Stop>());
+        List<Stop> origins = Arrays.asList(g.stop(0), g.stop(7), g.stop(42));
+        int[] departureTimes = {SecondsPastMidnight.fromHMS(7, 0, 0), SecondsPastMidnight.fromHMS(8, 30, 0)};
+        TravelTimeMatrix matrix = new TravelTimeMatrix(g, origins, departureTimes, null);
+        assertEquals(6, matrix.rowCount());
+        assertEquals(g.stopCount(), matrix.columnCount());
+
+        int[][] times = matrix.compute();
+        for (int i = 0; i < origins.size(); ++i) {
+            for (int j = 0; j < departureTimes.length; ++j) {
+                FastestPathTree tree = g.fastestPaths(origins.get(i), departureTimes[j]);
+                for (int id = 0; id < g.stopCount(); ++id) {
+                    int arrivalTime = tree.arrivalTime(g.stop(id));
+                    int expected = (arrivalTime < SecondsPastMidnight.INFINITE) ? arrivalTime - departureTimes[j]: SecondsPastMidnight.INFINITE;
+                    assertEquals(expected, times[i*departureTimes.length + j][id]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWriteToSameAsCompute() throws IOException {
+        Graph g = TestConnectionScan.randomGraph(new Random(2019), new ArrayList<Stop>());
+        List<Stop> origins = new ArrayList<>();
+        for (int id = 0; id < g.stopCount(); id += 10) {
+            origins.add(g.stop(id));
+        }
+        TravelTimeMatrix matrix = new TravelTimeMatrix(g, origins, new int[] {SecondsPastMidnight.fromHMS(9, 0, 0)}, null);
+        int[][] times = matrix.compute();
+
+        Path file = Files.createTempFile("isochrone", ".matrix");
+        try {
+            matrix.writeTo(file);
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            assertEquals(times.length, in.getInt());
+            assertEquals(g.stopCount(), in.getInt());
+            for (int[] row : times) {
+                for (int time : row) {
+                    assertEquals(time, in.getInt());
+                }
+            }
+            assertFalse(in.hasRemaining());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        Graph g = TestConnectionScan.randomGraph(new Random(2020), new ArrayList<Stop>());
+        assertEquals(0, new TravelTimeMatrix(g, Collections.<Stop>emptyList(), new int[] {0}, null).compute().length);
+    }
+
+    @Test
+    public void testComputeInterrupted() {
+        Graph g = TestConnectionScan.randomGraph(new Random(2023), new ArrayList<Stop>());
+        TravelTimeMatrix matrix = new TravelTimeMatrix(g, Arrays.asList(g.stop(0)), new int[] {SecondsPastMidnight.fromHMS(8, 0, 0)}, null);
+        Thread.currentThread().interrupt();
+        try {
+            matrix.compute();
+            fail("le calcul interrompu doit echouer");
+        } catch (IllegalStateException e) {
+            assertTrue(Thread.interrupted()); // le drapeau reste leve (et est efface pour les tests suivants)
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongOrigin() {
+        Graph g = TestConnectionScan.randomGraph(new Random(2021), new ArrayList<Stop>());
+        new TravelTimeMatrix(g, Arrays.asList(new Stop("X", new PointWGS84(0, 0))), new int[] {0}, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDepartureTime() {
+        Graph g = TestConnectionScan.randomGraph(new Random(2022), new ArrayList<Stop>());
+        new TravelTimeMatrix(g, Arrays.asList(g.stop(0)), new int[] {-1}, null);
+    }
+}